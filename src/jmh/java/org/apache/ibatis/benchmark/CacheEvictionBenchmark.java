@@ -0,0 +1,147 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.benchmark;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.type.TypeAliasRegistry;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reads through a namespace cache built by {@link CacheBuilder}, putting the value on a miss the way
+ * {@code CachingExecutor} does. Keys follow a Zipf distribution, optionally interrupted by scans of keys that are read
+ * only once. The {@code hits} and {@code misses} counters give the hit rate of each eviction policy.
+ * <p>
+ * {@code CONCURRENT} builds the namespace cache on a {@code ConcurrentPerpetualCache}, without the
+ * {@code SynchronizedCache} wrapper.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class CacheEvictionBenchmark {
+
+  private static final int CACHE_SIZE = 1024;
+  private static final int DISTINCT_KEYS = 100_000;
+  private static final int SAMPLES = 1 << 20;
+  private static final int SCAN_LENGTH = 4096;
+
+  @Param({ "PERPETUAL", "CONCURRENT" })
+  public String implementation;
+
+  @Param({ "LRU", "FIFO", "TINYLFU" })
+  public String eviction;
+
+  @Param({ "0.8", "1.1" })
+  public double skew;
+
+  @Param({ "false", "true" })
+  public boolean scans;
+
+  private Cache cache;
+  private Integer[] keys;
+
+  @Setup
+  public void setup() {
+    TypeAliasRegistry aliases = new Configuration().getTypeAliasRegistry();
+    Class<? extends Cache> implementationClass = aliases.resolveAlias(implementation);
+    Class<? extends Cache> evictionClass = aliases.resolveAlias(eviction);
+    cache = new CacheBuilder("benchmark").implementation(implementationClass).addDecorator(evictionClass)
+        .size(CACHE_SIZE).build();
+    keys = zipfKeys(new Random(42));
+    if (scans) {
+      // every other block of keys is a scan over keys that are not requested again
+      int unique = DISTINCT_KEYS;
+      for (int start = SCAN_LENGTH; start < SAMPLES; start += 2 * SCAN_LENGTH) {
+        for (int i = start; i < Math.min(start + SCAN_LENGTH, SAMPLES); i++) {
+          keys[i] = unique++;
+        }
+      }
+    }
+  }
+
+  private Integer[] zipfKeys(Random random) {
+    double[] cumulative = new double[DISTINCT_KEYS];
+    double sum = 0;
+    for (int i = 0; i < DISTINCT_KEYS; i++) {
+      sum += 1 / Math.pow(i + 1, skew);
+      cumulative[i] = sum;
+    }
+    Integer[] result = new Integer[SAMPLES];
+    for (int i = 0; i < SAMPLES; i++) {
+      int index = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+      result[i] = index < 0 ? -index - 1 : index;
+    }
+    return result;
+  }
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class HitCounters {
+
+    public long hits;
+    public long misses;
+    private int position;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      hits = 0;
+      misses = 0;
+      position = ThreadLocalRandom.current().nextInt(SAMPLES);
+    }
+
+    int next() {
+      position = (position + 1) & (SAMPLES - 1);
+      return position;
+    }
+  }
+
+  @Benchmark
+  public Object getOrPut(HitCounters counters) {
+    Integer key = keys[counters.next()];
+    Object value = cache.getObject(key);
+    if (value == null) {
+      counters.misses++;
+      cache.putObject(key, key);
+      return key;
+    }
+    counters.hits++;
+    return value;
+  }
+
+}
@@ -0,0 +1,85 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.benchmark;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.cache.CacheKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Builds cache keys the way {@code BaseExecutor.createCacheKey} does and hashes/compares them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CacheKeyBenchmark {
+
+  private static final String STATEMENT_ID = "org.apache.ibatis.domain.blog.mappers.BlogMapper.selectBlogsByAuthor";
+  private static final String SQL = "select id, title, author_id from blog where author_id = ? and title like ?";
+
+  private final Date date = new Date();
+  private CacheKey cacheKey;
+  private CacheKey sameCacheKey;
+
+  @Setup
+  public void setup() {
+    cacheKey = createCacheKey();
+    sameCacheKey = createCacheKey();
+  }
+
+  private CacheKey createCacheKey() {
+    CacheKey key = new CacheKey();
+    key.update(STATEMENT_ID);
+    key.update(0);
+    key.update(Integer.MAX_VALUE);
+    key.update(SQL);
+    key.update(101);
+    key.update("%mybatis%");
+    key.update(date);
+    key.update("development");
+    return key;
+  }
+
+  @Benchmark
+  public CacheKey create() {
+    return createCacheKey();
+  }
+
+  @Benchmark
+  public int createAndHash() {
+    return createCacheKey().hashCode();
+  }
+
+  @Benchmark
+  public boolean equalsSameContent() {
+    return cacheKey.equals(sameCacheKey);
+  }
+
+}
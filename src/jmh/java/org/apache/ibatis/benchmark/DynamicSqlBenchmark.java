@@ -0,0 +1,105 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.benchmark;
+
+import com.huyu.dynamic.CreateSql;
+import com.huyu.dynamic.parse.IMXmlScriptBuilder;
+import com.huyu.test.SessionPO;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.builder.xml.XMLMapperEntityResolver;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.SqlSource;
+import org.apache.ibatis.parsing.XNode;
+import org.apache.ibatis.parsing.XPathParser;
+import org.apache.ibatis.scripting.xmltags.XMLScriptBuilder;
+import org.apache.ibatis.session.Configuration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Renders the same {@code <if>}/{@code <foreach>} script with {@link org.apache.ibatis.scripting.xmltags.DynamicSqlSource}
+ * and with the IM engine ({@link CreateSql}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DynamicSqlBenchmark {
+
+  static final String SCRIPT = "<script>update session set"
+      + " <if test=\"PO.title != null and PO.title.trim() != ''\"> title = #{PO.title}, </if>"
+      + " <if test=\"PO.updateTime != null\"> update_time = #{PO.updateTime}, </if>"
+      + " <if test=\"PO.delIs != null\"> del_is = #{PO.delIs} </if>" + " where id = #{PO.id}"
+      + " <foreach item=\"item\" index=\"index\" collection=\"list\" open=\"AND id in (\" separator=\",\" close=\")\">"
+      + " #{item.id} </foreach></script>";
+
+  @Param({ "10", "1000" })
+  public int listSize;
+
+  private SqlSource dynamicSqlSource;
+  private CreateSql createSql;
+  private Map<String, Object> paramMap;
+
+  @Setup
+  public void setup() {
+    Configuration configuration = new Configuration();
+    dynamicSqlSource = new XMLScriptBuilder(configuration, parseScript()).parseScriptNode();
+    createSql = new IMXmlScriptBuilder(parseScript()).parseScriptNode();
+
+    List<SessionPO> list = new ArrayList<>(listSize);
+    for (int i = 0; i < listSize; i++) {
+      list.add(new SessionPO().setId((long) i));
+    }
+    paramMap = new HashMap<>();
+    paramMap.put("PO", new SessionPO().setId(1L).setTitle("title").setDelIs(0)
+        .setUpdateTime(new Timestamp(System.currentTimeMillis())));
+    paramMap.put("list", list);
+  }
+
+  private static XNode parseScript() {
+    return new XPathParser(SCRIPT, false, new Properties(), new XMLMapperEntityResolver()).evalNode("/script");
+  }
+
+  @Benchmark
+  public BoundSql dynamicSqlSource() {
+    return dynamicSqlSource.getBoundSql(paramMap);
+  }
+
+  @Benchmark
+  public String imCreateSql() {
+    return createSql.createSql(paramMap);
+  }
+
+}
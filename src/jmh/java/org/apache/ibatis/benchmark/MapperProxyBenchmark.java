@@ -0,0 +1,96 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.benchmark;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.binding.MapperProxyFactory;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@code MapperProxy.invoke} dispatch (method cache lookup, {@code MapperMethod} argument conversion) against
+ * a {@link SqlSession} that does no I/O.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MapperProxyBenchmark {
+
+  public interface DispatchMapper {
+    @Select("select name from author where id = #{id}")
+    String selectName(int id);
+
+    @Select("select count(*) from author where id = #{id} and name = #{name}")
+    Integer count(@Param("id") int id, @Param("name") String name);
+
+    default String defaultSelectName() {
+      return selectName(1);
+    }
+  }
+
+  private DispatchMapper mapper;
+
+  @Setup
+  public void setup() {
+    Configuration configuration = new Configuration();
+    configuration.addMapper(DispatchMapper.class);
+    SqlSession sqlSession = (SqlSession) Proxy.newProxyInstance(SqlSession.class.getClassLoader(),
+        new Class<?>[] { SqlSession.class }, (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "getConfiguration":
+              return configuration;
+            case "selectOne":
+              return ((String) args[0]).endsWith(".count") ? (Object) 1 : "name";
+            default:
+              return null;
+          }
+        });
+    mapper = new MapperProxyFactory<>(DispatchMapper.class).newInstance(sqlSession);
+  }
+
+  @Benchmark
+  public String singleParameter() {
+    return mapper.selectName(1);
+  }
+
+  @Benchmark
+  public Integer namedParameters() {
+    return mapper.count(1, "mybatis");
+  }
+
+  @Benchmark
+  public String defaultMethod() {
+    return mapper.defaultSelectName();
+  }
+
+}
@@ -0,0 +1,116 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.benchmark;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Checks connections out of and back into a {@link PooledDataSource} from more threads than the pool has active
+ * connections.
+ * <p>
+ * In CONCURRENT mode each checkout hands out a new proxy, so that a borrower that keeps using its connection after
+ * closing it is told so instead of sharing the next borrower's connection. {@link #newProxyConnection()} measures that
+ * allocation alone, to compare with {@link #getConnection()}.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(32)
+@Fork(1)
+public class PooledDataSourceBenchmark {
+
+  private static final InvocationHandler HANDLER = (proxy, method, args) -> null;
+  private static final MethodHandle PROXY_CONSTRUCTOR;
+
+  static {
+    Class<?> proxyClass = Proxy
+        .newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, HANDLER).getClass();
+    try {
+      PROXY_CONSTRUCTOR = MethodHandles.publicLookup()
+          .findConstructor(proxyClass, MethodType.methodType(void.class, InvocationHandler.class))
+          .asType(MethodType.methodType(Connection.class, InvocationHandler.class));
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  @Param({ "CLASSIC", "CONCURRENT" })
+  public String poolMode;
+
+  private PooledDataSource dataSource;
+
+  @Setup
+  public void setup() throws SQLException {
+    dataSource = new PooledDataSource("org.h2.Driver", "jdbc:h2:mem:pool;DB_CLOSE_DELAY=-1", "sa", "");
+    dataSource.setPoolMaximumActiveConnections(10);
+    dataSource.setPoolMaximumIdleConnections(10);
+    dataSource.setPoolMode(poolMode);
+    // warm up the pool so that the benchmark measures handoff, not connection creation
+    Connection[] connections = new Connection[10];
+    for (int i = 0; i < connections.length; i++) {
+      connections[i] = dataSource.getConnection();
+    }
+    for (Connection connection : connections) {
+      connection.close();
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    dataSource.forceCloseAll();
+  }
+
+  @Benchmark
+  public boolean getConnection() throws SQLException {
+    try (Connection connection = dataSource.getConnection()) {
+      return connection.getAutoCommit();
+    }
+  }
+
+  /**
+   * Creates a connection proxy the way the pool does on each checkout in CONCURRENT mode.
+   */
+  @Benchmark
+  public Connection newProxyConnection() throws Throwable {
+    return (Connection) PROXY_CONSTRUCTOR.invokeExact(HANDLER);
+  }
+
+}
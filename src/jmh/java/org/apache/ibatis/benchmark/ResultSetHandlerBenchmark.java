@@ -0,0 +1,158 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.benchmark;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.executor.resultset.DefaultResultSetHandler;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.RowBounds;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Maps an in-memory H2 result set through {@link DefaultResultSetHandler#handleResultSets(Statement)} using auto
+ * mapping.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResultSetHandlerBenchmark {
+
+  public interface RowMapper {
+    @Select("select id, name, email, score, created_at from bench_row")
+    List<Row> selectAll();
+  }
+
+  public static class Row {
+    private int id;
+    private String name;
+    private String email;
+    private double score;
+    private java.sql.Timestamp createdAt;
+
+    public int getId() {
+      return id;
+    }
+
+    public void setId(int id) {
+      this.id = id;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public void setName(String name) {
+      this.name = name;
+    }
+
+    public String getEmail() {
+      return email;
+    }
+
+    public void setEmail(String email) {
+      this.email = email;
+    }
+
+    public double getScore() {
+      return score;
+    }
+
+    public void setScore(double score) {
+      this.score = score;
+    }
+
+    public java.sql.Timestamp getCreatedAt() {
+      return createdAt;
+    }
+
+    public void setCreatedAt(java.sql.Timestamp createdAt) {
+      this.createdAt = createdAt;
+    }
+  }
+
+  @Param({ "100", "10000" })
+  public int rows;
+
+  private Connection connection;
+  private MappedStatement mappedStatement;
+  private BoundSql boundSql;
+
+  @Setup
+  public void setup() throws SQLException {
+    connection = DriverManager.getConnection("jdbc:h2:mem:rsh" + rows + ";DB_CLOSE_DELAY=-1", "sa", "");
+    try (Statement stmt = connection.createStatement()) {
+      stmt.execute("drop table if exists bench_row");
+      stmt.execute(
+          "create table bench_row (id int primary key, name varchar(64), email varchar(128), score double, created_at timestamp)");
+    }
+    try (PreparedStatement ps = connection.prepareStatement("insert into bench_row values (?, ?, ?, ?, ?)")) {
+      for (int i = 0; i < rows; i++) {
+        ps.setInt(1, i);
+        ps.setString(2, "name" + i);
+        ps.setString(3, "user" + i + "@example.com");
+        ps.setDouble(4, i * 1.5d);
+        ps.setTimestamp(5, new java.sql.Timestamp(System.currentTimeMillis()));
+        ps.addBatch();
+      }
+      ps.executeBatch();
+    }
+
+    Configuration configuration = new Configuration();
+    configuration.setMapUnderscoreToCamelCase(true);
+    configuration.addMapper(RowMapper.class);
+    mappedStatement = configuration.getMappedStatement(RowMapper.class.getName() + ".selectAll");
+    boundSql = mappedStatement.getBoundSql(null);
+  }
+
+  @TearDown
+  public void tearDown() throws SQLException {
+    connection.close();
+  }
+
+  @Benchmark
+  public List<Object> handleResultSets() throws SQLException {
+    try (PreparedStatement ps = connection.prepareStatement(boundSql.getSql())) {
+      ps.execute();
+      return new DefaultResultSetHandler(null, mappedStatement, null, null, boundSql, RowBounds.DEFAULT)
+          .handleResultSets(ps);
+    }
+  }
+
+}
@@ -16,10 +16,14 @@
 package com.huyu.dynamic;
 
 import com.huyu.dynamic.context.IMContext;
+import com.huyu.dynamic.context.IMVariableTable;
 import com.huyu.dynamic.node.IMSqlNode;
+import com.huyu.dynamic.node.IMStatisticSqlNode;
 
 import java.util.Map;
 
+import org.apache.ibatis.session.Configuration;
+
 public class CreateSql {
 
   private final IMSqlNode root;
@@ -27,9 +31,32 @@ public class CreateSql {
   // 是否是动态sql,动态sql会解析 ${},非动态sql,只会解析 #{}
   private final boolean isDynamic;
 
+  // 局部变量表(bind, foreach的变量)
+  private final IMVariableTable variableTable;
+
+  // 是否有分块的foreach
+  private final boolean chunked;
+
+  // 编译之后整个sql都是静态文本的话,直接返回
+  private final String staticSql;
+
+  // 上一次生成的sql长度,用于预先分配缓冲区的大小(并发下读到旧值也没关系,只是一个预估值)
+  private int textCapacity = 256;
+
   public CreateSql(IMSqlNode sqlNode, boolean isDynamic) {
+    this(sqlNode, isDynamic, new IMVariableTable());
+  }
+
+  public CreateSql(IMSqlNode sqlNode, boolean isDynamic, IMVariableTable variableTable) {
+    this(sqlNode, isDynamic, variableTable, false);
+  }
+
+  public CreateSql(IMSqlNode sqlNode, boolean isDynamic, IMVariableTable variableTable, boolean chunked) {
     this.root = sqlNode;
+    this.chunked = chunked;
     this.isDynamic = isDynamic;
+    this.variableTable = variableTable;
+    this.staticSql = sqlNode instanceof IMStatisticSqlNode ? ((IMStatisticSqlNode) sqlNode).getText() : null;
   }
 
   /**
@@ -38,8 +65,51 @@ public class CreateSql {
    * @return
    */
   public String createSql(Map<String, Object> paramMap) {
-    IMContext context = new IMContext(isDynamic, paramMap);
-    root.apply(context);
+    if (staticSql != null) {
+      return staticSql;
+    }
+    IMContext context = new IMContext(isDynamic, paramMap, variableTable, textCapacity);
+    apply(context);
     return context.getText();
   }
+
+  /**
+   * 执行动态sql, #{} 会替换成 ?, 并且在上下文中记录 ParameterMapping 和对应的值
+   *
+   * @param configuration
+   * @param parameterObject
+   *
+   * @return 执行之后的上下文
+   */
+  public IMContext createContext(Configuration configuration, Object parameterObject) {
+    return createContext(configuration, parameterObject, 0);
+  }
+
+  /**
+   * 执行分块的foreach的第 chunk 块, 一共有几块见 {@link IMContext#getChunkCount()}
+   *
+   * @param configuration
+   * @param parameterObject
+   * @param chunk
+   *
+   * @return 执行之后的上下文
+   */
+  public IMContext createContext(Configuration configuration, Object parameterObject, int chunk) {
+    IMContext context = new IMContext(configuration, parameterObject, variableTable, textCapacity);
+    context.setChunk(chunk);
+    apply(context);
+    return context;
+  }
+
+  public boolean isChunked() {
+    return chunked;
+  }
+
+  private void apply(IMContext context) {
+    root.apply(context);
+    int length = context.getTextLength();
+    if (length > textCapacity) {
+      textCapacity = length + (length >> 3);
+    }
+  }
 }
@@ -0,0 +1,65 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.huyu.dynamic;
+
+import com.huyu.dynamic.node.IMTextSqlNode;
+import com.huyu.dynamic.parse.IMParameterParser;
+import com.huyu.dynamic.parse.IMXmlScriptBuilder;
+
+import org.apache.ibatis.builder.xml.XMLMapperEntityResolver;
+import org.apache.ibatis.executor.parameter.ParameterHandler;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlSource;
+import org.apache.ibatis.parsing.PropertyParser;
+import org.apache.ibatis.parsing.XNode;
+import org.apache.ibatis.parsing.XPathParser;
+import org.apache.ibatis.scripting.LanguageDriver;
+import org.apache.ibatis.scripting.defaults.DefaultParameterHandler;
+import org.apache.ibatis.session.Configuration;
+
+/**
+ * IM动态sql引擎的 LanguageDriver
+ * <p>
+ * 在 mapper xml 中使用 lang="im", 或者在注解mapper中使用 {@code @Lang(IMLanguageDriver.class)}
+ * </p>
+ */
+public class IMLanguageDriver implements LanguageDriver {
+
+  @Override
+  public ParameterHandler createParameterHandler(MappedStatement mappedStatement, Object parameterObject,
+      BoundSql boundSql) {
+    return new DefaultParameterHandler(mappedStatement, parameterObject, boundSql);
+  }
+
+  @Override
+  public SqlSource createSqlSource(Configuration configuration, XNode script, Class<?> parameterType) {
+    IMXmlScriptBuilder builder = new IMXmlScriptBuilder(configuration, script, parameterType);
+    return new IMSqlSource(configuration, builder.parseScriptNode());
+  }
+
+  @Override
+  public SqlSource createSqlSource(Configuration configuration, String script, Class<?> parameterType) {
+    if (script.startsWith("<script>")) {
+      XPathParser parser = new XPathParser(script, false, configuration.getVariables(), new XMLMapperEntityResolver());
+      return createSqlSource(configuration, parser.evalNode("/script"), parameterType);
+    }
+    script = PropertyParser.parse(script, configuration.getVariables());
+    IMTextSqlNode textSqlNode = new IMTextSqlNode(script, new IMParameterParser(configuration, parameterType));
+    return new IMSqlSource(configuration, new CreateSql(textSqlNode.compile(), textSqlNode.isDynamic()));
+  }
+
+}
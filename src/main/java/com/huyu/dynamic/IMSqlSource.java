@@ -0,0 +1,89 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.huyu.dynamic;
+
+import com.huyu.dynamic.context.IMContext;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.SqlSource;
+import org.apache.ibatis.scripting.xmltags.DynamicContext;
+import org.apache.ibatis.session.Configuration;
+
+/**
+ * IM引擎的SqlSource
+ * <p>
+ * 和 DynamicSqlSource 不同, 执行动态sql的时候就已经把 #{} 替换成了 ?, 并且得到了 ParameterMapping 和对应的值, 不需要再用 SqlSourceBuilder
+ * 解析一次生成的sql. 每个 ? 的值按位置放到 BoundSql 的额外参数里面(参数名见 {@link IMContext#slotName(int)}), 所以
+ * DefaultParameterHandler 和一级缓存的 CacheKey 都可以直接使用
+ * </p>
+ */
+public class IMSqlSource implements SqlSource {
+
+  private final Configuration configuration;
+
+  private final CreateSql createSql;
+
+  public IMSqlSource(Configuration configuration, CreateSql createSql) {
+    this.configuration = configuration;
+    this.createSql = createSql;
+  }
+
+  @Override
+  public boolean isChunked() {
+    return createSql.isChunked();
+  }
+
+  @Override
+  public BoundSql getBoundSql(Object parameterObject) {
+    // 分块的foreach只有第一块
+    return toBoundSql(createSql.createContext(configuration, parameterObject), parameterObject);
+  }
+
+  @Override
+  public List<BoundSql> getBoundSqlChunks(Object parameterObject) {
+    IMContext context = createSql.createContext(configuration, parameterObject);
+    BoundSql first = toBoundSql(context, parameterObject);
+    int chunkCount = context.getChunkCount();
+    if (chunkCount <= 1) {
+      return Collections.singletonList(first);
+    }
+    // 分块的foreach: 每一块一个BoundSql, 由SqlSession每一块执行一次
+    List<BoundSql> chunks = new ArrayList<>(chunkCount);
+    chunks.add(first);
+    for (int chunk = 1; chunk < chunkCount; chunk++) {
+      chunks.add(toBoundSql(createSql.createContext(configuration, parameterObject, chunk), parameterObject));
+    }
+    return Collections.unmodifiableList(chunks);
+  }
+
+  private BoundSql toBoundSql(IMContext context, Object parameterObject) {
+    List<ParameterMapping> parameterMappings = context.getMappingList();
+    List<Object> values = context.getMappingValueList();
+    BoundSql boundSql = new BoundSql(configuration, context.getText(), parameterMappings, parameterObject);
+    for (int i = 0, size = parameterMappings.size(); i < size; i++) {
+      boundSql.setAdditionalParameter(parameterMappings.get(i).getProperty(), values.get(i));
+    }
+    boundSql.setAdditionalParameter(DynamicContext.PARAMETER_OBJECT_KEY, parameterObject);
+    boundSql.setAdditionalParameter(DynamicContext.DATABASE_ID_KEY, configuration.getDatabaseId());
+    return boundSql;
+  }
+
+}
@@ -15,6 +15,8 @@
  */
 package com.huyu.dynamic.context;
 
+import com.huyu.dynamic.node.IMParameter;
+
 import java.util.*;
 
 import ognl.OgnlContext;
@@ -22,6 +24,8 @@ import ognl.OgnlRuntime;
 import ognl.PropertyAccessor;
 
 import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.scripting.xmltags.DynamicContext;
+import org.apache.ibatis.session.Configuration;
 
 /**
  * 动态sql的上下文
@@ -49,10 +53,13 @@ public class IMContext {
    */
   protected IMContext() {
     this.isDynamic = false;
-    rootBinds = null;
+    binds = null;
+    simpleParameter = false;
     text = null;
     mappingList = null;
     mappingValueList = null;
+    configuration = null;
+    parameterObject = null;
   }
 
   public IMContext(boolean isDynamic) {
@@ -60,6 +67,18 @@ public class IMContext {
   }
 
   public IMContext(boolean isDynamic, Map<String, Object> paramMap) {
+    this(isDynamic, paramMap, new IMVariableTable(), DEFAULT_TEXT_CAPACITY);
+  }
+
+  /**
+   * @param isDynamic
+   * @param paramMap
+   * @param variableTable
+   *          解析脚本时分配好的局部变量表
+   * @param textCapacity
+   *          预估的sql长度,一次分配好缓冲区,避免拼接过程中扩容复制
+   */
+  public IMContext(boolean isDynamic, Map<String, Object> paramMap, IMVariableTable variableTable, int textCapacity) {
     this.isDynamic = isDynamic;
     mappingList = new ArrayList<>();
     if (isDynamic) {
@@ -69,14 +88,82 @@ public class IMContext {
       // 静态sql
       mappingValueList = Collections.emptyList();
     }
-    this.rootBinds = new IMTreeMap(null);
-    this.text = new StringJoiner(" ");
-    currentBinds = rootBinds;
+    this.binds = new IMTreeMap(variableTable);
+    this.text = new StringBuilder(textCapacity);
     if (Objects.nonNull(paramMap)) {
-      currentBinds.putAll(paramMap);
+      binds.putAll(paramMap);
+    }
+    this.configuration = null;
+    this.parameterObject = paramMap;
+    this.simpleParameter = false;
+  }
+
+  /**
+   * IMLanguageDriver使用的上下文: 入参可以是Map,JavaBean或者简单类型, #{} 会替换成 ? 并且同时记录 ParameterMapping 和对应的值
+   *
+   * @param configuration
+   * @param parameterObject
+   * @param variableTable
+   * @param textCapacity
+   */
+  public IMContext(Configuration configuration, Object parameterObject, IMVariableTable variableTable,
+      int textCapacity) {
+    this.isDynamic = true;
+    this.configuration = configuration;
+    this.parameterObject = parameterObject;
+    this.mappingList = new ArrayList<>();
+    this.mappingValueList = new ArrayList<>();
+    this.text = new StringBuilder(textCapacity);
+    this.binds = new IMTreeMap(variableTable);
+    this.simpleParameter = parameterObject != null
+        && configuration.getTypeHandlerRegistry().hasTypeHandler(parameterObject.getClass());
+    if (parameterObject instanceof Map) {
+      binds.putAll((Map<?, ?>) parameterObject);
+    } else if (parameterObject != null && !simpleParameter) {
+      // JavaBean的属性,作用域中找不到的时候从入参中获取
+      binds.setParameterMetaObject(configuration.newMetaObject(parameterObject));
     }
+    binds.put(DynamicContext.PARAMETER_OBJECT_KEY, parameterObject);
+    binds.put(DynamicContext.DATABASE_ID_KEY, configuration.getDatabaseId());
+  }
+
+  // ? 对应的参数名称的前缀, 值会放到 BoundSql 的额外参数里面
+  private static final String SLOT_PREFIX = "__im_";
+
+  private static final String[] SLOT_NAMES = new String[256];
+
+  static {
+    for (int i = 0; i < SLOT_NAMES.length; i++) {
+      SLOT_NAMES[i] = SLOT_PREFIX + i;
+    }
+  }
+
+  /**
+   * 第 slot 个 ? 对应的参数名称
+   *
+   * @param slot
+   *
+   * @return
+   */
+  public static String slotName(int slot) {
+    return slot < SLOT_NAMES.length ? SLOT_NAMES[slot] : SLOT_PREFIX + slot;
   }
 
+  /**
+   * 全局配置(只有IMLanguageDriver才有)
+   */
+  private final Configuration configuration;
+
+  /**
+   * 入参
+   */
+  private final Object parameterObject;
+
+  /**
+   * 入参是否是简单类型(有对应的类型处理器), 每次执行只判断一次
+   */
+  private final boolean simpleParameter;
+
   /**
    * 用于表明映射 #{}里面的信息,动态sql和静态sql都是一样的
    */
@@ -102,68 +189,49 @@ public class IMContext {
     return isDynamic;
   }
 
-  /**
-   * 文本
-   */
-  private final StringJoiner text;
+  private static final int DEFAULT_TEXT_CAPACITY = 256;
 
   /**
-   * 局部复用的作用域池, 在某些标签里面,如果存在bind标签
+   * 文本, 每个片段之间用一个空格分隔
    */
-  List<IMTreeMap> pool = null;
+  private final StringBuilder text;
 
-  // 根作用域
-  private final IMTreeMap rootBinds;
-
-  // 当前作用域
-  IMTreeMap currentBinds;
+  // 作用域(所有的作用域共用一个扁平的变量数组)
+  private final IMTreeMap binds;
 
   /**
-   * 创建作用域
+   * 创建作用域, 只是记录一下作用域的位置, 不会分配内存
    *
    * @return
    */
   public IMTreeMap createBinds() {
-    // 作用域,可以复用,退出作用域可以进行复用(移除数据就可以了)
-    IMTreeMap binds;
-    if (Objects.isNull(pool)) {
-      binds = new IMTreeMap(currentBinds);
-    } else {
-      binds = pool.remove(0);
-      if (Objects.isNull(binds)) {
-        binds = new IMTreeMap(currentBinds);
-      } else {
-        binds.setParent(currentBinds);
-      }
-    }
-    return currentBinds = binds;
+    binds.pushScope();
+    return binds;
   }
 
   /**
-   * 回退作用域
+   * 回退作用域, 还原该作用域中定义的变量
    *
    * @return
    */
   public IMTreeMap backBinds() {
-    final IMTreeMap oldBinds = this.currentBinds;
-    final IMTreeMap parent = oldBinds.getParent();
-    if (Objects.nonNull(parent)) {
-      this.currentBinds = parent;
-    }
-
-    // 初始化
-    oldBinds.setParent(null);
-    oldBinds.clear();
-    if (Objects.isNull(pool)) {
-      pool = new ArrayList<>();
-    }
-    pool.add(oldBinds);
-
-    return parent;
+    binds.popScope();
+    return binds;
   }
 
   public IMTreeMap currentBinds() {
-    return this.currentBinds;
+    return this.binds;
+  }
+
+  /**
+   * 在当前作用域中定义局部变量(bind, foreach的item和index)
+   *
+   * @param slot
+   *          解析时分配的槽位
+   * @param value
+   */
+  public void put(int slot, Object value) {
+    binds.define(slot, value);
   }
 
   /**
@@ -173,7 +241,7 @@ public class IMContext {
    * @param value
    */
   public void put(String key, Object value) {
-    currentBinds.put(key, value);
+    binds.put(key, value);
   }
 
   /**
@@ -182,7 +250,7 @@ public class IMContext {
    * @param map
    */
   public void putAll(Map<Object, Object> map) {
-    currentBinds.putAll(map);
+    binds.putAll(map);
   }
 
   /**
@@ -192,8 +260,8 @@ public class IMContext {
    * @param value
    */
   public void getPut(String key, Object value) {
-    if (Objects.isNull(currentBinds.getPut(key, value))) {
-      currentBinds.put(key, value);
+    if (Objects.isNull(binds.getPut(key, value))) {
+      binds.put(key, value);
     }
   }
 
@@ -205,7 +273,7 @@ public class IMContext {
    * @return
    */
   public Object get(String key) {
-    return currentBinds.get(key);
+    return binds.get(key);
   }
 
   /**
@@ -216,7 +284,36 @@ public class IMContext {
    * @return
    */
   public Object remove(String key) {
-    return currentBinds.remove(key);
+    return binds.remove(key);
+  }
+
+  /**
+   * 绑定一个 #{} 参数: 从当前作用域中获取值, 记录该位置的 ParameterMapping 和值
+   *
+   * @param parameter
+   */
+  public void bindParameter(IMParameter parameter) {
+    int slot = mappingList.size();
+    mappingValueList.add(resolveParameterValue(parameter));
+    mappingList.add(parameter.slotMapping(configuration, slot));
+  }
+
+  private Object resolveParameterValue(IMParameter parameter) {
+    Object value = parameter.getValue(configuration, binds);
+    if (value == null && simpleParameter && !binds.containsKey(parameter.getSlot(), parameter.getRootName())) {
+      // 入参是简单类型的话, 没有定义的 #{任意名称} 都是入参本身(和 DefaultParameterHandler 一样),
+      // 定义了但是值为null的变量(bind, foreach的item)还是null
+      return parameterObject;
+    }
+    return value;
+  }
+
+  public List<ParameterMapping> getMappingList() {
+    return mappingList;
+  }
+
+  public List<Object> getMappingValueList() {
+    return mappingValueList;
   }
 
   /**
@@ -225,7 +322,22 @@ public class IMContext {
    * @param text
    */
   public void appendText(String text) {
-    this.text.add(text);
+    if (this.text.length() > 0) {
+      this.text.append(' ');
+    }
+    this.text.append(text);
+  }
+
+  /**
+   * 添加编译好的静态文本片段
+   *
+   * @param segment
+   */
+  public void appendText(char[] segment) {
+    if (this.text.length() > 0) {
+      this.text.append(' ');
+    }
+    this.text.append(segment);
   }
 
   /**
@@ -255,6 +367,36 @@ public class IMContext {
     return text.toString();
   }
 
+  /**
+   * 当前已经生成的sql长度
+   *
+   * @return
+   */
+  public int getTextLength() {
+    return text.length();
+  }
+
+  // 分块的foreach: 当前生成第几块, 一共有几块
+  private int chunk;
+
+  private int chunkCount = 1;
+
+  public int getChunk() {
+    return chunk;
+  }
+
+  public void setChunk(int chunk) {
+    this.chunk = chunk;
+  }
+
+  public int getChunkCount() {
+    return chunkCount;
+  }
+
+  public void setChunkCount(int chunkCount) {
+    this.chunkCount = chunkCount;
+  }
+
   // 用于bind标签上下文的情况
   private boolean isBinds = false;
 
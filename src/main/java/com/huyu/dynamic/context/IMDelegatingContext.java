@@ -0,0 +1,159 @@
+package com.huyu.dynamic.context;
+
+import com.huyu.dynamic.node.IMParameter;
+
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ibatis.mapping.ParameterMapping;
+
+/**
+ * 把所有的操作转发给另一个上下文, 子类只需要改写自己关心的方法(比如foreach的分隔符, trim的文本)
+ * <p>
+ * 用做代理, 不分配自己的变量和文本缓冲区
+ * </p>
+ */
+public class IMDelegatingContext extends IMContext {
+
+  protected IMContext delegate;
+
+  public IMDelegatingContext(IMContext delegate) {
+    super();
+    this.delegate = delegate;
+  }
+
+  @Override
+  public boolean isDynamic() {
+    return delegate.isDynamic();
+  }
+
+  @Override
+  public IMTreeMap createBinds() {
+    return delegate.createBinds();
+  }
+
+  @Override
+  public IMTreeMap backBinds() {
+    return delegate.backBinds();
+  }
+
+  @Override
+  public IMTreeMap currentBinds() {
+    return delegate.currentBinds();
+  }
+
+  @Override
+  public void put(int slot, Object value) {
+    delegate.put(slot, value);
+  }
+
+  @Override
+  public void put(String key, Object value) {
+    delegate.put(key, value);
+  }
+
+  @Override
+  public void putAll(Map<Object, Object> map) {
+    delegate.putAll(map);
+  }
+
+  @Override
+  public void getPut(String key, Object value) {
+    delegate.getPut(key, value);
+  }
+
+  @Override
+  public Object get(String key) {
+    return delegate.get(key);
+  }
+
+  @Override
+  public Object remove(String key) {
+    return delegate.remove(key);
+  }
+
+  @Override
+  public void bindParameter(IMParameter parameter) {
+    delegate.bindParameter(parameter);
+  }
+
+  @Override
+  public List<ParameterMapping> getMappingList() {
+    return delegate.getMappingList();
+  }
+
+  @Override
+  public List<Object> getMappingValueList() {
+    return delegate.getMappingValueList();
+  }
+
+  @Override
+  public void appendText(String text) {
+    delegate.appendText(text);
+  }
+
+  @Override
+  public void appendText(char[] segment) {
+    delegate.appendText(segment);
+  }
+
+  @Override
+  public String getText() {
+    return delegate.getText();
+  }
+
+  @Override
+  public int getTextLength() {
+    return delegate.getTextLength();
+  }
+
+  @Override
+  public void setBreak(boolean isBreak) {
+    delegate.setBreak(isBreak);
+  }
+
+  @Override
+  public boolean getBreak() {
+    return delegate.getBreak();
+  }
+
+  @Override
+  public void setMatch(boolean match) {
+    delegate.setMatch(match);
+  }
+
+  @Override
+  public boolean getMatch() {
+    return delegate.getMatch();
+  }
+
+  @Override
+  public int getChunk() {
+    return delegate.getChunk();
+  }
+
+  @Override
+  public void setChunk(int chunk) {
+    delegate.setChunk(chunk);
+  }
+
+  @Override
+  public int getChunkCount() {
+    return delegate.getChunkCount();
+  }
+
+  @Override
+  public void setChunkCount(int chunkCount) {
+    delegate.setChunkCount(chunkCount);
+  }
+
+  @Override
+  public void setBinds(boolean isBinds) {
+    delegate.setBinds(isBinds);
+  }
+
+  @Override
+  public boolean getBinds() {
+    return delegate.getBinds();
+  }
+}
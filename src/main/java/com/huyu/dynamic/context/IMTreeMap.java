@@ -15,91 +15,191 @@
  */
 package com.huyu.dynamic.context;
 
+import java.util.AbstractMap;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+
+import org.apache.ibatis.reflection.MetaObject;
+
+/**
+ * 作用域
+ * <p>
+ * 所有的作用域共用一个变量数组: bind 和 foreach 的变量在解析脚本的时候就分配好了槽位({@link IMVariableTable}),
+ * 执行的时候直接按下标读写. 进入作用域只是记录回滚日志的位置, 在作用域中定义变量的时候把旧值写到日志里面,
+ * 退出作用域的时候按日志还原, 不需要创建, 复用或者清空Map.
+ * </p>
+ * <p>
+ * 不是局部变量的key(入参, _parameter 等)放在根作用域中
+ * </p>
+ */
+public class IMTreeMap extends AbstractMap<Object, Object> {
 
-public class IMTreeMap extends HashMap<Object, Object> {
+  // 槽位上没有变量(不是null值)
+  private static final Object UNBOUND = new Object();
 
-  public IMTreeMap(int initialCapacity, float loadFactor, IMTreeMap parent) {
-    super(initialCapacity, loadFactor);
-    this.parent = parent;
-  }
+  private static final int INITIAL_CAPACITY = 8;
 
-  public IMTreeMap(int initialCapacity, IMTreeMap parent) {
-    super(initialCapacity);
-    this.parent = parent;
-  }
+  private final IMVariableTable variableTable;
 
-  public IMTreeMap(IMTreeMap parent) {
-    this.parent = parent;
-  }
+  // 局部变量, 按槽位保存
+  private final Object[] values;
 
-  public IMTreeMap(Map<? extends String, ?> m, IMTreeMap parent) {
-    super(m);
-    this.parent = parent;
-  }
+  // 根作用域
+  private final Map<Object, Object> rootBinds = new HashMap<>();
+
+  /**
+   * 根作用域才有: 入参是JavaBean的时候,作用域中找不到的变量从入参的属性中获取
+   */
+  private MetaObject parameterMetaObject;
+
+  // 回滚日志: 被覆盖的槽位和旧值
+  private int[] undoSlots = new int[INITIAL_CAPACITY];
+  private Object[] undoValues = new Object[INITIAL_CAPACITY];
+  private int undoSize;
 
-  private IMTreeMap(int initialCapacity, float loadFactor) {
-    super(initialCapacity, loadFactor);
+  // 作用域栈: 每个作用域进入时回滚日志的位置
+  private int[] scopeMarks = new int[INITIAL_CAPACITY];
+  private int depth;
+
+  public IMTreeMap(IMVariableTable variableTable) {
+    this.variableTable = variableTable;
+    this.values = new Object[variableTable.size()];
+    Arrays.fill(values, UNBOUND);
   }
 
-  private IMTreeMap(int initialCapacity) {
-    super(initialCapacity);
+  void setParameterMetaObject(MetaObject parameterMetaObject) {
+    this.parameterMetaObject = parameterMetaObject;
   }
 
-  private IMTreeMap() {
+  public IMVariableTable getVariableTable() {
+    return variableTable;
   }
 
-  private IMTreeMap(Map<? extends String, ?> m) {
-    super(m);
+  /**
+   * 进入一个作用域
+   */
+  public void pushScope() {
+    if (depth == scopeMarks.length) {
+      scopeMarks = Arrays.copyOf(scopeMarks, depth << 1);
+    }
+    scopeMarks[depth++] = undoSize;
   }
 
   /**
-   * 父作用域
+   * 退出作用域, 还原在该作用域中定义的变量
    */
-  private IMTreeMap parent;
+  public void popScope() {
+    if (depth == 0) {
+      return;
+    }
+    int mark = scopeMarks[--depth];
+    while (undoSize > mark) {
+      undoSize--;
+      values[undoSlots[undoSize]] = undoValues[undoSize];
+      undoValues[undoSize] = null;
+    }
+  }
 
-  public IMTreeMap getParent() {
-    return parent;
+  /**
+   * 在当前作用域中定义变量
+   *
+   * @param slot
+   * @param value
+   */
+  public void define(int slot, Object value) {
+    if (depth > 0) {
+      if (undoSize == undoSlots.length) {
+        undoSlots = Arrays.copyOf(undoSlots, undoSize << 1);
+        undoValues = Arrays.copyOf(undoValues, undoSize << 1);
+      }
+      undoSlots[undoSize] = slot;
+      undoValues[undoSize] = values[slot];
+      undoSize++;
+    }
+    values[slot] = value;
   }
 
-  protected IMTreeMap setParent(IMTreeMap parent) {
-    return this.parent = parent;
+  /**
+   * 按槽位获取变量, 槽位上没有变量的话从根作用域获取
+   *
+   * @param slot
+   *          解析时分配的槽位, 不是局部变量的话是 -1
+   * @param key
+   *
+   * @return
+   */
+  public Object get(int slot, Object key) {
+    if (slot >= 0) {
+      Object value = values[slot];
+      if (value != UNBOUND) {
+        return value;
+      }
+    }
+    return getRoot(key);
   }
 
   /**
-   * 获取,当前没有获取到的话,就从父中进行获取
+   * 获取,局部变量中没有的话,就从根作用域中获取
    *
    * @param key
    *
    * @return
    */
   @Override
-
   public Object get(Object key) {
-    final Object o = super.get(key);
-    if (Objects.isNull(o) && Objects.nonNull(parent)) {
-      return parent.get(key);
+    int slot = variableTable.slotOf(key);
+    return slot < 0 ? getRoot(key) : get(slot, key);
+  }
+
+  private Object getRoot(Object key) {
+    final Object o = rootBinds.get(key);
+    if (Objects.isNull(o) && Objects.nonNull(parameterMetaObject) && key instanceof String
+        && parameterMetaObject.hasGetter((String) key)) {
+      return parameterMetaObject.getValue((String) key);
     }
     return o;
   }
 
+  @Override
+  public boolean containsKey(Object key) {
+    return containsKey(variableTable.slotOf(key), key);
+  }
+
+  /**
+   * 按槽位判断变量是否已经定义(值可以是null)
+   *
+   * @param slot
+   * @param key
+   *
+   * @return
+   */
+  public boolean containsKey(int slot, Object key) {
+    return slot >= 0 && values[slot] != UNBOUND || rootBinds.containsKey(key);
+  }
+
   @Override
   public Object put(Object key, Object value) {
-    return super.put(key, value);
+    int slot = variableTable.slotOf(key);
+    if (slot < 0) {
+      return rootBinds.put(key, value);
+    }
+    Object old = values[slot];
+    define(slot, value);
+    return old == UNBOUND ? null : old;
   }
 
   @Override
   public Object remove(Object key) {
-    final Object o = super.remove(key);
-    if (Objects.nonNull(o)) {
-      return o;
-    }
-    if (Objects.nonNull(parent)) {
-      return parent.remove(key);
+    int slot = variableTable.slotOf(key);
+    if (slot >= 0 && values[slot] != UNBOUND) {
+      Object old = values[slot];
+      define(slot, UNBOUND);
+      return old;
     }
-    return o;
+    return rootBinds.remove(key);
   }
 
   /**
@@ -109,16 +209,30 @@ public class IMTreeMap extends HashMap<Object, Object> {
    * @param value
    */
   public Object getPut(Object key, Object value) {
-    Object o = super.get(key);
-    if (Objects.isNull(o)) {
-      // 当前作用域没有找到,并且具有父作用域,就调用getPut
-      if (Objects.nonNull(parent)) {
-        return parent.getPut(key, value);
-      }
-    } else {
-      // 有值,就覆盖掉
-      return super.put(key, value);
+    int slot = variableTable.slotOf(key);
+    if (slot >= 0 && values[slot] != UNBOUND) {
+      // 直接覆盖定义它的作用域中的值, 退出定义它的作用域的时候照常还原
+      Object old = values[slot];
+      values[slot] = value;
+      return old;
+    }
+    if (rootBinds.containsKey(key)) {
+      return rootBinds.put(key, value);
     }
     return null;
   }
+
+  /**
+   * 当前可见的全部变量(快照), 只在调试或者遍历的时候使用
+   */
+  @Override
+  public Set<Entry<Object, Object>> entrySet() {
+    Map<Object, Object> snapshot = new HashMap<>(rootBinds);
+    for (int i = 0; i < values.length; i++) {
+      if (values[i] != UNBOUND) {
+        snapshot.put(variableTable.nameOf(i), values[i]);
+      }
+    }
+    return snapshot.entrySet();
+  }
 }
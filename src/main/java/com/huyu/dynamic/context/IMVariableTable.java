@@ -0,0 +1,72 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.huyu.dynamic.context;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 局部变量表: bind 标签的 name, foreach 标签的 item 和 index 在解析脚本的时候就分配好槽位
+ * <p>
+ * 同名的变量共用一个槽位(内层作用域覆盖外层的时候, 由 {@link IMTreeMap} 的回滚日志负责还原), 解析完成之后只读
+ * </p>
+ */
+public class IMVariableTable {
+
+  private final Map<String, Integer> slots = new HashMap<>();
+
+  private final List<String> names = new ArrayList<>();
+
+  /**
+   * 注册一个变量, 返回它的槽位
+   *
+   * @param name
+   *          变量名, 为空的话(例如foreach没有index)返回 -1
+   *
+   * @return
+   */
+  public int register(String name) {
+    if (name == null) {
+      return -1;
+    }
+    return slots.computeIfAbsent(name, key -> {
+      names.add(key);
+      return names.size() - 1;
+    });
+  }
+
+  /**
+   * 变量的槽位, 不是局部变量的话返回 -1
+   *
+   * @param name
+   *
+   * @return
+   */
+  public int slotOf(Object name) {
+    Integer slot = slots.get(name);
+    return slot == null ? -1 : slot;
+  }
+
+  public String nameOf(int slot) {
+    return names.get(slot);
+  }
+
+  public int size() {
+    return names.size();
+  }
+}
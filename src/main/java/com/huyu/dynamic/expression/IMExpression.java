@@ -0,0 +1,40 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.huyu.dynamic.expression;
+
+/**
+ * 编译之后的表达式
+ * <p>
+ * 遇到不能确定和ognl结果一致的情况(类型不支持,中间值为null等等)的时候抛出 {@link Fallback}, 由调用方整体交给ognl重新计算(表达式没有副作用,可以重复计算)
+ * </p>
+ */
+public interface IMExpression {
+
+  Object getValue(Object root);
+
+  /**
+   * 需要回退到ognl计算, 不会生成堆栈,只有一个实例
+   */
+  final class Fallback extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    static final Fallback INSTANCE = new Fallback();
+
+    private Fallback() {
+      super("fallback to ognl", null, false, false);
+    }
+  }
+}
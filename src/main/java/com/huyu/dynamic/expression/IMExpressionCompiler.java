@@ -0,0 +1,69 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.huyu.dynamic.expression;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.ibatis.scripting.xmltags.OgnlCache;
+
+/**
+ * 表达式的编译缓存, 每个表达式只会解析一次.
+ * <p>
+ * 能编译的表达式直接通过 MethodHandle 读取属性, 不能编译的表达式(或者运行时遇到不确定的情况)交给 {@link OgnlCache}
+ * </p>
+ */
+public final class IMExpressionCompiler {
+
+  // 不能编译的表达式
+  private static final IMExpression OGNL = root -> {
+    throw IMExpression.Fallback.INSTANCE;
+  };
+
+  private static final Map<String, IMExpression> expressionCache = new ConcurrentHashMap<>();
+
+  private IMExpressionCompiler() {
+    // Prevent Instantiation of Static Class
+  }
+
+  public static Object getValue(String expression, Object root) {
+    IMExpression compiled = compile(expression);
+    if (compiled != OGNL) {
+      try {
+        return compiled.getValue(root);
+      } catch (IMExpression.Fallback e) {
+        // 运行时不能确定和ognl结果一致, 整个表达式交给ognl重新计算(表达式都是没有副作用的)
+      }
+    }
+    return OgnlCache.getValue(expression, root);
+  }
+
+  static IMExpression compile(String expression) {
+    IMExpression compiled = expressionCache.get(expression);
+    if (compiled == null) {
+      compiled = expressionCache.computeIfAbsent(expression, IMExpressionCompiler::parse);
+    }
+    return compiled;
+  }
+
+  private static IMExpression parse(String expression) {
+    try {
+      return IMExpressionParser.parse(expression);
+    } catch (IMExpressionParser.UnsupportedExpressionException e) {
+      return OGNL;
+    }
+  }
+}
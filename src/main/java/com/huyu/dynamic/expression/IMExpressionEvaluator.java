@@ -0,0 +1,29 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.huyu.dynamic.expression;
+
+import org.apache.ibatis.scripting.xmltags.ExpressionEvaluator;
+
+/**
+ * 使用编译后的表达式计算 if/when/foreach 的表达式
+ */
+public class IMExpressionEvaluator extends ExpressionEvaluator {
+
+  @Override
+  protected Object getValue(String expression, Object parameterObject) {
+    return IMExpressionCompiler.getValue(expression, parameterObject);
+  }
+}
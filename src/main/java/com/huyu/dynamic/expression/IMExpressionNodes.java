@@ -0,0 +1,425 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.huyu.dynamic.expression;
+
+import com.huyu.dynamic.context.IMTreeMap;
+import com.huyu.dynamic.context.IMVariableTable;
+import com.huyu.dynamic.expression.IMExpression.Fallback;
+
+import java.lang.invoke.MethodHandle;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * 表达式的节点, 计算规则和ognl(OgnlOps)保持一致, 不能确定的情况都抛出 {@link Fallback}
+ */
+final class IMExpressionNodes {
+
+  private IMExpressionNodes() {
+  }
+
+  static Fallback fallback() {
+    return Fallback.INSTANCE;
+  }
+
+  /**
+   * 常量
+   */
+  static final class Literal implements IMExpression {
+    private final Object value;
+
+    Literal(Object value) {
+      this.value = value;
+    }
+
+    @Override
+    public Object getValue(Object root) {
+      return value;
+    }
+  }
+
+  /**
+   * 属性, 第一个属性从作用域(root)中获取, 后面的属性从上一个值中获取
+   */
+  static final class Property implements IMExpression {
+    private final IMExpression target;
+    private final String name;
+
+    // 单态的内联缓存: 上一次的类型和getter
+    private volatile CachedGetter cachedGetter;
+
+    // 第一个属性的内联缓存: 上一次的变量表和槽位
+    private volatile CachedSlot cachedSlot;
+
+    Property(IMExpression target, String name) {
+      this.target = target;
+      this.name = name;
+    }
+
+    @Override
+    public Object getValue(Object root) {
+      Object source = target == null ? root : target.getValue(root);
+      if (source == null) {
+        // ognl: source is null for getProperty
+        throw fallback();
+      }
+      if (target == null && source instanceof IMTreeMap) {
+        return getVariable((IMTreeMap) source);
+      }
+      if (source instanceof Map) {
+        if (target != null && isMapPseudoProperty(name)) {
+          // ognl的MapPropertyAccessor会把这些当做方法
+          throw fallback();
+        }
+        return ((Map<?, ?>) source).get(name);
+      }
+      if (source instanceof Collection || source.getClass().isArray()) {
+        throw fallback();
+      }
+      CachedGetter cached = cachedGetter;
+      if (cached == null || cached.type != source.getClass()) {
+        MethodHandle getter = IMPropertyAccessors.getter(source.getClass(), name);
+        if (getter == null) {
+          throw fallback();
+        }
+        cached = new CachedGetter(source.getClass(), getter);
+        cachedGetter = cached;
+      }
+      try {
+        return cached.getter.invokeExact(source);
+      } catch (Throwable e) {
+        // 由ognl抛出对应的异常
+        throw fallback();
+      }
+    }
+
+    /**
+     * 局部变量直接按槽位读取
+     */
+    private Object getVariable(IMTreeMap binds) {
+      IMVariableTable table = binds.getVariableTable();
+      CachedSlot cached = cachedSlot;
+      if (cached == null || cached.table != table) {
+        cached = new CachedSlot(table, table.slotOf(name));
+        cachedSlot = cached;
+      }
+      return cached.slot < 0 ? binds.get(name) : binds.get(cached.slot, name);
+    }
+
+    private static boolean isMapPseudoProperty(String name) {
+      return "size".equals(name) || "isEmpty".equals(name) || "keys".equals(name) || "values".equals(name);
+    }
+  }
+
+  private static final class CachedGetter {
+    private final Class<?> type;
+    private final MethodHandle getter;
+
+    CachedGetter(Class<?> type, MethodHandle getter) {
+      this.type = type;
+      this.getter = getter;
+    }
+  }
+
+  private static final class CachedSlot {
+    private final IMVariableTable table;
+    private final int slot;
+
+    CachedSlot(IMVariableTable table, int slot) {
+      this.table = table;
+      this.slot = slot;
+    }
+  }
+
+  /**
+   * 支持的无参方法: size(), length(), trim(), isEmpty()
+   */
+  static final class MethodCall implements IMExpression {
+    private final IMExpression target;
+    private final String name;
+
+    MethodCall(IMExpression target, String name) {
+      this.target = target;
+      this.name = name;
+    }
+
+    static boolean isSupported(String name) {
+      return "size".equals(name) || "length".equals(name) || "trim".equals(name) || "isEmpty".equals(name);
+    }
+
+    @Override
+    public Object getValue(Object root) {
+      Object source = target.getValue(root);
+      if (source instanceof String) {
+        String string = (String) source;
+        switch (name) {
+          case "trim":
+            return string.trim();
+          case "length":
+            return string.length();
+          case "isEmpty":
+            return string.isEmpty();
+          default:
+            throw fallback();
+        }
+      }
+      if (source instanceof Collection) {
+        if ("size".equals(name)) {
+          return ((Collection<?>) source).size();
+        }
+        if ("isEmpty".equals(name)) {
+          return ((Collection<?>) source).isEmpty();
+        }
+      } else if (source instanceof Map) {
+        if ("size".equals(name)) {
+          return ((Map<?, ?>) source).size();
+        }
+        if ("isEmpty".equals(name)) {
+          return ((Map<?, ?>) source).isEmpty();
+        }
+      }
+      throw fallback();
+    }
+  }
+
+  static final class And implements IMExpression {
+    private final IMExpression left;
+    private final IMExpression right;
+
+    And(IMExpression left, IMExpression right) {
+      this.left = left;
+      this.right = right;
+    }
+
+    @Override
+    public Object getValue(Object root) {
+      // 和ognl一样返回操作数的值,而不是boolean
+      Object value = left.getValue(root);
+      if (!booleanValue(value)) {
+        return value;
+      }
+      return right.getValue(root);
+    }
+  }
+
+  static final class Or implements IMExpression {
+    private final IMExpression left;
+    private final IMExpression right;
+
+    Or(IMExpression left, IMExpression right) {
+      this.left = left;
+      this.right = right;
+    }
+
+    @Override
+    public Object getValue(Object root) {
+      Object value = left.getValue(root);
+      if (booleanValue(value)) {
+        return value;
+      }
+      return right.getValue(root);
+    }
+  }
+
+  static final class Not implements IMExpression {
+    private final IMExpression operand;
+
+    Not(IMExpression operand) {
+      this.operand = operand;
+    }
+
+    @Override
+    public Object getValue(Object root) {
+      return booleanValue(operand.getValue(root)) ? Boolean.FALSE : Boolean.TRUE;
+    }
+  }
+
+  enum Operator {
+    EQ, NEQ, LT, LTE, GT, GTE
+  }
+
+  static final class Comparison implements IMExpression {
+    private final Operator operator;
+    private final IMExpression left;
+    private final IMExpression right;
+
+    Comparison(Operator operator, IMExpression left, IMExpression right) {
+      this.operator = operator;
+      this.left = left;
+      this.right = right;
+    }
+
+    @Override
+    public Object getValue(Object root) {
+      Object l = left.getValue(root);
+      Object r = right.getValue(root);
+      switch (operator) {
+        case EQ:
+          return isEqual(l, r);
+        case NEQ:
+          return !isEqual(l, r);
+        case LT:
+          return compare(l, r) < 0;
+        case LTE:
+          return compare(l, r) <= 0;
+        case GT:
+          return compare(l, r) > 0;
+        default:
+          return compare(l, r) >= 0;
+      }
+    }
+  }
+
+  /**
+   * 只支持字符串拼接, 数字相加交给ognl
+   */
+  static final class Concat implements IMExpression {
+    private final IMExpression left;
+    private final IMExpression right;
+
+    Concat(IMExpression left, IMExpression right) {
+      this.left = left;
+      this.right = right;
+    }
+
+    @Override
+    public Object getValue(Object root) {
+      Object l = left.getValue(root);
+      Object r = right.getValue(root);
+      if (l == null || r == null || !(l instanceof String || r instanceof String)) {
+        throw fallback();
+      }
+      return String.valueOf(l).concat(String.valueOf(r));
+    }
+  }
+
+  /**
+   * OgnlOps.booleanValue
+   */
+  static boolean booleanValue(Object value) {
+    if (value == null) {
+      return false;
+    }
+    if (value instanceof Boolean) {
+      return (Boolean) value;
+    }
+    if (isNumber(value)) {
+      return ((Number) value).doubleValue() != 0;
+    }
+    throw fallback();
+  }
+
+  /**
+   * OgnlOps.equal
+   */
+  static boolean isEqual(Object l, Object r) {
+    if (l == r) {
+      return true;
+    }
+    if (l == null || r == null) {
+      return false;
+    }
+    if (l instanceof String && r instanceof String) {
+      return l.equals(r);
+    }
+    if (isNumber(l) && isNumber(r)) {
+      return compareNumbers((Number) l, (Number) r) == 0;
+    }
+    if (l instanceof Boolean && r instanceof Boolean) {
+      return l.equals(r);
+    }
+    if (l instanceof Enum && r instanceof Enum && l.getClass() == r.getClass()) {
+      return false;
+    }
+    throw fallback();
+  }
+
+  /**
+   * OgnlOps.compareWithConversion, 只支持字符串之间和数字之间的比较
+   */
+  static int compare(Object l, Object r) {
+    if (l instanceof String && r instanceof String) {
+      return ((String) l).compareTo((String) r);
+    }
+    if (isNumber(l) && isNumber(r)) {
+      return compareNumbers((Number) l, (Number) r);
+    }
+    throw fallback();
+  }
+
+  private static int compareNumbers(Number l, Number r) {
+    if (isIntegral(l) && isIntegral(r)) {
+      return Long.compare(l.longValue(), r.longValue());
+    }
+    boolean floating = isFloating(l) || isFloating(r);
+    if (l instanceof BigDecimal || r instanceof BigDecimal) {
+      if (floating) {
+        // double转BigDecimal的方式和ognl可能不一致
+        throw fallback();
+      }
+      return toBigDecimal(l).compareTo(toBigDecimal(r));
+    }
+    if (l instanceof BigInteger || r instanceof BigInteger) {
+      if (floating) {
+        throw fallback();
+      }
+      return toBigInteger(l).compareTo(toBigInteger(r));
+    }
+    double dl = l.doubleValue();
+    double dr = r.doubleValue();
+    return dl == dr ? 0 : dl < dr ? -1 : 1;
+  }
+
+  private static BigDecimal toBigDecimal(Number value) {
+    if (value instanceof BigDecimal) {
+      return (BigDecimal) value;
+    }
+    if (value instanceof BigInteger) {
+      return new BigDecimal((BigInteger) value);
+    }
+    return BigDecimal.valueOf(value.longValue());
+  }
+
+  private static BigInteger toBigInteger(Number value) {
+    if (value instanceof BigInteger) {
+      return (BigInteger) value;
+    }
+    return BigInteger.valueOf(value.longValue());
+  }
+
+  private static boolean isIntegral(Object value) {
+    Class<?> type = value.getClass();
+    return type == Integer.class || type == Long.class || type == Short.class || type == Byte.class;
+  }
+
+  private static boolean isFloating(Object value) {
+    Class<?> type = value.getClass();
+    return type == Double.class || type == Float.class;
+  }
+
+  /**
+   * 只有ognl认识的数字类型(AtomicInteger等等在ognl中不是数字)
+   */
+  static boolean isNumber(Object value) {
+    if (value == null) {
+      return false;
+    }
+    Class<?> type = value.getClass();
+    return isIntegral(value) || isFloating(value) || type == BigDecimal.class || type == BigInteger.class;
+  }
+}
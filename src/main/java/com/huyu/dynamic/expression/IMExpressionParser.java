@@ -0,0 +1,320 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.huyu.dynamic.expression;
+
+import com.huyu.dynamic.expression.IMExpressionNodes.And;
+import com.huyu.dynamic.expression.IMExpressionNodes.Comparison;
+import com.huyu.dynamic.expression.IMExpressionNodes.Concat;
+import com.huyu.dynamic.expression.IMExpressionNodes.Literal;
+import com.huyu.dynamic.expression.IMExpressionNodes.MethodCall;
+import com.huyu.dynamic.expression.IMExpressionNodes.Not;
+import com.huyu.dynamic.expression.IMExpressionNodes.Operator;
+import com.huyu.dynamic.expression.IMExpressionNodes.Or;
+import com.huyu.dynamic.expression.IMExpressionNodes.Property;
+
+/**
+ * 表达式的解析器(递归下降), 只支持动态sql中常用的子集:
+ *
+ * <pre>
+ *   or         := and (('or' | '||') and)*
+ *   and        := not (('and' | '&amp;&amp;') not)*
+ *   not        := ('!' | 'not') not | comparison
+ *   comparison := concat (('==' | '!=' | '&lt;' | '&lt;=' | '&gt;' | '&gt;=' | 'eq' | 'neq' | 'lt' | 'lte' | 'gt' | 'gte') concat)?
+ *   concat     := primary ('+' primary)*
+ *   primary    := literal | path | '(' or ')'
+ *   path       := identifier ('.' identifier ('()')?)*
+ * </pre>
+ * <p>
+ * 其他的语法抛出 {@link UnsupportedExpressionException}, 整个表达式使用ognl
+ * </p>
+ */
+final class IMExpressionParser {
+
+  private final String expression;
+  private int position;
+
+  private IMExpressionParser(String expression) {
+    this.expression = expression;
+  }
+
+  static IMExpression parse(String expression) {
+    IMExpressionParser parser = new IMExpressionParser(expression);
+    IMExpression result = parser.parseOr();
+    parser.skipWhitespace();
+    if (parser.position != expression.length()) {
+      throw new UnsupportedExpressionException();
+    }
+    return result;
+  }
+
+  private IMExpression parseOr() {
+    IMExpression left = parseAnd();
+    while (acceptOperator("||") || acceptKeyword("or")) {
+      left = new Or(left, parseAnd());
+    }
+    return left;
+  }
+
+  private IMExpression parseAnd() {
+    IMExpression left = parseNot();
+    while (acceptOperator("&&") || acceptKeyword("and")) {
+      left = new And(left, parseNot());
+    }
+    return left;
+  }
+
+  private IMExpression parseNot() {
+    if (peekOperator("!=")) {
+      throw new UnsupportedExpressionException();
+    }
+    if (acceptOperator("!") || acceptKeyword("not")) {
+      return new Not(parseNot());
+    }
+    return parseComparison();
+  }
+
+  private IMExpression parseComparison() {
+    IMExpression left = parseConcat();
+    Operator operator = acceptComparisonOperator();
+    if (operator == null) {
+      return left;
+    }
+    return new Comparison(operator, left, parseConcat());
+  }
+
+  private Operator acceptComparisonOperator() {
+    if (acceptOperator("==") || acceptKeyword("eq")) {
+      return Operator.EQ;
+    }
+    if (acceptOperator("!=") || acceptKeyword("neq")) {
+      return Operator.NEQ;
+    }
+    if (acceptOperator("<=") || acceptKeyword("lte")) {
+      return Operator.LTE;
+    }
+    if (acceptOperator(">=") || acceptKeyword("gte")) {
+      return Operator.GTE;
+    }
+    if (acceptOperator("<") || acceptKeyword("lt")) {
+      return Operator.LT;
+    }
+    if (acceptOperator(">") || acceptKeyword("gt")) {
+      return Operator.GT;
+    }
+    return null;
+  }
+
+  private IMExpression parseConcat() {
+    IMExpression left = parsePrimary();
+    while (acceptOperator("+")) {
+      left = new Concat(left, parsePrimary());
+    }
+    return left;
+  }
+
+  private IMExpression parsePrimary() {
+    skipWhitespace();
+    if (position >= expression.length()) {
+      throw new UnsupportedExpressionException();
+    }
+    char c = expression.charAt(position);
+    if (c == '(') {
+      position++;
+      IMExpression inner = parseOr();
+      if (!acceptOperator(")")) {
+        throw new UnsupportedExpressionException();
+      }
+      return inner;
+    }
+    if (c == '\'' || c == '"') {
+      return new Literal(parseString(c));
+    }
+    if (Character.isDigit(c) || c == '-' && position + 1 < expression.length()
+        && Character.isDigit(expression.charAt(position + 1))) {
+      return new Literal(parseNumber());
+    }
+    if (Character.isJavaIdentifierStart(c)) {
+      return parsePath();
+    }
+    throw new UnsupportedExpressionException();
+  }
+
+  private IMExpression parsePath() {
+    String identifier = parseIdentifier();
+    switch (identifier) {
+      case "null":
+        return new Literal(null);
+      case "true":
+        return new Literal(Boolean.TRUE);
+      case "false":
+        return new Literal(Boolean.FALSE);
+      default:
+        if (isKeyword(identifier)) {
+          throw new UnsupportedExpressionException();
+        }
+    }
+    if (peekOperator("(")) {
+      // 根上的方法调用
+      throw new UnsupportedExpressionException();
+    }
+    IMExpression path = new Property(null, identifier);
+    while (position < expression.length() && expression.charAt(position) == '.') {
+      position++;
+      String name = parseIdentifier();
+      if (position < expression.length() && expression.charAt(position) == '(') {
+        position++;
+        if (!acceptOperator(")") || !MethodCall.isSupported(name)) {
+          throw new UnsupportedExpressionException();
+        }
+        path = new MethodCall(path, name);
+      } else {
+        path = new Property(path, name);
+      }
+    }
+    return path;
+  }
+
+  private String parseIdentifier() {
+    int start = position;
+    if (position >= expression.length() || !Character.isJavaIdentifierStart(expression.charAt(position))) {
+      throw new UnsupportedExpressionException();
+    }
+    position++;
+    while (position < expression.length() && Character.isJavaIdentifierPart(expression.charAt(position))) {
+      position++;
+    }
+    return expression.substring(start, position);
+  }
+
+  /**
+   * 和ognl一样, 单引号中只有一个字符的是 Character
+   */
+  private Object parseString(char quote) {
+    int end = expression.indexOf(quote, position + 1);
+    if (end < 0) {
+      throw new UnsupportedExpressionException();
+    }
+    String value = expression.substring(position + 1, end);
+    if (value.indexOf('\\') >= 0) {
+      // 转义字符交给ognl
+      throw new UnsupportedExpressionException();
+    }
+    position = end + 1;
+    if (quote == '\'' && value.length() == 1) {
+      return value.charAt(0);
+    }
+    return value;
+  }
+
+  private Object parseNumber() {
+    int start = position;
+    if (expression.charAt(position) == '-') {
+      position++;
+    }
+    boolean decimal = false;
+    while (position < expression.length()) {
+      char c = expression.charAt(position);
+      if (c == '.' && !decimal && position + 1 < expression.length()
+          && Character.isDigit(expression.charAt(position + 1))) {
+        decimal = true;
+      } else if (!Character.isDigit(c)) {
+        break;
+      }
+      position++;
+    }
+    if (position < expression.length() && Character.isLetterOrDigit(expression.charAt(position))) {
+      // 后缀(L,B,H,D,F)和16进制等交给ognl
+      throw new UnsupportedExpressionException();
+    }
+    String number = expression.substring(start, position);
+    if (decimal) {
+      return Double.valueOf(number);
+    }
+    try {
+      return Integer.valueOf(number);
+    } catch (NumberFormatException e) {
+      throw new UnsupportedExpressionException();
+    }
+  }
+
+  private boolean acceptKeyword(String keyword) {
+    skipWhitespace();
+    int end = position + keyword.length();
+    if (expression.startsWith(keyword, position)
+        && (end == expression.length() || !Character.isJavaIdentifierPart(expression.charAt(end)))) {
+      position = end;
+      return true;
+    }
+    return false;
+  }
+
+  private boolean acceptOperator(String operator) {
+    if (peekOperator(operator)) {
+      position += operator.length();
+      return true;
+    }
+    return false;
+  }
+
+  private boolean peekOperator(String operator) {
+    skipWhitespace();
+    return expression.startsWith(operator, position);
+  }
+
+  private void skipWhitespace() {
+    while (position < expression.length() && Character.isWhitespace(expression.charAt(position))) {
+      position++;
+    }
+  }
+
+  private static boolean isKeyword(String identifier) {
+    switch (identifier) {
+      case "and":
+      case "or":
+      case "not":
+      case "eq":
+      case "neq":
+      case "lt":
+      case "lte":
+      case "gt":
+      case "gte":
+      case "in":
+      case "instanceof":
+      case "new":
+      case "shl":
+      case "shr":
+      case "ushr":
+      case "band":
+      case "bor":
+      case "xor":
+      case "bnot":
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * 不支持的语法
+   */
+  static final class UnsupportedExpressionException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    UnsupportedExpressionException() {
+      super(null, null, false, false);
+    }
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.huyu.dynamic.expression;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * JavaBean 属性的 getter(MethodHandle), 按照类型缓存
+ * <p>
+ * 只使用public类的public getter(和ognl优先使用getter方法一样), 找不到的话(比如只有私有字段)返回null, 由调用方回退到ognl
+ * </p>
+ */
+final class IMPropertyAccessors {
+
+  private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+  // 没有可用的getter
+  private static final MethodHandle NO_GETTER = MethodHandles.constant(Object.class, null);
+
+  private static final ClassValue<Map<String, MethodHandle>> GETTERS = new ClassValue<>() {
+    @Override
+    protected Map<String, MethodHandle> computeValue(Class<?> type) {
+      return new ConcurrentHashMap<>();
+    }
+  };
+
+  private IMPropertyAccessors() {
+  }
+
+  /**
+   * @return getter, 类型为 (Object)Object, 没有的话返回null
+   */
+  static MethodHandle getter(Class<?> type, String property) {
+    MethodHandle getter = GETTERS.get(type).computeIfAbsent(property, name -> findGetter(type, name));
+    return getter == NO_GETTER ? null : getter;
+  }
+
+  private static MethodHandle findGetter(Class<?> type, String property) {
+    if (!Modifier.isPublic(type.getModifiers())) {
+      return NO_GETTER;
+    }
+    String suffix = Character.toUpperCase(property.charAt(0)) + property.substring(1);
+    Method method = findMethod(type, "get" + suffix);
+    if (method == null) {
+      method = findMethod(type, "is" + suffix);
+    }
+    if (method == null || method.getReturnType() == void.class) {
+      return NO_GETTER;
+    }
+    try {
+      return MethodHandles.publicLookup().unreflect(method).asType(GETTER_TYPE);
+    } catch (IllegalAccessException e) {
+      return NO_GETTER;
+    }
+  }
+
+  private static Method findMethod(Class<?> type, String name) {
+    try {
+      Method method = type.getMethod(name);
+      return Modifier.isPublic(method.getDeclaringClass().getModifiers()) ? method : null;
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+}
@@ -1,8 +1,7 @@
 package com.huyu.dynamic.node;
 
 import com.huyu.dynamic.context.IMContext;
-
-import org.apache.ibatis.scripting.xmltags.OgnlCache;
+import com.huyu.dynamic.expression.IMExpressionCompiler;
 
 public class IMBindSqlNode implements IMSqlNode {
 
@@ -12,15 +11,19 @@ public class IMBindSqlNode implements IMSqlNode {
   // 表达式,从上下文中用该表达式获取值,并且将变量名为name的值设置为之前表达式获取的值
   private final String expression;
 
-  public IMBindSqlNode(String name, String exp) {
+  // 变量的槽位(解析的时候分配)
+  private final int slot;
+
+  public IMBindSqlNode(String name, String exp, int slot) {
     this.name = name;
     this.expression = exp;
+    this.slot = slot;
   }
 
   @Override
   public boolean apply(IMContext imContext) {
-    final Object value = OgnlCache.getValue(expression, imContext.currentBinds());
-    imContext.put(name, value);
+    final Object value = IMExpressionCompiler.getValue(expression, imContext.currentBinds());
+    imContext.put(slot, value);
     return false;
   }
 }
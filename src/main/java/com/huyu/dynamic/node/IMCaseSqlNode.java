@@ -1,6 +1,7 @@
 package com.huyu.dynamic.node;
 
 import com.huyu.dynamic.context.IMContext;
+import com.huyu.dynamic.expression.IMExpressionEvaluator;
 
 import org.apache.ibatis.scripting.xmltags.ExpressionEvaluator;
 
@@ -26,7 +27,7 @@ public class IMCaseSqlNode implements IMSqlNode {
     this.contents = contents;
     this.test = test;
     this.isCreateBinds = isCreateBinds;
-    this.evaluator = new ExpressionEvaluator();
+    this.evaluator = new IMExpressionEvaluator();
   }
 
   /**
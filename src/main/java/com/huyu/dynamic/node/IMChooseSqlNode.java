@@ -2,6 +2,7 @@ package com.huyu.dynamic.node;
 
 import com.huyu.dynamic.context.IMContext;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -26,6 +27,15 @@ public class IMChooseSqlNode implements IMSqlNode {
     this.caseSqlNodes = caseSqlNodes;
   }
 
+  @Override
+  public IMSqlNode compile() {
+    List<IMSqlNode> compiledCaseSqlNodes = new ArrayList<>(caseSqlNodes.size());
+    for (IMSqlNode caseSqlNode : caseSqlNodes) {
+      compiledCaseSqlNodes.add(caseSqlNode.compile());
+    }
+    return new IMChooseSqlNode(compiledCaseSqlNodes, defaultSqlNode == null ? null : defaultSqlNode.compile());
+  }
+
   @Override
   public boolean apply(IMContext context) {
     final boolean breakCurrentEnv = context.getBreak();
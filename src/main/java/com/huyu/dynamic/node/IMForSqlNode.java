@@ -1,8 +1,11 @@
 package com.huyu.dynamic.node;
 
 import com.huyu.dynamic.context.IMContext;
-import com.huyu.dynamic.context.IMTreeMap;
+import com.huyu.dynamic.context.IMDelegatingContext;
+import com.huyu.dynamic.expression.IMExpressionEvaluator;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -27,10 +30,20 @@ public class IMForSqlNode implements IMSqlNode {
   private final String item;
   // 索引
   private final String index;
+  // item 和 index 的槽位(解析的时候分配), 没有的话是 -1
+  private final int itemSlot;
+  private final int indexSlot;
+  // 分块的大小, 为null的话不分块
+  private final Integer chunkSize;
 
   public IMForSqlNode(IMSqlNode contents, String collectionExpression, Boolean nullable, String index, String item,
-      String open, String close, String separator) {
-    this.evaluator = new ExpressionEvaluator();
+      int indexSlot, int itemSlot, String open, String close, String separator) {
+    this(contents, collectionExpression, nullable, index, item, indexSlot, itemSlot, open, close, separator, null);
+  }
+
+  public IMForSqlNode(IMSqlNode contents, String collectionExpression, Boolean nullable, String index, String item,
+      int indexSlot, int itemSlot, String open, String close, String separator, Integer chunkSize) {
+    this.evaluator = new IMExpressionEvaluator();
     this.collectionExpression = collectionExpression;
     this.nullable = nullable;
     this.contents = contents;
@@ -39,13 +52,20 @@ public class IMForSqlNode implements IMSqlNode {
     this.separator = separator;
     this.index = index;
     this.item = item;
+    this.indexSlot = indexSlot;
+    this.itemSlot = itemSlot;
+    this.chunkSize = chunkSize;
   }
 
   @Override
-  public boolean apply(IMContext context) {
-    IMTreeMap imTreeMap = context.currentBinds();
+  public IMSqlNode compile() {
+    return new IMForSqlNode(contents.compile(), collectionExpression, nullable, index, item, indexSlot, itemSlot, open,
+        close, separator, chunkSize);
+  }
 
-    final Iterable<?> iterable = evaluator.evaluateIterable(collectionExpression, imTreeMap,
+  @Override
+  public boolean apply(IMContext context) {
+    Iterable<?> iterable = evaluator.evaluateIterable(collectionExpression, context.currentBinds(),
         Optional.ofNullable(nullable).orElseGet(() -> {
           return true;
         }));
@@ -54,14 +74,38 @@ public class IMForSqlNode implements IMSqlNode {
       return true;
     }
 
+    // 分块: 只展开当前块的元素, #{} 本来就是按位置绑定的(__im_N)
+    int from = 0;
+    int to = Integer.MAX_VALUE;
+    if (chunkSize != null) {
+      from = context.getChunk() * chunkSize;
+      int total = iterable instanceof Collection ? ((Collection<?>) iterable).size() : count(iterable);
+      context.setChunkCount((total + chunkSize - 1) / chunkSize);
+      if (from >= total) {
+        return true;
+      }
+      to = Math.min(from + chunkSize, total);
+      if (iterable instanceof List) {
+        // 直接定位到该块
+        iterable = ((List<?>) iterable).subList(from, to);
+      }
+    }
+
     boolean first = true;
     applyOpen(context);
 
     PrefixedContext prefixedContext = new PrefixedContext(context, "");
-    int i = 0;
+    int i = iterable instanceof List && chunkSize != null ? from : 0;
     for (Object o : iterable) {
+      if (i < from) {
+        i++;
+        continue;
+      }
+      if (i >= to) {
+        break;
+      }
       try {
-        // 开辟一个作用域
+        // 开辟一个作用域(只是移动作用域栈的位置)
         prefixedContext.createBinds();
 
         // 对于每次分割符号的功能,都是在上下文的appendText逻辑里面,但是默认的上下文只是会默认的添加,不会添加分割符号
@@ -72,13 +116,14 @@ public class IMForSqlNode implements IMSqlNode {
           prefixedContext.init(context, separator);
         }
 
+        // 按槽位写入变量, 不需要hash
         if (o instanceof Map.Entry) {
           Map.Entry<Object, Object> mapEntry = (Map.Entry<Object, Object>) o;
-          prefixedContext.put(this.index, mapEntry.getKey());
-          prefixedContext.put(this.item, mapEntry.getValue());
+          define(prefixedContext, indexSlot, mapEntry.getKey());
+          define(prefixedContext, itemSlot, mapEntry.getValue());
         } else {
-          prefixedContext.put(this.index, i);
-          prefixedContext.put(this.item, o);
+          define(prefixedContext, indexSlot, i);
+          define(prefixedContext, itemSlot, o);
         }
 
         // 执行for标签里面的逻辑
@@ -99,6 +144,20 @@ public class IMForSqlNode implements IMSqlNode {
     return true;
   }
 
+  private static int count(Iterable<?> iterable) {
+    int count = 0;
+    for (Object ignored : iterable) {
+      count++;
+    }
+    return count;
+  }
+
+  private static void define(IMContext context, int slot, Object value) {
+    if (slot >= 0) {
+      context.put(slot, value);
+    }
+  }
+
   private void applyOpen(IMContext context) {
     if (open != null) {
       context.appendText(open);
@@ -114,8 +173,7 @@ public class IMForSqlNode implements IMSqlNode {
   /**
    * 分割符号
    */
-  private class PrefixedContext extends IMContext {
-    private IMContext delegate;
+  private static class PrefixedContext extends IMDelegatingContext {
     private String prefix;
     private boolean prefixApplied;
 
@@ -135,8 +193,7 @@ public class IMForSqlNode implements IMSqlNode {
     }
 
     public PrefixedContext(IMContext delegate, String prefix) {
-      super();
-      this.delegate = delegate;
+      super(delegate);
       this.prefix = prefix;
       this.prefixApplied = false;
     }
@@ -148,80 +205,26 @@ public class IMForSqlNode implements IMSqlNode {
     @Override
     public void appendText(String text) {
       if (!prefixApplied && text != null && !text.trim().isEmpty()) {
-        delegate.appendText(prefix);
-        prefixApplied = true;
+        applyPrefix();
       }
       delegate.appendText(text);
     }
 
     @Override
-    public boolean isDynamic() {
-      return delegate.isDynamic();
-    }
-
-    @Override
-    public IMTreeMap createBinds() {
-      return delegate.createBinds();
-    }
-
-    @Override
-    public IMTreeMap backBinds() {
-      return delegate.backBinds();
-    }
-
-    @Override
-    public IMTreeMap currentBinds() {
-      return delegate.currentBinds();
-    }
-
-    @Override
-    public void put(String key, Object value) {
-      delegate.put(key, value);
-    }
-
-    @Override
-    public void getPut(String key, Object value) {
-      delegate.getPut(key, value);
-    }
-
-    @Override
-    public Object get(String key) {
-      return delegate.get(key);
-    }
-
-    @Override
-    public Object remove(String key) {
-      return delegate.remove(key);
-    }
-
-    @Override
-    public void setBreak(boolean isBreak) {
-      delegate.setBreak(isBreak);
-    }
-
-    @Override
-    public boolean getBreak() {
-      return delegate.getBreak();
-    }
-
-    @Override
-    public void setMatch(boolean match) {
-      delegate.setMatch(match);
-    }
-
-    @Override
-    public boolean getMatch() {
-      return delegate.getMatch();
-    }
-
-    @Override
-    public void setBinds(boolean isBinds) {
-      delegate.setBinds(isBinds);
+    public void appendText(char[] segment) {
+      // 编译之后的静态片段不会是空白
+      if (!prefixApplied && segment.length > 0) {
+        applyPrefix();
+      }
+      delegate.appendText(segment);
     }
 
-    @Override
-    public boolean getBinds() {
-      return delegate.getBinds();
+    private void applyPrefix() {
+      // 空的前缀(第一个元素)不需要添加,避免多出一个分隔的空格
+      if (!prefix.isEmpty()) {
+        delegate.appendText(prefix);
+      }
+      prefixApplied = true;
     }
   }
 }
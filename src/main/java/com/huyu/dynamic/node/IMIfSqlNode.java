@@ -1,6 +1,7 @@
 package com.huyu.dynamic.node;
 
 import com.huyu.dynamic.context.IMContext;
+import com.huyu.dynamic.expression.IMExpressionEvaluator;
 
 import java.util.Objects;
 
@@ -52,7 +53,7 @@ public class IMIfSqlNode implements IMSqlNode {
     this.test = test;
     this.contents = contents;
     this.elseContents = elseContents;
-    this.evaluator = new ExpressionEvaluator();
+    this.evaluator = new IMExpressionEvaluator();
     this.createBinds = createBinds;
   }
 
@@ -63,6 +64,12 @@ public class IMIfSqlNode implements IMSqlNode {
     this.elseContents = defaultSqlNode;
   }
 
+  @Override
+  public IMSqlNode compile() {
+    return new IMIfSqlNode(contents.compile(), Objects.isNull(elseContents) ? null : elseContents.compile(), test,
+        createBinds);
+  }
+
   @Override
   public boolean apply(IMContext context) {
     // if 或者 else if
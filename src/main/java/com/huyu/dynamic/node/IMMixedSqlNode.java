@@ -2,6 +2,7 @@ package com.huyu.dynamic.node;
 
 import com.huyu.dynamic.context.IMContext;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -15,10 +16,60 @@ public class IMMixedSqlNode implements IMSqlNode {
 
   @Override
   public boolean apply(IMContext context) {
-    contents.forEach(node -> node.apply(context));
+    for (int i = 0, size = contents.size(); i < size; i++) {
+      contents.get(i).apply(context);
+    }
     return true;
   }
 
+  /**
+   * 展开嵌套的MixedSqlNode,并且合并相邻的静态文本(上下文会在每个片段之间添加空格,所以合并时也用空格连接)
+   *
+   * @return
+   */
+  @Override
+  public IMSqlNode compile() {
+    List<IMSqlNode> compiled = new ArrayList<>(contents.size());
+    flatten(this, compiled);
+    List<IMSqlNode> merged = new ArrayList<>(compiled.size());
+    StringBuilder statics = null;
+    for (IMSqlNode node : compiled) {
+      if (node instanceof IMStatisticSqlNode) {
+        String text = ((IMStatisticSqlNode) node).getText();
+        if (statics == null) {
+          statics = new StringBuilder(text);
+        } else {
+          statics.append(' ').append(text);
+        }
+      } else {
+        if (statics != null) {
+          merged.add(new IMStatisticSqlNode(statics.toString()).compile());
+          statics = null;
+        }
+        merged.add(node);
+      }
+    }
+    if (statics != null) {
+      merged.add(new IMStatisticSqlNode(statics.toString()).compile());
+    }
+    if (merged.size() == 1) {
+      return merged.get(0);
+    }
+    return new IMMixedSqlNode(merged);
+  }
+
+  private static void flatten(IMMixedSqlNode mixedSqlNode, List<IMSqlNode> target) {
+    for (IMSqlNode node : mixedSqlNode.contents) {
+      IMSqlNode compiled = node.compile();
+      if (compiled instanceof IMMixedSqlNode) {
+        // 已经编译过的子节点,直接展开
+        target.addAll(((IMMixedSqlNode) compiled).contents);
+      } else {
+        target.add(compiled);
+      }
+    }
+  }
+
   public List<IMSqlNode> getContents() {
     return Collections.unmodifiableList(contents);
   }
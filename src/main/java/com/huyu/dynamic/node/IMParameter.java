@@ -0,0 +1,187 @@
+package com.huyu.dynamic.node;
+
+import com.huyu.dynamic.context.IMContext;
+import com.huyu.dynamic.context.IMTreeMap;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.reflection.ExceptionUtil;
+import org.apache.ibatis.reflection.ReflectionException;
+import org.apache.ibatis.reflection.Reflector;
+import org.apache.ibatis.reflection.invoker.Invoker;
+import org.apache.ibatis.reflection.property.PropertyTokenizer;
+import org.apache.ibatis.session.Configuration;
+
+/**
+ * 编译之后的 #{} 占位符
+ * <p>
+ * 解析的时候就把 javaType,jdbcType,typeHandler 等属性解析好(原型),执行的时候只需要取值,然后生成对应位置的 ParameterMapping
+ * </p>
+ * <p>
+ * 取值的时候变量按解析时分配的槽位读取, item.id 这样的属性按上一次的类型缓存getter, 类型不变的话不再查找Reflector, 也不创建 MetaObject
+ * </p>
+ */
+public class IMParameter {
+
+  // #{} 里面的属性表达式, 比如 item.id
+  private final String property;
+
+  // 属性表达式的第一段, 比如 item.id 的 item
+  private final String rootName;
+
+  // 第一段变量的槽位, 不是局部变量的话是 -1
+  private final int slot;
+
+  // 是否是简单的变量名(没有 . 和 [),可以直接从作用域中获取
+  private final boolean simpleProperty;
+
+  // 第一段之后的属性名, 比如 item.id 的 id; 有下标([)的话为null, 还是通过 MetaObject 取值
+  private final String[] path;
+
+  // path 每一段按上一次的类型缓存的getter, 每个元素都是不可变的, 并发的时候最多重复查找一次
+  private final PropertyGetter[] getters;
+
+  // 解析好的ParameterMapping(属性名是原始的表达式)
+  private final ParameterMapping prototype;
+
+  // 按 ? 的位置缓存生成好的 ParameterMapping, 只会变长, 并发的时候最多重复生成一次
+  private volatile ParameterMapping[] slotMappings = new ParameterMapping[0];
+
+  public IMParameter(String property, ParameterMapping prototype) {
+    this(property, prototype, -1);
+  }
+
+  public IMParameter(String property, ParameterMapping prototype, int slot) {
+    this.property = property;
+    this.rootName = new PropertyTokenizer(property).getName();
+    this.slot = slot;
+    this.simpleProperty = property.indexOf('.') < 0 && property.indexOf('[') < 0;
+    this.prototype = prototype;
+    if (property.indexOf('[') >= 0) {
+      this.path = null;
+      this.getters = null;
+    } else {
+      String[] names = property.split("\\.");
+      this.path = Arrays.copyOfRange(names, 1, names.length);
+      this.getters = new PropertyGetter[path.length];
+    }
+  }
+
+  public String getProperty() {
+    return property;
+  }
+
+  public String getRootName() {
+    return rootName;
+  }
+
+  public int getSlot() {
+    return slot;
+  }
+
+  public boolean isSimpleProperty() {
+    return simpleProperty;
+  }
+
+  public ParameterMapping getPrototype() {
+    return prototype;
+  }
+
+  /**
+   * 第 slot 个 ? 对应的 ParameterMapping, 属性名为该位置的名称(值会放到BoundSql的额外参数里面). 同一个 #{} 每个位置只生成一次
+   *
+   * @param configuration
+   * @param slot
+   *
+   * @return
+   */
+  public ParameterMapping slotMapping(Configuration configuration, int slot) {
+    ParameterMapping[] mappings = slotMappings;
+    if (slot < mappings.length && mappings[slot] != null) {
+      return mappings[slot];
+    }
+    ParameterMapping mapping = new ParameterMapping.Builder(configuration, IMContext.slotName(slot),
+        prototype.getTypeHandler()).javaType(prototype.getJavaType()).jdbcType(prototype.getJdbcType())
+            .mode(prototype.getMode()).numericScale(prototype.getNumericScale())
+            .resultMapId(prototype.getResultMapId()).jdbcTypeName(prototype.getJdbcTypeName()).build();
+    ParameterMapping[] grown = Arrays.copyOf(mappings, Math.max(mappings.length, slot + 1));
+    grown[slot] = mapping;
+    slotMappings = grown;
+    return mapping;
+  }
+
+  /**
+   * 从作用域中获取 #{} 的值
+   *
+   * @param configuration
+   * @param binds
+   *
+   * @return
+   */
+  public Object getValue(Configuration configuration, IMTreeMap binds) {
+    if (path == null) {
+      return configuration.newMetaObject(binds).getValue(property);
+    }
+    Object value = binds.get(slot, rootName);
+    for (int i = 0; i < path.length && value != null; i++) {
+      value = getProperty(configuration, value, i);
+    }
+    return value;
+  }
+
+  private Object getProperty(Configuration configuration, Object target, int i) {
+    if (target instanceof Map) {
+      return ((Map<?, ?>) target).get(path[i]);
+    }
+    PropertyGetter getter = getters[i];
+    if (getter == null || getter.type != target.getClass()) {
+      getter = new PropertyGetter(configuration, target, path[i]);
+      getters[i] = getter;
+    }
+    return getter.get(configuration, target, path[i]);
+  }
+
+  /**
+   * 某个类型的一个属性的getter
+   */
+  private static final class PropertyGetter {
+    private static final Object[] NO_ARGUMENTS = {};
+
+    private final Class<?> type;
+    // 为null的话通过 MetaObject 获取(自定义的 ObjectWrapper, 没有getter的时候由 MetaObject 抛出同样的异常)
+    private final Invoker invoker;
+
+    PropertyGetter(Configuration configuration, Object target, String name) {
+      this.type = target.getClass();
+      Invoker getInvoker = null;
+      if (!configuration.getObjectWrapperFactory().hasWrapperFor(target)) {
+        Reflector reflector = configuration.getReflectorFactory().findForClass(type);
+        if (reflector.hasGetter(name)) {
+          getInvoker = reflector.getGetInvoker(name);
+        }
+      }
+      this.invoker = getInvoker;
+    }
+
+    // 和 BeanWrapper 的异常保持一致
+    Object get(Configuration configuration, Object target, String name) {
+      if (invoker == null) {
+        return configuration.newMetaObject(target).getValue(name);
+      }
+      try {
+        try {
+          return invoker.invoke(target, NO_ARGUMENTS);
+        } catch (Throwable t) {
+          throw ExceptionUtil.unwrapThrowable(t);
+        }
+      } catch (RuntimeException e) {
+        throw e;
+      } catch (Throwable t) {
+        throw new ReflectionException(
+            "Could not get property '" + name + "' from " + type + ".  Cause: " + t.toString(), t);
+      }
+    }
+  }
+}
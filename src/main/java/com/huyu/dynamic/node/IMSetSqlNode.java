@@ -0,0 +1,16 @@
+package com.huyu.dynamic.node;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * set 标签: 有内容的时候加上 SET, 并且去掉开头和结尾的逗号
+ */
+public class IMSetSqlNode extends IMTrimSqlNode {
+
+  private static final List<String> COMMA = Collections.singletonList(",");
+
+  public IMSetSqlNode(IMSqlNode contents) {
+    super(contents, "SET", COMMA, null, COMMA);
+  }
+}
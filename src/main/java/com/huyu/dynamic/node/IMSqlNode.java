@@ -7,4 +7,13 @@ import com.huyu.dynamic.context.IMContext;
  */
 public interface IMSqlNode {
   boolean apply(IMContext imContext);
+
+  /**
+   * 编译节点(解析完成之后只执行一次): 合并相邻的静态文本,预先生成静态文本的char片段, 执行的时候只需要一次append
+   *
+   * @return 编译之后的节点(可能是自己)
+   */
+  default IMSqlNode compile() {
+    return this;
+  }
 }
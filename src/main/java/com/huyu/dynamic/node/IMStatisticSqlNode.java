@@ -10,17 +10,44 @@ public class IMStatisticSqlNode implements IMSqlNode {
    */
   private String text;
 
+  /**
+   * 编译之后的静态文本片段, 只有编译生成的节点才有
+   */
+  private final char[] segment;
+
   public IMStatisticSqlNode(String text) {
-    this.text = IMStrUtils.removeExtraWhitespaces(text);
+    this(IMStrUtils.removeExtraWhitespaces(text), null);
+  }
+
+  private IMStatisticSqlNode(String text, char[] segment) {
+    this.text = text;
+    this.segment = segment;
   }
 
   @Override
   public boolean apply(IMContext imContext) {
-    imContext.appendText(text);
+    if (segment != null) {
+      imContext.appendText(segment);
+    } else {
+      imContext.appendText(text);
+    }
     return false;
   }
 
+  @Override
+  public IMSqlNode compile() {
+    // 不修改自己, 编译多次或者并发编译的结果都一样
+    return segment != null ? this : new IMStatisticSqlNode(text, text.toCharArray());
+  }
+
+  public String getText() {
+    return text;
+  }
+
   public void append(String text) {
+    if (segment != null) {
+      throw new IllegalStateException("Cannot append text to a compiled node");
+    }
     this.text = this.text + IMStrUtils.removeExtraWhitespaces(text);
   }
 }
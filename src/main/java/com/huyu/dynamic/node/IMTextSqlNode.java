@@ -1,18 +1,28 @@
 package com.huyu.dynamic.node;
 
 import com.huyu.dynamic.context.IMContext;
+import com.huyu.dynamic.expression.IMExpressionCompiler;
+import com.huyu.dynamic.parse.IMParameterParser;
 import com.huyu.dynamic.utils.IMStrUtils;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.regex.Pattern;
 
 import org.apache.ibatis.parsing.GenericTokenParser;
 import org.apache.ibatis.parsing.TokenHandler;
 import org.apache.ibatis.scripting.ScriptingException;
-import org.apache.ibatis.scripting.xmltags.OgnlCache;
 import org.apache.ibatis.type.SimpleTypeRegistry;
 
 /**
  * 解析 #{},${}
+ * <p>
+ * 具有参数解析器(IMLanguageDriver)的时候, 编译阶段会把文本切分成 静态文本/${}/#{} 片段, 执行的时候 ${} 直接拼接值, #{} 替换成 ? 并且同时记录 ParameterMapping
+ * 和对应的值, 不需要再对生成的sql做一次 #{} 的解析
+ * </p>
+ * <p>
+ * 注意: 编译之后不支持 #{${xx}} 这种嵌套写法
+ * </p>
  */
 public class IMTextSqlNode implements IMSqlNode {
 
@@ -24,17 +34,105 @@ public class IMTextSqlNode implements IMSqlNode {
   // 是否具有#{}
   private boolean isPrepared;
 
+  // #{} 的解析器, 为null的话 #{} 原样输出
+  private final IMParameterParser parameterParser;
+
+  // 编译之后的片段, 只有编译生成的节点才有
+  private final TextPart[] parts;
+
   public IMTextSqlNode(final String text) {
-    this.text = IMStrUtils.removeExtraWhitespaces(text);
+    this(text, null);
+  }
+
+  public IMTextSqlNode(final String text, final IMParameterParser parameterParser) {
+    this(IMStrUtils.removeExtraWhitespaces(text), parameterParser, null);
+  }
+
+  private IMTextSqlNode(final String text, final IMParameterParser parameterParser, final TextPart[] parts) {
+    this.text = text;
+    this.parameterParser = parameterParser;
+    this.parts = parts;
   }
 
   @Override
   public boolean apply(IMContext imContext) {
-    imContext.appendText((createParser(new AppendTokenValueHandler(imContext, null))).parse(text));
+    if (parts == null) {
+      imContext.appendText((createParser(new AppendTokenValueHandler(imContext, null))).parse(text));
+      return false;
+    }
+    StringBuilder builder = new StringBuilder(text.length() + 16);
+    for (TextPart part : parts) {
+      part.append(builder, imContext);
+    }
+    imContext.appendText(builder.toString());
     return false;
   }
 
+  /**
+   * 没有 ${} 和 #{}(需要解析#{}的时候) 的文本,执行结果是固定的,编译成静态文本, 否则切分成片段
+   *
+   * @return
+   */
+  @Override
+  public IMSqlNode compile() {
+    if (parts != null) {
+      return this;
+    }
+    boolean prepared = parameterParser != null && isPrepared();
+    if (!isDynamic() && !prepared) {
+      return new IMStatisticSqlNode(text).compile();
+    }
+    // 和 IMStatisticSqlNode 一样生成新的节点, 不修改自己
+    return parameterParser == null ? this : new IMTextSqlNode(text, parameterParser, split(text, parameterParser));
+  }
+
+  /**
+   * 切分文本, 转义规则和 GenericTokenParser 一样(\${ 和 \#{ 原样输出)
+   */
+  private static TextPart[] split(String text, IMParameterParser parameterParser) {
+    List<TextPart> parts = new ArrayList<>();
+    StringBuilder statics = new StringBuilder();
+    int offset = 0;
+    while (offset < text.length()) {
+      int dollar = text.indexOf("${", offset);
+      int hash = text.indexOf("#{", offset);
+      int start = dollar < 0 ? hash : hash < 0 ? dollar : Math.min(dollar, hash);
+      if (start < 0) {
+        break;
+      }
+      if (start > 0 && text.charAt(start - 1) == '\\') {
+        statics.append(text, offset, start - 1).append(text, start, start + 2);
+        offset = start + 2;
+        continue;
+      }
+      int end = text.indexOf('}', start + 2);
+      if (end < 0) {
+        break;
+      }
+      statics.append(text, offset, start);
+      if (statics.length() > 0) {
+        parts.add(new StaticPart(statics.toString()));
+        statics.setLength(0);
+      }
+      String content = text.substring(start + 2, end);
+      if (start == dollar) {
+        parts.add(new ExpressionPart(content));
+      } else {
+        parts.add(new ParameterPart(parameterParser.parse(content)));
+      }
+      offset = end + 1;
+    }
+    statics.append(text, offset, text.length());
+    if (statics.length() > 0) {
+      parts.add(new StaticPart(statics.toString()));
+    }
+    return parts.toArray(new TextPart[0]);
+  }
+
   public void appendText(String text) {
+    if (parts != null) {
+      throw new IllegalStateException("Cannot append text to a compiled node");
+    }
     this.text += IMStrUtils.removeExtraWhitespaces(text);
   }
 
@@ -77,6 +175,59 @@ public class IMTextSqlNode implements IMSqlNode {
     return new GenericTokenParser("#{", "}", handler);
   }
 
+  /**
+   * 编译之后的文本片段
+   */
+  private interface TextPart {
+    void append(StringBuilder builder, IMContext context);
+  }
+
+  private static class StaticPart implements TextPart {
+    private final String text;
+
+    StaticPart(String text) {
+      this.text = text;
+    }
+
+    @Override
+    public void append(StringBuilder builder, IMContext context) {
+      builder.append(text);
+    }
+  }
+
+  /**
+   * ${}
+   */
+  private static class ExpressionPart implements TextPart {
+    private final String expression;
+
+    ExpressionPart(String expression) {
+      this.expression = expression;
+    }
+
+    @Override
+    public void append(StringBuilder builder, IMContext context) {
+      builder.append(new AppendTokenValueHandler(context, null).handleToken(expression));
+    }
+  }
+
+  /**
+   * #{}
+   */
+  private static class ParameterPart implements TextPart {
+    private final IMParameter parameter;
+
+    ParameterPart(IMParameter parameter) {
+      this.parameter = parameter;
+    }
+
+    @Override
+    public void append(StringBuilder builder, IMContext context) {
+      context.bindParameter(parameter);
+      builder.append('?');
+    }
+  }
+
   private static class AppendTokenValueHandler implements TokenHandler {
 
     private final IMContext context;
@@ -97,7 +248,7 @@ public class IMTextSqlNode implements IMSqlNode {
       }
 
       // 通过ognl来获取值
-      Object value = OgnlCache.getValue(content, context.currentBinds());
+      Object value = IMExpressionCompiler.getValue(content, context.currentBinds());
 
       // 直接调用toString方法
       String srtValue = value == null ? "" : String.valueOf(value); // issue #274 return "" instead of "null"
@@ -0,0 +1,145 @@
+package com.huyu.dynamic.node;
+
+import com.huyu.dynamic.context.IMContext;
+import com.huyu.dynamic.context.IMDelegatingContext;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.StringTokenizer;
+
+/**
+ * trim 标签(where 和 set 标签是它的特例), 规则和 TrimSqlNode 一样
+ * <p>
+ * 子节点的文本先写到单独的缓冲区, 执行完之后去掉多余的前缀后缀, 加上 prefix 和 suffix 再写到上下文中, 这样外层foreach的分隔符不会被当成要去掉的前缀.
+ * #{} 只会生成 ?, 去掉的只是 AND, OR, 逗号这样的文本, 所以不影响已经记录的 ParameterMapping
+ * </p>
+ */
+public class IMTrimSqlNode implements IMSqlNode {
+
+  private final IMSqlNode contents;
+
+  private final String prefix;
+
+  private final String suffix;
+
+  // 要覆盖的前缀(大写)
+  private final List<String> prefixesToOverride;
+
+  // 要覆盖的后缀(大写)
+  private final List<String> suffixesToOverride;
+
+  public IMTrimSqlNode(IMSqlNode contents, String prefix, String prefixesToOverride, String suffix,
+      String suffixesToOverride) {
+    this(contents, prefix, parseOverrides(prefixesToOverride), suffix, parseOverrides(suffixesToOverride));
+  }
+
+  protected IMTrimSqlNode(IMSqlNode contents, String prefix, List<String> prefixesToOverride, String suffix,
+      List<String> suffixesToOverride) {
+    this.contents = contents;
+    this.prefix = prefix;
+    this.prefixesToOverride = prefixesToOverride;
+    this.suffix = suffix;
+    this.suffixesToOverride = suffixesToOverride;
+  }
+
+  @Override
+  public IMSqlNode compile() {
+    return new IMTrimSqlNode(contents.compile(), prefix, prefixesToOverride, suffix, suffixesToOverride);
+  }
+
+  @Override
+  public boolean apply(IMContext context) {
+    FilteredContext filteredContext = new FilteredContext(context);
+    boolean result = contents.apply(filteredContext);
+    String body = filteredContext.getText().trim();
+    if (!body.isEmpty()) {
+      context.appendText(trim(body));
+    }
+    return result;
+  }
+
+  private String trim(String body) {
+    String upperCaseSql = body.toUpperCase(Locale.ENGLISH);
+    int begin = 0;
+    int end = body.length();
+    for (String toRemove : prefixesToOverride) {
+      if (upperCaseSql.startsWith(toRemove)) {
+        begin = toRemove.trim().length();
+        break;
+      }
+    }
+    for (String toRemove : suffixesToOverride) {
+      if (upperCaseSql.endsWith(toRemove) || upperCaseSql.endsWith(toRemove.trim())) {
+        end -= toRemove.trim().length();
+        break;
+      }
+    }
+    // 和其他片段一样, 只用一个空格分隔
+    String trimmed = begin < end ? body.substring(begin, end).trim() : "";
+    StringBuilder sql = new StringBuilder(trimmed.length() + 16);
+    if (prefix != null) {
+      sql.append(prefix);
+    }
+    if (!trimmed.isEmpty()) {
+      if (sql.length() > 0) {
+        sql.append(' ');
+      }
+      sql.append(trimmed);
+    }
+    if (suffix != null) {
+      sql.append(' ').append(suffix);
+    }
+    return sql.toString();
+  }
+
+  private static List<String> parseOverrides(String overrides) {
+    if (overrides == null) {
+      return Collections.emptyList();
+    }
+    StringTokenizer parser = new StringTokenizer(overrides, "|", false);
+    List<String> list = new ArrayList<>(parser.countTokens());
+    while (parser.hasMoreTokens()) {
+      list.add(parser.nextToken().toUpperCase(Locale.ENGLISH));
+    }
+    return list;
+  }
+
+  /**
+   * 子节点的文本写到自己的缓冲区, 其他的操作转发给外层的上下文
+   */
+  private static class FilteredContext extends IMDelegatingContext {
+    private final StringBuilder text = new StringBuilder();
+
+    FilteredContext(IMContext delegate) {
+      super(delegate);
+    }
+
+    @Override
+    public void appendText(String text) {
+      if (this.text.length() > 0) {
+        this.text.append(' ');
+      }
+      this.text.append(text);
+    }
+
+    @Override
+    public void appendText(char[] segment) {
+      if (this.text.length() > 0) {
+        this.text.append(' ');
+      }
+      this.text.append(segment);
+    }
+
+    @Override
+    public String getText() {
+      return text.toString();
+    }
+
+    @Override
+    public int getTextLength() {
+      return text.length();
+    }
+  }
+}
@@ -0,0 +1,18 @@
+package com.huyu.dynamic.node;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * where 标签: 有内容的时候加上 WHERE, 并且去掉开头的 AND 或者 OR
+ */
+public class IMWhereSqlNode extends IMTrimSqlNode {
+
+  private static final List<String> PREFIXES = Arrays.asList("AND ", "OR ", "AND\n", "OR\n", "AND\r", "OR\r", "AND\t",
+      "OR\t");
+
+  public IMWhereSqlNode(IMSqlNode contents) {
+    super(contents, "WHERE", PREFIXES, null, Collections.emptyList());
+  }
+}
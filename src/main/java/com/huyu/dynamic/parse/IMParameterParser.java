@@ -0,0 +1,122 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.huyu.dynamic.parse;
+
+import com.huyu.dynamic.context.IMVariableTable;
+import com.huyu.dynamic.node.IMParameter;
+
+import java.util.Map;
+
+import org.apache.ibatis.builder.BaseBuilder;
+import org.apache.ibatis.builder.BuilderException;
+import org.apache.ibatis.builder.ParameterExpression;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.reflection.property.PropertyTokenizer;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.type.JdbcType;
+
+/**
+ * 解析 #{} 的内容(和 SqlSourceBuilder 的规则一样),只在编译的时候执行一次
+ */
+public class IMParameterParser extends BaseBuilder {
+
+  private static final String PARAMETER_PROPERTIES = "javaType,jdbcType,mode,numericScale,resultMap,typeHandler,jdbcTypeName";
+
+  // 入参类型, 可能为null
+  private final Class<?> parameterType;
+
+  // bind 和 foreach 的变量表, 可能为null
+  private final IMVariableTable variableTable;
+
+  public IMParameterParser(Configuration configuration, Class<?> parameterType) {
+    this(configuration, parameterType, null);
+  }
+
+  /**
+   * @param configuration
+   * @param parameterType
+   * @param variableTable
+   *          #{} 在脚本解析完成之后编译的时候才解析, 这时候所有的变量都已经分配好槽位了
+   */
+  public IMParameterParser(Configuration configuration, Class<?> parameterType, IMVariableTable variableTable) {
+    super(configuration);
+    this.parameterType = parameterType;
+    this.variableTable = variableTable;
+  }
+
+  public IMParameter parse(String content) {
+    Map<String, String> propertiesMap = parseParameterMapping(content);
+    String property = propertiesMap.get("property");
+    if (property == null) {
+      throw new BuilderException("Expression based parameters are not supported by the IM engine: #{" + content + "}");
+    }
+    Class<?> javaType = resolvePropertyType(propertiesMap.get("jdbcType"));
+    ParameterMapping.Builder builder = new ParameterMapping.Builder(configuration, property, javaType);
+    String typeHandlerAlias = null;
+    for (Map.Entry<String, String> entry : propertiesMap.entrySet()) {
+      String name = entry.getKey();
+      String value = entry.getValue();
+      if ("javaType".equals(name)) {
+        javaType = resolveClass(value);
+        builder.javaType(javaType);
+      } else if ("jdbcType".equals(name)) {
+        builder.jdbcType(resolveJdbcType(value));
+      } else if ("mode".equals(name)) {
+        builder.mode(resolveParameterMode(value));
+      } else if ("numericScale".equals(name)) {
+        builder.numericScale(Integer.valueOf(value));
+      } else if ("resultMap".equals(name)) {
+        builder.resultMapId(value);
+      } else if ("typeHandler".equals(name)) {
+        typeHandlerAlias = value;
+      } else if ("jdbcTypeName".equals(name)) {
+        builder.jdbcTypeName(value);
+      } else if (!"property".equals(name)) {
+        throw new BuilderException("An invalid property '" + name + "' was found in mapping #{" + content
+            + "}.  Valid properties are " + PARAMETER_PROPERTIES);
+      }
+    }
+    if (typeHandlerAlias != null) {
+      builder.typeHandler(resolveTypeHandler(javaType, typeHandlerAlias));
+    }
+    int slot = variableTable == null ? -1 : variableTable.slotOf(new PropertyTokenizer(property).getName());
+    return new IMParameter(property, builder.build(), slot);
+  }
+
+  /**
+   * 编译的时候不知道 foreach/bind 变量的类型(也可能覆盖了入参的同名属性),所以只有入参是简单类型的时候才能确定, 其他的情况为Object(执行的时候根据值来决定类型处理器)
+   */
+  private Class<?> resolvePropertyType(String jdbcType) {
+    if (JdbcType.CURSOR.name().equals(jdbcType)) {
+      return java.sql.ResultSet.class;
+    }
+    if (parameterType != null && typeHandlerRegistry.hasTypeHandler(parameterType)) {
+      return parameterType;
+    }
+    return Object.class;
+  }
+
+  private Map<String, String> parseParameterMapping(String content) {
+    try {
+      return new ParameterExpression(content);
+    } catch (BuilderException ex) {
+      throw ex;
+    } catch (Exception ex) {
+      throw new BuilderException("Parsing error was found in mapping #{" + content
+          + "}.  Check syntax #{property|(expression), var1=value1, var2=value2, ...} ", ex);
+    }
+  }
+}
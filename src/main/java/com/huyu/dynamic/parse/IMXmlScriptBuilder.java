@@ -16,6 +16,7 @@
 package com.huyu.dynamic.parse;
 
 import com.huyu.dynamic.CreateSql;
+import com.huyu.dynamic.context.IMVariableTable;
 import com.huyu.dynamic.node.*;
 import com.huyu.dynamic.utils.IMStrUtils;
 
@@ -26,6 +27,7 @@ import java.util.Map;
 
 import org.apache.ibatis.builder.BuilderException;
 import org.apache.ibatis.parsing.XNode;
+import org.apache.ibatis.session.Configuration;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
@@ -40,17 +42,42 @@ public class IMXmlScriptBuilder {
    */
   private boolean isDynamic;
 
+  /**
+   * #{} 的解析器, 只有在 IMLanguageDriver 中使用的时候才有(会把 #{} 解析成 ?), 单独使用的时候 #{} 原样输出
+   */
+  private final IMParameterParser parameterParser;
+
+  /**
+   * bind 和 foreach 的变量在解析的时候分配槽位
+   */
+  private final IMVariableTable variableTable = new IMVariableTable();
+
+  /**
+   * 是否有分块的foreach(chunkSize), 一个语句只能有一个
+   */
+  private boolean isChunked;
+
+  // 当前解析到的foreach的嵌套层数
+  private int forEachDepth;
+
   private final Map<String, NodeHandler> nodeHandlerMap = new HashMap<>();
 
   public IMXmlScriptBuilder(XNode context) {
     this.context = context;
+    this.parameterParser = null;
+    initNodeHandlerMap();
+  }
+
+  public IMXmlScriptBuilder(Configuration configuration, XNode context, Class<?> parameterType) {
+    this.context = context;
+    this.parameterParser = new IMParameterParser(configuration, parameterType, variableTable);
     initNodeHandlerMap();
   }
 
   private void initNodeHandlerMap() {
-    // nodeHandlerMap.put("trim", new TrimHandler());
-    // nodeHandlerMap.put("where", new WhereHandler());
-    // nodeHandlerMap.put("set", new SetHandler());
+    nodeHandlerMap.put("trim", new TrimHandler());
+    nodeHandlerMap.put("where", new WhereHandler());
+    nodeHandlerMap.put("set", new SetHandler());
     nodeHandlerMap.put("foreach", new ForEachHandler());
     nodeHandlerMap.put("if", new IfHandler());
     nodeHandlerMap.put("choose", new ChooseHandler());
@@ -62,8 +89,9 @@ public class IMXmlScriptBuilder {
   }
 
   public CreateSql parseScriptNode() {
-    IMSqlNode rootSqlNode = parseDynamicTags(context);
-    return new CreateSql(rootSqlNode, isDynamic);
+    // 解析完成之后编译一次: 合并静态文本, 执行的时候只需要遍历动态节点
+    IMSqlNode rootSqlNode = parseDynamicTags(context).compile();
+    return new CreateSql(rootSqlNode, isDynamic, variableTable, isChunked);
   }
 
   /**
@@ -86,9 +114,9 @@ public class IMXmlScriptBuilder {
         // 移除多余的空格
         data = IMStrUtils.removeExtraWhitespaces(data);
         if (!"".equals(data.trim())) {
-          IMTextSqlNode textSqlNode = new IMTextSqlNode(data);
+          IMTextSqlNode textSqlNode = new IMTextSqlNode(data, parameterParser);
           // 动态sql
-          isDynamic = textSqlNode.isDynamic();
+          isDynamic |= textSqlNode.isDynamic();
           // 具有 #{} 会替代成 ?
           boolean isPrepared = textSqlNode.isPrepared();
           if (isDynamic || isPrepared) {
@@ -112,7 +140,7 @@ public class IMXmlScriptBuilder {
         String nodeName = child.getNode().getNodeName();
         NodeHandler handler = nodeHandlerMap.get(nodeName);
         if (handler == null) {
-          throw new RuntimeException("不合法的标签");
+          throw new BuilderException("Unknown element <" + nodeName + "> in SQL statement.");
         }
         handler.handleNode(child, contents);
         isDynamic = true;
@@ -159,7 +187,7 @@ public class IMXmlScriptBuilder {
     void handleNode(XNode nodeToHandle, List<IMSqlNode> targetContents);
   }
 
-  private static class BindHandler implements NodeHandler {
+  private class BindHandler implements NodeHandler {
     public BindHandler() {
       // Prevent Synthetic Access
     }
@@ -168,7 +196,7 @@ public class IMXmlScriptBuilder {
     public void handleNode(XNode nodeToHandle, List<IMSqlNode> targetContents) {
       final String name = nodeToHandle.getStringAttribute("name");
       final String expression = nodeToHandle.getStringAttribute("value");
-      final IMBindSqlNode node = new IMBindSqlNode(name, expression);
+      final IMBindSqlNode node = new IMBindSqlNode(name, expression, variableTable.register(name));
       targetContents.add(node);
     }
   }
@@ -180,14 +208,12 @@ public class IMXmlScriptBuilder {
 
     @Override
     public void handleNode(XNode nodeToHandle, List<IMSqlNode> targetContents) {
-      // MixedSqlNode mixedSqlNode = parseDynamicTags(nodeToHandle);
-      // String prefix = nodeToHandle.getStringAttribute("prefix");
-      // String prefixOverrides = nodeToHandle.getStringAttribute("prefixOverrides");
-      // String suffix = nodeToHandle.getStringAttribute("suffix");
-      // String suffixOverrides = nodeToHandle.getStringAttribute("suffixOverrides");
-      // TrimSqlNode trim = new TrimSqlNode(configuration, mixedSqlNode, prefix, prefixOverrides, suffix,
-      // suffixOverrides);
-      // targetContents.add(trim);
+      IMSqlNode mixedSqlNode = parseDynamicTags(nodeToHandle);
+      String prefix = nodeToHandle.getStringAttribute("prefix");
+      String prefixOverrides = nodeToHandle.getStringAttribute("prefixOverrides");
+      String suffix = nodeToHandle.getStringAttribute("suffix");
+      String suffixOverrides = nodeToHandle.getStringAttribute("suffixOverrides");
+      targetContents.add(new IMTrimSqlNode(mixedSqlNode, prefix, prefixOverrides, suffix, suffixOverrides));
     }
   }
 
@@ -198,9 +224,7 @@ public class IMXmlScriptBuilder {
 
     @Override
     public void handleNode(XNode nodeToHandle, List<IMSqlNode> targetContents) {
-      // MixedSqlNode mixedSqlNode = parseDynamicTags(nodeToHandle);
-      // WhereSqlNode where = new WhereSqlNode(configuration, mixedSqlNode);
-      // targetContents.add(where);
+      targetContents.add(new IMWhereSqlNode(parseDynamicTags(nodeToHandle)));
     }
   }
 
@@ -211,9 +235,7 @@ public class IMXmlScriptBuilder {
 
     @Override
     public void handleNode(XNode nodeToHandle, List<IMSqlNode> targetContents) {
-      // MixedSqlNode mixedSqlNode = parseDynamicTags(nodeToHandle);
-      //// SetSqlNode set = new SetSqlNode(configuration, mixedSqlNode);
-      // targetContents.add(set);
+      targetContents.add(new IMSetSqlNode(parseDynamicTags(nodeToHandle)));
     }
   }
 
@@ -224,7 +246,23 @@ public class IMXmlScriptBuilder {
 
     @Override
     public void handleNode(XNode nodeToHandle, List<IMSqlNode> targetContents) {
-      IMSqlNode mixedSqlNode = parseDynamicTags(nodeToHandle);
+      Integer chunkSize = nodeToHandle.getIntAttribute("chunkSize");
+      if (chunkSize != null) {
+        if (chunkSize <= 0) {
+          throw new BuilderException("foreach的chunkSize必须大于0");
+        }
+        if (isChunked || forEachDepth > 0) {
+          throw new BuilderException("一个语句只能有一个分块的foreach, 并且不能嵌套在其他foreach里面");
+        }
+        isChunked = true;
+      }
+      forEachDepth++;
+      IMSqlNode mixedSqlNode;
+      try {
+        mixedSqlNode = parseDynamicTags(nodeToHandle);
+      } finally {
+        forEachDepth--;
+      }
       String collection = nodeToHandle.getStringAttribute("collection");
       Boolean nullable = nodeToHandle.getBooleanAttribute("nullable");
       String item = nodeToHandle.getStringAttribute("item");
@@ -232,8 +270,8 @@ public class IMXmlScriptBuilder {
       String open = nodeToHandle.getStringAttribute("open");
       String close = nodeToHandle.getStringAttribute("close");
       String separator = nodeToHandle.getStringAttribute("separator");
-      IMForSqlNode forEachSqlNode = new IMForSqlNode(mixedSqlNode, collection, nullable, index, item, open, close,
-          separator);
+      IMForSqlNode forEachSqlNode = new IMForSqlNode(mixedSqlNode, collection, nullable, index, item,
+          variableTable.register(index), variableTable.register(item), open, close, separator, chunkSize);
       targetContents.add(forEachSqlNode);
     }
   }
@@ -259,7 +297,7 @@ public class IMXmlScriptBuilder {
       // 看看前一个节点是否是if节点
       IMSqlNode preSqlNode = targetContents.get(targetContents.size() - 1);
       if (!(preSqlNode instanceof IMIfSqlNode)) {
-        throw new RuntimeException("else-if标签前面没有if标签");
+        throw new BuilderException("else-if标签前面没有if标签");
       }
       IMSqlNode mixedSqlNode = parseDynamicTags(nodeToHandle);
 
@@ -276,7 +314,7 @@ public class IMXmlScriptBuilder {
       IMSqlNode preSqlNode = targetContents.get(targetContents.size() - 1);
       if (!(preSqlNode instanceof IMIfSqlNode)) {
         // 抛出异常
-        throw new RuntimeException("else标签前面没有if或者else-if标签");
+        throw new BuilderException("else标签前面没有if或者else-if标签");
       }
       IMSqlNode mixedSqlNode = parseDynamicTags(nodeToHandle);
       // IMSqlNode sqlNode = new IMDefaultSqlNode(mixedSqlNode, containsBindNode(mixedSqlNode));
@@ -59,7 +59,8 @@ public @interface CacheNamespace {
   Class<? extends Cache> implementation() default PerpetualCache.class;
 
   /**
-   * Returns the cache evicting implementation type to use.
+   * Returns the cache evicting implementation type to use, e.g.
+   * {@link org.apache.ibatis.cache.decorators.TinyLfuCache} for frequency based admission.
    *
    * @return the cache evicting implementation type
    */
@@ -93,6 +94,16 @@ public @interface CacheNamespace {
    */
   boolean blocking() default false;
 
+  /**
+   * Returns whether concurrent misses share one query, and the entries are refreshed in the background before the flush
+   * interval expires them.
+   *
+   * @return {@code true} if the cache loads its entries; {@code false} if otherwise
+   *
+   * @since 3.5.14
+   */
+  boolean loading() default false;
+
   /**
    * Returns property values for a implementation object.
    *
@@ -143,6 +143,33 @@ public @interface Options {
    */
   String databaseId() default "";
 
+  /**
+   * Returns the tables the statement reads or writes, used when the second level caches are invalidated by table.
+   * <p>
+   * By default the tables are found in the SQL. Declare them when the SQL hides some of them, e.g. in a view, a stored
+   * procedure or a trigger.
+   * </p>
+   *
+   * @return the comma separated table names
+   *
+   * @since 3.5.14
+   *
+   * @see org.apache.ibatis.session.CacheInvalidation#TABLE
+   */
+  String tables() default "";
+
+  /**
+   * Returns how long the results are kept in the second level cache, instead of the flush interval of the cache.
+   * <p>
+   * The entries expire one by one only if the cache has a flush interval.
+   * </p>
+   *
+   * @return milliseconds, 0 if the results never expire. The default is {@code -1} (= the flush interval of the cache)
+   *
+   * @since 3.5.14
+   */
+  long cacheTtl() default -1;
+
   /**
    * The container annotation for {@link Options}.
    *
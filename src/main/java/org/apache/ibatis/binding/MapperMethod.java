@@ -23,10 +23,14 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
 
 import org.apache.ibatis.annotations.Flush;
 import org.apache.ibatis.annotations.MapKey;
 import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.cursor.defaults.CursorPublisher;
 import org.apache.ibatis.mapping.MappedStatement;
 import org.apache.ibatis.mapping.SqlCommandType;
 import org.apache.ibatis.mapping.StatementType;
@@ -37,6 +41,7 @@ import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
 import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.defaults.DefaultSqlSessionFactory;
 
 /**
  * @author Clinton Begin
@@ -57,6 +62,27 @@ public class MapperMethod {
   }
 
   public Object execute(SqlSession sqlSession, Object[] args) {
+    if (method.returnsFuture()) {
+      return executeAsync(sqlSession.getConfiguration(), args);
+    }
+    return executeSync(sqlSession, args);
+  }
+
+  /**
+   * 在 {@link Configuration#getAsyncExecutor()} 中执行, 每次调用都从环境的数据源打开新的 SqlSession, 不参与调用方的事务.
+   * 执行成功之后提交, 最后关闭会话(未提交的修改会回滚).
+   */
+  private CompletableFuture<Object> executeAsync(Configuration configuration, Object[] args) {
+    return CompletableFuture.supplyAsync(() -> {
+      try (SqlSession session = new DefaultSqlSessionFactory(configuration).openSession()) {
+        Object result = executeSync(session, args);
+        session.commit();
+        return result;
+      }
+    }, configuration.getAsyncExecutor());
+  }
+
+  private Object executeSync(SqlSession sqlSession, Object[] args) {
     Object result;
     switch (command.getType()) {
       // 插入语句
@@ -91,6 +117,8 @@ public class MapperMethod {
           result = executeForMap(sqlSession, args);
         } else if (method.returnsCursor()) {
           result = executeForCursor(sqlSession, args);
+        } else if (method.returnsPublisher()) {
+          result = executeForPublisher(sqlSession.getConfiguration(), args);
         } else {
           Object param = method.convertArgsToSqlCommandParam(args);
           result = sqlSession.selectOne(command.getName(), param);
@@ -187,6 +215,13 @@ public class MapperMethod {
     return result;
   }
 
+  private <T> Flow.Publisher<T> executeForPublisher(Configuration configuration, Object[] args) {
+    Object param = method.convertArgsToSqlCommandParam(args);
+    RowBounds rowBounds = method.hasRowBounds() ? method.extractRowBounds(args) : RowBounds.DEFAULT;
+    // 订阅的时候才执行查询, 每个订阅者使用自己的会话
+    return new CursorPublisher<>(configuration, session -> session.selectCursor(command.getName(), param, rowBounds));
+  }
+
   private <E> Object convertToDeclaredCollection(Configuration config, List<E> list) {
     Object collection = config.getObjectFactory().create(method.getReturnType());
     MetaObject metaObject = config.newMetaObject(collection);
@@ -309,6 +344,10 @@ public class MapperMethod {
     private final boolean returnsCursor;
     // 返回Optional,用于解决空指针的问题
     private final boolean returnsOptional;
+    // 返回Flow.Publisher,逐行推送给订阅者
+    private final boolean returnsPublisher;
+    // 返回CompletableFuture(或CompletionStage),异步执行,下面的其他属性都是针对其中的类型
+    private final boolean returnsFuture;
     // 返回的类型是啥
     private final Class<?> returnType;
     // 如果是map的话,key的名称
@@ -325,21 +364,34 @@ public class MapperMethod {
 
       // 指定返回的类型
       Type resolvedReturnType = TypeParameterResolver.resolveReturnType(method, mapperInterface);
+      this.returnsFuture = isFuture(method.getReturnType());
+      if (this.returnsFuture) {
+        // CompletableFuture<T>, 按照T来处理
+        resolvedReturnType = resolvedReturnType instanceof ParameterizedType
+          ? ((ParameterizedType) resolvedReturnType).getActualTypeArguments()[0] : Object.class;
+      }
       if (resolvedReturnType instanceof Class<?>) {
         this.returnType = (Class<?>) resolvedReturnType;
       } else if (resolvedReturnType instanceof ParameterizedType) {
         this.returnType = (Class<?>) ((ParameterizedType) resolvedReturnType).getRawType();
       } else {
-        this.returnType = method.getReturnType();
+        this.returnType = this.returnsFuture ? Object.class : method.getReturnType();
       }
-      this.returnsVoid = void.class.equals(this.returnType);
+      this.returnsVoid =
+        void.class.equals(this.returnType) || this.returnsFuture && Void.class.equals(this.returnType);
       this.returnsMany =
         configuration.getObjectFactory().isCollection(this.returnType) || this.returnType.isArray();
       this.returnsCursor = Cursor.class.equals(this.returnType);
       this.returnsOptional = Optional.class.equals(this.returnType);
+      this.returnsPublisher = Flow.Publisher.class.equals(this.returnType);
+      if (this.returnsFuture && (this.returnsCursor || this.returnsPublisher)) {
+        // 游标需要打开的会话, 而异步执行结束的时候会话就关闭了
+        throw new BindingException("Mapper method '" + mapperInterface.getName() + "." + method.getName()
+          + "' cannot return a " + this.returnType.getSimpleName() + " asynchronously.");
+      }
 
       // 如果返回的是map的话,并且该方法上面还有MapKey注解的话,获取map的key的值.详细可见MapKey注解
-      this.mapKey = getMapKey(method);
+      this.mapKey = getMapKey(method, this.returnType);
       this.returnsMap = this.mapKey != null;
 
       // 入参如果是特殊的类型,直接定位第几个索引
@@ -400,6 +452,31 @@ public class MapperMethod {
       return returnsOptional;
     }
 
+    /**
+     * return whether return type is {@code java.util.concurrent.CompletableFuture} or
+     * {@code java.util.concurrent.CompletionStage}. The other properties of this signature describe the type argument.
+     *
+     * @return return {@code true}, if the method is executed asynchronously
+     * @since 3.5.14
+     */
+    public boolean returnsFuture() {
+      return returnsFuture;
+    }
+
+    /**
+     * return whether return type is {@code java.util.concurrent.Flow.Publisher}.
+     *
+     * @return return {@code true}, if the rows are streamed to subscribers
+     * @since 3.5.14
+     */
+    public boolean returnsPublisher() {
+      return returnsPublisher;
+    }
+
+    private static boolean isFuture(Class<?> type) {
+      return CompletableFuture.class.equals(type) || CompletionStage.class.equals(type);
+    }
+
     private Integer getUniqueParamIndex(Method method, Class<?> paramType) {
       Integer index = null;
       final Class<?>[] argTypes = method.getParameterTypes();
@@ -420,9 +497,9 @@ public class MapperMethod {
       return mapKey;
     }
 
-    private String getMapKey(Method method) {
+    private String getMapKey(Method method, Class<?> returnType) {
       String mapKey = null;
-      if (Map.class.isAssignableFrom(method.getReturnType())) {
+      if (Map.class.isAssignableFrom(returnType)) {
         final MapKey mapKeyAnnotation = method.getAnnotation(MapKey.class);
         if (mapKeyAnnotation != null) {
           mapKey = mapKeyAnnotation.value();
@@ -23,6 +23,8 @@ import javax.sql.DataSource;
 
 import org.apache.ibatis.builder.BaseBuilder;
 import org.apache.ibatis.builder.BuilderException;
+import org.apache.ibatis.cache.CacheValueCodec;
+import org.apache.ibatis.cache.CacheWeigher;
 import org.apache.ibatis.datasource.DataSourceFactory;
 import org.apache.ibatis.executor.ErrorContext;
 import org.apache.ibatis.executor.loader.ProxyFactory;
@@ -38,9 +40,11 @@ import org.apache.ibatis.reflection.DefaultReflectorFactory;
 import org.apache.ibatis.reflection.MetaClass;
 import org.apache.ibatis.reflection.ReflectorFactory;
 import org.apache.ibatis.reflection.factory.ObjectFactory;
+import org.apache.ibatis.reflection.invoker.InvokerFactory;
 import org.apache.ibatis.reflection.wrapper.ObjectWrapperFactory;
 import org.apache.ibatis.session.AutoMappingBehavior;
 import org.apache.ibatis.session.AutoMappingUnknownColumnBehavior;
+import org.apache.ibatis.session.CacheInvalidation;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ExecutorType;
 import org.apache.ibatis.session.LocalCacheScope;
@@ -274,6 +278,19 @@ public class XMLConfigBuilder extends BaseBuilder {
     }
   }
 
+  private void invokerFactoryElement(String alias) {
+    if (alias == null) {
+      return;
+    }
+    // 只有默认的 ReflectorFactory 使用 InvokerFactory, 不能覆盖 <reflectorFactory> 配置的工厂
+    ReflectorFactory reflectorFactory = configuration.getReflectorFactory();
+    if (reflectorFactory.getClass() != DefaultReflectorFactory.class) {
+      throw new BuilderException("The setting invokerFactory cannot be used with the reflectorFactory "
+        + reflectorFactory.getClass().getName() + ".");
+    }
+    configuration.setInvokerFactory((InvokerFactory) createInstance(alias));
+  }
+
   private void propertiesElement(XNode context) throws Exception {
     if (context != null) {
       Properties defaults = context.getChildrenAsProperties();
@@ -297,6 +314,26 @@ public class XMLConfigBuilder extends BaseBuilder {
     }
   }
 
+  /**
+   * 和 CompactCodec 一样有 (ReflectorFactory, ObjectFactory) 构造方法的编码器使用配置的工厂
+   */
+  private CacheValueCodec createCacheValueCodec(String alias) {
+    Class<? extends CacheValueCodec> type = resolveClass(alias);
+    if (type == null) {
+      return null;
+    }
+    try {
+      try {
+        return type.getConstructor(ReflectorFactory.class, ObjectFactory.class)
+          .newInstance(configuration.getReflectorFactory(), configuration.getObjectFactory());
+      } catch (NoSuchMethodException e) {
+        return type.getDeclaredConstructor().newInstance();
+      }
+    } catch (Exception e) {
+      throw new BuilderException("Error creating instance. Cause: " + e, e);
+    }
+  }
+
   private void settingsElement(Properties props) {
     configuration
       .setAutoMappingBehavior(
@@ -305,7 +342,13 @@ public class XMLConfigBuilder extends BaseBuilder {
       AutoMappingUnknownColumnBehavior.valueOf(
         props.getProperty("autoMappingUnknownColumnBehavior", "NONE")));
     configuration.setCacheEnabled(booleanValueOf(props.getProperty("cacheEnabled"), true));
+    configuration.setCacheInvalidation(
+      CacheInvalidation.valueOf(props.getProperty("cacheInvalidation", "NAMESPACE")));
     configuration.setProxyFactory((ProxyFactory) createInstance(props.getProperty("proxyFactory")));
+    // 在创建使用 ReflectorFactory 的编码器之前设置
+    invokerFactoryElement(props.getProperty("invokerFactory"));
+    configuration.setCacheValueCodec(createCacheValueCodec(props.getProperty("cacheValueCodec")));
+    configuration.setCacheWeigher((CacheWeigher) createInstance(props.getProperty("cacheWeigher")));
     configuration.setLazyLoadingEnabled(
       booleanValueOf(props.getProperty("lazyLoadingEnabled"), false));
     configuration.setAggressiveLazyLoading(
@@ -319,6 +362,7 @@ public class XMLConfigBuilder extends BaseBuilder {
     configuration.setDefaultStatementTimeout(
       integerValueOf(props.getProperty("defaultStatementTimeout"), null));
     configuration.setDefaultFetchSize(integerValueOf(props.getProperty("defaultFetchSize"), null));
+    configuration.setCursorPrefetchSize(integerValueOf(props.getProperty("cursorPrefetchSize"), 0));
     configuration.setDefaultResultSetType(
       resolveResultSetType(props.getProperty("defaultResultSetType")));
     configuration.setMapUnderscoreToCamelCase(
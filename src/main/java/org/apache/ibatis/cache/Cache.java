@@ -87,6 +87,21 @@ public interface Cache {
    */
   int getSize();
 
+  /**
+   * Optional. This method is not called by the core.
+   * <p>
+   * A cache bounded by weight, like {@link org.apache.ibatis.cache.decorators.WeightedLruCache}, returns the sum of
+   * the weights of its elements, and a decorator returns the weight of the cache it decorates. Otherwise every
+   * element weighs 1.
+   *
+   * @return The total weight of the elements stored in the cache
+   *
+   * @since 3.5.14
+   */
+  default long getWeight() {
+    return getSize();
+  }
+
   /**
    * Optional. As of 3.2.6 this method is no longer called by the core.
    * <p>
@@ -42,6 +42,11 @@ public class CacheKey implements Cloneable, Serializable {
     public void updateAll(Object[] objects) {
       throw new CacheException("Not allowed to update a null cache key instance.");
     }
+
+    @Override
+    public void setTimeToLive(Long timeToLive) {
+      throw new CacheException("Not allowed to update a null cache key instance.");
+    }
   };
 
   private static final int DEFAULT_MULTIPLIER = 37;
@@ -54,6 +59,8 @@ public class CacheKey implements Cloneable, Serializable {
   // 8/21/2017 - Sonarlint flags this as needing to be marked transient. While true if content is not serializable, this
   // is not always true and thus should not be marked transient.
   private List<Object> updateList;
+  // 不参与比较, 只是告诉二级缓存这个key的条目可以保留多久
+  private Long timeToLive;
 
   public CacheKey() {
     this.hashcode = DEFAULT_HASHCODE;
@@ -89,6 +96,24 @@ public class CacheKey implements Cloneable, Serializable {
     }
   }
 
+  /**
+   * Gets how long the second level cache may keep the entry of this key. It is not part of the identity of the key.
+   *
+   * @return milliseconds, 0 if the entry never expires, {@code null} for the default of the cache
+   *
+   * @since 3.5.14
+   */
+  public Long getTimeToLive() {
+    return timeToLive;
+  }
+
+  /**
+   * @since 3.5.14
+   */
+  public void setTimeToLive(Long timeToLive) {
+    this.timeToLive = timeToLive;
+  }
+
   @Override
   public boolean equals(Object object) {
     if (this == object) {
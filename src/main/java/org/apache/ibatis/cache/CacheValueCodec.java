@@ -0,0 +1,54 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+/**
+ * Turns the values of a read/write cache into bytes and back, so that every read returns a new copy.
+ *
+ * @since 3.5.14
+ *
+ * @see org.apache.ibatis.cache.decorators.SerializedCache
+ * @see org.apache.ibatis.session.Configuration#setCacheValueCodec(CacheValueCodec)
+ */
+public interface CacheValueCodec {
+
+  /**
+   * Encodes a value.
+   *
+   * @param value
+   *          the value to store, may be {@code null}
+   *
+   * @return the encoded value
+   *
+   * @throws CacheException
+   *           if the value cannot be encoded
+   */
+  byte[] encode(Object value);
+
+  /**
+   * Decodes a value returned by {@link #encode(Object)}.
+   *
+   * @param data
+   *          the encoded value
+   *
+   * @return a new copy of the value
+   *
+   * @throws CacheException
+   *           if the value cannot be decoded
+   */
+  Object decode(byte[] data);
+
+}
@@ -0,0 +1,44 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+/**
+ * Gives the entries of a cache a weight, so that the cache can be bounded by the memory its entries take instead of
+ * their number.
+ * <p>
+ * 在放入缓存的线程中调用, 实现类需要是线程安全的. 同一个条目每次计算的权重不必相同, 缓存会记住放入时的权重.
+ * </p>
+ *
+ * @since 3.5.14
+ *
+ * @see org.apache.ibatis.cache.decorators.WeightedLruCache
+ * @see org.apache.ibatis.session.Configuration#setCacheWeigher(CacheWeigher)
+ */
+public interface CacheWeigher {
+
+  /**
+   * Weighs an entry.
+   *
+   * @param key
+   *          the key of the entry, usually a {@link CacheKey}
+   * @param value
+   *          the value of the entry, may be {@code null}
+   *
+   * @return the weight of the entry, in bytes for the default weigher, never negative
+   */
+  long weigh(Object key, Object value);
+
+}
@@ -0,0 +1,32 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+/**
+ * Marks a cache that can be called from several threads at once without external synchronization.
+ * <p>
+ * A base cache implementing this interface must be thread safe by itself. A decorator implementing it must be thread
+ * safe as long as the cache it decorates is. When the base cache and every decorator of a namespace implement it,
+ * {@link org.apache.ibatis.mapping.CacheBuilder} does not wrap the namespace cache in a
+ * {@link org.apache.ibatis.cache.decorators.SynchronizedCache}.
+ *
+ * @since 3.5.14
+ *
+ * @see org.apache.ibatis.cache.impl.ConcurrentPerpetualCache
+ */
+public interface ConcurrentCache extends Cache {
+
+}
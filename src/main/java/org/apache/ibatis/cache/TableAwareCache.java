@@ -0,0 +1,51 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.util.Collection;
+
+/**
+ * A cache whose entries can be tagged with the tables they were read from and invalidated by table.
+ * {@link org.apache.ibatis.cache.decorators.TransactionalCache} uses it at commit, any other cache is cleared instead.
+ *
+ * @since 3.5.14
+ *
+ * @see org.apache.ibatis.cache.decorators.TableInvalidatingCache
+ * @see org.apache.ibatis.session.CacheInvalidation#TABLE
+ */
+public interface TableAwareCache extends Cache {
+
+  /**
+   * Puts an entry read from the given tables.
+   *
+   * @param key
+   *          the key
+   * @param value
+   *          the value
+   * @param tables
+   *          the tables, {@code null} if unknown
+   */
+  void putObject(Object key, Object value, Collection<String> tables);
+
+  /**
+   * Invalidates the entries that read one of the given tables, and the entries whose tables are unknown.
+   *
+   * @param tables
+   *          the modified tables
+   */
+  void invalidate(Collection<String> tables);
+
+}
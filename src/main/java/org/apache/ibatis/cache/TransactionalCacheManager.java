@@ -17,6 +17,7 @@ package org.apache.ibatis.cache;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.ibatis.cache.decorators.TransactionalCache;
 import org.apache.ibatis.util.MapUtil;
@@ -32,14 +33,42 @@ public class TransactionalCacheManager {
     getTransactionalCache(cache).clear();
   }
 
+  /**
+   * @since 3.5.14
+   */
+  public void invalidate(Cache cache, Set<String> tables) {
+    getTransactionalCache(cache).invalidate(tables);
+  }
+
+  /**
+   * @since 3.5.14
+   */
+  public boolean isModified(Cache cache, Set<String> tables) {
+    return getTransactionalCache(cache).isModified(tables);
+  }
+
   public Object getObject(Cache cache, CacheKey key) {
     return getTransactionalCache(cache).getObject(key);
   }
 
+  /**
+   * @since 3.5.14
+   */
+  public Object getObject(Cache cache, CacheKey key, Set<String> tables) {
+    return getTransactionalCache(cache).getObject(key, tables);
+  }
+
   public void putObject(Cache cache, CacheKey key, Object value) {
     getTransactionalCache(cache).putObject(key, value);
   }
 
+  /**
+   * @since 3.5.14
+   */
+  public void putObject(Cache cache, CacheKey key, Object value, Set<String> tables) {
+    getTransactionalCache(cache).putObject(key, value, tables);
+  }
+
   public void commit() {
     for (TransactionalCache txCache : transactionalCaches.values()) {
       txCache.commit();
@@ -0,0 +1,606 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CacheValueCodec;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.reflection.DefaultReflectorFactory;
+import org.apache.ibatis.reflection.Reflector;
+import org.apache.ibatis.reflection.ReflectorFactory;
+import org.apache.ibatis.reflection.factory.DefaultObjectFactory;
+import org.apache.ibatis.reflection.factory.ObjectFactory;
+import org.apache.ibatis.reflection.invoker.AmbiguousMethodInvoker;
+import org.apache.ibatis.reflection.invoker.Invoker;
+
+/**
+ * Copies the values with a compact binary format. Read/write caches use it only if it is set as the
+ * {@code cacheValueCodec}, instead of the default {@link JavaSerializationCodec}.
+ * <p>
+ * Result objects are written property by property with the getters and setters found by {@link Reflector}, so they
+ * don't need to be {@link java.io.Serializable}. The common JDK value types, enums, {@code ArrayList},
+ * {@code LinkedList}, {@code HashSet}, {@code LinkedHashSet}, {@code HashMap} and {@code LinkedHashMap} have their own
+ * encoding, and an object referenced several times is written once.
+ * </p>
+ * <p>
+ * 只有满足以下条件的类按属性复制: 有无参构造方法, 每个非static非transient的字段都有同名的可读写属性, 并且没有自定义序列化的方法
+ * (writeReplace, readResolve, writeObject, readObject), 比如延迟加载的代理对象就不满足. 其他的对象使用 {@link JavaSerializationCodec}.
+ * </p>
+ *
+ * @since 3.5.14
+ */
+public class CompactCodec implements CacheValueCodec {
+
+  private static final int RAW = 0;
+  private static final int DEFLATED = 1;
+
+  // 值的类型标记
+  private static final int NULL = 0;
+  private static final int REFERENCE = 1;
+  private static final int STRING = 2;
+  private static final int INTEGER = 3;
+  private static final int LONG = 4;
+  private static final int SHORT = 5;
+  private static final int BYTE = 6;
+  private static final int BOOLEAN = 7;
+  private static final int CHARACTER = 8;
+  private static final int FLOAT = 9;
+  private static final int DOUBLE = 10;
+  private static final int BIG_DECIMAL = 11;
+  private static final int BIG_INTEGER = 12;
+  private static final int DATE = 13;
+  private static final int SQL_DATE = 14;
+  private static final int SQL_TIME = 15;
+  private static final int TIMESTAMP = 16;
+  private static final int LOCAL_DATE = 17;
+  private static final int LOCAL_TIME = 18;
+  private static final int LOCAL_DATE_TIME = 19;
+  private static final int INSTANT = 20;
+  private static final int BYTES = 21;
+  private static final int ENUM = 22;
+  private static final int COLLECTION = 23;
+  private static final int MAP = 24;
+  private static final int BEAN = 25;
+  private static final int SERIALIZED = 26;
+
+  private static final Set<Class<?>> COLLECTION_TYPES = Set.of(ArrayList.class, LinkedList.class, HashSet.class,
+      LinkedHashSet.class);
+  private static final Set<Class<?>> MAP_TYPES = Set.of(HashMap.class, LinkedHashMap.class);
+  private static final String[] SERIALIZATION_METHODS = { "writeReplace", "readResolve", "writeObject",
+      "readObject" };
+  private static final BeanLayout NOT_A_BEAN = new BeanLayout(new Invoker[0], new Invoker[0]);
+
+  private final ReflectorFactory reflectorFactory;
+  private final ObjectFactory objectFactory;
+  private final CacheValueCodec fallback = new JavaSerializationCodec();
+  private final ConcurrentMap<Class<?>, BeanLayout> layouts = new ConcurrentHashMap<>();
+  private volatile int compressionThreshold;
+
+  public CompactCodec() {
+    this(new DefaultReflectorFactory(), new DefaultObjectFactory());
+  }
+
+  public CompactCodec(ReflectorFactory reflectorFactory, ObjectFactory objectFactory) {
+    this.reflectorFactory = reflectorFactory;
+    this.objectFactory = objectFactory;
+  }
+
+  public ReflectorFactory getReflectorFactory() {
+    return reflectorFactory;
+  }
+
+  public ObjectFactory getObjectFactory() {
+    return objectFactory;
+  }
+
+  public int getCompressionThreshold() {
+    return compressionThreshold;
+  }
+
+  /**
+   * Compresses the encoded values of at least the given number of bytes, with the fastest level of {@link Deflater}.
+   *
+   * @param compressionThreshold
+   *          the size in bytes, 0 (default) to never compress
+   */
+  public void setCompressionThreshold(int compressionThreshold) {
+    this.compressionThreshold = compressionThreshold;
+  }
+
+  @Override
+  public byte[] encode(Object value) {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    try {
+      DataOutputStream out = new DataOutputStream(bos);
+      out.writeByte(RAW);
+      new Writer(out).write(value);
+      out.flush();
+    } catch (CacheException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new CacheException("Error encoding object.  Cause: " + e, e);
+    }
+    byte[] data = bos.toByteArray();
+    int threshold = compressionThreshold;
+    return threshold > 0 && data.length - 1 >= threshold ? deflate(data) : data;
+  }
+
+  @Override
+  public Object decode(byte[] data) {
+    try {
+      DataInputStream in;
+      if (data[0] == RAW) {
+        in = new DataInputStream(new ByteArrayInputStream(data, 1, data.length - 1));
+      } else if (data[0] == DEFLATED) {
+        in = new DataInputStream(new ByteArrayInputStream(inflate(data)));
+      } else {
+        throw new CacheException("Unknown format of cached value: " + data[0]);
+      }
+      return new Reader(in).read();
+    } catch (CacheException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new CacheException("Error decoding object.  Cause: " + e, e);
+    }
+  }
+
+  private static byte[] deflate(byte[] data) {
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try {
+      deflater.setInput(data, 1, data.length - 1);
+      deflater.finish();
+      ByteArrayOutputStream bos = new ByteArrayOutputStream(data.length / 2 + 16);
+      int length = data.length - 1;
+      bos.write(DEFLATED);
+      bos.write(length >>> 24);
+      bos.write(length >>> 16);
+      bos.write(length >>> 8);
+      bos.write(length);
+      byte[] buffer = new byte[4096];
+      while (!deflater.finished()) {
+        int count = deflater.deflate(buffer);
+        bos.write(buffer, 0, count);
+      }
+      byte[] compressed = bos.toByteArray();
+      // 压缩之后没有变小的话保存原始的数据
+      return compressed.length < data.length ? compressed : data;
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private static byte[] inflate(byte[] data) throws DataFormatException {
+    int length = (data[1] & 0xFF) << 24 | (data[2] & 0xFF) << 16 | (data[3] & 0xFF) << 8 | data[4] & 0xFF;
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(data, 5, data.length - 5);
+      byte[] result = new byte[length];
+      int offset = 0;
+      while (offset < length) {
+        int count = inflater.inflate(result, offset, length - offset);
+        if (count == 0 && (inflater.finished() || inflater.needsInput())) {
+          throw new CacheException("Cached value is truncated");
+        }
+        offset += count;
+      }
+      return result;
+    } finally {
+      inflater.end();
+    }
+  }
+
+  private BeanLayout layoutOf(Class<?> type) {
+    return layouts.computeIfAbsent(type, this::createLayout);
+  }
+
+  private BeanLayout createLayout(Class<?> type) {
+    if (type.isArray() || type.isInterface() || Modifier.isAbstract(type.getModifiers())
+        || Externalizable.class.isAssignableFrom(type) || type.getName().startsWith("java.")) {
+      return NOT_A_BEAN;
+    }
+    Reflector reflector = reflectorFactory.findForClass(type);
+    if (!reflector.hasDefaultConstructor()) {
+      return NOT_A_BEAN;
+    }
+    List<String> properties = new ArrayList<>();
+    for (Class<?> current = type; current != Object.class; current = current.getSuperclass()) {
+      for (Method method : current.getDeclaredMethods()) {
+        for (String name : SERIALIZATION_METHODS) {
+          if (name.equals(method.getName())) {
+            return NOT_A_BEAN;
+          }
+        }
+      }
+      for (Field field : current.getDeclaredFields()) {
+        int modifiers = field.getModifiers();
+        if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) {
+          continue;
+        }
+        String name = field.getName();
+        // 父类中有同名的字段时无法通过属性区分
+        if (properties.contains(name) || !reflector.hasGetter(name) || !reflector.hasSetter(name)) {
+          return NOT_A_BEAN;
+        }
+        properties.add(name);
+      }
+    }
+    Invoker[] getters = new Invoker[properties.size()];
+    Invoker[] setters = new Invoker[properties.size()];
+    for (int i = 0; i < getters.length; i++) {
+      getters[i] = reflector.getGetInvoker(properties.get(i));
+      setters[i] = reflector.getSetInvoker(properties.get(i));
+      if (getters[i] instanceof AmbiguousMethodInvoker || setters[i] instanceof AmbiguousMethodInvoker) {
+        return NOT_A_BEAN;
+      }
+    }
+    return new BeanLayout(getters, setters);
+  }
+
+  private static class BeanLayout {
+    private final Invoker[] getters;
+    private final Invoker[] setters;
+
+    BeanLayout(Invoker[] getters, Invoker[] setters) {
+      this.getters = getters;
+      this.setters = setters;
+    }
+  }
+
+  private class Writer {
+    private final DataOutputStream out;
+    private final Map<Object, Integer> references = new IdentityHashMap<>();
+    private final Map<Class<?>, Integer> classes = new HashMap<>();
+
+    Writer(DataOutputStream out) {
+      this.out = out;
+    }
+
+    void write(Object value) throws IOException, IllegalAccessException, InvocationTargetException {
+      if (value == null) {
+        out.writeByte(NULL);
+        return;
+      }
+      Class<?> type = value.getClass();
+      if (type == String.class) {
+        out.writeByte(STRING);
+        writeString((String) value);
+      } else if (type == Integer.class) {
+        out.writeByte(INTEGER);
+        out.writeInt((Integer) value);
+      } else if (type == Long.class) {
+        out.writeByte(LONG);
+        out.writeLong((Long) value);
+      } else if (type == Short.class) {
+        out.writeByte(SHORT);
+        out.writeShort((Short) value);
+      } else if (type == Byte.class) {
+        out.writeByte(BYTE);
+        out.writeByte((Byte) value);
+      } else if (type == Boolean.class) {
+        out.writeByte(BOOLEAN);
+        out.writeBoolean((Boolean) value);
+      } else if (type == Character.class) {
+        out.writeByte(CHARACTER);
+        out.writeChar((Character) value);
+      } else if (type == Float.class) {
+        out.writeByte(FLOAT);
+        out.writeFloat((Float) value);
+      } else if (type == Double.class) {
+        out.writeByte(DOUBLE);
+        out.writeDouble((Double) value);
+      } else if (type == BigDecimal.class) {
+        out.writeByte(BIG_DECIMAL);
+        out.writeInt(((BigDecimal) value).scale());
+        writeBytes(((BigDecimal) value).unscaledValue().toByteArray());
+      } else if (type == BigInteger.class) {
+        out.writeByte(BIG_INTEGER);
+        writeBytes(((BigInteger) value).toByteArray());
+      } else if (type == Date.class) {
+        out.writeByte(DATE);
+        out.writeLong(((Date) value).getTime());
+      } else if (type == java.sql.Date.class) {
+        out.writeByte(SQL_DATE);
+        out.writeLong(((Date) value).getTime());
+      } else if (type == Time.class) {
+        out.writeByte(SQL_TIME);
+        out.writeLong(((Date) value).getTime());
+      } else if (type == Timestamp.class) {
+        out.writeByte(TIMESTAMP);
+        out.writeLong(((Timestamp) value).getTime());
+        out.writeInt(((Timestamp) value).getNanos());
+      } else if (type == LocalDate.class) {
+        out.writeByte(LOCAL_DATE);
+        out.writeLong(((LocalDate) value).toEpochDay());
+      } else if (type == LocalTime.class) {
+        out.writeByte(LOCAL_TIME);
+        out.writeLong(((LocalTime) value).toNanoOfDay());
+      } else if (type == LocalDateTime.class) {
+        out.writeByte(LOCAL_DATE_TIME);
+        out.writeLong(((LocalDateTime) value).toLocalDate().toEpochDay());
+        out.writeLong(((LocalDateTime) value).toLocalTime().toNanoOfDay());
+      } else if (type == Instant.class) {
+        out.writeByte(INSTANT);
+        out.writeLong(((Instant) value).getEpochSecond());
+        out.writeInt(((Instant) value).getNano());
+      } else if (type == byte[].class) {
+        out.writeByte(BYTES);
+        writeBytes((byte[]) value);
+      } else if (value instanceof Enum) {
+        out.writeByte(ENUM);
+        writeClass(((Enum<?>) value).getDeclaringClass());
+        writeString(((Enum<?>) value).name());
+      } else if (!writeReference(value)) {
+        writeObject(type, value);
+      }
+    }
+
+    private void writeObject(Class<?> type, Object value)
+        throws IOException, IllegalAccessException, InvocationTargetException {
+      if (COLLECTION_TYPES.contains(type)) {
+        Collection<?> collection = (Collection<?>) value;
+        out.writeByte(COLLECTION);
+        writeClass(type);
+        writeLength(collection.size());
+        for (Object element : collection) {
+          write(element);
+        }
+        return;
+      }
+      if (MAP_TYPES.contains(type)) {
+        Map<?, ?> map = (Map<?, ?>) value;
+        out.writeByte(MAP);
+        writeClass(type);
+        writeLength(map.size());
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+          write(entry.getKey());
+          write(entry.getValue());
+        }
+        return;
+      }
+      BeanLayout layout = layoutOf(type);
+      if (layout == NOT_A_BEAN) {
+        out.writeByte(SERIALIZED);
+        writeBytes(fallback.encode(value));
+        return;
+      }
+      out.writeByte(BEAN);
+      writeClass(type);
+      for (Invoker getter : layout.getters) {
+        write(getter.invoke(value, null));
+      }
+    }
+
+    // 同一个对象只写一次, 保留共享的对象和循环引用
+    private boolean writeReference(Object value) throws IOException {
+      Integer index = references.get(value);
+      if (index != null) {
+        out.writeByte(REFERENCE);
+        writeLength(index);
+        return true;
+      }
+      references.put(value, references.size());
+      return false;
+    }
+
+    // 类名只在第一次出现的时候写入
+    private void writeClass(Class<?> type) throws IOException {
+      Integer index = classes.get(type);
+      if (index != null) {
+        writeLength(index);
+        return;
+      }
+      index = classes.size();
+      classes.put(type, index);
+      writeLength(index);
+      writeString(type.getName());
+    }
+
+    private void writeString(String value) throws IOException {
+      writeBytes(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void writeBytes(byte[] value) throws IOException {
+      writeLength(value.length);
+      out.write(value);
+    }
+
+    // 变长编码的非负整数, 每个字节7位
+    private void writeLength(int value) throws IOException {
+      while ((value & ~0x7F) != 0) {
+        out.writeByte(value & 0x7F | 0x80);
+        value >>>= 7;
+      }
+      out.writeByte(value);
+    }
+  }
+
+  private class Reader {
+    private final DataInputStream in;
+    private final List<Object> references = new ArrayList<>();
+    private final List<Class<?>> classes = new ArrayList<>();
+
+    Reader(DataInputStream in) {
+      this.in = in;
+    }
+
+    @SuppressWarnings("unchecked")
+    Object read() throws IOException, ReflectiveOperationException {
+      int tag = in.readUnsignedByte();
+      switch (tag) {
+        case NULL:
+          return null;
+        case REFERENCE:
+          return references.get(readLength());
+        case STRING:
+          return readString();
+        case INTEGER:
+          return in.readInt();
+        case LONG:
+          return in.readLong();
+        case SHORT:
+          return in.readShort();
+        case BYTE:
+          return in.readByte();
+        case BOOLEAN:
+          return in.readBoolean();
+        case CHARACTER:
+          return in.readChar();
+        case FLOAT:
+          return in.readFloat();
+        case DOUBLE:
+          return in.readDouble();
+        case BIG_DECIMAL: {
+          int scale = in.readInt();
+          return new BigDecimal(new BigInteger(readBytes()), scale);
+        }
+        case BIG_INTEGER:
+          return new BigInteger(readBytes());
+        case DATE:
+          return new Date(in.readLong());
+        case SQL_DATE:
+          return new java.sql.Date(in.readLong());
+        case SQL_TIME:
+          return new Time(in.readLong());
+        case TIMESTAMP: {
+          Timestamp timestamp = new Timestamp(in.readLong());
+          timestamp.setNanos(in.readInt());
+          return timestamp;
+        }
+        case LOCAL_DATE:
+          return LocalDate.ofEpochDay(in.readLong());
+        case LOCAL_TIME:
+          return LocalTime.ofNanoOfDay(in.readLong());
+        case LOCAL_DATE_TIME: {
+          LocalDate date = LocalDate.ofEpochDay(in.readLong());
+          return LocalDateTime.of(date, LocalTime.ofNanoOfDay(in.readLong()));
+        }
+        case INSTANT: {
+          long seconds = in.readLong();
+          return Instant.ofEpochSecond(seconds, in.readInt());
+        }
+        case BYTES:
+          return readBytes();
+        case ENUM: {
+          Class<?> type = readClass();
+          return Enum.valueOf(type.asSubclass(Enum.class), readString());
+        }
+        case COLLECTION: {
+          Collection<Object> collection = (Collection<Object>) objectFactory.create(readClass());
+          references.add(collection);
+          for (int i = readLength(); i > 0; i--) {
+            collection.add(read());
+          }
+          return collection;
+        }
+        case MAP: {
+          Map<Object, Object> map = (Map<Object, Object>) objectFactory.create(readClass());
+          references.add(map);
+          for (int i = readLength(); i > 0; i--) {
+            Object key = read();
+            map.put(key, read());
+          }
+          return map;
+        }
+        case BEAN: {
+          Class<?> type = readClass();
+          Object bean = objectFactory.create(type);
+          // 先登记再读取属性, 属性中可能引用这个对象本身
+          references.add(bean);
+          for (Invoker setter : layoutOf(type).setters) {
+            setter.invoke(bean, new Object[] { read() });
+          }
+          return bean;
+        }
+        case SERIALIZED: {
+          Object value = fallback.decode(readBytes());
+          references.add(value);
+          return value;
+        }
+        default:
+          throw new CacheException("Unknown type " + tag + " in cached value");
+      }
+    }
+
+    private Class<?> readClass() throws IOException, ClassNotFoundException {
+      int index = readLength();
+      if (index < classes.size()) {
+        return classes.get(index);
+      }
+      Class<?> type = Resources.classForName(readString());
+      classes.add(type);
+      return type;
+    }
+
+    private String readString() throws IOException {
+      return new String(readBytes(), StandardCharsets.UTF_8);
+    }
+
+    private byte[] readBytes() throws IOException {
+      byte[] value = new byte[readLength()];
+      in.readFully(value);
+      return value;
+    }
+
+    private int readLength() throws IOException {
+      int value = 0;
+      for (int shift = 0;; shift += 7) {
+        int b = in.readUnsignedByte();
+        value |= (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return value;
+        }
+      }
+    }
+  }
+
+}
@@ -0,0 +1,103 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.ConcurrentCache;
+
+/**
+ * FIFO (first in, first out) cache decorator that can be used without {@link SynchronizedCache}. Reads go straight to
+ * the decorated cache, writes keep the insertion order under a lock.
+ *
+ * @since 3.5.14
+ */
+public class ConcurrentFifoCache implements ConcurrentCache {
+
+  private final Cache delegate;
+  private final ReentrantLock lock = new ReentrantLock();
+  // 由lock保护
+  private final Deque<Object> keyList = new ArrayDeque<>();
+  private int size;
+
+  public ConcurrentFifoCache(Cache delegate) {
+    this.delegate = delegate;
+    this.size = 1024;
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  @Override
+  public long getWeight() {
+    return delegate.getWeight();
+  }
+
+  public void setSize(int size) {
+    lock.lock();
+    try {
+      this.size = size;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    lock.lock();
+    try {
+      keyList.addLast(key);
+      if (keyList.size() > size) {
+        delegate.removeObject(keyList.removeFirst());
+      }
+      delegate.putObject(key, value);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    return delegate.getObject(key);
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    return delegate.removeObject(key);
+  }
+
+  @Override
+  public void clear() {
+    lock.lock();
+    try {
+      delegate.clear();
+      keyList.clear();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+}
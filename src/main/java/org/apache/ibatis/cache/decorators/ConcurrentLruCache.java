@@ -0,0 +1,155 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.ConcurrentCache;
+
+/**
+ * Lru (least recently used) cache decorator that can be used without {@link SynchronizedCache}.
+ * <p>
+ * 和 {@link LruCache} 不同, 读取不会修改访问顺序, 只把key记录在 {@link ReadBuffer} 中, 之后在锁中批量更新. 所以淘汰的顺序是近似的LRU.
+ * 下面的 {@link ExpiringCache} 删除的到期条目也在锁中从访问顺序中删除, 不再占用容量.
+ * </p>
+ *
+ * @since 3.5.14
+ */
+public class ConcurrentLruCache implements ConcurrentCache, ExpiringCache.ExpirationListener {
+
+  private final Cache delegate;
+  private final ReentrantLock evictionLock = new ReentrantLock();
+  private final ReadBuffer readBuffer = new ReadBuffer();
+  private final Queue<Object> expiredKeys = new ConcurrentLinkedQueue<>();
+  // 由evictionLock保护
+  private final Map<Object, Object> keyMap = new LinkedHashMap<>(16, .75F, true);
+  private int size;
+
+  public ConcurrentLruCache(Cache delegate) {
+    this.delegate = delegate;
+    this.size = 1024;
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  @Override
+  public long getWeight() {
+    return delegate.getWeight();
+  }
+
+  public void setSize(int size) {
+    evictionLock.lock();
+    try {
+      this.size = size;
+      evict();
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    evictionLock.lock();
+    try {
+      delegate.putObject(key, value);
+      drainExpiredKeys();
+      drainReadBuffer();
+      keyMap.put(key, key);
+      evict();
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    Object value = delegate.getObject(key);
+    if ((value != null && readBuffer.record(key) || !expiredKeys.isEmpty()) && evictionLock.tryLock()) {
+      try {
+        drainExpiredKeys();
+        drainReadBuffer();
+      } finally {
+        evictionLock.unlock();
+      }
+    }
+    return value;
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    evictionLock.lock();
+    try {
+      keyMap.remove(key);
+      return delegate.removeObject(key);
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  @Override
+  public void clear() {
+    evictionLock.lock();
+    try {
+      delegate.clear();
+      keyMap.clear();
+      readBuffer.clear();
+      expiredKeys.clear();
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  @Override
+  public void expired(Object key) {
+    expiredKeys.add(key);
+  }
+
+  private void drainExpiredKeys() {
+    Object key;
+    while ((key = expiredKeys.poll()) != null) {
+      keyMap.remove(key);
+    }
+  }
+
+  private void drainReadBuffer() {
+    // 已经被删除的key不能再加回来
+    readBuffer.drainTo(keyMap::get);
+  }
+
+  private void evict() {
+    Iterator<Object> eldest = keyMap.keySet().iterator();
+    while (keyMap.size() > size && eldest.hasNext()) {
+      Object key = eldest.next();
+      eldest.remove();
+      delegate.removeObject(key);
+    }
+  }
+
+}
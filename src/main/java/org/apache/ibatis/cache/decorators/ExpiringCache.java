@@ -0,0 +1,371 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.cache.ConcurrentCache;
+
+/**
+ * Expires each entry on its own, a given time after it was put.
+ * <p>
+ * The time to live is the one of the {@link CacheKey}, or the default of the cache. Expired entries are misses, and are
+ * removed from the cache by a hierarchical timing wheel that advances when the cache is used, so that there is no
+ * background thread and no scan of the whole cache.
+ * </p>
+ * <p>
+ * {@link org.apache.ibatis.mapping.CacheBuilder} puts it right above the base cache, below the eviction decorator, so
+ * that the entries the eviction decorator removes leave the timing wheel too. The eviction decorators that keep their
+ * own bookkeeping of the keys are told about the entries this cache expires through an {@link ExpirationListener}.
+ * Without a default time to live, only the entries whose key has one are scheduled, and the others are put and read
+ * without taking the lock.
+ * </p>
+ * <p>
+ * 时间轮有5层, 每层64个桶, 桶的跨度分别是16毫秒, 约1秒, 约1分钟, 约70分钟和约3天. 条目按照剩余的时间放入能容纳它的最低一层, 时间轮前进的时候处理经过的桶:
+ * 到期的条目从缓存中删除, 没有到期的放入更低的层. 每个条目最多下降5次, 前进一次最多处理每层64个桶, 和经过了多长时间无关.
+ * </p>
+ *
+ * @since 3.5.14
+ *
+ * @see org.apache.ibatis.mapping.MappedStatement#getCacheTtl()
+ */
+public class ExpiringCache implements ConcurrentCache {
+
+  private static final int BUCKETS = 64;
+  private static final int[] SHIFTS = { 4, 10, 16, 22, 28 };
+
+  private final Cache delegate;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Node[][] wheel = new Node[SHIFTS.length][BUCKETS];
+  // 只在持有锁的时候修改
+  private final Map<Object, Node> nodes = new ConcurrentHashMap<>();
+  private final List<ExpirationListener> listeners = new CopyOnWriteArrayList<>();
+  private long time;
+  private volatile long timeToLive;
+
+  public ExpiringCache(Cache delegate) {
+    this.delegate = delegate;
+    for (Node[] buckets : wheel) {
+      for (int i = 0; i < BUCKETS; i++) {
+        buckets[i] = new Node(null);
+        buckets[i].reset();
+      }
+    }
+    this.time = System.currentTimeMillis();
+  }
+
+  public long getTimeToLive() {
+    return timeToLive;
+  }
+
+  /**
+   * Sets the time to live of the entries whose key does not have one.
+   *
+   * @param timeToLive
+   *          milliseconds, 0 if the entries never expire
+   */
+  public void setTimeToLive(long timeToLive) {
+    this.timeToLive = timeToLive;
+  }
+
+  /**
+   * Adds a listener told about each entry that expires, after it was removed from the decorated cache.
+   *
+   * @param listener
+   *          the listener, called while this cache holds its lock
+   */
+  public void addExpirationListener(ExpirationListener listener) {
+    listeners.add(listener);
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    tryAdvance(System.currentTimeMillis());
+    return delegate.getSize();
+  }
+
+  @Override
+  public long getWeight() {
+    tryAdvance(System.currentTimeMillis());
+    return delegate.getWeight();
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    long timeToLive = value == null ? 0 : timeToLiveOf(key);
+    if (timeToLive <= 0 && nodes.isEmpty()) {
+      // 没有会到期的条目
+      delegate.putObject(key, value);
+      return;
+    }
+    long now = System.currentTimeMillis();
+    // 时间轮删除条目之前没有放入新的值
+    lock.lock();
+    try {
+      advance(now);
+      if (timeToLive <= 0) {
+        unschedule(key);
+        delegate.putObject(key, value);
+      } else {
+        long expiresAt = timeToLive < Long.MAX_VALUE - now ? now + timeToLive : Long.MAX_VALUE;
+        schedule(key, expiresAt);
+        delegate.putObject(key, new Entry(value, expiresAt));
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    long now = System.currentTimeMillis();
+    tryAdvance(now);
+    Object value = delegate.getObject(key);
+    if (!(value instanceof Entry)) {
+      return value;
+    }
+    Entry entry = (Entry) value;
+    return entry.getExpiresAt() <= now ? null : entry.getValue();
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    lock.lock();
+    try {
+      unschedule(key);
+      Object value = delegate.removeObject(key);
+      return value instanceof Entry ? ((Entry) value).getValue() : value;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void clear() {
+    lock.lock();
+    try {
+      for (Node[] buckets : wheel) {
+        for (Node sentinel : buckets) {
+          sentinel.reset();
+        }
+      }
+      nodes.clear();
+      delegate.clear();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private long timeToLiveOf(Object key) {
+    Long keyTimeToLive = key instanceof CacheKey ? ((CacheKey) key).getTimeToLive() : null;
+    return keyTimeToLive == null ? timeToLive : keyTimeToLive;
+  }
+
+  private void schedule(Object key, long expiresAt) {
+    Node node = nodes.get(key);
+    if (node == null) {
+      node = new Node(key);
+      nodes.put(key, node);
+    } else {
+      node.unlink();
+    }
+    node.expiresAt = expiresAt;
+    bucketOf(expiresAt).link(node);
+  }
+
+  private void unschedule(Object key) {
+    Node node = nodes.remove(key);
+    if (node != null) {
+      node.unlink();
+    }
+  }
+
+  /**
+   * 找到能容纳剩余时间的最低一层
+   */
+  private Node bucketOf(long expiresAt) {
+    long duration = expiresAt - time;
+    int level = 0;
+    while (level < SHIFTS.length - 1 && duration >= 1L << SHIFTS[level + 1]) {
+      level++;
+    }
+    return wheel[level][(int) (expiresAt >>> SHIFTS[level]) & (BUCKETS - 1)];
+  }
+
+  private void tryAdvance(long now) {
+    // 读取的时候不等待, 其他线程正在维护的话由它处理
+    if (!nodes.isEmpty() && lock.tryLock()) {
+      try {
+        advance(now);
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  private void advance(long now) {
+    long previous = time;
+    if (now >>> SHIFTS[0] <= previous >>> SHIFTS[0]) {
+      return;
+    }
+    time = now;
+    for (int level = 0; level < SHIFTS.length; level++) {
+      long previousTicks = previous >>> SHIFTS[level];
+      long delta = (now >>> SHIFTS[level]) - previousTicks;
+      if (delta <= 0) {
+        // 更高的层也没有前进
+        break;
+      }
+      int start = (int) previousTicks & (BUCKETS - 1);
+      int end = start + (int) Math.min(delta + 1, BUCKETS);
+      for (int i = start; i < end; i++) {
+        expire(wheel[level][i & (BUCKETS - 1)], now);
+      }
+    }
+  }
+
+  private void expire(Node sentinel, long now) {
+    Node node = sentinel.next;
+    sentinel.reset();
+    while (node != sentinel) {
+      Node next = node.next;
+      node.prev = null;
+      node.next = null;
+      if (node.expiresAt <= now) {
+        nodes.remove(node.key);
+        delegate.removeObject(node.key);
+        for (ExpirationListener listener : listeners) {
+          listener.expired(node.key);
+        }
+      } else {
+        bucketOf(node.expiresAt).link(node);
+      }
+      node = next;
+    }
+  }
+
+  @Override
+  public int hashCode() {
+    return delegate.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return delegate.equals(obj);
+  }
+
+  /**
+   * Told about the entries that an {@link ExpiringCache} removes from the cache it decorates, so that a decorator above
+   * it can forget their keys.
+   * <p>
+   * 在ExpiringCache持有锁的时候调用, 而装饰器是持有自己的锁调用ExpiringCache的, 所以实现不能在这里等待装饰器的锁,
+   * 只记录key, 之后在自己的锁中处理.
+   * </p>
+   *
+   * @since 3.5.14
+   */
+  @FunctionalInterface
+  public interface ExpirationListener {
+
+    void expired(Object key);
+
+  }
+
+  /**
+   * 时间轮中的条目, 每个桶是以哨兵节点开头的双向循环链表
+   */
+  private static final class Node {
+    private final Object key;
+    private long expiresAt;
+    private Node prev;
+    private Node next;
+
+    Node(Object key) {
+      this.key = key;
+    }
+
+    /**
+     * 作为空的桶
+     */
+    void reset() {
+      prev = this;
+      next = this;
+    }
+
+    void link(Node node) {
+      node.prev = prev;
+      node.next = this;
+      prev.next = node;
+      prev = node;
+    }
+
+    void unlink() {
+      if (prev != null) {
+        prev.next = next;
+        next.prev = prev;
+        prev = null;
+        next = null;
+      }
+    }
+  }
+
+  /**
+   * A cached value with the time it expires. It is a plain bean so that any base cache can store it.
+   */
+  public static class Entry implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private Object value;
+    private long expiresAt;
+
+    public Entry() {
+    }
+
+    Entry(Object value, long expiresAt) {
+      this.value = value;
+      this.expiresAt = expiresAt;
+    }
+
+    public Object getValue() {
+      return value;
+    }
+
+    public void setValue(Object value) {
+      this.value = value;
+    }
+
+    public long getExpiresAt() {
+      return expiresAt;
+    }
+
+    public void setExpiresAt(long expiresAt) {
+      this.expiresAt = expiresAt;
+    }
+  }
+
+}
@@ -47,6 +47,11 @@ public class FifoCache implements Cache {
     return delegate.getSize();
   }
 
+  @Override
+  public long getWeight() {
+    return delegate.getWeight();
+  }
+
   public void setSize(int size) {
     this.size = size;
   }
@@ -0,0 +1,389 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.cache.TableAwareCache;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * Loads a missing entry once for all the concurrent callers, and reloads the entries nearing their expiration in the
+ * background. Unlike {@link BlockingCache}, the waiting callers are released as soon as the value is loaded, not when
+ * the loading session commits.
+ * <p>
+ * 没有命中的时候第一个调用方执行加载并把结果直接放入缓存, 同时读取同一个key的调用方等待它完成之后再从缓存读取, 加载失败的话由等待的调用方之一重新加载.
+ * 条目加载之后超过 refreshAfter 的第一次读取在后台重新加载, 完成之前继续返回旧值; 超过 expireAfter 之后当作没有命中. 加载期间缓存被清空或者有表失效的话,
+ * 结果不会留在缓存中.
+ * </p>
+ *
+ * @since 3.5.14
+ *
+ * @see org.apache.ibatis.mapping.CacheBuilder#loading(boolean)
+ */
+public class LoadingCache implements TableAwareCache {
+
+  private static final Log log = LogFactory.getLog(LoadingCache.class);
+
+  // 后台重新加载的线程第一次读取这个key的时候当作没有命中
+  private static final ThreadLocal<Object> refreshingKey = new ThreadLocal<>();
+
+  private final Cache delegate;
+  private final ConcurrentHashMap<Object, Load> loads = new ConcurrentHashMap<>();
+  private final Set<Object> refreshes = ConcurrentHashMap.newKeySet();
+  private final AtomicLong generation = new AtomicLong();
+  private long expireAfter;
+  private long refreshAfter;
+  private long timeout;
+
+  public LoadingCache(Cache delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  @Override
+  public long getWeight() {
+    return delegate.getWeight();
+  }
+
+  public Cache getDelegate() {
+    return delegate;
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    putObject(key, value, null);
+  }
+
+  @Override
+  public void putObject(Object key, Object value, Collection<String> tables) {
+    if (value == null) {
+      // TransactionalCache 提交的时候用来释放锁, 这里没有锁
+      return;
+    }
+    Entry entry = new Entry(value, System.currentTimeMillis());
+    if (tables != null && delegate instanceof TableAwareCache) {
+      ((TableAwareCache) delegate).putObject(key, entry, tables);
+    } else {
+      delegate.putObject(key, entry);
+    }
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    Object value = delegate.getObject(key);
+    if (!(value instanceof Entry)) {
+      return value;
+    }
+    Entry entry = (Entry) value;
+    return System.currentTimeMillis() - entry.getLoadedAt() >= expireAfterOf(key) ? null : entry.getValue();
+  }
+
+  /**
+   * Gets the value of the key, loading it if it is missing or expired. Only one of the concurrent callers of a key runs
+   * its loader, the others wait for it and then read the value it has put to the cache.
+   * <p>
+   * A value older than {@code refreshAfter} is returned as is, and a refresher is created in the calling thread and run
+   * once on the executor. The refresher must not depend on state the caller may change afterwards, so it should copy
+   * what it needs when it is created. It is expected to get the key again, e.g. by running the same query in another
+   * session: the first lookup of the key in the refreshing thread is a miss, so that the value is loaded again and put
+   * to the cache.
+   *
+   * @param <E>
+   *          the exception thrown by the loader
+   * @param key
+   *          the key
+   * @param tables
+   *          the tables read by the loader, {@code null} if unknown
+   * @param loader
+   *          loads the value in the calling thread
+   * @param executor
+   *          runs the refresher
+   * @param refresher
+   *          creates the task reloading the value
+   *
+   * @return the value, {@code null} if the loader returned {@code null}
+   *
+   * @throws E
+   *           if the loader failed
+   */
+  public <E extends Exception> Object getObject(Object key, Collection<String> tables, Loader<E> loader,
+      Executor executor, Supplier<? extends Runnable> refresher) throws E {
+    boolean refreshing = key.equals(refreshingKey.get());
+    if (refreshing) {
+      refreshingKey.remove();
+    }
+    long keyExpireAfter = expireAfterOf(key);
+    long keyRefreshAfter = refreshAfterOf(keyExpireAfter);
+    while (true) {
+      if (!refreshing) {
+        Object value = delegate.getObject(key);
+        if (value instanceof Entry) {
+          Entry entry = (Entry) value;
+          long age = System.currentTimeMillis() - entry.getLoadedAt();
+          if (age < keyExpireAfter) {
+            if (keyRefreshAfter > 0 && age >= keyRefreshAfter) {
+              refresh(key, executor, refresher);
+            }
+            return entry.getValue();
+          }
+        }
+      }
+      refreshing = false;
+      Load load = new Load();
+      Load current = loads.putIfAbsent(key, load);
+      if (current == null) {
+        return load(key, tables, loader, load);
+      }
+      if (current.owner == Thread.currentThread()) {
+        // 加载的过程中又读取了同一个key, 等待的话会死锁
+        return loader.load();
+      }
+      awaitLoad(key, current);
+    }
+  }
+
+  private <E extends Exception> Object load(Object key, Collection<String> tables, Loader<E> loader, Load load)
+      throws E {
+    long loadGeneration = generation.get();
+    try {
+      Object value = loader.load();
+      if (value != null) {
+        putObject(key, value, tables);
+        // 加载期间缓存被清空或者有表失效, 结果可能已经过期了
+        if (generation.get() != loadGeneration) {
+          delegate.removeObject(key);
+        }
+      }
+      return value;
+    } finally {
+      loads.remove(key, load);
+      load.countDown();
+    }
+  }
+
+  private void awaitLoad(Object key, Load load) {
+    try {
+      if (timeout > 0) {
+        if (!load.await(timeout, TimeUnit.MILLISECONDS)) {
+          throw new CacheException(
+              "Couldn't get the key " + key + " loaded in " + timeout + " at the cache " + delegate.getId());
+        }
+      } else {
+        load.await();
+      }
+    } catch (InterruptedException e) {
+      throw new CacheException("Got interrupted while waiting for the load of key " + key, e);
+    }
+  }
+
+  private void refresh(Object key, Executor executor, Supplier<? extends Runnable> refresher) {
+    if (!refreshes.add(key)) {
+      return;
+    }
+    try {
+      Runnable task = refresher.get();
+      executor.execute(() -> {
+        refreshingKey.set(key);
+        try {
+          task.run();
+        } catch (RuntimeException e) {
+          // 旧值到期之后会重新加载
+          log.warn("Refreshing the key " + key + " at the cache " + delegate.getId() + " failed: " + e);
+        } finally {
+          refreshingKey.remove();
+          refreshes.remove(key);
+        }
+      });
+    } catch (RuntimeException e) {
+      // 执行器拒绝了任务, 或者创建任务的时候读取参数失败
+      refreshes.remove(key);
+      log.warn("Refreshing the key " + key + " at the cache " + delegate.getId() + " couldn't be started: " + e);
+    }
+  }
+
+  /**
+   * key 指定的保留时间优先
+   */
+  private long expireAfterOf(Object key) {
+    Long timeToLive = key instanceof CacheKey ? ((CacheKey) key).getTimeToLive() : null;
+    long expire = timeToLive == null ? expireAfter : timeToLive;
+    return expire > 0 ? expire : Long.MAX_VALUE;
+  }
+
+  private long refreshAfterOf(long expire) {
+    long defaultExpire = expireAfter > 0 ? expireAfter : Long.MAX_VALUE;
+    if (expire == defaultExpire) {
+      return refreshAfter;
+    }
+    if (expire == Long.MAX_VALUE || defaultExpire == Long.MAX_VALUE) {
+      return 0;
+    }
+    // 和缓存默认的保留时间按同样的比例提前刷新
+    return (long) (expire * ((double) refreshAfter / expireAfter));
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    Object value = delegate.removeObject(key);
+    return value instanceof Entry ? ((Entry) value).getValue() : value;
+  }
+
+  @Override
+  public void clear() {
+    generation.incrementAndGet();
+    delegate.clear();
+  }
+
+  @Override
+  public void invalidate(Collection<String> tables) {
+    generation.incrementAndGet();
+    if (delegate instanceof TableAwareCache) {
+      ((TableAwareCache) delegate).invalidate(tables);
+    } else {
+      delegate.clear();
+    }
+  }
+
+  public long getExpireAfter() {
+    return expireAfter;
+  }
+
+  /**
+   * Sets the time after which an entry is a miss. The time to live of a {@link CacheKey} takes precedence, and then the
+   * entry is refreshed after the same fraction of it.
+   *
+   * @param expireAfter
+   *          milliseconds since the entry was loaded, 0 if the entries never expire
+   */
+  public void setExpireAfter(long expireAfter) {
+    this.expireAfter = expireAfter;
+  }
+
+  public long getRefreshAfter() {
+    return refreshAfter;
+  }
+
+  /**
+   * Sets the time after which an entry is reloaded in the background when it is read.
+   *
+   * @param refreshAfter
+   *          milliseconds since the entry was loaded, 0 if the entries are never refreshed
+   */
+  public void setRefreshAfter(long refreshAfter) {
+    this.refreshAfter = refreshAfter;
+  }
+
+  public long getTimeout() {
+    return timeout;
+  }
+
+  /**
+   * Sets how long a caller waits for the load of another caller, 0 to wait until it is done.
+   *
+   * @param timeout
+   *          the timeout in milliseconds
+   */
+  public void setTimeout(long timeout) {
+    this.timeout = timeout;
+  }
+
+  @Override
+  public int hashCode() {
+    return delegate.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return delegate.equals(obj);
+  }
+
+  /**
+   * Loads a value in the calling thread.
+   *
+   * @param <E>
+   *          the exception thrown by the loader
+   */
+  @FunctionalInterface
+  public interface Loader<E extends Exception> {
+    Object load() throws E;
+  }
+
+  private static final class Load extends CountDownLatch {
+    private final Thread owner = Thread.currentThread();
+
+    Load() {
+      super(1);
+    }
+  }
+
+  /**
+   * A cached value with the time it was loaded. It is a plain bean so that the read/write caches can copy it with any
+   * codec.
+   */
+  public static class Entry implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private Object value;
+    private long loadedAt;
+
+    public Entry() {
+    }
+
+    Entry(Object value, long loadedAt) {
+      this.value = value;
+      this.loadedAt = loadedAt;
+    }
+
+    public Object getValue() {
+      return value;
+    }
+
+    public void setValue(Object value) {
+      this.value = value;
+    }
+
+    public long getLoadedAt() {
+      return loadedAt;
+    }
+
+    public void setLoadedAt(long loadedAt) {
+      this.loadedAt = loadedAt;
+    }
+  }
+
+}
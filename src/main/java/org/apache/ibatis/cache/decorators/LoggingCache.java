@@ -15,19 +15,33 @@
  */
 package org.apache.ibatis.cache.decorators;
 
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.ConcurrentCache;
 import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.logging.LogFactory;
 
 /**
+ * Logs the hit ratio of the cache it decorates.
+ * <p>
+ * Thread safe over a thread safe delegate: the counters are volatile and updated atomically, so they can be shared by
+ * the threads reading a {@link ConcurrentCache} without a lock.
+ *
  * @author Clinton Begin
  */
-public class LoggingCache implements Cache {
+public class LoggingCache implements ConcurrentCache {
 
   private final Log log;
   private final Cache delegate;
-  protected int requests;
-  protected int hits;
+  protected volatile int requests;
+  protected volatile int hits;
+
+  // 计数器保持原来的int字段, 子类还可以直接读取
+  private static final AtomicIntegerFieldUpdater<LoggingCache> REQUESTS = AtomicIntegerFieldUpdater
+      .newUpdater(LoggingCache.class, "requests");
+  private static final AtomicIntegerFieldUpdater<LoggingCache> HITS = AtomicIntegerFieldUpdater
+      .newUpdater(LoggingCache.class, "hits");
 
   public LoggingCache(Cache delegate) {
     this.delegate = delegate;
@@ -44,6 +58,11 @@ public class LoggingCache implements Cache {
     return delegate.getSize();
   }
 
+  @Override
+  public long getWeight() {
+    return delegate.getWeight();
+  }
+
   @Override
   public void putObject(Object key, Object object) {
     delegate.putObject(key, object);
@@ -51,10 +70,10 @@ public class LoggingCache implements Cache {
 
   @Override
   public Object getObject(Object key) {
-    requests++;
+    REQUESTS.incrementAndGet(this);
     final Object value = delegate.getObject(key);
     if (value != null) {
-      hits++;
+      HITS.incrementAndGet(this);
     }
     if (log.isDebugEnabled()) {
       log.debug("Cache Hit Ratio [" + getId() + "]: " + getHitRatio());
@@ -0,0 +1,80 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * 记录缓存命中的key的有损缓冲区, 读取的时候不用加锁修改淘汰策略的数据结构, 之后由持有锁的线程批量处理.
+ * <p>
+ * 按线程分成多个条带, 减少多核下对同一个计数器的竞争. 槽位被覆盖的时候丢失一次访问记录, 只会让淘汰策略稍微不准确.
+ * </p>
+ *
+ * @since 3.5.14
+ */
+final class ReadBuffer {
+
+  private static final int STRIPES = Math.min(16,
+      Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() - 1)) << 1);
+  private static final int STRIPE_SIZE = 64;
+  private static final int STRIPE_MASK = STRIPE_SIZE - 1;
+  // 每个条带每记录这么多次建议处理一次
+  private static final int DRAIN_THRESHOLD_MASK = 16 - 1;
+
+  private final AtomicReferenceArray<Object> slots = new AtomicReferenceArray<>(STRIPES * STRIPE_SIZE);
+  private final AtomicLong[] counts = new AtomicLong[STRIPES];
+
+  ReadBuffer() {
+    for (int i = 0; i < STRIPES; i++) {
+      counts[i] = new AtomicLong();
+    }
+  }
+
+  /**
+   * @return true if the caller should try to drain the buffer
+   */
+  boolean record(Object key) {
+    // Thread.threadId() 从JDK 19开始才有, 使用线程的identity hash code
+    int stripe = (Thread.currentThread().hashCode() * 0x9E3779B9 >>> 16) & (STRIPES - 1);
+    long count = counts[stripe].getAndIncrement();
+    slots.lazySet(stripe * STRIPE_SIZE + (int) (count & STRIPE_MASK), key);
+    return (count & DRAIN_THRESHOLD_MASK) == DRAIN_THRESHOLD_MASK;
+  }
+
+  /**
+   * Hands the recorded keys to the consumer, oldest first within each stripe. The caller must hold the lock of the
+   * eviction policy.
+   */
+  void drainTo(Consumer<Object> consumer) {
+    for (int stripe = 0; stripe < STRIPES; stripe++) {
+      int start = (int) (counts[stripe].get() & STRIPE_MASK);
+      for (int i = 0; i < STRIPE_SIZE; i++) {
+        Object key = slots.getAndSet(stripe * STRIPE_SIZE + ((start + i) & STRIPE_MASK), null);
+        if (key != null) {
+          consumer.accept(key);
+        }
+      }
+    }
+  }
+
+  void clear() {
+    drainTo(key -> {
+    });
+  }
+
+}
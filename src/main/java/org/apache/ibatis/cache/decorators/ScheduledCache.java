@@ -18,15 +18,21 @@ package org.apache.ibatis.cache.decorators;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.ConcurrentCache;
 
 /**
+ * Clears the cache it decorates every {@code clearInterval} milliseconds.
+ * <p>
+ * Thread safe over a thread safe delegate: the timestamps are volatile, and when several threads find the cache stale
+ * at the same time each of them clears it, which only empties an already empty cache again.
+ *
  * @author Clinton Begin
  */
-public class ScheduledCache implements Cache {
+public class ScheduledCache implements ConcurrentCache {
 
   private final Cache delegate;
-  protected long clearInterval;
-  protected long lastClear;
+  protected volatile long clearInterval;
+  protected volatile long lastClear;
 
   public ScheduledCache(Cache delegate) {
     this.delegate = delegate;
@@ -49,6 +55,12 @@ public class ScheduledCache implements Cache {
     return delegate.getSize();
   }
 
+  @Override
+  public long getWeight() {
+    clearWhenStale();
+    return delegate.getWeight();
+  }
+
   @Override
   public void putObject(Object key, Object object) {
     clearWhenStale();
@@ -0,0 +1,187 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.TableAwareCache;
+
+/**
+ * Tags each entry with the tables it was read from, so that a write only invalidates the entries that read one of the
+ * tables it modified.
+ * <p>
+ * 每个条目保存写入时的版本号, 失效的时候记录每个表最后一次失效的版本号, 读取的时候条目的版本号不大于任何一个表的失效版本号就当作不存在,
+ * 过期的条目之后被覆盖或者淘汰. 不知道引用了哪些表的条目在任何一个表失效的时候都会过期.
+ * </p>
+ *
+ * @since 3.5.14
+ *
+ * @see org.apache.ibatis.session.CacheInvalidation#TABLE
+ */
+public class TableInvalidatingCache implements TableAwareCache {
+
+  private final Cache delegate;
+  private final AtomicLong clock = new AtomicLong();
+  private final ConcurrentHashMap<String, Long> invalidations = new ConcurrentHashMap<>();
+  private final LongAccumulator lastInvalidation = new LongAccumulator(Math::max, 0);
+
+  public TableInvalidatingCache(Cache delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  @Override
+  public long getWeight() {
+    return delegate.getWeight();
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    putObject(key, value, null);
+  }
+
+  @Override
+  public void putObject(Object key, Object value, Collection<String> tables) {
+    if (value == null) {
+      // TransactionalCache 用来释放 BlockingCache 的锁
+      delegate.putObject(key, null);
+      return;
+    }
+    delegate.putObject(key, new Entry(value, tables == null ? null : new ArrayList<>(tables), clock.incrementAndGet()));
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    Object value = delegate.getObject(key);
+    if (!(value instanceof Entry)) {
+      return value;
+    }
+    Entry entry = (Entry) value;
+    if (isStale(entry)) {
+      // BlockingCache 在取到值的时候已经释放了锁, 当作没有命中的时候需要重新加锁, 之后的 putObject 会释放
+      if (delegate instanceof BlockingCache) {
+        ((BlockingCache) delegate).acquireLock(key);
+      }
+      return null;
+    }
+    return entry.getValue();
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    Object value = delegate.removeObject(key);
+    return value instanceof Entry ? ((Entry) value).getValue() : value;
+  }
+
+  @Override
+  public void clear() {
+    delegate.clear();
+  }
+
+  @Override
+  public void invalidate(Collection<String> tables) {
+    long version = clock.incrementAndGet();
+    for (String table : tables) {
+      invalidations.merge(table, version, Math::max);
+    }
+    lastInvalidation.accumulate(version);
+  }
+
+  private boolean isStale(Entry entry) {
+    List<String> tables = entry.getTables();
+    if (tables == null) {
+      return entry.getVersion() <= lastInvalidation.get();
+    }
+    for (String table : tables) {
+      Long invalidation = invalidations.get(table);
+      if (invalidation != null && entry.getVersion() <= invalidation) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public int hashCode() {
+    return delegate.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return delegate.equals(obj);
+  }
+
+  /**
+   * A cached value with its tables. It is a plain bean so that the read/write caches can copy it with any codec.
+   */
+  public static class Entry implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private Object value;
+    private List<String> tables;
+    private long version;
+
+    public Entry() {
+    }
+
+    Entry(Object value, List<String> tables, long version) {
+      this.value = value;
+      this.tables = tables;
+      this.version = version;
+    }
+
+    public Object getValue() {
+      return value;
+    }
+
+    public void setValue(Object value) {
+      this.value = value;
+    }
+
+    public List<String> getTables() {
+      return tables;
+    }
+
+    public void setTables(List<String> tables) {
+      this.tables = tables;
+    }
+
+    public long getVersion() {
+      return version;
+    }
+
+    public void setVersion(long version) {
+      this.version = version;
+    }
+  }
+
+}
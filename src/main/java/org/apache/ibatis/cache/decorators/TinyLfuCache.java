@@ -0,0 +1,311 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.ConcurrentCache;
+
+/**
+ * W-TinyLFU cache decorator.
+ * <p>
+ * 新的key先进入一个很小的LRU窗口(1%), 从窗口淘汰的key和主区域(分段LRU, 80%为受保护区)中最久未使用的key比较, 保留
+ * {@link FrequencySketch} 估计的访问次数多的一个. 所以一次扫描大量只访问一次的key的查询不会把常用的key挤出缓存.
+ * </p>
+ * <p>
+ * 读取不修改淘汰策略的数据结构, 只把key记录在 {@link ReadBuffer} 中, 由之后拿到锁的线程批量处理. 写入和删除在锁中更新淘汰策略,
+ * 同时修改被装饰的缓存, 使两者保持一致. 被装饰的缓存是线程安全的话读取不需要加锁. 下面的 {@link ExpiringCache}
+ * 删除的到期条目同样先记录下来, 之后在锁中删除它们的节点.
+ * </p>
+ *
+ * @since 3.5.14
+ */
+public class TinyLfuCache implements ConcurrentCache, ExpiringCache.ExpirationListener {
+
+  private final Cache delegate;
+  private final ReentrantLock evictionLock = new ReentrantLock();
+  private final ReadBuffer readBuffer = new ReadBuffer();
+  private final Queue<Object> expiredKeys = new ConcurrentLinkedQueue<>();
+
+  // 以下字段由evictionLock保护
+  private final Map<Object, Node> nodes = new HashMap<>();
+  private final AccessOrderQueue window = new AccessOrderQueue();
+  private final AccessOrderQueue probation = new AccessOrderQueue();
+  private final AccessOrderQueue protectedQueue = new AccessOrderQueue();
+  private FrequencySketch sketch;
+  private int maximumSize;
+  private int windowMaximum;
+  private int protectedMaximum;
+
+  public TinyLfuCache(Cache delegate) {
+    this.delegate = delegate;
+    setSize(1024);
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  @Override
+  public long getWeight() {
+    return delegate.getWeight();
+  }
+
+  public void setSize(int size) {
+    evictionLock.lock();
+    try {
+      this.maximumSize = Math.max(size, 1);
+      this.windowMaximum = Math.max(1, maximumSize / 100);
+      this.protectedMaximum = (int) ((maximumSize - windowMaximum) * 0.8);
+      this.sketch = new FrequencySketch(maximumSize);
+      evict();
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    evictionLock.lock();
+    try {
+      delegate.putObject(key, value);
+      drainExpiredKeys();
+      drainReadBuffer();
+      Node node = nodes.get(key);
+      if (node == null) {
+        node = new Node(key);
+        nodes.put(key, node);
+        sketch.increment(key);
+        window.addLast(node);
+        evict();
+      } else {
+        onAccess(node);
+      }
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    Object value = delegate.getObject(key);
+    if (value != null && readBuffer.record(key) || !expiredKeys.isEmpty()) {
+      tryDrain();
+    }
+    return value;
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    evictionLock.lock();
+    try {
+      removeNode(key);
+      return delegate.removeObject(key);
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  @Override
+  public void clear() {
+    evictionLock.lock();
+    try {
+      delegate.clear();
+      nodes.clear();
+      window.clear();
+      probation.clear();
+      protectedQueue.clear();
+      sketch.clear();
+      readBuffer.clear();
+      expiredKeys.clear();
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  @Override
+  public void expired(Object key) {
+    expiredKeys.add(key);
+  }
+
+  private void tryDrain() {
+    if (evictionLock.tryLock()) {
+      try {
+        drainExpiredKeys();
+        drainReadBuffer();
+      } finally {
+        evictionLock.unlock();
+      }
+    }
+  }
+
+  private void drainExpiredKeys() {
+    Object key;
+    while ((key = expiredKeys.poll()) != null) {
+      removeNode(key);
+    }
+  }
+
+  private void removeNode(Object key) {
+    Node node = nodes.remove(key);
+    if (node != null) {
+      queueOf(node).remove(node);
+    }
+  }
+
+  private void drainReadBuffer() {
+    readBuffer.drainTo(key -> {
+      Node node = nodes.get(key);
+      if (node != null) {
+        onAccess(node);
+      }
+    });
+  }
+
+  private void onAccess(Node node) {
+    sketch.increment(node.key);
+    if (node.queue == Node.PROBATION) {
+      // 在主区域中再次被访问, 升级到受保护区
+      probation.remove(node);
+      node.queue = Node.PROTECTED;
+      protectedQueue.addLast(node);
+      if (protectedQueue.size > protectedMaximum) {
+        Node demoted = protectedQueue.removeFirst();
+        demoted.queue = Node.PROBATION;
+        probation.addLast(demoted);
+      }
+    } else {
+      queueOf(node).moveToLast(node);
+    }
+  }
+
+  private void evict() {
+    while (window.size > windowMaximum) {
+      Node candidate = window.removeFirst();
+      candidate.queue = Node.PROBATION;
+      probation.addLast(candidate);
+    }
+    while (nodes.size() > maximumSize) {
+      Node candidate = probation.last;
+      Node victim = probation.first != candidate ? probation.first : protectedQueue.first;
+      if (victim == null) {
+        victim = candidate != null ? candidate : window.first;
+      } else if (candidate != null && sketch.frequency(candidate.key) <= sketch.frequency(victim.key)) {
+        // 刚从窗口进入的key和主区域最久未使用的key中, 淘汰访问次数少的一个
+        victim = candidate;
+      }
+      queueOf(victim).remove(victim);
+      nodes.remove(victim.key);
+      delegate.removeObject(victim.key);
+    }
+  }
+
+  private AccessOrderQueue queueOf(Node node) {
+    switch (node.queue) {
+      case Node.WINDOW:
+        return window;
+      case Node.PROBATION:
+        return probation;
+      default:
+        return protectedQueue;
+    }
+  }
+
+  private static final class Node {
+
+    static final int WINDOW = 0;
+    static final int PROBATION = 1;
+    static final int PROTECTED = 2;
+
+    final Object key;
+    int queue = WINDOW;
+    Node prev;
+    Node next;
+
+    Node(Object key) {
+      this.key = key;
+    }
+  }
+
+  /**
+   * 双向链表, 头部是最久未使用的节点
+   */
+  private static final class AccessOrderQueue {
+
+    Node first;
+    Node last;
+    int size;
+
+    void addLast(Node node) {
+      node.prev = last;
+      node.next = null;
+      if (last == null) {
+        first = node;
+      } else {
+        last.next = node;
+      }
+      last = node;
+      size++;
+    }
+
+    Node removeFirst() {
+      Node node = first;
+      remove(node);
+      return node;
+    }
+
+    void remove(Node node) {
+      if (node.prev == null) {
+        first = node.next;
+      } else {
+        node.prev.next = node.next;
+      }
+      if (node.next == null) {
+        last = node.prev;
+      } else {
+        node.next.prev = node.prev;
+      }
+      node.prev = null;
+      node.next = null;
+      size--;
+    }
+
+    void moveToLast(Node node) {
+      if (node != last) {
+        remove(node);
+        addLast(node);
+      }
+    }
+
+    void clear() {
+      first = null;
+      last = null;
+      size = 0;
+    }
+  }
+
+}
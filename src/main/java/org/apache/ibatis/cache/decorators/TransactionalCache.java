@@ -15,12 +15,14 @@
  */
 package org.apache.ibatis.cache.decorators;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.TableAwareCache;
 import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.logging.LogFactory;
 
@@ -43,12 +45,17 @@ public class TransactionalCache implements Cache {
   private boolean clearOnCommit;
   private final Map<Object, Object> entriesToAddOnCommit;
   private final Set<Object> entriesMissedInCache;
+  // 按表失效的时候使用
+  private final Set<String> tablesToInvalidateOnCommit;
+  private final Map<Object, Set<String>> tablesOfEntriesToAdd;
 
   public TransactionalCache(Cache delegate) {
     this.delegate = delegate;
     this.clearOnCommit = false;
     this.entriesToAddOnCommit = new HashMap<>();
     this.entriesMissedInCache = new HashSet<>();
+    this.tablesToInvalidateOnCommit = new HashSet<>();
+    this.tablesOfEntriesToAdd = new HashMap<>();
   }
 
   @Override
@@ -61,15 +68,37 @@ public class TransactionalCache implements Cache {
     return delegate.getSize();
   }
 
+  @Override
+  public long getWeight() {
+    return delegate.getWeight();
+  }
+
   @Override
   public Object getObject(Object key) {
+    return getObject(key, null);
+  }
+
+  /**
+   * Gets an entry read from the given tables. The entry is ignored if one of the tables has been modified by this
+   * transaction.
+   *
+   * @param key
+   *          the key
+   * @param tables
+   *          the tables of the entry, {@code null} if unknown
+   *
+   * @return the value
+   *
+   * @since 3.5.14
+   */
+  public Object getObject(Object key, Set<String> tables) {
     // issue #116
     Object object = delegate.getObject(key);
     if (object == null) {
       entriesMissedInCache.add(key);
     }
     // issue #146
-    if (clearOnCommit) {
+    if (clearOnCommit || isInvalidated(tables)) {
       return null;
     }
     return object;
@@ -77,7 +106,28 @@ public class TransactionalCache implements Cache {
 
   @Override
   public void putObject(Object key, Object object) {
+    putObject(key, object, null);
+  }
+
+  /**
+   * Puts an entry read from the given tables.
+   *
+   * @param key
+   *          the key
+   * @param object
+   *          the value
+   * @param tables
+   *          the tables of the entry, {@code null} if unknown
+   *
+   * @since 3.5.14
+   */
+  public void putObject(Object key, Object object, Set<String> tables) {
     entriesToAddOnCommit.put(key, object);
+    if (tables == null) {
+      tablesOfEntriesToAdd.remove(key);
+    } else {
+      tablesOfEntriesToAdd.put(key, tables);
+    }
   }
 
   @Override
@@ -91,9 +141,48 @@ public class TransactionalCache implements Cache {
     entriesToAddOnCommit.clear();
   }
 
+  /**
+   * Invalidates the entries that read one of the given tables when the transaction is committed. The whole cache is
+   * cleared if it is not a {@link TableAwareCache}.
+   *
+   * @param tables
+   *          the modified tables
+   *
+   * @since 3.5.14
+   */
+  public void invalidate(Set<String> tables) {
+    if (!(delegate instanceof TableAwareCache)) {
+      clear();
+      return;
+    }
+    tablesToInvalidateOnCommit.addAll(tables);
+    // 之前查询到的结果已经过期了
+    entriesToAddOnCommit.keySet().removeIf(key -> {
+      Set<String> entryTables = tablesOfEntriesToAdd.get(key);
+      return entryTables == null || !Collections.disjoint(entryTables, tables);
+    });
+  }
+
+  /**
+   * Returns whether this transaction has cleared the cache, or invalidated one of the given tables. Until the
+   * transaction ends, the cache does not reflect what it sees for the entries read from those tables.
+   *
+   * @param tables
+   *          the tables of an entry, {@code null} if unknown
+   *
+   * @return {@code true} if the entry must not be read from or put to the cache directly
+   *
+   * @since 3.5.14
+   */
+  public boolean isModified(Set<String> tables) {
+    return clearOnCommit || isInvalidated(tables);
+  }
+
   public void commit() {
     if (clearOnCommit) {
       delegate.clear();
+    } else if (!tablesToInvalidateOnCommit.isEmpty()) {
+      ((TableAwareCache) delegate).invalidate(tablesToInvalidateOnCommit);
     }
     flushPendingEntries();
     reset();
@@ -108,11 +197,25 @@ public class TransactionalCache implements Cache {
     clearOnCommit = false;
     entriesToAddOnCommit.clear();
     entriesMissedInCache.clear();
+    tablesToInvalidateOnCommit.clear();
+    tablesOfEntriesToAdd.clear();
+  }
+
+  private boolean isInvalidated(Set<String> tables) {
+    if (tablesToInvalidateOnCommit.isEmpty()) {
+      return false;
+    }
+    return tables == null || !Collections.disjoint(tables, tablesToInvalidateOnCommit);
   }
 
   private void flushPendingEntries() {
     for (Map.Entry<Object, Object> entry : entriesToAddOnCommit.entrySet()) {
-      delegate.putObject(entry.getKey(), entry.getValue());
+      Set<String> tables = tablesOfEntriesToAdd.get(entry.getKey());
+      if (tables != null && delegate instanceof TableAwareCache) {
+        ((TableAwareCache) delegate).putObject(entry.getKey(), entry.getValue(), tables);
+      } else {
+        delegate.putObject(entry.getKey(), entry.getValue());
+      }
     }
     for (Object entry : entriesMissedInCache) {
       if (!entriesToAddOnCommit.containsKey(entry)) {
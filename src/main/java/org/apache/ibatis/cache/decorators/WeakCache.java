@@ -19,21 +19,28 @@ import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.util.Deque;
 import java.util.LinkedList;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.ConcurrentCache;
 
 /**
  * Weak Reference cache decorator.
  * <p>
  * Thanks to Dr. Heinz Kabutz for his guidance here.
+ * <p>
+ * Thread safe over a thread safe delegate: the hard links are guarded by their own lock and the reference queue is
+ * thread safe. A cleared weak reference can remove an entry another thread has just put under the same key, which only
+ * causes a cache miss, never a stale or wrong value.
  *
  * @author Clinton Begin
  */
-public class WeakCache implements Cache {
+public class WeakCache implements ConcurrentCache {
   private final Deque<Object> hardLinksToAvoidGarbageCollection;
   private final ReferenceQueue<Object> queueOfGarbageCollectedEntries;
   private final Cache delegate;
-  private int numberOfHardLinks;
+  private final ReentrantLock hardLinksLock = new ReentrantLock();
+  private volatile int numberOfHardLinks;
 
   public WeakCache(Cache delegate) {
     this.delegate = delegate;
@@ -73,11 +80,14 @@ public class WeakCache implements Cache {
       if (result == null) {
         delegate.removeObject(key);
       } else {
-        synchronized (hardLinksToAvoidGarbageCollection) {
+        hardLinksLock.lock();
+        try {
           hardLinksToAvoidGarbageCollection.addFirst(result);
           if (hardLinksToAvoidGarbageCollection.size() > numberOfHardLinks) {
             hardLinksToAvoidGarbageCollection.removeLast();
           }
+        } finally {
+          hardLinksLock.unlock();
         }
       }
     }
@@ -94,8 +104,11 @@ public class WeakCache implements Cache {
 
   @Override
   public void clear() {
-    synchronized (hardLinksToAvoidGarbageCollection) {
+    hardLinksLock.lock();
+    try {
       hardLinksToAvoidGarbageCollection.clear();
+    } finally {
+      hardLinksLock.unlock();
     }
     removeGarbageCollectedItems();
     delegate.clear();
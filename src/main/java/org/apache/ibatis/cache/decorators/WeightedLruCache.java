@@ -0,0 +1,200 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CacheWeigher;
+import org.apache.ibatis.cache.ConcurrentCache;
+import org.apache.ibatis.cache.weigher.RetainedSizeWeigher;
+
+/**
+ * Lru (least recently used) cache decorator bounded by the total weight of the entries instead of their number, 64 MB
+ * with the default {@link RetainedSizeWeigher}. Configure it with {@code <cache eviction="WEIGHTED">} and the
+ * {@code maxWeight} property; the {@code size} attribute is ignored.
+ * <p>
+ * 权重在放入的时候计算一次, 在锁外执行. 和 {@link ConcurrentLruCache} 一样, 读取只记录在 {@link ReadBuffer} 中, 淘汰的顺序是近似的LRU.
+ * 比上限还重的条目放入之后立即被淘汰. 下面的 {@link ExpiringCache} 删除的到期条目也在锁中从权重中减去.
+ * </p>
+ *
+ * @since 3.5.14
+ */
+public class WeightedLruCache implements ConcurrentCache, ExpiringCache.ExpirationListener {
+
+  private final Cache delegate;
+  private final ReentrantLock evictionLock = new ReentrantLock();
+  private final ReadBuffer readBuffer = new ReadBuffer();
+  private final Queue<Object> expiredKeys = new ConcurrentLinkedQueue<>();
+  // 由evictionLock保护, 按访问顺序保存每个key的权重
+  private final Map<Object, Long> weights = new LinkedHashMap<>(16, .75F, true);
+  private long maxWeight = 64L * 1024 * 1024;
+  private volatile long weight;
+  private volatile CacheWeigher weigher = new RetainedSizeWeigher();
+
+  public WeightedLruCache(Cache delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  @Override
+  public long getWeight() {
+    // 让下面的ExpiringCache删除到期的条目
+    delegate.getWeight();
+    if (!expiredKeys.isEmpty()) {
+      evictionLock.lock();
+      try {
+        drainExpiredKeys();
+      } finally {
+        evictionLock.unlock();
+      }
+    }
+    return weight;
+  }
+
+  public long getMaxWeight() {
+    return maxWeight;
+  }
+
+  public void setMaxWeight(long maxWeight) {
+    evictionLock.lock();
+    try {
+      this.maxWeight = maxWeight;
+      evict();
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  public CacheWeigher getWeigher() {
+    return weigher;
+  }
+
+  /**
+   * Sets the weigher of the entries put from now on.
+   */
+  public void setWeigher(CacheWeigher weigher) {
+    this.weigher = weigher;
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    long entryWeight = weigher.weigh(key, value);
+    if (entryWeight < 0) {
+      throw new CacheException("Negative weight " + entryWeight + " for the key " + key + " in cache " + getId());
+    }
+    evictionLock.lock();
+    try {
+      delegate.putObject(key, value);
+      // 在记录新的权重之前, 已经到期的同一个key不能减去新的权重
+      drainExpiredKeys();
+      drainReadBuffer();
+      Long previous = weights.put(key, entryWeight);
+      weight += previous == null ? entryWeight : entryWeight - previous;
+      evict();
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    Object value = delegate.getObject(key);
+    if ((value != null && readBuffer.record(key) || !expiredKeys.isEmpty()) && evictionLock.tryLock()) {
+      try {
+        drainExpiredKeys();
+        drainReadBuffer();
+      } finally {
+        evictionLock.unlock();
+      }
+    }
+    return value;
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    evictionLock.lock();
+    try {
+      Long removed = weights.remove(key);
+      if (removed != null) {
+        weight -= removed;
+      }
+      return delegate.removeObject(key);
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  @Override
+  public void clear() {
+    evictionLock.lock();
+    try {
+      delegate.clear();
+      weights.clear();
+      weight = 0;
+      readBuffer.clear();
+      expiredKeys.clear();
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  @Override
+  public void expired(Object key) {
+    expiredKeys.add(key);
+  }
+
+  private void drainExpiredKeys() {
+    Object key;
+    while ((key = expiredKeys.poll()) != null) {
+      Long removed = weights.remove(key);
+      if (removed != null) {
+        weight -= removed;
+      }
+    }
+  }
+
+  private void drainReadBuffer() {
+    // 已经被删除的key不能再加回来
+    readBuffer.drainTo(weights::get);
+  }
+
+  private void evict() {
+    Iterator<Map.Entry<Object, Long>> eldest = weights.entrySet().iterator();
+    while (weight > maxWeight && eldest.hasNext()) {
+      Map.Entry<Object, Long> entry = eldest.next();
+      eldest.remove();
+      weight -= entry.getValue();
+      delegate.removeObject(entry.getKey());
+    }
+  }
+
+}
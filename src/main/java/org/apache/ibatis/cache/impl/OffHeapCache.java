@@ -0,0 +1,402 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.impl;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CacheValueCodec;
+import org.apache.ibatis.cache.ConcurrentCache;
+import org.apache.ibatis.cache.codec.CompactCodec;
+import org.apache.ibatis.cache.decorators.SerializedCache;
+
+/**
+ * A cache that keeps serialized values outside of the Java heap, within a fixed budget of bytes.
+ * <p>
+ * Values are copied like {@link SerializedCache} does: each read decodes a new object, with a {@link CompactCodec} by
+ * default. Keys stay on the heap in an
+ * open addressing index, which holds for each entry its hash and the address of its bytes.
+ * </p>
+ * <p>
+ * 所有条目按写入顺序依次追加到多个直接内存的slab组成的环形空间中, 空间不足的时候从最早写入的条目开始淘汰, 直到放得下新的条目,
+ * 所以淘汰按照字节数而不是条目数. 覆盖或者删除的条目只从索引中删除, 占用的空间在环形空间的头部经过它的时候回收. 超过一个slab大小的值不会被缓存.
+ * </p>
+ * <p>
+ * This cache is thread safe, and is not decorated by {@link org.apache.ibatis.mapping.CacheBuilder}, like other custom
+ * caches: configure it with {@code <cache type="OFFHEAP">} and the {@code maxBytes} and {@code slabSize} properties.
+ * </p>
+ *
+ * @since 3.5.14
+ */
+public class OffHeapCache implements ConcurrentCache {
+
+  // 条目头部: 总长度(负数表示填充), key的hash
+  private static final int HEADER_SIZE = 8;
+  private static final Object TOMBSTONE = new Object();
+
+  private final String id;
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private long maxBytes = 64L * 1024 * 1024;
+  private int slabSize = 4 * 1024 * 1024;
+  private volatile CacheValueCodec valueCodec = new CompactCodec();
+
+  // 以下字段由lock保护
+  private ByteBuffer[] slabs;
+  private long capacity;
+  // 环形空间中的虚拟地址, 只增不减, 对capacity取模得到实际位置
+  private long head;
+  private long tail;
+
+  private Object[] keys;
+  private int[] hashes;
+  private long[] addresses;
+  private int count;
+  private int tombstones;
+
+  public OffHeapCache(String id) {
+    this.id = id;
+    resetIndex(16);
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  /**
+   * Sets the number of off-heap bytes the entries may use, rounded down to a multiple of the slab size.
+   */
+  public void setMaxBytes(long maxBytes) {
+    lock.writeLock().lock();
+    try {
+      this.maxBytes = maxBytes;
+      reset();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  public int getSlabSize() {
+    return slabSize;
+  }
+
+  /**
+   * Sets the size of each direct buffer, which is also the size of the largest entry that can be cached.
+   */
+  public void setSlabSize(int slabSize) {
+    lock.writeLock().lock();
+    try {
+      this.slabSize = slabSize;
+      reset();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  public CacheValueCodec getValueCodec() {
+    return valueCodec;
+  }
+
+  public void setValueCodec(CacheValueCodec valueCodec) {
+    this.valueCodec = valueCodec;
+  }
+
+  /**
+   * @return the number of off-heap bytes between the oldest and the newest entry, including removed entries that have
+   *         not been reclaimed yet
+   */
+  public long getUsedBytes() {
+    lock.readLock().lock();
+    try {
+      return tail - head;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public long getWeight() {
+    return getUsedBytes();
+  }
+
+  @Override
+  public String getId() {
+    return id;
+  }
+
+  @Override
+  public int getSize() {
+    lock.readLock().lock();
+    try {
+      return count;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    byte[] bytes = valueCodec.encode(value);
+    int hash = key.hashCode();
+    lock.writeLock().lock();
+    try {
+      int slot = findSlot(key, hash);
+      if (slot >= 0) {
+        removeSlot(slot);
+      }
+      int size = HEADER_SIZE + bytes.length;
+      if (size > slabSize) {
+        return;
+      }
+      long address = allocate(size);
+      ByteBuffer slab = slabOf(address);
+      int offset = offsetOf(address);
+      slab.putInt(offset, size);
+      slab.putInt(offset + 4, hash);
+      slab.put(offset + HEADER_SIZE, bytes);
+      insert(key, hash, address);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    byte[] bytes;
+    lock.readLock().lock();
+    try {
+      int slot = findSlot(key, key.hashCode());
+      if (slot < 0) {
+        return null;
+      }
+      bytes = read(addresses[slot]);
+    } finally {
+      lock.readLock().unlock();
+    }
+    // 在锁外解码
+    return valueCodec.decode(bytes);
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    byte[] bytes;
+    lock.writeLock().lock();
+    try {
+      int slot = findSlot(key, key.hashCode());
+      if (slot < 0) {
+        return null;
+      }
+      bytes = read(addresses[slot]);
+      removeSlot(slot);
+    } finally {
+      lock.writeLock().unlock();
+    }
+    return valueCodec.decode(bytes);
+  }
+
+  @Override
+  public void clear() {
+    lock.writeLock().lock();
+    try {
+      head = 0;
+      tail = 0;
+      resetIndex(16);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void reset() {
+    if (slabSize < HEADER_SIZE) {
+      throw new CacheException("The slab size of OffHeapCache " + id + " must be at least " + HEADER_SIZE + " bytes");
+    }
+    long slabCount = Math.max(1, maxBytes / slabSize);
+    if (slabCount > Integer.MAX_VALUE) {
+      throw new CacheException("Too many slabs for OffHeapCache " + id + ", increase the slab size");
+    }
+    // 直接内存在第一次写入的时候才分配
+    slabs = new ByteBuffer[(int) slabCount];
+    capacity = slabCount * slabSize;
+    head = 0;
+    tail = 0;
+    resetIndex(16);
+  }
+
+  private long allocate(int size) {
+    if (slabs == null) {
+      reset();
+    }
+    int remaining = slabSize - offsetOf(tail);
+    if (remaining < size) {
+      // 条目不跨越slab, 剩下的空间填充掉
+      makeRoom(remaining);
+      if (remaining >= HEADER_SIZE) {
+        slabOf(tail).putInt(offsetOf(tail), -remaining);
+      }
+      tail += remaining;
+    }
+    makeRoom(size);
+    long address = tail;
+    tail += size;
+    return address;
+  }
+
+  private void makeRoom(int size) {
+    while (capacity - (tail - head) < size) {
+      int remaining = slabSize - offsetOf(head);
+      if (remaining < HEADER_SIZE) {
+        head += remaining;
+        continue;
+      }
+      ByteBuffer slab = slabOf(head);
+      int length = slab.getInt(offsetOf(head));
+      if (length > 0) {
+        int slot = findAddress(slab.getInt(offsetOf(head) + 4), head);
+        if (slot >= 0) {
+          removeSlot(slot);
+        }
+        head += length;
+      } else {
+        head += -length;
+      }
+    }
+  }
+
+  private byte[] read(long address) {
+    ByteBuffer slab = slabOf(address);
+    int offset = offsetOf(address);
+    byte[] bytes = new byte[slab.getInt(offset) - HEADER_SIZE];
+    slab.get(offset + HEADER_SIZE, bytes);
+    return bytes;
+  }
+
+  private ByteBuffer slabOf(long address) {
+    int index = (int) ((address % capacity) / slabSize);
+    ByteBuffer slab = slabs[index];
+    if (slab == null) {
+      slab = ByteBuffer.allocateDirect(slabSize);
+      slabs[index] = slab;
+    }
+    return slab;
+  }
+
+  private int offsetOf(long address) {
+    return (int) (address % slabSize);
+  }
+
+  // ---- 开放寻址的索引, 线性探测, 删除的位置用TOMBSTONE标记 ----
+
+  private void resetIndex(int length) {
+    keys = new Object[length];
+    hashes = new int[length];
+    addresses = new long[length];
+    count = 0;
+    tombstones = 0;
+  }
+
+  private int findSlot(Object key, int hash) {
+    int mask = keys.length - 1;
+    for (int i = spread(hash) & mask;; i = (i + 1) & mask) {
+      Object k = keys[i];
+      if (k == null) {
+        return -1;
+      }
+      if (k != TOMBSTONE && hashes[i] == hash && k.equals(key)) {
+        return i;
+      }
+    }
+  }
+
+  private int findAddress(int hash, long address) {
+    int mask = keys.length - 1;
+    for (int i = spread(hash) & mask;; i = (i + 1) & mask) {
+      Object k = keys[i];
+      if (k == null) {
+        return -1;
+      }
+      if (k != TOMBSTONE && addresses[i] == address) {
+        return i;
+      }
+    }
+  }
+
+  private void insert(Object key, int hash, long address) {
+    if ((count + tombstones + 1) * 4 > keys.length * 3) {
+      rehash(count * 2 + 2 > keys.length ? keys.length * 2 : keys.length);
+    }
+    int mask = keys.length - 1;
+    int i = spread(hash) & mask;
+    while (keys[i] != null && keys[i] != TOMBSTONE) {
+      i = (i + 1) & mask;
+    }
+    if (keys[i] == TOMBSTONE) {
+      tombstones--;
+    }
+    keys[i] = key;
+    hashes[i] = hash;
+    addresses[i] = address;
+    count++;
+  }
+
+  private void removeSlot(int slot) {
+    keys[slot] = TOMBSTONE;
+    count--;
+    tombstones++;
+  }
+
+  private void rehash(int length) {
+    Object[] oldKeys = keys;
+    int[] oldHashes = hashes;
+    long[] oldAddresses = addresses;
+    resetIndex(length);
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != null && oldKeys[i] != TOMBSTONE) {
+        insert(oldKeys[i], oldHashes[i], oldAddresses[i]);
+      }
+    }
+  }
+
+  private static int spread(int hash) {
+    return (hash ^ (hash >>> 16)) * 0x9E3779B9;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (getId() == null) {
+      throw new CacheException("Cache instances require an ID.");
+    }
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof Cache)) {
+      return false;
+    }
+
+    Cache otherCache = (Cache) o;
+    return getId().equals(otherCache.getId());
+  }
+
+  @Override
+  public int hashCode() {
+    if (getId() == null) {
+      throw new CacheException("Cache instances require an ID.");
+    }
+    return getId().hashCode();
+  }
+
+}
@@ -0,0 +1,298 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.weigher;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.cache.CacheWeigher;
+import org.apache.ibatis.executor.loader.WriteReplaceInterface;
+import org.apache.ibatis.reflection.DefaultReflectorFactory;
+import org.apache.ibatis.reflection.Reflector;
+import org.apache.ibatis.reflection.ReflectorFactory;
+import org.apache.ibatis.reflection.invoker.AmbiguousMethodInvoker;
+import org.apache.ibatis.reflection.invoker.Invoker;
+
+/**
+ * Estimates the heap an entry retains, in bytes, for a 64-bit JVM with compressed references.
+ * <p>
+ * Result objects are measured from the fields of their class, and the objects they reference are reached through the
+ * getters found by {@link Reflector}. Strings, arrays, collections, maps and the common JDK value types have their own
+ * estimate. Only the first elements of a large collection are measured and the others are assumed to weigh the same,
+ * so weighing a list of 50,000 rows costs about as much as weighing a list of 16 rows.
+ * </p>
+ * <p>
+ * 同一个对象被引用多次只计算一次, 类和枚举是共享的, 不计算. 延迟加载的代理对象只计算自身的字段, 调用getter会触发加载. JDK的类不会深入到内部的字段.
+ * </p>
+ *
+ * @since 3.5.14
+ */
+public class RetainedSizeWeigher implements CacheWeigher {
+
+  private static final int OBJECT_HEADER = 12;
+  private static final int ARRAY_HEADER = 16;
+  private static final int REFERENCE = 4;
+  // 链表和树的节点, 比如 HashMap.Node, LinkedList.Node
+  private static final int NODE = 32;
+  // 条目在基础缓存和淘汰策略的map中各有一个节点
+  private static final int ENTRY_OVERHEAD = 2 * (NODE + REFERENCE) + 8;
+  private static final int SAMPLE_SIZE = 16;
+  private static final int MAX_DEPTH = 32;
+
+  private final ReflectorFactory reflectorFactory;
+  private final ConcurrentMap<Class<?>, ClassLayout> layouts = new ConcurrentHashMap<>();
+
+  public RetainedSizeWeigher() {
+    this(new DefaultReflectorFactory());
+  }
+
+  public RetainedSizeWeigher(ReflectorFactory reflectorFactory) {
+    this.reflectorFactory = reflectorFactory;
+  }
+
+  @Override
+  public long weigh(Object key, Object value) {
+    Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+    return ENTRY_OVERHEAD + keySizeOf(key, visited) + sizeOf(value, visited, 0);
+  }
+
+  private long keySizeOf(Object key, Set<Object> visited) {
+    if (key instanceof CacheKey) {
+      // 组成key的对象大多和语句或者参数共享, 比如SQL, 只计算key自身和它的列表
+      return layoutOf(key.getClass()).shallowSize + layoutOf(ArrayList.class).shallowSize
+          + arraySize(REFERENCE, ((CacheKey) key).getUpdateCount());
+    }
+    return sizeOf(key, visited, 0);
+  }
+
+  private long sizeOf(Object object, Set<Object> visited, int depth) {
+    if (object == null || object instanceof Class || object instanceof Enum || !visited.add(object)) {
+      return 0;
+    }
+    if (object instanceof String) {
+      return stringSize((String) object);
+    }
+    Class<?> type = object.getClass();
+    if (type.isArray()) {
+      return arraySizeOf(object, visited, depth);
+    }
+    if (object instanceof Collection) {
+      return collectionSizeOf((Collection<?>) object, visited, depth);
+    }
+    if (object instanceof Map) {
+      return mapSizeOf((Map<?, ?>) object, visited, depth);
+    }
+    ClassLayout layout = layoutOf(type);
+    long size = layout.shallowSize;
+    if (object instanceof BigInteger) {
+      size += magnitudeSize((BigInteger) object);
+    } else if (object instanceof BigDecimal) {
+      // 精度不超过18位的时候只用一个long保存
+      BigDecimal decimal = (BigDecimal) object;
+      if (decimal.precision() > 18) {
+        size += layoutOf(BigInteger.class).shallowSize + magnitudeSize(decimal.unscaledValue());
+      }
+    } else if (object instanceof LocalDateTime) {
+      size += layoutOf(LocalDate.class).shallowSize + layoutOf(LocalTime.class).shallowSize;
+    }
+    if (depth < MAX_DEPTH) {
+      for (Invoker getter : layout.getters) {
+        size += sizeOf(valueOf(getter, object), visited, depth + 1);
+      }
+    }
+    return size;
+  }
+
+  private long arraySizeOf(Object array, Set<Object> visited, int depth) {
+    Class<?> componentType = array.getClass().getComponentType();
+    int length = Array.getLength(array);
+    if (componentType.isPrimitive()) {
+      return arraySize(primitiveSize(componentType), length);
+    }
+    return arraySize(REFERENCE, length) + sampledSizeOf(Arrays.asList((Object[]) array), length, visited, depth);
+  }
+
+  private long collectionSizeOf(Collection<?> collection, Set<Object> visited, int depth) {
+    int count = collection.size();
+    long size = layoutOf(collection.getClass()).shallowSize;
+    if (collection instanceof RandomAccess) {
+      // 按容量等于元素个数估算
+      size += arraySize(REFERENCE, count);
+    } else if (collection instanceof HashSet) {
+      size += layoutOf(HashMap.class).shallowSize + arraySize(REFERENCE, tableSizeFor(count)) + (long) NODE * count;
+    } else {
+      size += (long) NODE * count;
+    }
+    return size + sampledSizeOf(collection, count, visited, depth);
+  }
+
+  private long mapSizeOf(Map<?, ?> map, Set<Object> visited, int depth) {
+    int count = map.size();
+    long size = layoutOf(map.getClass()).shallowSize + (long) NODE * count;
+    if (map instanceof HashMap) {
+      size += arraySize(REFERENCE, tableSizeFor(count));
+    }
+    if (depth >= MAX_DEPTH) {
+      return size;
+    }
+    long sampled = 0;
+    int measured = 0;
+    for (Map.Entry<?, ?> entry : map.entrySet()) {
+      if (measured == SAMPLE_SIZE) {
+        break;
+      }
+      sampled += sizeOf(entry.getKey(), visited, depth + 1) + sizeOf(entry.getValue(), visited, depth + 1);
+      measured++;
+    }
+    return size + extrapolate(sampled, measured, count);
+  }
+
+  private long sampledSizeOf(Iterable<?> elements, int count, Set<Object> visited, int depth) {
+    if (depth >= MAX_DEPTH) {
+      return 0;
+    }
+    long sampled = 0;
+    int measured = 0;
+    for (Object element : elements) {
+      if (measured == SAMPLE_SIZE) {
+        break;
+      }
+      sampled += sizeOf(element, visited, depth + 1);
+      measured++;
+    }
+    return extrapolate(sampled, measured, count);
+  }
+
+  private static long extrapolate(long sampled, int measured, int count) {
+    return measured == 0 ? 0 : sampled * count / measured;
+  }
+
+  private static Object valueOf(Invoker getter, Object object) {
+    try {
+      return getter.invoke(object, null);
+    } catch (Exception e) {
+      // 估算失败的属性不计算, 不影响放入缓存
+      return null;
+    }
+  }
+
+  private ClassLayout layoutOf(Class<?> type) {
+    return layouts.computeIfAbsent(type, this::createLayout);
+  }
+
+  private ClassLayout createLayout(Class<?> type) {
+    String name = type.getName();
+    boolean followGetters = !name.startsWith("java.") && !name.startsWith("javax.")
+        && !WriteReplaceInterface.class.isAssignableFrom(type);
+    Reflector reflector = followGetters ? reflectorFactory.findForClass(type) : null;
+    long size = OBJECT_HEADER;
+    List<Invoker> getters = new ArrayList<>();
+    for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+      for (Field field : current.getDeclaredFields()) {
+        if (Modifier.isStatic(field.getModifiers())) {
+          continue;
+        }
+        Class<?> fieldType = field.getType();
+        if (fieldType.isPrimitive()) {
+          size += primitiveSize(fieldType);
+        } else {
+          size += REFERENCE;
+          if (reflector != null && reflector.hasGetter(field.getName())) {
+            Invoker getter = reflector.getGetInvoker(field.getName());
+            if (!(getter instanceof AmbiguousMethodInvoker)) {
+              getters.add(getter);
+            }
+          }
+        }
+      }
+    }
+    return new ClassLayout(align(size), getters.toArray(new Invoker[0]));
+  }
+
+  private long stringSize(String string) {
+    int length = string.length();
+    int bytesPerChar = 1;
+    for (int i = 0; i < length; i++) {
+      if (string.charAt(i) > 0xFF) {
+        bytesPerChar = 2;
+        break;
+      }
+    }
+    // 只有Latin-1字符的时候每个字符占一个字节
+    return layoutOf(String.class).shallowSize + arraySize(bytesPerChar, length);
+  }
+
+  private static long magnitudeSize(BigInteger value) {
+    return arraySize(Integer.BYTES, value.bitLength() / Integer.SIZE + 1);
+  }
+
+  private static long tableSizeFor(int count) {
+    long needed = (long) Math.ceil(count / 0.75);
+    return needed <= 16 ? 16 : Long.highestOneBit(needed - 1) << 1;
+  }
+
+  private static int primitiveSize(Class<?> type) {
+    if (type == long.class || type == double.class) {
+      return 8;
+    }
+    if (type == int.class || type == float.class) {
+      return 4;
+    }
+    if (type == short.class || type == char.class) {
+      return 2;
+    }
+    return 1;
+  }
+
+  private static long arraySize(int elementSize, long length) {
+    return align(ARRAY_HEADER + elementSize * length);
+  }
+
+  private static long align(long size) {
+    return (size + 7) & ~7L;
+  }
+
+  private static class ClassLayout {
+    private final long shallowSize;
+    private final Invoker[] getters;
+
+    ClassLayout(long shallowSize, Invoker[] getters) {
+      this.shallowSize = shallowSize;
+      this.getters = getters;
+    }
+  }
+
+}
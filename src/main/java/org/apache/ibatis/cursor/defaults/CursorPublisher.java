@@ -0,0 +1,180 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cursor.defaults;
+
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.defaults.DefaultSqlSessionFactory;
+
+/**
+ * A {@link Flow.Publisher} that streams the rows of a {@link Cursor}, used for mapper methods returning
+ * {@code Flow.Publisher<T>}.
+ * <p>
+ * Each subscription opens its own {@link SqlSession} on the environment's data source when the first rows are
+ * requested, and closes it on completion, error or cancel. Rows are read only as far as the subscriber has requested
+ * them, on {@link Configuration#getAsyncExecutor()}, so no thread is held while the subscriber has no demand. How many
+ * rows the driver fetches per round trip is still decided by the {@code fetchSize} of the statement.
+ *
+ * @param <T>
+ *          the type of the rows
+ *
+ * @since 3.5.14
+ */
+public class CursorPublisher<T> implements Flow.Publisher<T> {
+
+  private final Configuration configuration;
+  private final Function<SqlSession, Cursor<T>> query;
+
+  public CursorPublisher(Configuration configuration, Function<SqlSession, Cursor<T>> query) {
+    this.configuration = configuration;
+    this.query = query;
+  }
+
+  @Override
+  public void subscribe(Flow.Subscriber<? super T> subscriber) {
+    Objects.requireNonNull(subscriber, "subscriber");
+    subscriber.onSubscribe(new CursorSubscription<>(subscriber, configuration, query));
+  }
+
+  private static final class CursorSubscription<T> implements Flow.Subscription, Runnable {
+
+    private final Flow.Subscriber<? super T> subscriber;
+    private final Configuration configuration;
+    private final Function<SqlSession, Cursor<T>> query;
+    private final Executor executor;
+
+    private final AtomicLong requested = new AtomicLong();
+    // 大于0的时候已经有一个任务在读取, 保证同一时间只有一个线程使用会话和游标
+    private final AtomicInteger wip = new AtomicInteger();
+    private volatile boolean cancelled;
+    private volatile IllegalArgumentException invalidRequest;
+
+    // 以下字段只在run中访问
+    private SqlSession session;
+    private Iterator<T> iterator;
+    private boolean terminated;
+
+    CursorSubscription(Flow.Subscriber<? super T> subscriber, Configuration configuration,
+        Function<SqlSession, Cursor<T>> query) {
+      this.subscriber = subscriber;
+      this.configuration = configuration;
+      this.query = query;
+      this.executor = configuration.getAsyncExecutor();
+    }
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        invalidRequest = new IllegalArgumentException("Requested " + n + " rows, the demand must be positive (§3.9)");
+      } else {
+        requested.getAndAccumulate(n, (current, add) -> current + add < 0 ? Long.MAX_VALUE : current + add);
+      }
+      schedule();
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+      // 会话在读取的线程中关闭, 不和正在进行的读取冲突
+      schedule();
+    }
+
+    private void schedule() {
+      if (wip.getAndIncrement() == 0) {
+        executor.execute(this);
+      }
+    }
+
+    @Override
+    public void run() {
+      int missed = 1;
+      do {
+        drain();
+        missed = wip.addAndGet(-missed);
+      } while (missed != 0);
+    }
+
+    private void drain() {
+      if (terminated) {
+        return;
+      }
+      if (cancelled) {
+        terminate();
+        return;
+      }
+      if (invalidRequest != null) {
+        terminate();
+        subscriber.onError(invalidRequest);
+        return;
+      }
+      try {
+        if (iterator == null) {
+          session = new DefaultSqlSessionFactory(configuration).openSession();
+          iterator = query.apply(session).iterator();
+        }
+        long demand = requested.get();
+        long emitted = 0;
+        while (emitted != demand) {
+          if (cancelled) {
+            terminate();
+            return;
+          }
+          if (!iterator.hasNext()) {
+            break;
+          }
+          subscriber.onNext(iterator.next());
+          emitted++;
+        }
+        if (!cancelled && !iterator.hasNext()) {
+          terminate();
+          subscriber.onComplete();
+          return;
+        }
+        if (demand != Long.MAX_VALUE) {
+          requested.addAndGet(-emitted);
+        }
+      } catch (Throwable t) {
+        boolean wasCancelled = cancelled;
+        terminate();
+        if (!wasCancelled) {
+          subscriber.onError(t);
+        }
+      }
+    }
+
+    private void terminate() {
+      terminated = true;
+      cancelled = true;
+      SqlSession opened = session;
+      session = null;
+      if (opened != null) {
+        // 关闭会话的同时关闭游标
+        opened.close();
+      }
+    }
+
+  }
+
+}
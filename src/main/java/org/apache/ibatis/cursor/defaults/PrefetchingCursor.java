@@ -0,0 +1,252 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cursor.defaults;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.cursor.Cursor;
+
+/**
+ * A Cursor that reads ahead of the caller. A reader task fetches and maps the rows of a {@link DefaultCursor} into a
+ * bounded buffer, so the round trips to the database overlap with the processing of the rows already returned.
+ * <p>
+ * 读取任务在 {@link org.apache.ibatis.session.Configuration#getAsyncExecutor()} 中执行, 和调用方并发使用同一个会话,
+ * 所以游标打开期间不要用这个会话执行其他语句. 关闭游标的时候会等待读取任务停止, 之后结果集才会被关闭.
+ * This implementation is not thread safe, like {@link DefaultCursor}.
+ * </p>
+ *
+ * @param <T>
+ *          the type of the rows
+ *
+ * @since 3.5.14
+ *
+ * @see org.apache.ibatis.session.Configuration#setCursorPrefetchSize(int)
+ */
+public class PrefetchingCursor<T> implements Cursor<T> {
+
+  // 缓冲区中不能放null, 用来代替值为null的行
+  private static final Object NULL_ROW = new Object();
+  private static final Object END = new Object();
+  // 读取任务等待缓冲区空间的时候, 每隔这么久检查一次游标是否已经关闭
+  private static final long OFFER_TIMEOUT_MILLIS = 10;
+
+  private final DefaultCursor<T> delegate;
+  private final Executor executor;
+  private final BlockingQueue<Object> buffer;
+  private final CountDownLatch readerStopped = new CountDownLatch(1);
+  private final int startIndex;
+
+  private volatile boolean closed;
+  private boolean started;
+  private boolean consumed;
+  private boolean iteratorRetrieved;
+  private final CursorIterator cursorIterator = new CursorIterator();
+
+  public PrefetchingCursor(DefaultCursor<T> delegate, int prefetchSize, Executor executor) {
+    this.delegate = delegate;
+    this.executor = executor;
+    this.buffer = new ArrayBlockingQueue<>(prefetchSize);
+    // 还没有开始读取的时候是 offset - 1
+    this.startIndex = delegate.getCurrentIndex() + 1;
+  }
+
+  @Override
+  public boolean isOpen() {
+    return started && !closed;
+  }
+
+  @Override
+  public boolean isConsumed() {
+    return consumed;
+  }
+
+  @Override
+  public int getCurrentIndex() {
+    return startIndex + cursorIterator.iteratorIndex;
+  }
+
+  @Override
+  public Iterator<T> iterator() {
+    if (iteratorRetrieved) {
+      throw new IllegalStateException("Cannot open more than one iterator on a Cursor");
+    }
+    if (closed) {
+      throw new IllegalStateException("A Cursor is already closed.");
+    }
+    iteratorRetrieved = true;
+    return cursorIterator;
+  }
+
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    if (!started) {
+      delegate.close();
+      return;
+    }
+    // 读取任务最多在OFFER_TIMEOUT_MILLIS之后看到closed, 不再往缓冲区中放
+    buffer.clear();
+    try {
+      readerStopped.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    buffer.clear();
+  }
+
+  private void read() {
+    try {
+      Iterator<T> rows = delegate.iterator();
+      while (!closed && rows.hasNext()) {
+        T row = rows.next();
+        if (!publish(row == null ? NULL_ROW : row)) {
+          return;
+        }
+      }
+      publish(END);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (Throwable t) {
+      try {
+        publish(new Failure(t));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    } finally {
+      delegate.close();
+      readerStopped.countDown();
+    }
+  }
+
+  /**
+   * 缓冲区满的时候等调用方取走之前的行. 不能用put一直等待, 游标关闭之后调用方不会再取.
+   *
+   * @return false if the cursor was closed before there was room in the buffer
+   */
+  private boolean publish(Object element) throws InterruptedException {
+    while (!closed) {
+      if (buffer.offer(element, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private Object take() {
+    if (!started) {
+      started = true;
+      try {
+        executor.execute(this::read);
+      } catch (RuntimeException | Error e) {
+        // 读取任务没有启动, 由这里关闭结果集, 之后的close()不能等待它
+        closed = true;
+        try {
+          delegate.close();
+        } finally {
+          readerStopped.countDown();
+        }
+        throw e;
+      }
+    }
+    try {
+      return buffer.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for the next row", e);
+    }
+  }
+
+  private static final class Failure {
+
+    private final Throwable cause;
+
+    Failure(Throwable cause) {
+      this.cause = cause;
+    }
+
+    RuntimeException rethrow() {
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new RuntimeException(cause);
+    }
+  }
+
+  protected class CursorIterator implements Iterator<T> {
+
+    /**
+     * Holder for the next row, taken from the buffer by hasNext().
+     */
+    Object object;
+
+    /**
+     * Index of objects returned using next(), and as such, visible to users.
+     */
+    int iteratorIndex = -1;
+
+    @Override
+    public boolean hasNext() {
+      if (object == null) {
+        if (closed || consumed) {
+          return false;
+        }
+        object = take();
+        if (object instanceof Failure) {
+          Failure failure = (Failure) object;
+          object = null;
+          close();
+          throw failure.rethrow();
+        }
+        if (object == END) {
+          object = null;
+          consumed = true;
+          close();
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      Object next = object;
+      object = null;
+      iteratorIndex++;
+      return next == NULL_ROW ? null : (T) next;
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException("Cannot remove element from Cursor");
+    }
+  }
+}
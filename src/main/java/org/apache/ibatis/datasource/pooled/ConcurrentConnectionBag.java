@@ -0,0 +1,174 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ibatis.reflection.Jdk;
+
+/**
+ * {@link PoolMode#CONCURRENT} 模式下保存连接的容器, 借出和归还都不需要加锁.
+ * <p>
+ * 每个连接的状态保存在 {@link PooledConnection} 上, 通过CAS修改: 谁把状态从 NOT_IN_USE 改成 IN_USE, 连接就归谁.
+ * 借出的时候先尝试当前线程上一次使用的连接, 然后扫描全部连接; 都没有的话由调用方决定是创建新的连接还是等待.
+ * 等待的线程通过 SynchronousQueue 直接接收其他线程归还的连接, 没有接收到的话定期重新扫描, 所以归还的线程只需要尝试有限的次数.
+ * </p>
+ *
+ * @since 3.5.14
+ */
+class ConcurrentConnectionBag {
+
+  // 归还的线程尝试直接交给等待者的次数
+  private static final int HANDOFF_ATTEMPTS = 16;
+  // 等待的线程重新扫描全部连接的间隔
+  private static final long RESCAN_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+  // 连接的数量不多(不超过 poolMaximumActiveConnections), 并且只在创建和关闭连接的时候修改, 遍历不需要加锁
+  private final CopyOnWriteArrayList<PooledConnection> connections = new CopyOnWriteArrayList<>();
+  // 当前线程上一次使用的连接, 弱引用, 避免连接被关闭之后还被线程持有
+  private final ThreadLocal<WeakReference<PooledConnection>> lastUsed = new ThreadLocal<>();
+  private final SynchronousQueue<PooledConnection> handoffQueue = new SynchronousQueue<>(true);
+  private final AtomicInteger waiters = new AtomicInteger();
+
+  /**
+   * 不等待的借出: 当前线程上一次使用的连接, 或者任意一个空闲的连接
+   *
+   * @return 没有空闲的连接的话返回null
+   */
+  PooledConnection borrow() {
+    WeakReference<PooledConnection> reference = Jdk.isVirtual(Thread.currentThread()) ? null : lastUsed.get();
+    if (reference != null) {
+      PooledConnection conn = reference.get();
+      if (conn != null && conn.compareAndSetState(PooledConnection.STATE_NOT_IN_USE, PooledConnection.STATE_IN_USE)) {
+        return conn;
+      }
+    }
+    for (PooledConnection conn : connections) {
+      if (conn.compareAndSetState(PooledConnection.STATE_NOT_IN_USE, PooledConnection.STATE_IN_USE)) {
+        return conn;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * 等待其他线程归还连接
+   *
+   * @return 超时的话返回null
+   */
+  PooledConnection poll(long timeout, TimeUnit unit) throws InterruptedException {
+    waiters.incrementAndGet();
+    try {
+      // 登记为等待者之后再扫描一次, 避免错过在登记之前归还(没有交给等待者)的连接
+      PooledConnection conn = borrow();
+      if (conn != null) {
+        return conn;
+      }
+      long remaining = unit.toNanos(timeout);
+      final long deadline = System.nanoTime() + remaining;
+      while (remaining > 0) {
+        conn = handoffQueue.poll(Math.min(remaining, RESCAN_NANOS), TimeUnit.NANOSECONDS);
+        if (conn != null
+            && conn.compareAndSetState(PooledConnection.STATE_NOT_IN_USE, PooledConnection.STATE_IN_USE)) {
+          return conn;
+        }
+        // 归还的线程没有等到我们进入poll就放弃了交接的话, 连接还是空闲的
+        conn = borrow();
+        if (conn != null) {
+          return conn;
+        }
+        remaining = deadline - System.nanoTime();
+      }
+      return null;
+    } finally {
+      waiters.decrementAndGet();
+    }
+  }
+
+  /**
+   * 归还连接, 调用方必须持有该连接(状态为 IN_USE 或者 RESERVED)
+   */
+  void requite(PooledConnection conn) {
+    conn.setState(PooledConnection.STATE_NOT_IN_USE);
+    handoff(conn);
+    // 虚拟线程一般只使用一次, 记录上一次使用的连接没有意义, 还会给每个虚拟线程创建 ThreadLocalMap
+    if (!Jdk.isVirtual(Thread.currentThread())) {
+      WeakReference<PooledConnection> reference = lastUsed.get();
+      // 大多数线程每次都归还同一个连接, 这时复用已有的弱引用
+      if (reference == null || reference.get() != conn) {
+        lastUsed.set(new WeakReference<>(conn));
+      }
+    }
+  }
+
+  /**
+   * 添加一个新创建的连接, 状态由调用方设置
+   */
+  void add(PooledConnection conn) {
+    connections.add(conn);
+    handoff(conn);
+  }
+
+  /**
+   * 有线程在等待的话把空闲的连接直接交给它. 只尝试有限的次数: 还没有进入poll的等待者会在重新扫描的时候借到这个连接
+   */
+  private void handoff(PooledConnection conn) {
+    for (int i = 0; i < HANDOFF_ATTEMPTS && waiters.get() > 0; i++) {
+      if (conn.getState() != PooledConnection.STATE_NOT_IN_USE || handoffQueue.offer(conn)) {
+        return;
+      }
+      // 让出CPU, 让等待者有机会进入poll
+      Thread.yield();
+    }
+  }
+
+  /**
+   * 移除连接, 之后任何线程都不能再借出该连接
+   *
+   * @return 连接是否还在容器里面
+   */
+  boolean remove(PooledConnection conn) {
+    conn.setState(PooledConnection.STATE_REMOVED);
+    return connections.remove(conn);
+  }
+
+  /**
+   * 全部连接的快照, 可以在遍历的时候修改
+   */
+  List<PooledConnection> values() {
+    return connections;
+  }
+
+  int count(int state) {
+    int count = 0;
+    for (PooledConnection conn : connections) {
+      if (conn.getState() == state) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  int size() {
+    return connections.size();
+  }
+
+}
@@ -0,0 +1,30 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+/**
+ * 没有设置 {@link PoolMetricsTracker} 的时候使用, 忽略所有事件.
+ *
+ * @since 3.5.14
+ */
+final class NoOpPoolMetricsTracker implements PoolMetricsTracker {
+
+  static final NoOpPoolMetricsTracker INSTANCE = new NoOpPoolMetricsTracker();
+
+  private NoOpPoolMetricsTracker() {
+  }
+
+}
@@ -0,0 +1,99 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * 连接池的后台维护任务, 定时调用 {@link PooledDataSource#housekeep()}.
+ * <p>
+ * 所有连接池共用一个守护线程, 同一时间只会执行一个维护任务. 任务只持有连接池的弱引用, 连接池被回收之后任务自动取消.
+ * </p>
+ *
+ * @since 3.5.14
+ */
+final class PoolHousekeeper implements Runnable {
+
+  private static final Log log = LogFactory.getLog(PoolHousekeeper.class);
+
+  private static final ScheduledThreadPoolExecutor EXECUTOR;
+
+  static {
+    EXECUTOR = new ScheduledThreadPoolExecutor(1, runnable -> {
+      Thread thread = new Thread(runnable, "mybatis-pool-housekeeper");
+      thread.setDaemon(true);
+      return thread;
+    });
+    EXECUTOR.setRemoveOnCancelPolicy(true);
+  }
+
+  private final WeakReference<PooledDataSource> dataSource;
+  private volatile ScheduledFuture<?> future;
+
+  private PoolHousekeeper(PooledDataSource dataSource) {
+    this.dataSource = new WeakReference<>(dataSource);
+  }
+
+  static PoolHousekeeper start(PooledDataSource dataSource, long period) {
+    PoolHousekeeper housekeeper = new PoolHousekeeper(dataSource);
+    // 第一次立即执行, 尽早补充空闲的连接
+    housekeeper.future = EXECUTOR.scheduleWithFixedDelay(housekeeper, 0, period, TimeUnit.MILLISECONDS);
+    return housekeeper;
+  }
+
+  private boolean isCancelled() {
+    ScheduledFuture<?> f = future;
+    return f != null && f.isDone();
+  }
+
+  /**
+   * 在维护线程中立即执行一次, 比如连接池被重置之后
+   */
+  void runNow() {
+    if (!isCancelled()) {
+      EXECUTOR.execute(this);
+    }
+  }
+
+  void cancel() {
+    ScheduledFuture<?> f = future;
+    if (f != null) {
+      f.cancel(false);
+    }
+  }
+
+  @Override
+  public void run() {
+    PooledDataSource pooledDataSource = dataSource.get();
+    if (pooledDataSource == null || isCancelled()) {
+      cancel();
+      return;
+    }
+    try {
+      pooledDataSource.housekeep();
+    } catch (Throwable t) {
+      // 抛出异常的话之后的定时任务都不会再执行
+      log.warn("Pool housekeeping failed: " + t);
+    }
+  }
+
+}
@@ -0,0 +1,74 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+/**
+ * Receives the events of a {@link PooledDataSource}, e.g. to publish them to a metrics library.
+ * <p>
+ * 回调在借出和归还连接的线程中执行, 不持有连接池的锁, 实现类需要是线程安全的, 并且应该尽快返回. {@link PoolState} 自己的统计数据不受影响.
+ * </p>
+ *
+ * @since 3.5.14
+ *
+ * @see PooledDataSource#setPoolMetricsTracker(PoolMetricsTracker)
+ */
+public interface PoolMetricsTracker {
+
+  /**
+   * A connection has been checked out.
+   *
+   * @param requestNanos
+   *          the time the caller spent in {@code getConnection}, including the wait
+   */
+  default void connectionAcquired(long requestNanos) {
+  }
+
+  /**
+   * A caller waited for a connection to be returned.
+   *
+   * @param waitNanos
+   *          the time of the wait
+   */
+  default void connectionWaited(long waitNanos) {
+  }
+
+  /**
+   * A connection has been returned to the pool, or claimed back because it was overdue.
+   *
+   * @param checkoutNanos
+   *          the time the connection was checked out
+   * @param overdue
+   *          true if the connection has been claimed back by the pool
+   */
+  default void connectionReleased(long checkoutNanos, boolean overdue) {
+  }
+
+  /**
+   * A new physical connection has been opened.
+   *
+   * @param creationNanos
+   *          the time it took to open the connection
+   */
+  default void connectionCreated(long creationNanos) {
+  }
+
+  /**
+   * A connection failed the validation and has been discarded.
+   */
+  default void badConnectionDiscarded() {
+  }
+
+}
@@ -0,0 +1,35 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+/**
+ * 连接池的实现方式, 通过 {@link PooledDataSource#setPoolMode(String)} 设置.
+ *
+ * @since 3.5.14
+ */
+public enum PoolMode {
+
+  /**
+   * 原来的实现, 借出和归还都在同一把锁里面完成.
+   */
+  CLASSIC,
+
+  /**
+   * 无锁的实现: 优先使用当前线程上一次使用的连接, 连接的状态通过CAS修改, 等待的线程直接接收归还的连接. 适合并发很高的场景.
+   */
+  CONCURRENT
+
+}
@@ -17,73 +17,280 @@ package org.apache.ibatis.datasource.pooled;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
+ * 连接池的统计数据. 计数器使用 {@link LongAdder}, 读取和更新都不需要持有连接池的锁. 请求和等待的时间按纳秒累加, 读取平均值的时候才换算成毫秒,
+ * 不到1毫秒的请求也会计入. 原来的 protected 字段在每次更新之后从 {@link LongAdder} 刷新(单位还是毫秒), 子类可以继续读取, 并发更新的时候可能暂时落后.
+ *
  * @author Clinton Begin
  */
-public class PoolState {
+public class PoolState implements PoolStateMXBean {
+
+  private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
 
   protected PooledDataSource dataSource;
 
   protected final List<PooledConnection> idleConnections = new ArrayList<>();
   protected final List<PooledConnection> activeConnections = new ArrayList<>();
-  protected long requestCount;
-  protected long accumulatedRequestTime;
-  protected long accumulatedCheckoutTime;
-  protected long claimedOverdueConnectionCount;
-  protected long accumulatedCheckoutTimeOfOverdueConnections;
-  protected long accumulatedWaitTime;
-  protected long hadToWaitCount;
-  protected long badConnectionCount;
+  /**
+   * @deprecated Kept up to date for subclasses, use {@link #getRequestCount()}.
+   */
+  @Deprecated
+  protected volatile long requestCount;
+  /**
+   * @deprecated Kept up to date for subclasses, use {@link #getAverageRequestTime()}.
+   */
+  @Deprecated
+  protected volatile long accumulatedRequestTime;
+  /**
+   * @deprecated Kept up to date for subclasses, use {@link #getAverageCheckoutTime()}.
+   */
+  @Deprecated
+  protected volatile long accumulatedCheckoutTime;
+  /**
+   * @deprecated Kept up to date for subclasses, use {@link #getClaimedOverdueConnectionCount()}.
+   */
+  @Deprecated
+  protected volatile long claimedOverdueConnectionCount;
+  /**
+   * @deprecated Kept up to date for subclasses, use {@link #getAverageOverdueCheckoutTime()}.
+   */
+  @Deprecated
+  protected volatile long accumulatedCheckoutTimeOfOverdueConnections;
+  /**
+   * @deprecated Kept up to date for subclasses, use {@link #getAverageWaitTime()}.
+   */
+  @Deprecated
+  protected volatile long accumulatedWaitTime;
+  /**
+   * @deprecated Kept up to date for subclasses, use {@link #getHadToWaitCount()}.
+   */
+  @Deprecated
+  protected volatile long hadToWaitCount;
+  /**
+   * @deprecated Kept up to date for subclasses, use {@link #getBadConnectionCount()}.
+   */
+  @Deprecated
+  protected volatile long badConnectionCount;
+
+  private final LongAdder requests = new LongAdder();
+  private final LongAdder accumulatedRequestNanos = new LongAdder();
+  private final LongAdder accumulatedCheckoutMillis = new LongAdder();
+  private final LongAdder claimedOverdueConnections = new LongAdder();
+  private final LongAdder accumulatedOverdueCheckoutMillis = new LongAdder();
+  private final LongAdder accumulatedWaitNanos = new LongAdder();
+  private final LongAdder hadToWaits = new LongAdder();
+  private final LongAdder badConnections = new LongAdder();
+  protected final LatencyHistogram waitTimeHistogram = new LatencyHistogram();
+  protected final LatencyHistogram checkoutTimeHistogram = new LatencyHistogram();
+  protected final LatencyHistogram connectionCreationTimeHistogram = new LatencyHistogram();
 
   public PoolState(PooledDataSource dataSource) {
     this.dataSource = dataSource;
   }
 
-  public synchronized long getRequestCount() {
-    return requestCount;
+  @Override
+  public long getRequestCount() {
+    return requests.sum();
   }
 
-  public synchronized long getAverageRequestTime() {
-    return requestCount == 0 ? 0 : accumulatedRequestTime / requestCount;
+  @Override
+  public long getAverageRequestTime() {
+    long count = requests.sum();
+    return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(accumulatedRequestNanos.sum() / count);
   }
 
-  public synchronized long getAverageWaitTime() {
-    return hadToWaitCount == 0 ? 0 : accumulatedWaitTime / hadToWaitCount;
-
+  @Override
+  public long getAverageWaitTime() {
+    long count = hadToWaits.sum();
+    return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(accumulatedWaitNanos.sum() / count);
   }
 
-  public synchronized long getHadToWaitCount() {
-    return hadToWaitCount;
+  @Override
+  public long getHadToWaitCount() {
+    return hadToWaits.sum();
   }
 
-  public synchronized long getBadConnectionCount() {
-    return badConnectionCount;
+  @Override
+  public long getBadConnectionCount() {
+    return badConnections.sum();
   }
 
-  public synchronized long getClaimedOverdueConnectionCount() {
-    return claimedOverdueConnectionCount;
+  @Override
+  public long getClaimedOverdueConnectionCount() {
+    return claimedOverdueConnections.sum();
   }
 
-  public synchronized long getAverageOverdueCheckoutTime() {
-    return claimedOverdueConnectionCount == 0 ? 0
-        : accumulatedCheckoutTimeOfOverdueConnections / claimedOverdueConnectionCount;
+  public long getAverageOverdueCheckoutTime() {
+    long count = claimedOverdueConnections.sum();
+    return count == 0 ? 0 : accumulatedOverdueCheckoutMillis.sum() / count;
   }
 
-  public synchronized long getAverageCheckoutTime() {
-    return requestCount == 0 ? 0 : accumulatedCheckoutTime / requestCount;
+  @Override
+  public long getAverageCheckoutTime() {
+    long count = requests.sum();
+    return count == 0 ? 0 : accumulatedCheckoutMillis.sum() / count;
   }
 
-  public synchronized int getIdleConnectionCount() {
+  @Override
+  public int getIdleConnectionCount() {
+    if (dataSource.isConcurrentPoolMode()) {
+      return dataSource.bag.count(PooledConnection.STATE_NOT_IN_USE);
+    }
+    // 不加锁读取, 只是一个近似值
     return idleConnections.size();
   }
 
-  public synchronized int getActiveConnectionCount() {
+  @Override
+  public int getActiveConnectionCount() {
+    if (dataSource.isConcurrentPoolMode()) {
+      return dataSource.bag.count(PooledConnection.STATE_IN_USE);
+    }
     return activeConnections.size();
   }
 
+  /**
+   * @since 3.5.14
+   */
+  @Override
+  public long getCreatedConnectionCount() {
+    return connectionCreationTimeHistogram.getCount();
+  }
+
+  /**
+   * Gets the distribution of the time callers waited for a connection to be returned, one record per call to
+   * {@code getConnection} that had to wait, however many times it waited.
+   *
+   * @since 3.5.14
+   */
+  public LatencyHistogram getWaitTimeHistogram() {
+    return waitTimeHistogram;
+  }
+
+  /**
+   * Gets the distribution of the time connections were checked out.
+   *
+   * @since 3.5.14
+   */
+  public LatencyHistogram getCheckoutTimeHistogram() {
+    return checkoutTimeHistogram;
+  }
+
+  /**
+   * Gets the distribution of the time it took to open new connections.
+   *
+   * @since 3.5.14
+   */
+  public LatencyHistogram getConnectionCreationTimeHistogram() {
+    return connectionCreationTimeHistogram;
+  }
+
+  @Override
+  public double getWaitTimeP50() {
+    return percentileMillis(waitTimeHistogram, 50);
+  }
+
+  @Override
+  public double getWaitTimeP99() {
+    return percentileMillis(waitTimeHistogram, 99);
+  }
+
+  @Override
+  public double getWaitTimeP999() {
+    return percentileMillis(waitTimeHistogram, 99.9);
+  }
+
+  @Override
+  public double getCheckoutTimeP50() {
+    return percentileMillis(checkoutTimeHistogram, 50);
+  }
+
+  @Override
+  public double getCheckoutTimeP99() {
+    return percentileMillis(checkoutTimeHistogram, 99);
+  }
+
+  @Override
+  public double getCheckoutTimeP999() {
+    return percentileMillis(checkoutTimeHistogram, 99.9);
+  }
+
+  @Override
+  public double getConnectionCreationTimeP50() {
+    return percentileMillis(connectionCreationTimeHistogram, 50);
+  }
+
+  @Override
+  public double getConnectionCreationTimeP99() {
+    return percentileMillis(connectionCreationTimeHistogram, 99);
+  }
+
+  @Override
+  public double getConnectionCreationTimeP999() {
+    return percentileMillis(connectionCreationTimeHistogram, 99.9);
+  }
+
+  private static double percentileMillis(LatencyHistogram histogram, double percentile) {
+    return histogram.getValueAtPercentile(percentile) / NANOS_PER_MILLI;
+  }
+
+  // 下面的方法在借出和归还连接的时候调用, 同时通知 PoolMetricsTracker
+
+  void recordRequest(long requestNanos) {
+    requests.increment();
+    accumulatedRequestNanos.add(requestNanos);
+    requestCount = requests.sum();
+    accumulatedRequestTime = TimeUnit.NANOSECONDS.toMillis(accumulatedRequestNanos.sum());
+    dataSource.getPoolMetricsTracker().connectionAcquired(requestNanos);
+  }
+
+  void recordCheckoutTime(long checkoutTime) {
+    accumulatedCheckoutMillis.add(checkoutTime);
+    accumulatedCheckoutTime = accumulatedCheckoutMillis.sum();
+    long checkoutNanos = TimeUnit.MILLISECONDS.toNanos(checkoutTime);
+    checkoutTimeHistogram.record(checkoutNanos);
+    dataSource.getPoolMetricsTracker().connectionReleased(checkoutNanos, false);
+  }
+
+  void recordClaimedOverdue(long checkoutTime) {
+    claimedOverdueConnections.increment();
+    accumulatedOverdueCheckoutMillis.add(checkoutTime);
+    accumulatedCheckoutMillis.add(checkoutTime);
+    claimedOverdueConnectionCount = claimedOverdueConnections.sum();
+    accumulatedCheckoutTimeOfOverdueConnections = accumulatedOverdueCheckoutMillis.sum();
+    accumulatedCheckoutTime = accumulatedCheckoutMillis.sum();
+    long checkoutNanos = TimeUnit.MILLISECONDS.toNanos(checkoutTime);
+    checkoutTimeHistogram.record(checkoutNanos);
+    dataSource.getPoolMetricsTracker().connectionReleased(checkoutNanos, true);
+  }
+
+  void recordHadToWait() {
+    hadToWaits.increment();
+    hadToWaitCount = hadToWaits.sum();
+  }
+
+  void recordWaitTime(long waitNanos) {
+    accumulatedWaitNanos.add(waitNanos);
+    accumulatedWaitTime = TimeUnit.NANOSECONDS.toMillis(accumulatedWaitNanos.sum());
+    waitTimeHistogram.record(waitNanos);
+    dataSource.getPoolMetricsTracker().connectionWaited(waitNanos);
+  }
+
+  void recordBadConnection() {
+    badConnections.increment();
+    badConnectionCount = badConnections.sum();
+    dataSource.getPoolMetricsTracker().badConnectionDiscarded();
+  }
+
+  void recordConnectionCreated(long creationNanos) {
+    connectionCreationTimeHistogram.record(creationNanos);
+    dataSource.getPoolMetricsTracker().connectionCreated(creationNanos);
+  }
+
   @Override
-  public synchronized String toString() {
+  public String toString() {
     StringBuilder builder = new StringBuilder();
     builder.append("\n===CONFIGURATION==============================================");
     builder.append("\n jdbcDriver                     ").append(dataSource.getDriver());
@@ -91,6 +298,7 @@ public class PoolState {
     builder.append("\n jdbcUsername                   ").append(dataSource.getUsername());
     builder.append("\n jdbcPassword                   ")
         .append(dataSource.getPassword() == null ? "NULL" : "************");
+    builder.append("\n poolMode                       ").append(dataSource.getPoolMode());
     builder.append("\n poolMaxActiveConnections       ").append(dataSource.poolMaximumActiveConnections);
     builder.append("\n poolMaxIdleConnections         ").append(dataSource.poolMaximumIdleConnections);
     builder.append("\n poolMaxCheckoutTime            ").append(dataSource.poolMaximumCheckoutTime);
@@ -98,6 +306,10 @@ public class PoolState {
     builder.append("\n poolPingEnabled                ").append(dataSource.poolPingEnabled);
     builder.append("\n poolPingQuery                  ").append(dataSource.poolPingQuery);
     builder.append("\n poolPingConnectionsNotUsedFor  ").append(dataSource.poolPingConnectionsNotUsedFor);
+    builder.append("\n poolMinIdleConnections         ").append(dataSource.poolMinimumIdleConnections);
+    builder.append("\n poolMaxLifetime                ").append(dataSource.poolMaximumLifetime);
+    builder.append("\n poolBackgroundValidation       ").append(dataSource.poolBackgroundValidationEnabled);
+    builder.append("\n poolHousekeepingPeriod         ").append(dataSource.poolHousekeepingPeriod);
     builder.append("\n ---STATUS-----------------------------------------------------");
     builder.append("\n activeConnections              ").append(getActiveConnectionCount());
     builder.append("\n idleConnections                ").append(getIdleConnectionCount());
@@ -109,6 +321,13 @@ public class PoolState {
     builder.append("\n hadToWait                      ").append(getHadToWaitCount());
     builder.append("\n averageWaitTime                ").append(getAverageWaitTime());
     builder.append("\n badConnectionCount             ").append(getBadConnectionCount());
+    builder.append("\n createdConnections             ").append(getCreatedConnectionCount());
+    builder.append("\n waitTimeP50/P99/P999           ").append(getWaitTimeP50()).append(" / ")
+        .append(getWaitTimeP99()).append(" / ").append(getWaitTimeP999());
+    builder.append("\n checkoutTimeP50/P99/P999       ").append(getCheckoutTimeP50()).append(" / ")
+        .append(getCheckoutTimeP99()).append(" / ").append(getCheckoutTimeP999());
+    builder.append("\n creationTimeP50/P99/P999       ").append(getConnectionCreationTimeP50()).append(" / ")
+        .append(getConnectionCreationTimeP99()).append(" / ").append(getConnectionCreationTimeP999());
     builder.append("\n===============================================================");
     return builder.toString();
   }
@@ -0,0 +1,64 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+/**
+ * JMX view of a {@link PoolState}, registered by {@link PooledDataSource#setPoolJmxName(String)}. Times are in
+ * milliseconds.
+ *
+ * @since 3.5.14
+ */
+public interface PoolStateMXBean {
+
+  int getActiveConnectionCount();
+
+  int getIdleConnectionCount();
+
+  long getRequestCount();
+
+  long getHadToWaitCount();
+
+  long getBadConnectionCount();
+
+  long getClaimedOverdueConnectionCount();
+
+  long getCreatedConnectionCount();
+
+  long getAverageRequestTime();
+
+  long getAverageWaitTime();
+
+  long getAverageCheckoutTime();
+
+  double getWaitTimeP50();
+
+  double getWaitTimeP99();
+
+  double getWaitTimeP999();
+
+  double getCheckoutTimeP50();
+
+  double getCheckoutTimeP99();
+
+  double getCheckoutTimeP999();
+
+  double getConnectionCreationTimeP50();
+
+  double getConnectionCreationTimeP99();
+
+  double getConnectionCreationTimeP999();
+
+}
@@ -15,11 +15,15 @@
  */
 package org.apache.ibatis.datasource.pooled;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 import org.apache.ibatis.reflection.ExceptionUtil;
 
@@ -31,13 +35,47 @@ class PooledConnection implements InvocationHandler {
   private static final String CLOSE = "close";
   private static final Class<?>[] IFACES = { Connection.class };
 
+  // 下面的状态只在 PoolMode.CONCURRENT 模式下使用
+  static final int STATE_NOT_IN_USE = 0;
+  static final int STATE_IN_USE = 1;
+  static final int STATE_REMOVED = -1;
+  // 被某个线程独占(正在归还, 或者正在被回收), 其他线程不能借出
+  static final int STATE_RESERVED = -2;
+
+  private static final AtomicIntegerFieldUpdater<PooledConnection> STATE_UPDATER = AtomicIntegerFieldUpdater
+      .newUpdater(PooledConnection.class, "state");
+
+  // 代理类的构造方法, 比每次调用 Proxy.newProxyInstance 少了查找代理类和反射调用构造方法, 拿不到的时候为 null
+  private static final MethodHandle PROXY_CONSTRUCTOR;
+
+  static {
+    MethodHandle constructor;
+    try {
+      Class<?> proxyClass = Proxy.newProxyInstance(Connection.class.getClassLoader(), IFACES, (proxy, method, args) -> {
+        throw new UnsupportedOperationException();
+      }).getClass();
+      constructor = MethodHandles.publicLookup()
+          .findConstructor(proxyClass, MethodType.methodType(void.class, InvocationHandler.class))
+          .asType(MethodType.methodType(Connection.class, InvocationHandler.class));
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      constructor = null;
+    }
+    PROXY_CONSTRUCTOR = constructor;
+  }
+
   private final int hashCode;
   private final PooledDataSource dataSource;
   private final Connection realConnection;
-  private final Connection proxyConnection;
+  // CONCURRENT 模式下连接会被重复使用, 每次借出的时候创建新的代理, 归还之后旧的代理就失效了.
+  // 不能一直使用同一个代理: 关闭之后还在使用旧代理的线程和新借出的线程拿到的是同一个对象, 无法区分.
+  // 代价是每次借出分配一个只有一个字段的代理对象, 见 PooledDataSourceBenchmark
+  private volatile Connection proxyConnection;
+  private volatile int state;
   private long checkoutTimestamp;
   private long createdTimestamp;
   private long lastUsedTimestamp;
+  // 最近一次在后台校验通过的时间
+  private long lastValidatedTimestamp;
   private int connectionTypeCode;
   private boolean valid;
 
@@ -56,7 +94,7 @@ class PooledConnection implements InvocationHandler {
     this.createdTimestamp = System.currentTimeMillis();
     this.lastUsedTimestamp = System.currentTimeMillis();
     this.valid = true;
-    this.proxyConnection = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), IFACES, this);
+    this.proxyConnection = newProxy();
   }
 
   /**
@@ -93,6 +131,46 @@ class PooledConnection implements InvocationHandler {
     return proxyConnection;
   }
 
+  /**
+   * 创建新的代理, 之前借出的代理都失效.
+   */
+  void renewProxyConnection() {
+    this.proxyConnection = newProxy();
+  }
+
+  private Connection newProxy() {
+    if (PROXY_CONSTRUCTOR != null) {
+      try {
+        return (Connection) PROXY_CONSTRUCTOR.invokeExact((InvocationHandler) this);
+      } catch (RuntimeException | Error e) {
+        throw e;
+      } catch (Throwable e) {
+        // 代理类的构造方法不会抛出受检异常
+        throw new IllegalStateException(e);
+      }
+    }
+    return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), IFACES, this);
+  }
+
+  /**
+   * 让当前的代理失效.
+   */
+  void retireProxyConnection() {
+    this.proxyConnection = null;
+  }
+
+  int getState() {
+    return state;
+  }
+
+  void setState(int state) {
+    this.state = state;
+  }
+
+  boolean compareAndSetState(int expect, int update) {
+    return STATE_UPDATER.compareAndSet(this, expect, update);
+  }
+
   /**
    * Gets the hashcode of the real connection (or 0 if it is null).
    *
@@ -168,6 +246,21 @@ class PooledConnection implements InvocationHandler {
     return System.currentTimeMillis() - lastUsedTimestamp;
   }
 
+  long getLastValidatedTimestamp() {
+    return lastValidatedTimestamp;
+  }
+
+  void setLastValidatedTimestamp(long lastValidatedTimestamp) {
+    this.lastValidatedTimestamp = lastValidatedTimestamp;
+  }
+
+  /**
+   * 距离最近一次使用或者最近一次后台校验的时间
+   */
+  long getTimeElapsedSinceLastCheck() {
+    return System.currentTimeMillis() - Math.max(lastUsedTimestamp, lastValidatedTimestamp);
+  }
+
   /**
    * Getter for the age of the connection.
    *
@@ -246,14 +339,14 @@ class PooledConnection implements InvocationHandler {
   public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
     String methodName = method.getName();
     if (CLOSE.equals(methodName)) {
-      dataSource.pushConnection(this);
+      dataSource.pushConnection(this, proxy);
       return null;
     }
     try {
       if (!Object.class.equals(method.getDeclaringClass())) {
         // issue #579 toString() should never fail
         // throw an SQLException instead of a Runtime
-        checkConnection();
+        checkConnection(proxy);
       }
       return method.invoke(realConnection, args);
     } catch (Throwable t) {
@@ -262,8 +355,8 @@ class PooledConnection implements InvocationHandler {
 
   }
 
-  private void checkConnection() throws SQLException {
-    if (!valid) {
+  private void checkConnection(Object proxy) throws SQLException {
+    if (!valid || proxy != proxyConnection) {
       throw new SQLException("Error accessing PooledConnection. Connection is invalid.");
     }
   }
@@ -16,22 +16,33 @@
 package org.apache.ibatis.datasource.pooled;
 
 import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
 import java.util.Properties;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import javax.sql.DataSource;
 
+import org.apache.ibatis.datasource.DataSourceException;
 import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.apache.ibatis.io.Resources;
 import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.logging.LogFactory;
 
@@ -57,12 +68,33 @@ public class PooledDataSource implements DataSource {
   protected String poolPingQuery = "NO PING QUERY SET";
   protected boolean poolPingEnabled;
   protected int poolPingConnectionsNotUsedFor;
+  protected int poolMinimumIdleConnections;
+  protected int poolMaximumLifetime;
+  protected boolean poolBackgroundValidationEnabled;
+  protected int poolValidationTimeout = 5;
+  protected int poolHousekeepingPeriod = 30000;
 
-  private int expectedConnectionTypeCode;
+  private volatile PoolMode poolMode = PoolMode.CLASSIC;
+  private volatile PoolMetricsTracker poolMetricsTracker = NoOpPoolMetricsTracker.INSTANCE;
+  private ObjectName poolJmxName;
+
+  // CONCURRENT 模式下读取的时候不加锁
+  private volatile int expectedConnectionTypeCode;
 
   private final Lock lock = new ReentrantLock();
   private final Condition condition = lock.newCondition();
 
+  // CONCURRENT 模式下的全部连接(空闲的和借出的)
+  final ConcurrentConnectionBag bag = new ConcurrentConnectionBag();
+  private final AtomicInteger totalConnections = new AtomicInteger();
+
+  // 后台维护任务, 只有开启了最少空闲连接, 最大存活时间或者后台校验的时候才会启动
+  private PoolHousekeeper housekeeper;
+  // 第一次获取连接之后才启动后台维护, 这时驱动, url和用户名密码都已经设置好了
+  private volatile boolean housekeepingStarted;
+  // 每次 forceCloseAll 加一, 后台维护期间连接池被重置的话, 取出的连接不再放回
+  private int poolGeneration;
+
   public PooledDataSource() {
     dataSource = new UnpooledDataSource();
   }
@@ -265,6 +297,147 @@ public class PooledDataSource implements DataSource {
     forceCloseAll();
   }
 
+  /**
+   * The implementation of the pool, {@code CLASSIC} (default) or {@code CONCURRENT}.
+   *
+   * @param poolMode
+   *          the name of the {@link PoolMode}, case insensitive
+   *
+   * @since 3.5.14
+   */
+  public void setPoolMode(String poolMode) {
+    forceCloseAll();
+    this.poolMode = PoolMode.valueOf(poolMode.toUpperCase(Locale.ENGLISH));
+  }
+
+  /**
+   * The number of idle connections the pool tries to keep ready, created in the background. Capped by
+   * {@code poolMaximumIdleConnections}. The background housekeeping starts with the first {@link #getConnection()}.
+   *
+   * @param poolMinimumIdleConnections
+   *          the minimum number of idle connections, 0 (default) disables it
+   *
+   * @since 3.5.14
+   */
+  public void setPoolMinimumIdleConnections(int poolMinimumIdleConnections) {
+    this.poolMinimumIdleConnections = poolMinimumIdleConnections;
+    scheduleHousekeeping();
+  }
+
+  /**
+   * The maximum time a connection lives in the pool. Idle connections past it are closed in the background and active
+   * ones are closed when they are returned.
+   *
+   * @param milliseconds
+   *          the maximum lifetime, 0 (default) means unlimited
+   *
+   * @since 3.5.14
+   */
+  public void setPoolMaximumLifetime(int milliseconds) {
+    this.poolMaximumLifetime = milliseconds;
+    scheduleHousekeeping();
+  }
+
+  /**
+   * Determines if idle connections should be validated in the background with {@link Connection#isValid(int)}. A
+   * connection validated in the background counts as used, so the ping query is rarely needed on checkout.
+   *
+   * @param poolBackgroundValidationEnabled
+   *          True if idle connections not used for a housekeeping period should be validated in the background
+   *
+   * @since 3.5.14
+   */
+  public void setPoolBackgroundValidationEnabled(boolean poolBackgroundValidationEnabled) {
+    this.poolBackgroundValidationEnabled = poolBackgroundValidationEnabled;
+    scheduleHousekeeping();
+  }
+
+  /**
+   * The timeout passed to {@link Connection#isValid(int)} by the background validation.
+   *
+   * @param seconds
+   *          the timeout in seconds
+   *
+   * @since 3.5.14
+   */
+  public void setPoolValidationTimeout(int seconds) {
+    this.poolValidationTimeout = seconds;
+  }
+
+  /**
+   * The delay between two runs of the background housekeeping.
+   *
+   * @param milliseconds
+   *          the delay
+   *
+   * @since 3.5.14
+   */
+  public void setPoolHousekeepingPeriod(int milliseconds) {
+    this.poolHousekeepingPeriod = milliseconds;
+    scheduleHousekeeping();
+  }
+
+  /**
+   * Receives the events of the pool, e.g. to publish them to a metrics library.
+   *
+   * @param poolMetricsTracker
+   *          the tracker, null to remove it
+   *
+   * @since 3.5.14
+   */
+  public void setPoolMetricsTracker(PoolMetricsTracker poolMetricsTracker) {
+    this.poolMetricsTracker = poolMetricsTracker == null ? NoOpPoolMetricsTracker.INSTANCE : poolMetricsTracker;
+  }
+
+  /**
+   * Sets the {@link PoolMetricsTracker} by class name, so that it can be configured as a data source property.
+   *
+   * @param className
+   *          the fully qualified name of a {@link PoolMetricsTracker} with a no-arg constructor
+   *
+   * @since 3.5.14
+   */
+  public void setPoolMetricsTrackerClass(String className) {
+    try {
+      setPoolMetricsTracker(
+          (PoolMetricsTracker) Resources.classForName(className).getDeclaredConstructor().newInstance());
+    } catch (Exception e) {
+      throw new DataSourceException("Error creating pool metrics tracker " + className + ". Cause: " + e, e);
+    }
+  }
+
+  /**
+   * Registers the {@link PoolState} of this pool in the platform MBean server as a {@link PoolStateMXBean}, with the
+   * object name {@code org.apache.ibatis.datasource.pooled:type=PoolState,name=<name>}.
+   *
+   * @param name
+   *          the name of the pool, null to unregister it
+   *
+   * @since 3.5.14
+   */
+  public void setPoolJmxName(String name) {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    lock.lock();
+    try {
+      if (poolJmxName != null) {
+        if (server.isRegistered(poolJmxName)) {
+          server.unregisterMBean(poolJmxName);
+        }
+        poolJmxName = null;
+      }
+      if (name != null) {
+        ObjectName objectName = new ObjectName(
+            "org.apache.ibatis.datasource.pooled:type=PoolState,name=" + ObjectName.quote(name));
+        server.registerMBean(state, objectName);
+        poolJmxName = objectName;
+      }
+    } catch (JMException e) {
+      throw new DataSourceException("Error registering pool " + name + " in JMX. Cause: " + e, e);
+    } finally {
+      lock.unlock();
+    }
+  }
+
   public String getDriver() {
     return dataSource.getDriver();
   }
@@ -336,12 +509,64 @@ public class PooledDataSource implements DataSource {
     return poolPingConnectionsNotUsedFor;
   }
 
+  public int getPoolMinimumIdleConnections() {
+    return poolMinimumIdleConnections;
+  }
+
+  public int getPoolMaximumLifetime() {
+    return poolMaximumLifetime;
+  }
+
+  public boolean isPoolBackgroundValidationEnabled() {
+    return poolBackgroundValidationEnabled;
+  }
+
+  public int getPoolValidationTimeout() {
+    return poolValidationTimeout;
+  }
+
+  public int getPoolHousekeepingPeriod() {
+    return poolHousekeepingPeriod;
+  }
+
+  /**
+   * @since 3.5.14
+   */
+  public PoolMetricsTracker getPoolMetricsTracker() {
+    return poolMetricsTracker;
+  }
+
+  /**
+   * @since 3.5.14
+   */
+  public String getPoolJmxName() {
+    return poolJmxName == null ? null : ObjectName.unquote(poolJmxName.getKeyProperty("name"));
+  }
+
+  /**
+   * Gets the implementation of the pool.
+   *
+   * @return the name of the {@link PoolMode}
+   *
+   * @since 3.5.14
+   */
+  public String getPoolMode() {
+    return poolMode.name();
+  }
+
+  boolean isConcurrentPoolMode() {
+    return poolMode == PoolMode.CONCURRENT;
+  }
+
   /**
    * Closes all active and idle connections in the pool.
    */
   public void forceCloseAll() {
+    PoolHousekeeper currentHousekeeper;
     lock.lock();
     try {
+      poolGeneration++;
+      currentHousekeeper = housekeeper;
       expectedConnectionTypeCode = assembleConnectionTypeCode(dataSource.getUrl(), dataSource.getUsername(),
           dataSource.getPassword());
       for (int i = state.activeConnections.size(); i > 0; i--) {
@@ -375,9 +600,20 @@ public class PooledDataSource implements DataSource {
     } finally {
       lock.unlock();
     }
+    for (PooledConnection conn : bag.values()) {
+      if (bag.remove(conn)) {
+        totalConnections.decrementAndGet();
+      }
+      conn.invalidate();
+      closeQuietly(conn);
+    }
     if (log.isDebugEnabled()) {
       log.debug("PooledDataSource forcefully closed/removed all connections.");
     }
+    if (currentHousekeeper != null) {
+      // 尽快重新补充空闲的连接
+      currentHousekeeper.runNow();
+    }
   }
 
   public PoolState getPoolState() {
@@ -388,6 +624,17 @@ public class PooledDataSource implements DataSource {
     return ("" + url + username + password).hashCode();
   }
 
+  /**
+   * 代理连接调用 close 的时候归还连接
+   */
+  void pushConnection(PooledConnection conn, Object proxy) throws SQLException {
+    if (isConcurrentPoolMode()) {
+      pushConnectionToBag(conn, proxy);
+    } else {
+      pushConnection(conn);
+    }
+  }
+
   protected void pushConnection(PooledConnection conn) throws SQLException {
 
     lock.lock();
@@ -395,8 +642,8 @@ public class PooledDataSource implements DataSource {
       state.activeConnections.remove(conn);
       if (conn.isValid()) {
         if (state.idleConnections.size() < poolMaximumIdleConnections
-            && conn.getConnectionTypeCode() == expectedConnectionTypeCode) {
-          state.accumulatedCheckoutTime += conn.getCheckoutTime();
+            && conn.getConnectionTypeCode() == expectedConnectionTypeCode && !isExpired(conn)) {
+          state.recordCheckoutTime(conn.getCheckoutTime());
           if (!conn.getRealConnection().getAutoCommit()) {
             conn.getRealConnection().rollback();
           }
@@ -404,13 +651,14 @@ public class PooledDataSource implements DataSource {
           state.idleConnections.add(newConn);
           newConn.setCreatedTimestamp(conn.getCreatedTimestamp());
           newConn.setLastUsedTimestamp(conn.getLastUsedTimestamp());
+          newConn.setLastValidatedTimestamp(conn.getLastValidatedTimestamp());
           conn.invalidate();
           if (log.isDebugEnabled()) {
             log.debug("Returned connection " + newConn.getRealHashCode() + " to pool.");
           }
           condition.signal();
         } else {
-          state.accumulatedCheckoutTime += conn.getCheckoutTime();
+          state.recordCheckoutTime(conn.getCheckoutTime());
           if (!conn.getRealConnection().getAutoCommit()) {
             conn.getRealConnection().rollback();
           }
@@ -425,7 +673,7 @@ public class PooledDataSource implements DataSource {
           log.debug("A bad connection (" + conn.getRealHashCode()
               + ") attempted to return to the pool, discarding connection.");
         }
-        state.badConnectionCount++;
+        state.recordBadConnection();
       }
     } finally {
       lock.unlock();
@@ -433,108 +681,120 @@ public class PooledDataSource implements DataSource {
   }
 
   private PooledConnection popConnection(String username, String password) throws SQLException {
+    if (!housekeepingStarted) {
+      startHousekeeping();
+    }
+    if (isConcurrentPoolMode()) {
+      return popConnectionFromBag(username, password);
+    }
     boolean countedWait = false;
+    long waitNanos = 0;
     PooledConnection conn = null;
-    long t = System.currentTimeMillis();
+    long t = System.nanoTime();
     int localBadConnectionCount = 0;
 
-    while (conn == null) {
-      lock.lock();
-      try {
-        if (!state.idleConnections.isEmpty()) {
-          // Pool has available connection
-          conn = state.idleConnections.remove(0);
-          if (log.isDebugEnabled()) {
-            log.debug("Checked out connection " + conn.getRealHashCode() + " from pool.");
-          }
-        } else if (state.activeConnections.size() < poolMaximumActiveConnections) {
-          // Pool does not have available connection and can create a new connection
-          conn = new PooledConnection(dataSource.getConnection(), this);
-          if (log.isDebugEnabled()) {
-            log.debug("Created connection " + conn.getRealHashCode() + ".");
-          }
-        } else {
-          // Cannot create new connection
-          PooledConnection oldestActiveConnection = state.activeConnections.get(0);
-          long longestCheckoutTime = oldestActiveConnection.getCheckoutTime();
-          if (longestCheckoutTime > poolMaximumCheckoutTime) {
-            // Can claim overdue connection
-            state.claimedOverdueConnectionCount++;
-            state.accumulatedCheckoutTimeOfOverdueConnections += longestCheckoutTime;
-            state.accumulatedCheckoutTime += longestCheckoutTime;
-            state.activeConnections.remove(oldestActiveConnection);
-            if (!oldestActiveConnection.getRealConnection().getAutoCommit()) {
-              try {
-                oldestActiveConnection.getRealConnection().rollback();
-              } catch (SQLException e) {
-                /*
-                 * Just log a message for debug and continue to execute the following statement like nothing happened.
-                 * Wrap the bad connection with a new PooledConnection, this will help to not interrupt current
-                 * executing thread and give current thread a chance to join the next competition for another valid/good
-                 * database connection. At the end of this loop, bad {@link @conn} will be set as null.
-                 */
-                log.debug("Bad connection. Could not roll back");
-              }
+    try {
+      while (conn == null) {
+        lock.lock();
+        try {
+          if (!state.idleConnections.isEmpty()) {
+            // Pool has available connection
+            conn = state.idleConnections.remove(0);
+            if (log.isDebugEnabled()) {
+              log.debug("Checked out connection " + conn.getRealHashCode() + " from pool.");
             }
-            conn = new PooledConnection(oldestActiveConnection.getRealConnection(), this);
-            conn.setCreatedTimestamp(oldestActiveConnection.getCreatedTimestamp());
-            conn.setLastUsedTimestamp(oldestActiveConnection.getLastUsedTimestamp());
-            oldestActiveConnection.invalidate();
+          } else if (state.activeConnections.size() < poolMaximumActiveConnections) {
+            // Pool does not have available connection and can create a new connection
+            conn = createPooledConnection();
             if (log.isDebugEnabled()) {
-              log.debug("Claimed overdue connection " + conn.getRealHashCode() + ".");
+              log.debug("Created connection " + conn.getRealHashCode() + ".");
             }
           } else {
-            // Must wait
-            try {
-              if (!countedWait) {
-                state.hadToWaitCount++;
-                countedWait = true;
+            // Cannot create new connection
+            PooledConnection oldestActiveConnection = state.activeConnections.get(0);
+            long longestCheckoutTime = oldestActiveConnection.getCheckoutTime();
+            if (longestCheckoutTime > poolMaximumCheckoutTime) {
+              // Can claim overdue connection
+              state.recordClaimedOverdue(longestCheckoutTime);
+              state.activeConnections.remove(oldestActiveConnection);
+              if (!oldestActiveConnection.getRealConnection().getAutoCommit()) {
+                try {
+                  oldestActiveConnection.getRealConnection().rollback();
+                } catch (SQLException e) {
+                  /*
+                   * Just log a message for debug and continue to execute the following statement like nothing happened.
+                   * Wrap the bad connection with a new PooledConnection, this will help to not interrupt current
+                   * executing thread and give current thread a chance to join the next competition for another valid/good
+                   * database connection. At the end of this loop, bad {@link @conn} will be set as null.
+                   */
+                  log.debug("Bad connection. Could not roll back");
+                }
               }
+              conn = new PooledConnection(oldestActiveConnection.getRealConnection(), this);
+              conn.setCreatedTimestamp(oldestActiveConnection.getCreatedTimestamp());
+              conn.setLastUsedTimestamp(oldestActiveConnection.getLastUsedTimestamp());
+              conn.setLastValidatedTimestamp(oldestActiveConnection.getLastValidatedTimestamp());
+              oldestActiveConnection.invalidate();
               if (log.isDebugEnabled()) {
-                log.debug("Waiting as long as " + poolTimeToWait + " milliseconds for connection.");
+                log.debug("Claimed overdue connection " + conn.getRealHashCode() + ".");
+              }
+            } else {
+              // Must wait
+              try {
+                if (!countedWait) {
+                  state.recordHadToWait();
+                  countedWait = true;
+                }
+                if (log.isDebugEnabled()) {
+                  log.debug("Waiting as long as " + poolTimeToWait + " milliseconds for connection.");
+                }
+                long wt = System.nanoTime();
+                condition.await(poolTimeToWait, TimeUnit.MILLISECONDS);
+                waitNanos += System.nanoTime() - wt;
+              } catch (InterruptedException e) {
+                // set interrupt flag
+                Thread.currentThread().interrupt();
+                break;
               }
-              long wt = System.currentTimeMillis();
-              condition.await(poolTimeToWait, TimeUnit.MILLISECONDS);
-              state.accumulatedWaitTime += System.currentTimeMillis() - wt;
-            } catch (InterruptedException e) {
-              // set interrupt flag
-              Thread.currentThread().interrupt();
-              break;
             }
           }
-        }
-        if (conn != null) {
-          // ping to server and check the connection is valid or not
-          if (conn.isValid()) {
-            if (!conn.getRealConnection().getAutoCommit()) {
-              conn.getRealConnection().rollback();
-            }
-            conn.setConnectionTypeCode(assembleConnectionTypeCode(dataSource.getUrl(), username, password));
-            conn.setCheckoutTimestamp(System.currentTimeMillis());
-            conn.setLastUsedTimestamp(System.currentTimeMillis());
-            state.activeConnections.add(conn);
-            state.requestCount++;
-            state.accumulatedRequestTime += System.currentTimeMillis() - t;
-          } else {
-            if (log.isDebugEnabled()) {
-              log.debug("A bad connection (" + conn.getRealHashCode()
-                  + ") was returned from the pool, getting another connection.");
-            }
-            state.badConnectionCount++;
-            localBadConnectionCount++;
-            conn = null;
-            if (localBadConnectionCount > poolMaximumIdleConnections + poolMaximumLocalBadConnectionTolerance) {
+          if (conn != null) {
+            // ping to server and check the connection is valid or not
+            if (conn.isValid()) {
+              if (!conn.getRealConnection().getAutoCommit()) {
+                conn.getRealConnection().rollback();
+              }
+              conn.setConnectionTypeCode(assembleConnectionTypeCode(dataSource.getUrl(), username, password));
+              conn.setCheckoutTimestamp(System.currentTimeMillis());
+              conn.setLastUsedTimestamp(System.currentTimeMillis());
+              state.activeConnections.add(conn);
+              state.recordRequest(System.nanoTime() - t);
+            } else {
               if (log.isDebugEnabled()) {
-                log.debug("PooledDataSource: Could not get a good connection to the database.");
+                log.debug("A bad connection (" + conn.getRealHashCode()
+                    + ") was returned from the pool, getting another connection.");
+              }
+              state.recordBadConnection();
+              localBadConnectionCount++;
+              conn = null;
+              if (localBadConnectionCount > poolMaximumIdleConnections + poolMaximumLocalBadConnectionTolerance) {
+                if (log.isDebugEnabled()) {
+                  log.debug("PooledDataSource: Could not get a good connection to the database.");
+                }
+                throw new SQLException("PooledDataSource: Could not get a good connection to the database.");
               }
-              throw new SQLException("PooledDataSource: Could not get a good connection to the database.");
             }
           }
+        } finally {
+          lock.unlock();
         }
-      } finally {
-        lock.unlock();
-      }
 
+      }
+    } finally {
+      if (countedWait) {
+        // 每次等待只记录一次, 可能包含多次 await
+        state.recordWaitTime(waitNanos);
+      }
     }
 
     if (conn == null) {
@@ -548,6 +808,427 @@ public class PooledDataSource implements DataSource {
     return conn;
   }
 
+  //
+  // CONCURRENT POOL MODE
+  //
+
+  private PooledConnection popConnectionFromBag(String username, String password) throws SQLException {
+    boolean countedWait = false;
+    long waitNanos = 0;
+    long t = System.nanoTime();
+    int localBadConnectionCount = 0;
+
+    try {
+      while (true) {
+        // 当前线程上一次使用的连接, 或者任意一个空闲的连接
+        PooledConnection conn = bag.borrow();
+        if (conn == null) {
+          conn = createConnectionIfBelowMaximum();
+        }
+        if (conn == null) {
+          conn = claimOverdueConnection();
+        }
+        if (conn == null) {
+          // Must wait
+          if (!countedWait) {
+            state.recordHadToWait();
+            countedWait = true;
+          }
+          if (log.isDebugEnabled()) {
+            log.debug("Waiting as long as " + poolTimeToWait + " milliseconds for connection.");
+          }
+          long wt = System.nanoTime();
+          try {
+            conn = bag.poll(poolTimeToWait, TimeUnit.MILLISECONDS);
+          } catch (InterruptedException e) {
+            // set interrupt flag
+            Thread.currentThread().interrupt();
+            break;
+          } finally {
+            waitNanos += System.nanoTime() - wt;
+          }
+          if (conn == null) {
+            continue;
+          }
+        }
+
+        // ping to server and check the connection is valid or not
+        if (conn.isValid()) {
+          try {
+            if (!conn.getRealConnection().getAutoCommit()) {
+              conn.getRealConnection().rollback();
+            }
+          } catch (SQLException e) {
+            discardConnection(conn);
+            throw e;
+          }
+          conn.setConnectionTypeCode(assembleConnectionTypeCode(dataSource.getUrl(), username, password));
+          conn.setCheckoutTimestamp(System.currentTimeMillis());
+          conn.setLastUsedTimestamp(System.currentTimeMillis());
+          if (conn.getProxyConnection() == null) {
+            conn.renewProxyConnection();
+          }
+          state.recordRequest(System.nanoTime() - t);
+          if (log.isDebugEnabled()) {
+            log.debug("Checked out connection " + conn.getRealHashCode() + " from pool.");
+          }
+          return conn;
+        }
+        if (log.isDebugEnabled()) {
+          log.debug("A bad connection (" + conn.getRealHashCode()
+              + ") was returned from the pool, getting another connection.");
+        }
+        state.recordBadConnection();
+        localBadConnectionCount++;
+        discardConnection(conn);
+        if (localBadConnectionCount > poolMaximumIdleConnections + poolMaximumLocalBadConnectionTolerance) {
+          if (log.isDebugEnabled()) {
+            log.debug("PooledDataSource: Could not get a good connection to the database.");
+          }
+          throw new SQLException("PooledDataSource: Could not get a good connection to the database.");
+        }
+      }
+
+      if (log.isDebugEnabled()) {
+        log.debug("PooledDataSource: Unknown severe error condition.  The connection pool returned a null connection.");
+      }
+      throw new SQLException(
+          "PooledDataSource: Unknown severe error condition.  The connection pool returned a null connection.");
+    } finally {
+      if (countedWait) {
+        // 每次等待只记录一次, 可能包含多次 poll
+        state.recordWaitTime(waitNanos);
+      }
+    }
+  }
+
+  private PooledConnection createPooledConnection() throws SQLException {
+    long t = System.nanoTime();
+    PooledConnection conn = new PooledConnection(dataSource.getConnection(), this);
+    state.recordConnectionCreated(System.nanoTime() - t);
+    return conn;
+  }
+
+  private PooledConnection createConnectionIfBelowMaximum() throws SQLException {
+    int total;
+    do {
+      total = totalConnections.get();
+      if (total >= poolMaximumActiveConnections) {
+        return null;
+      }
+    } while (!totalConnections.compareAndSet(total, total + 1));
+
+    PooledConnection conn;
+    try {
+      conn = createPooledConnection();
+    } catch (SQLException | RuntimeException e) {
+      totalConnections.decrementAndGet();
+      throw e;
+    }
+    conn.setState(PooledConnection.STATE_IN_USE);
+    bag.add(conn);
+    if (log.isDebugEnabled()) {
+      log.debug("Created connection " + conn.getRealHashCode() + ".");
+    }
+    return conn;
+  }
+
+  private PooledConnection claimOverdueConnection() {
+    for (PooledConnection conn : bag.values()) {
+      if (conn.getState() != PooledConnection.STATE_IN_USE) {
+        continue;
+      }
+      long checkoutTime = conn.getCheckoutTime();
+      if (checkoutTime > poolMaximumCheckoutTime
+          && conn.compareAndSetState(PooledConnection.STATE_IN_USE, PooledConnection.STATE_RESERVED)) {
+        // Can claim overdue connection, 之前的使用者的代理失效
+        conn.retireProxyConnection();
+        state.recordClaimedOverdue(checkoutTime);
+        try {
+          if (!conn.getRealConnection().getAutoCommit()) {
+            conn.getRealConnection().rollback();
+          }
+        } catch (SQLException e) {
+          // 和 CLASSIC 模式一样, 坏的连接会在之后的校验中被丢弃
+          log.debug("Bad connection. Could not roll back");
+        }
+        conn.setState(PooledConnection.STATE_IN_USE);
+        if (log.isDebugEnabled()) {
+          log.debug("Claimed overdue connection " + conn.getRealHashCode() + ".");
+        }
+        return conn;
+      }
+    }
+    return null;
+  }
+
+  private void pushConnectionToBag(PooledConnection conn, Object proxy) throws SQLException {
+    // 独占该连接, 失败或者代理已经失效说明连接已经归还过了, 或者已经被其他线程回收了
+    if (!conn.compareAndSetState(PooledConnection.STATE_IN_USE, PooledConnection.STATE_RESERVED)) {
+      discardStaleConnection(conn);
+      return;
+    }
+    if (conn.getProxyConnection() != proxy) {
+      conn.setState(PooledConnection.STATE_IN_USE);
+      discardStaleConnection(conn);
+      return;
+    }
+    conn.retireProxyConnection();
+
+    if (!conn.isValid()) {
+      if (log.isDebugEnabled()) {
+        log.debug("A bad connection (" + conn.getRealHashCode()
+            + ") attempted to return to the pool, discarding connection.");
+      }
+      state.recordBadConnection();
+      discardConnection(conn);
+      return;
+    }
+    state.recordCheckoutTime(conn.getCheckoutTime());
+    try {
+      if (!conn.getRealConnection().getAutoCommit()) {
+        conn.getRealConnection().rollback();
+      }
+    } catch (SQLException e) {
+      discardConnection(conn);
+      throw e;
+    }
+    if (bag.count(PooledConnection.STATE_NOT_IN_USE) < poolMaximumIdleConnections
+        && conn.getConnectionTypeCode() == expectedConnectionTypeCode && !isExpired(conn)) {
+      bag.requite(conn);
+      if (log.isDebugEnabled()) {
+        log.debug("Returned connection " + conn.getRealHashCode() + " to pool.");
+      }
+    } else {
+      discardConnection(conn);
+      if (log.isDebugEnabled()) {
+        log.debug("Closed connection " + conn.getRealHashCode() + ".");
+      }
+    }
+  }
+
+  private void discardStaleConnection(PooledConnection conn) {
+    if (log.isDebugEnabled()) {
+      log.debug("A bad connection (" + conn.getRealHashCode()
+          + ") attempted to return to the pool, discarding connection.");
+    }
+    state.recordBadConnection();
+  }
+
+  /**
+   * 从连接池中移除并关闭连接
+   */
+  private void discardConnection(PooledConnection conn) {
+    if (bag.remove(conn)) {
+      totalConnections.decrementAndGet();
+    }
+    conn.retireProxyConnection();
+    closeQuietly(conn);
+  }
+
+  private void closeQuietly(PooledConnection conn) {
+    try {
+      Connection realConn = conn.getRealConnection();
+      if (!realConn.getAutoCommit()) {
+        realConn.rollback();
+      }
+      realConn.close();
+    } catch (Exception e) {
+      // ignore
+    }
+  }
+
+  //
+  // HOUSEKEEPING
+  //
+
+  private void startHousekeeping() {
+    lock.lock();
+    try {
+      if (!housekeepingStarted) {
+        housekeepingStarted = true;
+        scheduleHousekeeping();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * 修改维护相关的配置之后重新调度, 还没有获取过连接的话(配置可能还不完整)不启动
+   */
+  private void scheduleHousekeeping() {
+    lock.lock();
+    try {
+      if (housekeeper != null) {
+        housekeeper.cancel();
+        housekeeper = null;
+      }
+      if (housekeepingStarted
+          && (poolMinimumIdleConnections > 0 || poolMaximumLifetime > 0 || poolBackgroundValidationEnabled)) {
+        housekeeper = PoolHousekeeper.start(this, Math.max(poolHousekeepingPeriod, 1));
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * 后台维护: 关闭超过最大存活时间的空闲连接, 校验一段时间没有使用的空闲连接, 然后补充空闲的连接
+   */
+  void housekeep() {
+    if (isConcurrentPoolMode()) {
+      housekeepBag();
+    } else {
+      housekeepIdleConnections();
+    }
+    fillPool();
+  }
+
+  private void housekeepIdleConnections() {
+    // 先从空闲列表中取出需要处理的连接, 校验的时候不持有锁
+    List<PooledConnection> candidates = new ArrayList<>();
+    int generation;
+    lock.lock();
+    try {
+      generation = poolGeneration;
+      for (Iterator<PooledConnection> iterator = state.idleConnections.iterator(); iterator.hasNext();) {
+        PooledConnection conn = iterator.next();
+        if (isExpired(conn) || needsValidation(conn)) {
+          iterator.remove();
+          candidates.add(conn);
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+    for (PooledConnection conn : candidates) {
+      boolean expired = isExpired(conn);
+      if (!expired && validateInBackground(conn)) {
+        lock.lock();
+        try {
+          if (generation == poolGeneration && state.idleConnections.size() < poolMaximumIdleConnections) {
+            state.idleConnections.add(conn);
+            condition.signal();
+            continue;
+          }
+        } finally {
+          lock.unlock();
+        }
+      } else if (!expired) {
+        state.recordBadConnection();
+      }
+      conn.invalidate();
+      closeQuietly(conn);
+      if (log.isDebugEnabled()) {
+        log.debug("Closed idle connection " + conn.getRealHashCode() + " in the background.");
+      }
+    }
+  }
+
+  private void housekeepBag() {
+    for (PooledConnection conn : bag.values()) {
+      if (!isExpired(conn) && !needsValidation(conn)
+          || !conn.compareAndSetState(PooledConnection.STATE_NOT_IN_USE, PooledConnection.STATE_RESERVED)) {
+        continue;
+      }
+      boolean expired = isExpired(conn);
+      if (!expired && validateInBackground(conn)) {
+        bag.requite(conn);
+      } else {
+        if (!expired) {
+          state.recordBadConnection();
+        }
+        discardConnection(conn);
+        if (log.isDebugEnabled()) {
+          log.debug("Closed idle connection " + conn.getRealHashCode() + " in the background.");
+        }
+      }
+    }
+  }
+
+  /**
+   * 创建新的连接, 直到空闲的连接达到 poolMinimumIdleConnections, 连接的总数不超过 poolMaximumActiveConnections
+   */
+  private void fillPool() {
+    int minimumIdle = Math.min(poolMinimumIdleConnections, poolMaximumIdleConnections);
+    try {
+      if (isConcurrentPoolMode()) {
+        while (bag.count(PooledConnection.STATE_NOT_IN_USE) < minimumIdle) {
+          PooledConnection conn = createConnectionIfBelowMaximum();
+          if (conn == null) {
+            return;
+          }
+          conn.setConnectionTypeCode(expectedConnectionTypeCode);
+          bag.requite(conn);
+        }
+        return;
+      }
+      while (true) {
+        int generation;
+        lock.lock();
+        try {
+          if (state.idleConnections.size() >= minimumIdle
+              || state.idleConnections.size() + state.activeConnections.size() >= poolMaximumActiveConnections) {
+            return;
+          }
+          generation = poolGeneration;
+        } finally {
+          lock.unlock();
+        }
+        // 创建连接比较慢, 不持有锁
+        PooledConnection conn = createPooledConnection();
+        conn.setConnectionTypeCode(expectedConnectionTypeCode);
+        lock.lock();
+        try {
+          if (generation == poolGeneration && state.idleConnections.size() < minimumIdle) {
+            state.idleConnections.add(conn);
+            condition.signal();
+            if (log.isDebugEnabled()) {
+              log.debug("Created idle connection " + conn.getRealHashCode() + ".");
+            }
+            continue;
+          }
+        } finally {
+          lock.unlock();
+        }
+        conn.invalidate();
+        closeQuietly(conn);
+        return;
+      }
+    } catch (SQLException e) {
+      log.warn("Could not create idle connection: " + e.getMessage());
+    }
+  }
+
+  private boolean isExpired(PooledConnection conn) {
+    return poolMaximumLifetime > 0 && conn.getAge() >= poolMaximumLifetime;
+  }
+
+  private boolean needsValidation(PooledConnection conn) {
+    return poolBackgroundValidationEnabled && conn.getTimeElapsedSinceLastCheck() >= poolHousekeepingPeriod;
+  }
+
+  private boolean validateInBackground(PooledConnection conn) {
+    if (!poolBackgroundValidationEnabled) {
+      return true;
+    }
+    try {
+      if (conn.getRealConnection().isValid(poolValidationTimeout)) {
+        conn.setLastValidatedTimestamp(System.currentTimeMillis());
+        return true;
+      }
+      if (log.isDebugEnabled()) {
+        log.debug("Connection " + conn.getRealHashCode() + " is BAD.");
+      }
+    } catch (SQLException e) {
+      if (log.isDebugEnabled()) {
+        log.debug("Connection " + conn.getRealHashCode() + " is BAD: " + e.getMessage());
+      }
+    }
+    return false;
+  }
+
   /**
    * Method to check to see if a connection is still usable
    *
@@ -569,7 +1250,7 @@ public class PooledDataSource implements DataSource {
     }
 
     if (result && poolPingEnabled && poolPingConnectionsNotUsedFor >= 0
-        && conn.getTimeElapsedSinceLastUse() > poolPingConnectionsNotUsedFor) {
+        && conn.getTimeElapsedSinceLastCheck() > poolPingConnectionsNotUsedFor) {
       try {
         if (log.isDebugEnabled()) {
           log.debug("Testing connection " + conn.getRealHashCode() + " ...");
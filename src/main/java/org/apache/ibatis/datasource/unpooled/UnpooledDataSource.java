@@ -26,6 +26,7 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
 
 import javax.sql.DataSource;
@@ -42,7 +43,7 @@ public class UnpooledDataSource implements DataSource {
   private Properties driverProperties;
   private static final Map<String, Driver> registeredDrivers = new ConcurrentHashMap<>();
 
-  private String driver;
+  private volatile String driver;
   private String url;
   private String username;
   private String password;
@@ -51,6 +52,9 @@ public class UnpooledDataSource implements DataSource {
   private Integer defaultTransactionIsolationLevel;
   private Integer defaultNetworkTimeout;
 
+  // 只在第一次加载驱动的时候使用, 之后获取连接不需要加锁
+  private final ReentrantLock initializeDriverLock = new ReentrantLock();
+
   static {
     Enumeration<Driver> drivers = DriverManager.getDrivers();
     while (drivers.hasMoreElements()) {
@@ -137,11 +141,11 @@ public class UnpooledDataSource implements DataSource {
     this.driverProperties = driverProperties;
   }
 
-  public synchronized String getDriver() {
+  public String getDriver() {
     return driver;
   }
 
-  public synchronized void setDriver(String driver) {
+  public void setDriver(String driver) {
     this.driver = driver;
   }
 
@@ -230,8 +234,15 @@ public class UnpooledDataSource implements DataSource {
     return connection;
   }
 
-  private synchronized void initializeDriver() throws SQLException {
-    if (!registeredDrivers.containsKey(driver)) {
+  private void initializeDriver() throws SQLException {
+    if (registeredDrivers.containsKey(driver)) {
+      return;
+    }
+    initializeDriverLock.lock();
+    try {
+      if (registeredDrivers.containsKey(driver)) {
+        return;
+      }
       Class<?> driverType;
       try {
         if (driverClassLoader != null) {
@@ -247,6 +258,8 @@ public class UnpooledDataSource implements DataSource {
       } catch (Exception e) {
         throw new SQLException("Error setting driver on UnpooledDataSource. Cause: " + e);
       }
+    } finally {
+      initializeDriverLock.unlock();
     }
   }
 
@@ -174,6 +174,11 @@ public abstract class BaseExecutor implements Executor {
     if (closed) {
       throw new ExecutorException("Executor was closed.");
     }
+    if (ms.isChunked()) {
+      // 一级缓存中可能有某一块的结果, 在查询之前检查
+      throw new ExecutorException("Mapped Statement '" + ms.getId()
+        + "' contains a chunked foreach and must be executed through a SqlSession.");
+    }
     if (queryStack == 0 && ms.isFlushCacheRequired()) {
       clearLocalCache();
     }
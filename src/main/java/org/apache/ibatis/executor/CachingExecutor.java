@@ -16,21 +16,29 @@
 package org.apache.ibatis.executor;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.cache.CacheKey;
 import org.apache.ibatis.cache.TransactionalCacheManager;
+import org.apache.ibatis.cache.decorators.LoadingCache;
+import org.apache.ibatis.cache.decorators.TableInvalidatingCache;
 import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.exceptions.ExceptionFactory;
 import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.Environment;
 import org.apache.ibatis.mapping.MappedStatement;
 import org.apache.ibatis.mapping.ParameterMapping;
 import org.apache.ibatis.mapping.ParameterMode;
 import org.apache.ibatis.mapping.StatementType;
 import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
 import org.apache.ibatis.transaction.Transaction;
+import org.apache.ibatis.type.TypeHandlerRegistry;
 
 /**
  * @author Clinton Begin
@@ -40,6 +48,8 @@ public class CachingExecutor implements Executor {
 
   private final Executor delegate;
   private final TransactionalCacheManager tcm = new TransactionalCacheManager();
+  // 事务中执行过修改语句, 不管修改的是哪个缓存或者有没有缓存, 提交或者回滚之前的查询结果都不能被其他会话看到
+  private boolean dirty;
 
   public CachingExecutor(Executor delegate) {
     this.delegate = delegate;
@@ -72,13 +82,14 @@ public class CachingExecutor implements Executor {
 
   @Override
   public int update(MappedStatement ms, Object parameterObject) throws SQLException {
-    flushCacheIfRequired(ms);
+    dirty = true;
+    flushCacheIfRequired(ms, parameterObject, null);
     return delegate.update(ms, parameterObject);
   }
 
   @Override
   public <E> Cursor<E> queryCursor(MappedStatement ms, Object parameter, RowBounds rowBounds) throws SQLException {
-    flushCacheIfRequired(ms);
+    flushCacheIfRequired(ms, parameter, null);
     return delegate.queryCursor(ms, parameter, rowBounds);
   }
 
@@ -93,16 +104,27 @@ public class CachingExecutor implements Executor {
   @Override
   public <E> List<E> query(MappedStatement ms, Object parameterObject, RowBounds rowBounds, ResultHandler resultHandler,
       CacheKey key, BoundSql boundSql) throws SQLException {
+    // 在查询缓存之前检查, 否则会返回某一块已经缓存的结果
+    ensureNotChunked(ms);
     Cache cache = ms.getCache();
     if (cache != null) {
-      flushCacheIfRequired(ms);
+      flushCacheIfRequired(ms, parameterObject, boundSql);
       if (ms.isUseCache() && resultHandler == null) {
         ensureNoOutParams(ms, boundSql);
+        if (ms.getCacheTtl() != null) {
+          key.setTimeToLive(ms.getCacheTtl());
+        }
+        // 按表失效的时候记录结果来自哪些表
+        Set<String> tables = isTableInvalidating(cache) ? ms.getTables(boundSql) : null;
+        // 事务没有修改过任何数据的时候, 查询结果不需要等到提交就可以放入缓存
+        if (cache instanceof LoadingCache && !dirty && !tcm.isModified(cache, tables)) {
+          return loadingQuery((LoadingCache) cache, ms, parameterObject, rowBounds, key, boundSql, tables);
+        }
         @SuppressWarnings("unchecked")
-        List<E> list = (List<E>) tcm.getObject(cache, key);
+        List<E> list = (List<E>) tcm.getObject(cache, key, tables);
         if (list == null) {
           list = delegate.query(ms, parameterObject, rowBounds, resultHandler, key, boundSql);
-          tcm.putObject(cache, key, list); // issue #578 and #116
+          tcm.putObject(cache, key, list, tables); // issue #578 and #116
         }
         return list;
       }
@@ -110,6 +132,69 @@ public class CachingExecutor implements Executor {
     return delegate.query(ms, parameterObject, rowBounds, resultHandler, key, boundSql);
   }
 
+  @SuppressWarnings("unchecked")
+  private <E> List<E> loadingQuery(LoadingCache cache, MappedStatement ms, Object parameterObject, RowBounds rowBounds,
+      CacheKey key, BoundSql boundSql, Set<String> tables) throws SQLException {
+    return (List<E>) cache.getObject(key, tables,
+        () -> delegate.query(ms, parameterObject, rowBounds, Executor.NO_RESULT_HANDLER, key, boundSql),
+        ms.getConfiguration().getAsyncExecutor(), () -> {
+          BoundSql snapshot = snapshot(ms.getConfiguration(), parameterObject, boundSql);
+          return () -> refresh(ms, rowBounds, key, snapshot);
+        });
+  }
+
+  /**
+   * 调用方之后可能会修改参数对象, 所以在触发刷新的线程中取出每个?的值, 作为附加参数绑定到同样的sql上
+   */
+  private static BoundSql snapshot(Configuration configuration, Object parameterObject, BoundSql boundSql) {
+    TypeHandlerRegistry typeHandlerRegistry = configuration.getTypeHandlerRegistry();
+    List<ParameterMapping> parameterMappings = boundSql.getParameterMappings();
+    List<ParameterMapping> snapshotMappings = new ArrayList<>(parameterMappings.size());
+    BoundSql snapshot = new BoundSql(configuration, boundSql.getSql(), snapshotMappings, null);
+    MetaObject metaObject = null;
+    for (int i = 0; i < parameterMappings.size(); i++) {
+      ParameterMapping parameterMapping = parameterMappings.get(i);
+      String property = parameterMapping.getProperty();
+      Object value;
+      if (boundSql.hasAdditionalParameter(property)) {
+        value = boundSql.getAdditionalParameter(property);
+      } else if (parameterObject == null) {
+        value = null;
+      } else if (typeHandlerRegistry.hasTypeHandler(parameterObject.getClass())) {
+        value = parameterObject;
+      } else {
+        if (metaObject == null) {
+          metaObject = configuration.newMetaObject(parameterObject);
+        }
+        value = metaObject.getValue(property);
+      }
+      String name = "__refresh_" + i;
+      snapshot.setAdditionalParameter(name, value);
+      snapshotMappings.add(new ParameterMapping.Builder(configuration, name, parameterMapping.getTypeHandler())
+          .javaType(parameterMapping.getJavaType()).jdbcType(parameterMapping.getJdbcType())
+          .numericScale(parameterMapping.getNumericScale()).jdbcTypeName(parameterMapping.getJdbcTypeName())
+          .mode(parameterMapping.getMode()).build());
+    }
+    return snapshot;
+  }
+
+  /**
+   * 在新的执行器中执行同样的sql, 这个线程第一次读取的时候 LoadingCache 当作没有命中, 重新加载之后放入缓存
+   */
+  private static void refresh(MappedStatement ms, RowBounds rowBounds, CacheKey key, BoundSql boundSql) {
+    Environment environment = ms.getConfiguration().getEnvironment();
+    Transaction tx = environment.getTransactionFactory().newTransaction(environment.getDataSource(), null, false);
+    Executor executor = ms.getConfiguration().newExecutor(tx);
+    try {
+      executor.query(ms, null, rowBounds, Executor.NO_RESULT_HANDLER, key, boundSql);
+    } catch (Exception e) {
+      throw ExceptionFactory.wrapException("Error refreshing the cached result of " + ms.getId() + ".  Cause: " + e, e);
+    } finally {
+      executor.close(false);
+      ErrorContext.instance().reset();
+    }
+  }
+
   @Override
   public List<BatchResult> flushStatements() throws SQLException {
     return delegate.flushStatements();
@@ -119,6 +204,7 @@ public class CachingExecutor implements Executor {
   public void commit(boolean required) throws SQLException {
     delegate.commit(required);
     tcm.commit();
+    dirty = false;
   }
 
   @Override
@@ -128,10 +214,18 @@ public class CachingExecutor implements Executor {
     } finally {
       if (required) {
         tcm.rollback();
+        dirty = false;
       }
     }
   }
 
+  private void ensureNotChunked(MappedStatement ms) {
+    if (ms.isChunked()) {
+      throw new ExecutorException("Mapped Statement '" + ms.getId()
+          + "' contains a chunked foreach and must be executed through a SqlSession.");
+    }
+  }
+
   private void ensureNoOutParams(MappedStatement ms, BoundSql boundSql) {
     if (ms.getStatementType() == StatementType.CALLABLE) {
       for (ParameterMapping parameterMapping : boundSql.getParameterMappings()) {
@@ -165,11 +259,30 @@ public class CachingExecutor implements Executor {
     delegate.clearLocalCache();
   }
 
-  private void flushCacheIfRequired(MappedStatement ms) {
+  private void flushCacheIfRequired(MappedStatement ms, Object parameterObject, BoundSql boundSql) {
     Cache cache = ms.getCache();
     if (cache != null && ms.isFlushCacheRequired()) {
-      tcm.clear(cache);
+      Set<String> tables = null;
+      if (isTableInvalidating(cache)) {
+        // 没有声明表的时候从sql中解析
+        tables = ms.getTables();
+        if (tables == null) {
+          tables = ms.getTables(boundSql == null ? ms.getBoundSql(parameterObject) : boundSql);
+        }
+      }
+      if (tables == null) {
+        tcm.clear(cache);
+      } else {
+        tcm.invalidate(cache, tables);
+      }
+    }
+  }
+
+  private static boolean isTableInvalidating(Cache cache) {
+    if (cache instanceof LoadingCache) {
+      return ((LoadingCache) cache).getDelegate() instanceof TableInvalidatingCache;
     }
+    return cache instanceof TableInvalidatingCache;
   }
 
   @Override
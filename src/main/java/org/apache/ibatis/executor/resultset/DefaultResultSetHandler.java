@@ -24,6 +24,7 @@ import java.sql.Statement;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -38,6 +39,7 @@ import org.apache.ibatis.binding.MapperMethod.ParamMap;
 import org.apache.ibatis.cache.CacheKey;
 import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.cursor.defaults.DefaultCursor;
+import org.apache.ibatis.cursor.defaults.PrefetchingCursor;
 import org.apache.ibatis.executor.ErrorContext;
 import org.apache.ibatis.executor.Executor;
 import org.apache.ibatis.executor.ExecutorException;
@@ -56,8 +58,10 @@ import org.apache.ibatis.mapping.ResultMap;
 import org.apache.ibatis.mapping.ResultMapping;
 import org.apache.ibatis.reflection.MetaClass;
 import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.reflection.Reflector;
 import org.apache.ibatis.reflection.ReflectorFactory;
 import org.apache.ibatis.reflection.factory.ObjectFactory;
+import org.apache.ibatis.reflection.wrapper.ObjectWrapper;
 import org.apache.ibatis.session.AutoMappingBehavior;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ResultContext;
@@ -178,6 +182,10 @@ public class DefaultResultSetHandler implements ResultSetHandler {
   // Key为resultMapId+字段前缀
   private final Map<String, List<String>> constructorAutoMappingColumns = new HashMap<>();
 
+  // 简单结果集的单行映射计划, key为 resultMap, 最后一次使用的计划单独保存, 大部分行都不需要查找map
+  private final Map<ResultMap, ResultMappingPlan> resultMappingPlans = new HashMap<>();
+  private ResultMappingPlan lastResultMappingPlan;
+
   // temporary marking flag that indicate using constructor mapping (use field to reduce memory usage)
   private boolean useConstructorMappings;
 
@@ -350,7 +358,13 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     }
 
     ResultMap resultMap = resultMaps.get(0);
-    return new DefaultCursor<>(this, resultMap, rsw, rowBounds);
+    DefaultCursor<E> cursor = new DefaultCursor<>(this, resultMap, rsw, rowBounds);
+    int prefetchSize = configuration.getCursorPrefetchSize();
+    if (prefetchSize > 0) {
+      // 在另一个线程中提前读取和映射
+      return new PrefetchingCursor<>(cursor, prefetchSize, configuration.getAsyncExecutor());
+    }
+    return cursor;
   }
 
   private ResultSetWrapper getFirstResultSet(Statement stmt) throws SQLException {
@@ -597,14 +611,21 @@ public class DefaultResultSetHandler implements ResultSetHandler {
 
     if (rowValue != null && !hasTypeHandlerForResultObject(rsw, resultMap.getType())) {
       // 没有类型处理,并且值不为空
-      final MetaObject metaObject = configuration.newMetaObject(rowValue);
       boolean foundValues = this.useConstructorMappings;
 
-      if (shouldApplyAutomaticMappings(resultMap, false)) {
-        foundValues = applyAutomaticMappings(rsw, resultMap, metaObject, columnPrefix) || foundValues;
-      }
+      final ResultMappingPlan plan = getResultMappingPlan(rsw, resultMap, columnPrefix, rowValue);
+      if (plan != null) {
+        // 按照映射计划直接设置, 不需要 MetaObject
+        foundValues = plan.apply(rsw.getResultSet(), rowValue, configuration.isCallSettersOnNulls()) || foundValues;
+      } else {
+        final MetaObject metaObject = configuration.newMetaObject(rowValue);
 
-      foundValues = applyPropertyMappings(rsw, resultMap, metaObject, lazyLoader, columnPrefix) || foundValues;
+        if (shouldApplyAutomaticMappings(resultMap, false)) {
+          foundValues = applyAutomaticMappings(rsw, resultMap, metaObject, columnPrefix) || foundValues;
+        }
+
+        foundValues = applyPropertyMappings(rsw, resultMap, metaObject, lazyLoader, columnPrefix) || foundValues;
+      }
 
       foundValues = lazyLoader.size() > 0 || foundValues;
 
@@ -613,6 +634,80 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     return rowValue;
   }
 
+  /**
+   * 获取简单结果集的单行映射计划
+   *
+   * @return 不能使用映射计划的话返回null
+   */
+  private ResultMappingPlan getResultMappingPlan(ResultSetWrapper rsw, ResultMap resultMap, String columnPrefix,
+      Object rowValue) throws SQLException {
+    final Class<?> type = rowValue.getClass();
+    ResultMappingPlan plan = lastResultMappingPlan;
+    if (plan == null || !plan.matches(rsw, resultMap, columnPrefix, type)) {
+      plan = resultMappingPlans.get(resultMap);
+      if (plan == null || !plan.matches(rsw, resultMap, columnPrefix, type)) {
+        plan = createResultMappingPlan(rsw, resultMap, columnPrefix, rowValue);
+        resultMappingPlans.put(resultMap, plan);
+      }
+      lastResultMappingPlan = plan;
+    }
+    return plan.isSupported() ? plan : null;
+  }
+
+  /**
+   * 创建映射计划, 和 applyAutomaticMappings + applyPropertyMappings 的逻辑保持一致
+   */
+  private ResultMappingPlan createResultMappingPlan(ResultSetWrapper rsw, ResultMap resultMap, String columnPrefix,
+      Object rowValue) throws SQLException {
+    final ResultMappingPlan.Builder builder = new ResultMappingPlan.Builder(rsw, resultMap, columnPrefix,
+        rowValue.getClass());
+
+    // 只有 BeanWrapper 的对象才能直接调用set方法
+    if (rowValue instanceof ObjectWrapper || rowValue instanceof Map || rowValue instanceof Collection
+        || configuration.getObjectWrapperFactory().hasWrapperFor(rowValue)) {
+      return builder.unsupported();
+    }
+    final Reflector reflector = reflectorFactory.findForClass(rowValue.getClass());
+
+    if (shouldApplyAutomaticMappings(resultMap, false)) {
+      final MetaObject metaObject = configuration.newMetaObject(rowValue);
+      for (UnMappedColumnAutoMapping mapping : createAutomaticMappings(rsw, resultMap, metaObject, columnPrefix)) {
+        if (!addToResultMappingPlan(builder, reflector, mapping.column, mapping.typeHandler, mapping.property)) {
+          return builder.unsupported();
+        }
+      }
+    }
+
+    final List<String> mappedColumnNames = rsw.getMappedColumnNames(resultMap, columnPrefix);
+    for (ResultMapping propertyMapping : resultMap.getPropertyResultMappings()) {
+      // 嵌套查询和多结果集需要 MetaObject
+      if (propertyMapping.getNestedQueryId() != null || propertyMapping.getResultSet() != null
+          || propertyMapping.isCompositeResult()) {
+        return builder.unsupported();
+      }
+      final String column = prependPrefix(propertyMapping.getColumn(), columnPrefix);
+      if (propertyMapping.getNestedResultMapId() != null || propertyMapping.getProperty() == null || column == null
+          || !mappedColumnNames.contains(column.toUpperCase(Locale.ENGLISH))) {
+        continue;
+      }
+      if (!addToResultMappingPlan(builder, reflector, column, propertyMapping.getTypeHandler(),
+          propertyMapping.getProperty())) {
+        return builder.unsupported();
+      }
+    }
+    return builder.build();
+  }
+
+  private boolean addToResultMappingPlan(ResultMappingPlan.Builder builder, Reflector reflector, String column,
+      TypeHandler<?> typeHandler, String property) {
+    // 只支持简单的属性(a.b, a[0] 这种需要 MetaObject)
+    if (property.indexOf('.') >= 0 || property.indexOf('[') >= 0 || !reflector.hasSetter(property)) {
+      return false;
+    }
+    return builder.add(column, typeHandler, reflector.getSetInvoker(property), property,
+        reflector.getSetterType(property).isPrimitive());
+  }
+
   //
   // GET VALUE FROM ROW FOR NESTED RESULT MAP
   //
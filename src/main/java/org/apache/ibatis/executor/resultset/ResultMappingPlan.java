@@ -0,0 +1,186 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.resultset;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.reflection.ExceptionUtil;
+import org.apache.ibatis.reflection.ReflectionException;
+import org.apache.ibatis.reflection.invoker.Invoker;
+import org.apache.ibatis.type.TypeHandler;
+
+/**
+ * 简单结果集(没有嵌套)的单行映射计划.
+ * <p>
+ * 对于同一个 ResultSetWrapper(字段布局) + ResultMap + 字段前缀 + 结果对象的类型, 自动映射和属性映射的结果是固定的,
+ * 第一行的时候计算一次: (字段下标, 类型处理器, set方法), 之后每一行只需要遍历数组,
+ * 不再拼接字符串, 查找map, 也不再创建 MetaObject.
+ * </p>
+ *
+ * @since 3.5.14
+ */
+final class ResultMappingPlan {
+
+  private final ResultSetWrapper rsw;
+  private final ResultMap resultMap;
+  private final String columnPrefix;
+  private final Class<?> type;
+  // 为false的话说明不能使用映射计划(比如有嵌套查询, 结果对象是Map), 还是走 MetaObject
+  private final boolean supported;
+
+  // 下面的数组下标一一对应, 先是自动映射的字段, 然后是属性映射的字段(和原来的处理顺序一致)
+  private final int[] columnIndexes;
+  private final TypeHandler<?>[] typeHandlers;
+  private final Invoker[] setters;
+  private final String[] properties;
+  private final boolean[] primitives;
+
+  private ResultMappingPlan(Builder builder, boolean supported) {
+    this.rsw = builder.rsw;
+    this.resultMap = builder.resultMap;
+    this.columnPrefix = builder.columnPrefix;
+    this.type = builder.type;
+    this.supported = supported;
+    int size = builder.columnIndexes.size();
+    this.columnIndexes = new int[size];
+    this.typeHandlers = new TypeHandler<?>[size];
+    this.setters = new Invoker[size];
+    this.properties = new String[size];
+    this.primitives = new boolean[size];
+    for (int i = 0; i < size; i++) {
+      columnIndexes[i] = builder.columnIndexes.get(i);
+      typeHandlers[i] = builder.typeHandlers.get(i);
+      setters[i] = builder.setters.get(i);
+      properties[i] = builder.properties.get(i);
+      primitives[i] = builder.primitives.get(i);
+    }
+  }
+
+  /**
+   * 该计划是否适用于当前这一行
+   */
+  boolean matches(ResultSetWrapper rsw, ResultMap resultMap, String columnPrefix, Class<?> type) {
+    return this.rsw == rsw && this.resultMap == resultMap && this.type == type
+        && Objects.equals(this.columnPrefix, columnPrefix);
+  }
+
+  boolean isSupported() {
+    return supported;
+  }
+
+  /**
+   * 映射一行数据
+   *
+   * @return 是否有不为null的值
+   */
+  boolean apply(ResultSet rs, Object rowValue, boolean callSettersOnNulls) throws SQLException {
+    boolean foundValues = false;
+    for (int i = 0; i < columnIndexes.length; i++) {
+      final Object value = typeHandlers[i].getResult(rs, columnIndexes[i]);
+      if (value != null) {
+        foundValues = true;
+      } else if (!callSettersOnNulls || primitives[i]) {
+        continue;
+      }
+      // gcode issue #377, call setter on nulls (value is not 'found')
+      setValue(i, rowValue, value);
+    }
+    return foundValues;
+  }
+
+  private void setValue(int i, Object rowValue, Object value) {
+    // 和 BeanWrapper 的异常保持一致
+    try {
+      try {
+        setters[i].invoke(rowValue, new Object[] { value });
+      } catch (Throwable t) {
+        throw ExceptionUtil.unwrapThrowable(t);
+      }
+    } catch (Throwable t) {
+      throw new ReflectionException("Could not set property '" + properties[i] + "' of '" + rowValue.getClass()
+          + "' with value '" + value + "' Cause: " + t.toString(), t);
+    }
+  }
+
+  static final class Builder {
+    private final ResultSetWrapper rsw;
+    private final ResultMap resultMap;
+    private final String columnPrefix;
+    private final Class<?> type;
+
+    private final List<Integer> columnIndexes = new ArrayList<>();
+    private final List<TypeHandler<?>> typeHandlers = new ArrayList<>();
+    private final List<Invoker> setters = new ArrayList<>();
+    private final List<String> properties = new ArrayList<>();
+    private final List<Boolean> primitives = new ArrayList<>();
+
+    Builder(ResultSetWrapper rsw, ResultMap resultMap, String columnPrefix, Class<?> type) {
+      this.rsw = rsw;
+      this.resultMap = resultMap;
+      this.columnPrefix = columnPrefix;
+      this.type = type;
+    }
+
+    /**
+     * @param column
+     *          字段名称(已经加上了前缀)
+     *
+     * @return 找不到字段的话返回false
+     */
+    boolean add(String column, TypeHandler<?> typeHandler, Invoker setter, String property, boolean primitive) {
+      int columnIndex = indexOf(column);
+      if (columnIndex < 0) {
+        return false;
+      }
+      columnIndexes.add(columnIndex);
+      typeHandlers.add(typeHandler);
+      setters.add(setter);
+      properties.add(property);
+      primitives.add(primitive);
+      return true;
+    }
+
+    // 和 ResultSet.findColumn 一样, 不区分大小写, 取第一个
+    private int indexOf(String column) {
+      List<String> columnNames = rsw.getColumnNames();
+      for (int i = 0; i < columnNames.size(); i++) {
+        if (columnNames.get(i).equalsIgnoreCase(column)) {
+          return i + 1;
+        }
+      }
+      return -1;
+    }
+
+    ResultMappingPlan build() {
+      return new ResultMappingPlan(this, true);
+    }
+
+    ResultMappingPlan unsupported() {
+      columnIndexes.clear();
+      typeHandlers.clear();
+      setters.clear();
+      properties.clear();
+      primitives.clear();
+      return new ResultMappingPlan(this, false);
+    }
+  }
+
+}
@@ -76,6 +76,11 @@ public abstract class BaseStatementHandler implements StatementHandler {
       // 这里就会执行动态sql,从而得到一个完整标准的sql
       boundSql = mappedStatement.getBoundSql(parameterObject);
     }
+    if (mappedStatement.isChunked()) {
+      // 分块的 foreach 需要通过 SqlSession 每一块执行一次(使用 forChunk 的视图), 这里只会执行第一块
+      throw new ExecutorException("Mapped Statement '" + mappedStatement.getId()
+          + "' contains a chunked foreach and must be executed through a SqlSession.");
+    }
 
     this.boundSql = boundSql;
 
@@ -24,12 +24,22 @@ import java.util.Properties;
 import org.apache.ibatis.builder.InitializingObject;
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CacheValueCodec;
+import org.apache.ibatis.cache.CacheWeigher;
+import org.apache.ibatis.cache.ConcurrentCache;
 import org.apache.ibatis.cache.decorators.BlockingCache;
+import org.apache.ibatis.cache.decorators.ConcurrentFifoCache;
+import org.apache.ibatis.cache.decorators.ConcurrentLruCache;
+import org.apache.ibatis.cache.decorators.ExpiringCache;
+import org.apache.ibatis.cache.decorators.FifoCache;
+import org.apache.ibatis.cache.decorators.LoadingCache;
 import org.apache.ibatis.cache.decorators.LoggingCache;
 import org.apache.ibatis.cache.decorators.LruCache;
-import org.apache.ibatis.cache.decorators.ScheduledCache;
 import org.apache.ibatis.cache.decorators.SerializedCache;
 import org.apache.ibatis.cache.decorators.SynchronizedCache;
+import org.apache.ibatis.cache.decorators.TableInvalidatingCache;
+import org.apache.ibatis.cache.decorators.WeightedLruCache;
+import org.apache.ibatis.cache.impl.ConcurrentPerpetualCache;
 import org.apache.ibatis.cache.impl.PerpetualCache;
 import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.reflection.SystemMetaObject;
@@ -46,6 +56,10 @@ public class CacheBuilder {
   private boolean readWrite;
   private Properties properties;
   private boolean blocking;
+  private CacheValueCodec valueCodec;
+  private CacheWeigher weigher;
+  private boolean tableInvalidation;
+  private boolean loading;
 
   public CacheBuilder(String id) {
     this.id = id;
@@ -84,6 +98,48 @@ public class CacheBuilder {
     return this;
   }
 
+  /**
+   * Sets the codec that copies the values of a read/write cache, Java serialization by default.
+   *
+   * @since 3.5.14
+   */
+  public CacheBuilder valueCodec(CacheValueCodec valueCodec) {
+    this.valueCodec = valueCodec;
+    return this;
+  }
+
+  /**
+   * Sets the weigher of a {@link WeightedLruCache} eviction decorator, by default
+   * {@link org.apache.ibatis.cache.weigher.RetainedSizeWeigher}.
+   *
+   * @since 3.5.14
+   */
+  public CacheBuilder weigher(CacheWeigher weigher) {
+    this.weigher = weigher;
+    return this;
+  }
+
+  /**
+   * Wraps the cache in a {@link TableInvalidatingCache}, so that the statements can invalidate the entries by table.
+   *
+   * @since 3.5.14
+   */
+  public CacheBuilder tableInvalidation(boolean tableInvalidation) {
+    this.tableInvalidation = tableInvalidation;
+    return this;
+  }
+
+  /**
+   * Wraps the cache in a {@link LoadingCache}: concurrent misses of a key run the query once, and the entries are
+   * reloaded in the background before the flush interval expires them. It replaces the blocking decorator.
+   *
+   * @since 3.5.14
+   */
+  public CacheBuilder loading(boolean loading) {
+    this.loading = loading;
+    return this;
+  }
+
   public CacheBuilder properties(Properties properties) {
     this.properties = properties;
     return this;
@@ -94,18 +150,53 @@ public class CacheBuilder {
     Cache cache = newBaseCacheInstance(implementation, id);
     setCacheProperties(cache);
     // issue #352, do not apply decorators to custom caches
-    if (PerpetualCache.class.equals(cache.getClass())) {
+    if (PerpetualCache.class.equals(cache.getClass()) || ConcurrentPerpetualCache.class.equals(cache.getClass())) {
+      // 每一层都是线程安全的话不需要SynchronizedCache
+      boolean concurrent = cache instanceof ConcurrentCache;
+      // 每个条目分别到期, 不会在同一时刻清空整个缓存. 放在淘汰策略的下面, 淘汰的条目也会从时间轮中删除,
+      // 到期的条目通知淘汰策略. 没有 flushInterval 的时候只有设置了 cacheTtl 的语句的条目会到期
+      ExpiringCache expiringCache = new ExpiringCache(cache);
+      if (clearInterval != null) {
+        expiringCache.setTimeToLive(clearInterval);
+      }
+      cache = expiringCache;
       for (Class<? extends Cache> decorator : decorators) {
-        cache = newCacheDecoratorInstance(decorator, cache);
+        cache = newCacheDecoratorInstance(concurrent ? concurrentDecoratorOf(decorator) : decorator, cache);
+        if (weigher != null && cache instanceof WeightedLruCache) {
+          ((WeightedLruCache) cache).setWeigher(weigher);
+        }
+        if (cache instanceof ExpiringCache.ExpirationListener) {
+          expiringCache.addExpirationListener((ExpiringCache.ExpirationListener) cache);
+        }
         setCacheProperties(cache);
+        concurrent = concurrent && cache instanceof ConcurrentCache;
       }
-      cache = setStandardDecorators(cache);
+      cache = setStandardDecorators(cache, concurrent);
     } else if (!LoggingCache.class.isAssignableFrom(cache.getClass())) {
       cache = new LoggingCache(cache);
     }
+    // 事务提交的时候可以直接按表失效
+    if (tableInvalidation) {
+      cache = new TableInvalidatingCache(cache);
+    }
+    // 在最外层, 执行器通过它加载
+    if (loading) {
+      cache = newLoadingCache(cache);
+    }
     return cache;
   }
 
+  private Cache newLoadingCache(Cache cache) {
+    LoadingCache loadingCache = new LoadingCache(cache);
+    if (clearInterval != null) {
+      // 经常读取的条目在到期之前就会刷新
+      loadingCache.setExpireAfter(clearInterval);
+      loadingCache.setRefreshAfter(clearInterval * 4 / 5);
+    }
+    setCacheProperties(loadingCache);
+    return loadingCache;
+  }
+
   private void setDefaultImplementations() {
     if (implementation == null) {
       implementation = PerpetualCache.class;
@@ -115,22 +206,31 @@ public class CacheBuilder {
     }
   }
 
-  private Cache setStandardDecorators(Cache cache) {
+  private static Class<? extends Cache> concurrentDecoratorOf(Class<? extends Cache> decorator) {
+    if (LruCache.class.equals(decorator)) {
+      return ConcurrentLruCache.class;
+    }
+    if (FifoCache.class.equals(decorator)) {
+      return ConcurrentFifoCache.class;
+    }
+    return decorator;
+  }
+
+  private Cache setStandardDecorators(Cache cache, boolean concurrent) {
     try {
       MetaObject metaCache = SystemMetaObject.forObject(cache);
       if (size != null && metaCache.hasSetter("size")) {
         metaCache.setValue("size", size);
       }
-      if (clearInterval != null) {
-        cache = new ScheduledCache(cache);
-        ((ScheduledCache) cache).setClearInterval(clearInterval);
-      }
       if (readWrite) {
-        cache = new SerializedCache(cache);
+        cache = valueCodec == null ? new SerializedCache(cache) : new SerializedCache(cache, valueCodec);
       }
       cache = new LoggingCache(cache);
-      cache = new SynchronizedCache(cache);
-      if (blocking) {
+      if (!concurrent) {
+        cache = new SynchronizedCache(cache);
+      }
+      // LoadingCache 自己会让同时没有命中的调用方等待
+      if (blocking && !loading) {
         cache = new BlockingCache(cache);
       }
       return cache;
@@ -17,7 +17,11 @@ package org.apache.ibatis.mapping;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
@@ -26,12 +30,15 @@ import org.apache.ibatis.executor.keygen.NoKeyGenerator;
 import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.logging.LogFactory;
 import org.apache.ibatis.scripting.LanguageDriver;
+import org.apache.ibatis.scripting.defaults.ParameterBindingPlan;
 import org.apache.ibatis.session.Configuration;
 
 /**
  * @author Clinton Begin
  */
-public final class MappedStatement {
+public final class MappedStatement implements Cloneable {
+
+  private static final int MAX_PARSED_TABLES = 64;
 
   // 该描述的资源
   private String resource;
@@ -84,8 +91,21 @@ public final class MappedStatement {
   // 是否脏查询
   private boolean dirtySelect;
 
+  // 参数的绑定计划, key为参数的类型, 由 DefaultParameterHandler 使用
+  private final ConcurrentMap<Class<?>, ParameterBindingPlan> parameterBindingPlans;
+
+  // 声明的引用的表, 为null的时候从sql中解析
+  private Set<String> tables;
+  // 从sql中解析出的表, key为sql, 找不到表的时候为空集合
+  private final ConcurrentMap<String, Set<String>> parsedTables;
+
+  // 结果在二级缓存中保留的毫秒数, 为null的时候使用缓存的 flushInterval
+  private Long cacheTtl;
+
   MappedStatement() {
     // constructor disabled
+    this.parameterBindingPlans = new ConcurrentHashMap<>();
+    this.parsedTables = new ConcurrentHashMap<>();
   }
 
   public static class Builder {
@@ -208,6 +228,45 @@ public final class MappedStatement {
       return this;
     }
 
+    /**
+     * Declares the tables the statement reads or writes, instead of parsing them from the SQL.
+     *
+     * @param tables
+     *          the comma separated table names
+     *
+     * @return the builder
+     *
+     * @since 3.5.14
+     */
+    public Builder tables(String tables) {
+      String[] names = delimitedStringToArray(tables);
+      if (names == null) {
+        mappedStatement.tables = null;
+      } else {
+        Set<String> set = new LinkedHashSet<>();
+        for (String name : names) {
+          set.add(SqlTables.normalize(name));
+        }
+        mappedStatement.tables = Collections.unmodifiableSet(set);
+      }
+      return this;
+    }
+
+    /**
+     * Sets how long the results are kept in the second level cache, instead of the flush interval of the cache.
+     *
+     * @param cacheTtl
+     *          milliseconds, 0 if the results never expire, {@code null} for the flush interval of the cache
+     *
+     * @return the builder
+     *
+     * @since 3.5.14
+     */
+    public Builder cacheTtl(Long cacheTtl) {
+      mappedStatement.cacheTtl = cacheTtl;
+      return this;
+    }
+
     /**
      * Resul sets.
      *
@@ -330,6 +389,89 @@ public final class MappedStatement {
     return dirtySelect;
   }
 
+  /**
+   * Gets the parameter binding plan cached for a parameter type.
+   *
+   * @param parameterType
+   *          the type of the parameter object, {@code void.class} for {@code null}
+   *
+   * @return the plan, or {@code null} if none was cached yet
+   *
+   * @since 3.5.14
+   */
+  public ParameterBindingPlan getParameterBindingPlan(Class<?> parameterType) {
+    return parameterBindingPlans.get(parameterType);
+  }
+
+  /**
+   * Caches the parameter binding plan of a parameter type, replacing the previous one.
+   *
+   * @param parameterType
+   *          the type of the parameter object, {@code void.class} for {@code null}
+   * @param plan
+   *          the plan
+   *
+   * @since 3.5.14
+   */
+  public void putParameterBindingPlan(Class<?> parameterType, ParameterBindingPlan plan) {
+    parameterBindingPlans.put(parameterType, plan);
+  }
+
+  /**
+   * Gets how long the results are kept in the second level cache, whether or not the cache has a flush interval. Custom
+   * caches, which are not decorated, get it from {@link org.apache.ibatis.cache.CacheKey#getTimeToLive()}.
+   *
+   * @return milliseconds, 0 if the results never expire, {@code null} for the flush interval of the cache
+   *
+   * @since 3.5.14
+   */
+  public Long getCacheTtl() {
+    return cacheTtl;
+  }
+
+  /**
+   * Gets the declared tables.
+   *
+   * @return the tables, {@code null} if they are parsed from the SQL
+   *
+   * @since 3.5.14
+   */
+  public Set<String> getTables() {
+    return tables;
+  }
+
+  /**
+   * Gets the tables an execution of this statement reads or writes, used to invalidate the second level cache by
+   * table.
+   *
+   * @param boundSql
+   *          the SQL of the execution
+   *
+   * @return the declared tables, or the lower case names found in the SQL, {@code null} if none is found
+   *
+   * @since 3.5.14
+   *
+   * @see org.apache.ibatis.session.CacheInvalidation#TABLE
+   */
+  public Set<String> getTables(BoundSql boundSql) {
+    if (tables != null) {
+      return tables;
+    }
+    String sql = boundSql.getSql();
+    Set<String> parsed = parsedTables.get(sql);
+    if (parsed == null) {
+      parsed = SqlTables.parse(sql);
+      if (parsed == null) {
+        parsed = Collections.emptySet();
+      }
+      // 动态sql可能生成很多不同的sql, 只缓存一部分
+      if (parsedTables.size() < MAX_PARSED_TABLES) {
+        parsedTables.put(sql, parsed);
+      }
+    }
+    return parsed.isEmpty() ? null : parsed;
+  }
+
   /**
    * Gets the resul sets.
    *
@@ -342,6 +484,53 @@ public final class MappedStatement {
     return resultSets;
   }
 
+  /**
+   * Whether the sql source contains a chunked foreach.
+   *
+   * @return true if a single call may be split into several executions
+   *
+   * @since 3.5.14
+   */
+  public boolean isChunked() {
+    return sqlSource.isChunked();
+  }
+
+  /**
+   * Creates the SQL of each execution of a call, one per chunk when the statement contains a chunked foreach.
+   *
+   * @param parameterObject
+   *          the parameter of the call
+   *
+   * @return the SQL of each execution, to run with {@link #forChunk(BoundSql)}
+   *
+   * @since 3.5.14
+   */
+  public List<BoundSql> getBoundSqlChunks(Object parameterObject) {
+    return sqlSource.getBoundSqlChunks(parameterObject);
+  }
+
+  /**
+   * Returns a view of this statement that always executes the given chunk.
+   *
+   * @param chunk
+   *          one of the {@link #getBoundSqlChunks(Object) chunks}
+   *
+   * @return the view
+   *
+   * @since 3.5.14
+   */
+  public MappedStatement forChunk(BoundSql chunk) {
+    // 浅拷贝, 其余的属性(包括缓存的绑定计划和表)都和原来的共用
+    MappedStatement view;
+    try {
+      view = (MappedStatement) super.clone();
+    } catch (CloneNotSupportedException e) {
+      throw new IllegalStateException(e);
+    }
+    view.sqlSource = parameterObject -> chunk;
+    return view;
+  }
+
   public BoundSql getBoundSql(Object parameterObject) {
     BoundSql boundSql = sqlSource.getBoundSql(parameterObject);
     List<ParameterMapping> parameterMappings = boundSql.getParameterMappings();
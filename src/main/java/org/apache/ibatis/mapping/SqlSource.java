@@ -15,6 +15,9 @@
  */
 package org.apache.ibatis.mapping;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Represents the content of a mapped statement read from an XML file or an annotation. It creates the SQL that will be
  * passed to the database out of the input parameter received from the user.
@@ -25,4 +28,32 @@ public interface SqlSource {
 
   BoundSql getBoundSql(Object parameterObject);
 
+  /**
+   * 是否包含分块执行的 foreach (chunkSize), 是的话一次调用可能会拆分成多次执行.
+   *
+   * @return true if a call may be split into several executions
+   *
+   * @see #getBoundSqlChunks(Object)
+   *
+   * @since 3.5.14
+   */
+  default boolean isChunked() {
+    return false;
+  }
+
+  /**
+   * Creates the SQL of each execution of a call. A chunked source renders one {@link BoundSql} per chunk, and
+   * {@link #getBoundSql(Object)} only renders the first one.
+   *
+   * @param parameterObject
+   *          the parameter of the call
+   *
+   * @return the SQL of each execution, in order
+   *
+   * @since 3.5.14
+   */
+  default List<BoundSql> getBoundSqlChunks(Object parameterObject) {
+    return Collections.singletonList(getBoundSql(parameterObject));
+  }
+
 }
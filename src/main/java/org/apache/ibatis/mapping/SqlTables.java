@@ -0,0 +1,170 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.mapping;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 从sql中找出引用的表名, 用于按表失效二级缓存.
+ * <p>
+ * 只做简单的词法分析: 取 FROM, JOIN, UPDATE, INTO, USING, TABLE 后面的标识符, 后面用逗号隔开的多个表也会识别. 表名转为小写并去掉引号和schema.
+ * 结果可能包含多余的名字(比如 EXTRACT(YEAR FROM col) 中的列名), 这只会让失效的范围变大. 找不到任何表的时候返回 null, 调用方需要清空整个缓存.
+ * </p>
+ *
+ * @since 3.5.14
+ */
+final class SqlTables {
+
+  private static final Set<String> TABLE_KEYWORDS = Set.of("from", "join", "update", "into", "using", "table");
+  private static final Set<String> RESERVED = Set.of("select", "where", "on", "join", "inner", "left", "right", "full",
+      "outer", "cross", "natural", "set", "values", "value", "group", "order", "having", "limit", "offset", "union",
+      "intersect", "except", "minus", "using", "as", "with", "for", "returning", "only", "lateral", "when", "then",
+      "default", "partition", "straight_join", "use", "force", "ignore", "window", "fetch", "connect", "start", "into",
+      "from", "and", "or", "not");
+
+  private SqlTables() {
+    // Prevent Instantiation of Static Class
+  }
+
+  static Set<String> parse(String sql) {
+    List<String> tokens = tokenize(sql);
+    Set<String> tables = new LinkedHashSet<>();
+    int i = 0;
+    while (i < tokens.size()) {
+      String token = tokens.get(i++);
+      if (TABLE_KEYWORDS.contains(token)) {
+        i = readTables(tokens, i, tables);
+      }
+    }
+    return tables.isEmpty() ? null : Collections.unmodifiableSet(tables);
+  }
+
+  static String normalize(String table) {
+    return table.trim().toLowerCase(Locale.ENGLISH);
+  }
+
+  private static int readTables(List<String> tokens, int start, Set<String> tables) {
+    int i = start;
+    while (i < tokens.size()) {
+      String token = tokens.get(i);
+      // 子查询中的表在之后的扫描中处理
+      if (!isIdentifier(token) || RESERVED.contains(token)) {
+        return i;
+      }
+      tables.add(token.charAt(0) == '"' ? token.substring(1) : token);
+      i++;
+      if (i < tokens.size() && "as".equals(tokens.get(i))) {
+        i++;
+      }
+      if (i < tokens.size() && isIdentifier(tokens.get(i)) && !RESERVED.contains(tokens.get(i))) {
+        i++;
+      }
+      if (i >= tokens.size() || !",".equals(tokens.get(i))) {
+        return i;
+      }
+      i++;
+    }
+    return i;
+  }
+
+  private static boolean isIdentifier(String token) {
+    char c = token.charAt(0);
+    return Character.isLetter(c) || c == '_' || c == '$' || c == '#' || c == '"';
+  }
+
+  /**
+   * 拆分为标识符和单个的符号, 忽略注释和字符串. 带schema的标识符只保留最后一段, 引号括起来的标识符以 " 开头, 不会被当成关键字.
+   */
+  private static List<String> tokenize(String sql) {
+    List<String> tokens = new ArrayList<>();
+    int length = sql.length();
+    int i = 0;
+    while (i < length) {
+      char c = sql.charAt(i);
+      if (Character.isWhitespace(c)) {
+        i++;
+      } else if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+        int end = sql.indexOf('\n', i);
+        i = end < 0 ? length : end + 1;
+      } else if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+        int end = sql.indexOf("*/", i + 2);
+        i = end < 0 ? length : end + 2;
+      } else if (c == '\'') {
+        i = skipQuoted(sql, i, '\'');
+        tokens.add("'");
+      } else if (isIdentifierStart(c)) {
+        String name = null;
+        while (i < length && isIdentifierStart(sql.charAt(i))) {
+          int begin = i;
+          char open = sql.charAt(i);
+          if (open == '"' || open == '`' || open == '[') {
+            i = skipQuoted(sql, i, open == '[' ? ']' : open);
+            name = "\"" + normalize(sql.substring(begin + 1, Math.max(begin + 1, i - 1)));
+          } else {
+            while (i < length && isIdentifierPart(sql.charAt(i))) {
+              i++;
+            }
+            name = normalize(sql.substring(begin, i));
+          }
+          if (i + 1 < length && sql.charAt(i) == '.' && isIdentifierStart(sql.charAt(i + 1))) {
+            i++;
+          } else {
+            break;
+          }
+        }
+        tokens.add(name);
+      } else if (Character.isDigit(c)) {
+        while (i < length && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+          i++;
+        }
+        tokens.add("0");
+      } else {
+        tokens.add(String.valueOf(c));
+        i++;
+      }
+    }
+    return tokens;
+  }
+
+  private static int skipQuoted(String sql, int start, char close) {
+    int i = start + 1;
+    while (i < sql.length()) {
+      if (sql.charAt(i++) == close) {
+        // 两个连续的引号表示转义
+        if (i < sql.length() && sql.charAt(i) == close && close != ']') {
+          i++;
+        } else {
+          return i;
+        }
+      }
+    }
+    return i;
+  }
+
+  private static boolean isIdentifierStart(char c) {
+    return Character.isLetter(c) || c == '_' || c == '$' || c == '#' || c == '"' || c == '`' || c == '[';
+  }
+
+  private static boolean isIdentifierPart(char c) {
+    return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '#';
+  }
+
+}
@@ -18,13 +18,37 @@ package org.apache.ibatis.reflection;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
+import org.apache.ibatis.reflection.invoker.InvokerFactory;
+import org.apache.ibatis.reflection.invoker.ReflectionInvokerFactory;
 import org.apache.ibatis.util.MapUtil;
 
 public class DefaultReflectorFactory implements ReflectorFactory {
   private boolean classCacheEnabled = true;
   private final ConcurrentMap<Class<?>, Reflector> reflectorMap = new ConcurrentHashMap<>();
+  // 属性访问器的创建策略, 生成的访问器随 Reflector 一起缓存
+  private final InvokerFactory invokerFactory;
 
   public DefaultReflectorFactory() {
+    this(new ReflectionInvokerFactory());
+  }
+
+  /**
+   * @param invokerFactory
+   *          属性访问器的创建策略, 例如 {@link org.apache.ibatis.reflection.invoker.LambdaInvokerFactory}
+   *
+   * @since 3.5.14
+   */
+  public DefaultReflectorFactory(InvokerFactory invokerFactory) {
+    this.invokerFactory = invokerFactory;
+  }
+
+  /**
+   * @return 属性访问器的创建策略
+   *
+   * @since 3.5.14
+   */
+  public InvokerFactory getInvokerFactory() {
+    return invokerFactory;
   }
 
   @Override
@@ -41,9 +65,9 @@ public class DefaultReflectorFactory implements ReflectorFactory {
   public Reflector findForClass(Class<?> type) {
     if (classCacheEnabled) {
       // synchronized (type) removed see issue #461
-      return MapUtil.computeIfAbsent(reflectorMap, type, Reflector::new);
+      return MapUtil.computeIfAbsent(reflectorMap, type, t -> new Reflector(t, invokerFactory));
     }
-    return new Reflector(type);
+    return new Reflector(type, invokerFactory);
   }
 
 }
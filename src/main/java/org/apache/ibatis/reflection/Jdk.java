@@ -15,6 +15,12 @@
  */
 package org.apache.ibatis.reflection;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import org.apache.ibatis.io.Resources;
 
 /**
@@ -75,6 +81,64 @@ public class Jdk {
     optionalExists = available;
   }
 
+  // Thread.isVirtual() 和 Executors.newVirtualThreadPerTaskExecutor() 从JDK 21开始才有, 编译的版本更低, 只能通过 MethodHandle 调用
+  private static final MethodHandle IS_VIRTUAL;
+  private static final MethodHandle NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR;
+
+  static {
+    MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+    MethodHandle isVirtual = null;
+    MethodHandle newVirtualThreadPerTaskExecutor = null;
+    try {
+      isVirtual = lookup.findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+      newVirtualThreadPerTaskExecutor = lookup.findStatic(Executors.class, "newVirtualThreadPerTaskExecutor",
+          MethodType.methodType(ExecutorService.class));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      // ignore
+    }
+    IS_VIRTUAL = isVirtual;
+    NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = newVirtualThreadPerTaskExecutor;
+  }
+
+  /**
+   * Returns whether a thread is a virtual thread.
+   *
+   * @param thread
+   *          the thread
+   *
+   * @return <code>true</code> if the thread is a virtual thread, always <code>false</code> before JDK 21
+   *
+   * @since 3.5.14
+   */
+  public static boolean isVirtual(Thread thread) {
+    if (IS_VIRTUAL == null) {
+      return false;
+    }
+    try {
+      return (boolean) IS_VIRTUAL.invokeExact(thread);
+    } catch (Throwable e) {
+      throw new ReflectionException("Could not check if the thread " + thread + " is virtual. Cause: " + e, e);
+    }
+  }
+
+  /**
+   * Creates an executor that starts a new virtual thread for each task.
+   *
+   * @return the executor, or <code>null</code> before JDK 21
+   *
+   * @since 3.5.14
+   */
+  public static ExecutorService newVirtualThreadPerTaskExecutor() {
+    if (NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR == null) {
+      return null;
+    }
+    try {
+      return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invokeExact();
+    } catch (Throwable e) {
+      throw new ReflectionException("Could not create a virtual thread executor. Cause: " + e, e);
+    }
+  }
+
   private Jdk() {
   }
 }
@@ -0,0 +1,39 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.reflection.invoker;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+/**
+ * 属性访问器(Invoker)的创建策略, Reflector 通过它来创建每个属性的 getter/setter.
+ *
+ * @see ReflectionInvokerFactory
+ * @see LambdaInvokerFactory
+ *
+ * @since 3.5.14
+ */
+public interface InvokerFactory {
+
+  Invoker newGetMethodInvoker(Method method);
+
+  Invoker newSetMethodInvoker(Method method);
+
+  Invoker newGetFieldInvoker(Field field);
+
+  Invoker newSetFieldInvoker(Field field);
+
+}
@@ -0,0 +1,171 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.reflection.invoker;
+
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * 通过 LambdaMetafactory 为每个 getter/setter 方法生成强类型的 Function/BiConsumer, 调用的时候不再走反射.
+ * <p>
+ * 生成是懒加载的(第一次调用的时候), 生成失败(比如类所在的模块没有开放, 或者是静态方法)的话退回到反射调用.
+ * 参数的类型和方法的参数类型不完全一致(需要基本类型的拓宽转换, 或者类型不对)的时候也交给反射处理, 保证异常和原来一样.
+ * 字段没有对应的 lambda, 还是使用反射.
+ * </p>
+ *
+ * @since 3.5.14
+ */
+public class LambdaInvokerFactory extends ReflectionInvokerFactory {
+
+  @Override
+  public Invoker newGetMethodInvoker(Method method) {
+    if (Modifier.isStatic(method.getModifiers()) || method.getReturnType() == void.class) {
+      return super.newGetMethodInvoker(method);
+    }
+    return new LambdaGetMethodInvoker(method);
+  }
+
+  @Override
+  public Invoker newSetMethodInvoker(Method method) {
+    if (Modifier.isStatic(method.getModifiers())) {
+      return super.newSetMethodInvoker(method);
+    }
+    return new LambdaSetMethodInvoker(method);
+  }
+
+  private static MethodHandles.Lookup lookup(Class<?> declaringClass) throws IllegalAccessException {
+    // 在目标类所在的包和类加载器里面生成 lambda 类, 这样才能访问非public的方法
+    return MethodHandles.privateLookupIn(declaringClass, MethodHandles.lookup());
+  }
+
+  private static Class<?> box(Class<?> type) {
+    return MethodType.methodType(type).wrap().returnType();
+  }
+
+  private static final class LambdaGetMethodInvoker extends MethodInvoker {
+    private final Method method;
+    private final Class<?> declaringClass;
+    // null 表示还没有生成
+    private volatile Function<Object, Object> getter;
+    private volatile boolean unsupported;
+
+    LambdaGetMethodInvoker(Method method) {
+      super(method);
+      this.method = method;
+      this.declaringClass = method.getDeclaringClass();
+    }
+
+    @Override
+    public Object invoke(Object target, Object[] args) throws IllegalAccessException, InvocationTargetException {
+      Function<Object, Object> function = getter;
+      if (function == null) {
+        function = unsupported ? null : createGetter();
+      }
+      if (function == null || !declaringClass.isInstance(target)) {
+        return super.invoke(target, args);
+      }
+      try {
+        return function.apply(target);
+      } catch (Throwable t) {
+        // 和 Method.invoke 保持一致
+        throw new InvocationTargetException(t);
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Function<Object, Object> createGetter() {
+      try {
+        MethodHandles.Lookup lookup = lookup(declaringClass);
+        MethodHandle handle = lookup.unreflect(method);
+        Function<Object, Object> function = (Function<Object, Object>) LambdaMetafactory
+            .metafactory(lookup, "apply", MethodType.methodType(Function.class),
+                MethodType.methodType(Object.class, Object.class), handle,
+                MethodType.methodType(box(method.getReturnType()), declaringClass))
+            .getTarget().invoke();
+        getter = function;
+        return function;
+      } catch (Throwable t) {
+        unsupported = true;
+        return null;
+      }
+    }
+  }
+
+  private static final class LambdaSetMethodInvoker extends MethodInvoker {
+    private final Method method;
+    private final Class<?> declaringClass;
+    private final Class<?> parameterType;
+    private final Class<?> boxedParameterType;
+    private volatile BiConsumer<Object, Object> setter;
+    private volatile boolean unsupported;
+
+    LambdaSetMethodInvoker(Method method) {
+      super(method);
+      this.method = method;
+      this.declaringClass = method.getDeclaringClass();
+      this.parameterType = method.getParameterTypes()[0];
+      this.boxedParameterType = box(parameterType);
+    }
+
+    @Override
+    public Object invoke(Object target, Object[] args) throws IllegalAccessException, InvocationTargetException {
+      BiConsumer<Object, Object> consumer = setter;
+      if (consumer == null) {
+        consumer = unsupported ? null : createSetter();
+      }
+      if (consumer == null || !declaringClass.isInstance(target) || args == null || args.length != 1
+          || !isAssignable(args[0])) {
+        return super.invoke(target, args);
+      }
+      try {
+        consumer.accept(target, args[0]);
+      } catch (Throwable t) {
+        throw new InvocationTargetException(t);
+      }
+      return null;
+    }
+
+    private boolean isAssignable(Object value) {
+      return value == null ? !parameterType.isPrimitive() : boxedParameterType.isInstance(value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private BiConsumer<Object, Object> createSetter() {
+      try {
+        MethodHandles.Lookup lookup = lookup(declaringClass);
+        MethodHandle handle = lookup.unreflect(method);
+        BiConsumer<Object, Object> consumer = (BiConsumer<Object, Object>) LambdaMetafactory
+            .metafactory(lookup, "accept", MethodType.methodType(BiConsumer.class),
+                MethodType.methodType(void.class, Object.class, Object.class), handle,
+                MethodType.methodType(void.class, declaringClass, boxedParameterType))
+            .getTarget().invoke();
+        setter = consumer;
+        return consumer;
+      } catch (Throwable t) {
+        unsupported = true;
+        return null;
+      }
+    }
+  }
+
+}
@@ -0,0 +1,238 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.scripting.defaults;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.ParameterMode;
+import org.apache.ibatis.reflection.ExceptionUtil;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.reflection.ReflectionException;
+import org.apache.ibatis.reflection.Reflector;
+import org.apache.ibatis.reflection.invoker.Invoker;
+import org.apache.ibatis.reflection.property.PropertyTokenizer;
+import org.apache.ibatis.reflection.wrapper.ObjectWrapper;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.type.JdbcType;
+import org.apache.ibatis.type.TypeException;
+import org.apache.ibatis.type.TypeHandler;
+
+/**
+ * 参数的绑定计划, 对于同一个 MappedStatement 的同样形状的 ParameterMapping 和同一个参数类型, 每个?的取值方式和类型处理器是固定的.
+ * <p>
+ * 第一次绑定的时候计算一次, 之后绑定参数只需要遍历数组调用 TypeHandler.setParameter,
+ * 不再每个参数都判断 hasTypeHandler, 也不再每个参数都创建 MetaObject.
+ * </p>
+ * <p>
+ * 动态sql每次生成新的 ParameterMapping 列表, 只要属性名称, 类型处理器, jdbcType 和 mode 都一样, 就可以继续使用同一个计划.
+ * </p>
+ *
+ * @since 3.5.14
+ */
+public final class ParameterBindingPlan {
+
+  private static final Object[] NO_ARGUMENTS = {};
+
+  // 参数为null
+  private static final int NULL = 0;
+  // 参数本身就是值(有对应的类型处理器)
+  private static final int PARAMETER = 1;
+  // 参数是Map, 简单的属性名称, 直接 map.get
+  private static final int MAP = 2;
+  // 参数是普通的对象, 简单的属性名称, 直接调用get方法
+  private static final int GETTER = 3;
+  // 其他情况(a.b, a[0], 自定义的 ObjectWrapper 等等)还是通过 MetaObject
+  private static final int META_OBJECT = 4;
+
+  private final Configuration configuration;
+  private final List<ParameterMapping> parameterMappings;
+  private final Class<?> parameterType;
+
+  // 下面的数组下标一一对应, 不包含 OUT 的参数
+  private final int[] parameterIndexes;
+  private final TypeHandler<Object>[] typeHandlers;
+  private final JdbcType[] jdbcTypes;
+  private final String[] properties;
+  // 属性的第一段名称, 用于判断是不是附加的参数
+  private final String[] additionalNames;
+  private final boolean[] simpleProperties;
+  private final int[] kinds;
+  private final Invoker[] getters;
+
+  @SuppressWarnings("unchecked")
+  ParameterBindingPlan(Configuration configuration, List<ParameterMapping> parameterMappings,
+      Object parameterObject) {
+    this.configuration = configuration;
+    this.parameterMappings = parameterMappings;
+    this.parameterType = typeOf(parameterObject);
+
+    final boolean parameterIsValue = parameterObject != null
+        && configuration.getTypeHandlerRegistry().hasTypeHandler(parameterType);
+    final boolean wrapped = parameterObject instanceof ObjectWrapper
+        || parameterObject != null && configuration.getObjectWrapperFactory().hasWrapperFor(parameterObject);
+    final boolean map = !parameterIsValue && !wrapped && parameterObject instanceof Map;
+    final Reflector reflector = parameterObject == null || parameterIsValue || wrapped || map
+        || parameterObject instanceof Collection ? null
+            : configuration.getReflectorFactory().findForClass(parameterType);
+
+    int size = 0;
+    for (ParameterMapping parameterMapping : parameterMappings) {
+      if (parameterMapping.getMode() != ParameterMode.OUT) {
+        size++;
+      }
+    }
+    this.parameterIndexes = new int[size];
+    this.typeHandlers = new TypeHandler[size];
+    this.jdbcTypes = new JdbcType[size];
+    this.properties = new String[size];
+    this.additionalNames = new String[size];
+    this.simpleProperties = new boolean[size];
+    this.kinds = new int[size];
+    this.getters = new Invoker[size];
+
+    int slot = 0;
+    for (int i = 0; i < parameterMappings.size(); i++) {
+      ParameterMapping parameterMapping = parameterMappings.get(i);
+      if (parameterMapping.getMode() == ParameterMode.OUT) {
+        continue;
+      }
+      String property = parameterMapping.getProperty();
+      boolean simple = property != null && property.indexOf('.') < 0 && property.indexOf('[') < 0;
+      parameterIndexes[slot] = i + 1;
+      typeHandlers[slot] = (TypeHandler<Object>) parameterMapping.getTypeHandler();
+      jdbcTypes[slot] = parameterMapping.getJdbcType();
+      properties[slot] = property;
+      additionalNames[slot] = property == null ? null : new PropertyTokenizer(property).getName();
+      simpleProperties[slot] = simple;
+      if (parameterObject == null) {
+        kinds[slot] = NULL;
+      } else if (parameterIsValue) {
+        kinds[slot] = PARAMETER;
+      } else if (simple && map) {
+        kinds[slot] = MAP;
+      } else if (simple && reflector != null && reflector.hasGetter(property)) {
+        kinds[slot] = GETTER;
+        getters[slot] = reflector.getGetInvoker(property);
+      } else {
+        kinds[slot] = META_OBJECT;
+      }
+      slot++;
+    }
+  }
+
+  /**
+   * 该计划是否适用于这一次绑定
+   */
+  boolean matches(List<ParameterMapping> parameterMappings, Object parameterObject) {
+    if (this.parameterType != typeOf(parameterObject)) {
+      return false;
+    }
+    if (this.parameterMappings == parameterMappings) {
+      return true;
+    }
+    int size = parameterMappings.size();
+    if (this.parameterMappings.size() != size) {
+      return false;
+    }
+    for (int i = 0; i < size; i++) {
+      if (!sameShape(this.parameterMappings.get(i), parameterMappings.get(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // 只比较绑定用到的部分, 类型处理器是注册表中共享的实例, 直接比较引用
+  private static boolean sameShape(ParameterMapping planned, ParameterMapping actual) {
+    return planned == actual || planned.getTypeHandler() == actual.getTypeHandler()
+        && planned.getMode() == actual.getMode() && planned.getJdbcType() == actual.getJdbcType()
+        && Objects.equals(planned.getProperty(), actual.getProperty());
+  }
+
+  static Class<?> typeOf(Object parameterObject) {
+    // 参数为null的时候使用 void.class, 不会和任何参数的类型冲突
+    return parameterObject == null ? void.class : parameterObject.getClass();
+  }
+
+  void bind(PreparedStatement ps, Object parameterObject, BoundSql boundSql) {
+    final Map<String, Object> additionalParameters = boundSql.getAdditionalParameters();
+    final boolean hasAdditionalParameters = !additionalParameters.isEmpty();
+    MetaObject metaObject = null;
+    for (int i = 0; i < parameterIndexes.length; i++) {
+      Object value;
+      if (hasAdditionalParameters && additionalNames[i] != null && additionalParameters.containsKey(additionalNames[i])) {
+        // issue #448 ask first for additional params
+        value = simpleProperties[i] ? additionalParameters.get(properties[i])
+            : boundSql.getAdditionalParameter(properties[i]);
+      } else {
+        switch (kinds[i]) {
+          case PARAMETER:
+            value = parameterObject;
+            break;
+          case MAP:
+            value = ((Map<?, ?>) parameterObject).get(properties[i]);
+            break;
+          case GETTER:
+            value = getBeanProperty(i, parameterObject);
+            break;
+          case META_OBJECT:
+            if (metaObject == null) {
+              metaObject = configuration.newMetaObject(parameterObject);
+            }
+            value = metaObject.getValue(properties[i]);
+            break;
+          default:
+            value = null;
+            break;
+        }
+      }
+      JdbcType jdbcType = jdbcTypes[i];
+      if (value == null && jdbcType == null) {
+        jdbcType = configuration.getJdbcTypeForNull();
+      }
+      try {
+        typeHandlers[i].setParameter(ps, parameterIndexes[i], value, jdbcType);
+      } catch (TypeException | SQLException e) {
+        ParameterMapping parameterMapping = boundSql.getParameterMappings().get(parameterIndexes[i] - 1);
+        throw new TypeException("Could not set parameters for mapping: " + parameterMapping + ". Cause: " + e, e);
+      }
+    }
+  }
+
+  // 和 BeanWrapper 的异常保持一致
+  private Object getBeanProperty(int i, Object parameterObject) {
+    try {
+      try {
+        return getters[i].invoke(parameterObject, NO_ARGUMENTS);
+      } catch (Throwable t) {
+        throw ExceptionUtil.unwrapThrowable(t);
+      }
+    } catch (RuntimeException e) {
+      throw e;
+    } catch (Throwable t) {
+      throw new ReflectionException("Could not get property '" + properties[i] + "' from "
+          + parameterObject.getClass() + ".  Cause: " + t.toString(), t);
+    }
+  }
+
+}
@@ -48,6 +48,13 @@ public class DynamicContext {
   // 唯一的number,可用于处理 一个或者多个for循环item属性的值都是一样的问题, 这个用于保证(因为作用域是在同一个map里面)
   private int uniqueNumber;
 
+  private int chunk;
+
+  private int chunkCount = 1;
+
+  // 只记录分支的指纹(sql的形状),不拼接sql, 见 DynamicSqlSource
+  private StringBuilder shape;
+
   /**
    * 生成sql的上下文
    *
@@ -80,7 +87,9 @@ public class DynamicContext {
   }
 
   public void appendSql(String sql) {
-    sqlBuilder.add(sql);
+    if (shape == null) {
+      sqlBuilder.add(sql);
+    }
   }
 
   public String getSql() {
@@ -91,6 +100,48 @@ public class DynamicContext {
     return uniqueNumber++;
   }
 
+  /**
+   * 只计算sql的形状: 动态节点把决定sql形状的信息(if的结果, foreach的元素个数, ${}的值)记录到这里, 不需要拼接sql
+   */
+  void recordShapeOnly() {
+    this.shape = new StringBuilder();
+  }
+
+  /**
+   * 正在记录sql形状的话返回指纹, 否则返回null
+   *
+   * @since 3.5.14
+   */
+  public StringBuilder getShape() {
+    return shape;
+  }
+
+  /**
+   * 分块的 foreach 当前生成的是第几块(从0开始)
+   *
+   * @since 3.5.14
+   */
+  public int getChunk() {
+    return chunk;
+  }
+
+  public void setChunk(int chunk) {
+    this.chunk = chunk;
+  }
+
+  /**
+   * 分块的 foreach 一共需要执行几块, 没有分块的时候是1
+   *
+   * @since 3.5.14
+   */
+  public int getChunkCount() {
+    return chunkCount;
+  }
+
+  public void setChunkCount(int chunkCount) {
+    this.chunkCount = chunkCount;
+  }
+
   static class ContextMap extends HashMap<String, Object> {
     private static final long serialVersionUID = 2977601501966151582L;
     private final MetaObject parameterMetaObject;
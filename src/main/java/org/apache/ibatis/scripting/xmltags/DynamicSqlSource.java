@@ -15,9 +15,18 @@
  */
 package org.apache.ibatis.scripting.xmltags;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
 import org.apache.ibatis.builder.SqlSourceBuilder;
 import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.ParameterMapping;
 import org.apache.ibatis.mapping.SqlSource;
+import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.session.Configuration;
 
 /**
@@ -33,9 +42,44 @@ public class DynamicSqlSource implements SqlSource {
   // 动态SqlNode节点(用于执行)
   private final SqlNode rootSqlNode;
 
+  // 是否有分块的foreach
+  private final boolean chunked;
+
+  // 分块的sql形状的缓存上限, 一般只有两种形状(满的块和最后一块)
+  private static final int MAX_CHUNK_SHAPES = 64;
+
+  // 分块的sql形状(还没有解析#{}的sql) => 解析之后的sql
+  private final Map<ShapeKey, SqlSource> chunkShapes;
+
+  // 按分支指纹缓存的sql形状的上限, 满了之后新的形状不再缓存
+  private static final int MAX_SHAPES = 128;
+
+  // 分支指纹 => 生成的sql和 ParameterMapping, 为null的话不缓存
+  private final Map<ShapeKey, Shape> shapes;
+
   public DynamicSqlSource(Configuration configuration, SqlNode rootSqlNode) {
+    this(configuration, rootSqlNode, false, false);
+  }
+
+  /**
+   * @param chunked
+   *          是否有分块的foreach
+   * @param cacheShapes
+   *          是否按分支指纹缓存sql的形状, 只有全部节点都是内置的 SqlNode(会记录指纹)的时候才可以开启
+   *
+   * @since 3.5.14
+   */
+  public DynamicSqlSource(Configuration configuration, SqlNode rootSqlNode, boolean chunked, boolean cacheShapes) {
     this.configuration = configuration;
     this.rootSqlNode = rootSqlNode;
+    this.chunked = chunked;
+    this.chunkShapes = chunked ? new ConcurrentHashMap<>() : null;
+    this.shapes = cacheShapes && !chunked ? new ConcurrentHashMap<>() : null;
+  }
+
+  @Override
+  public boolean isChunked() {
+    return chunked;
   }
 
   /**
@@ -48,6 +92,13 @@ public class DynamicSqlSource implements SqlSource {
    */
   @Override
   public BoundSql getBoundSql(Object parameterObject) {
+    if (chunked) {
+      // 只有第一块, 分块执行的时候使用 getBoundSqlChunks
+      return toChunkBoundSql(applyChunk(parameterObject, 0), parameterObject);
+    }
+    if (shapes != null) {
+      return getShapedBoundSql(parameterObject);
+    }
 
     // 先运行动态sql,并且解析 ${},在运行当中, 同时也会解析 #{}, 在for循环的时候
     DynamicContext context = new DynamicContext(configuration, parameterObject);
@@ -76,4 +127,145 @@ public class DynamicSqlSource implements SqlSource {
     return boundSql;
   }
 
+  /**
+   * 按分支指纹缓存sql的形状.
+   * <p>
+   * 先只执行动态节点的判断(if的结果, foreach的元素个数, ${}的值), 不拼接sql也不改写 #{}, 得到分支指纹和绑定的变量.
+   * 指纹相同的话生成的sql和 ParameterMapping 也相同, 直接复用, 参数的值由 ParameterHandler 从绑定的变量中重新获取.
+   * ParameterMapping 的类型有可能是从绑定的变量的值推断出来的, 所以复用之前要确认本次推断出来的类型是一样的.
+   * </p>
+   */
+  private BoundSql getShapedBoundSql(Object parameterObject) {
+    Class<?> parameterType = parameterObject == null ? Object.class : parameterObject.getClass();
+    DynamicContext context = new DynamicContext(configuration, parameterObject);
+    context.recordShapeOnly();
+    rootSqlNode.apply(context);
+
+    ShapeKey key = new ShapeKey(parameterType, context.getShape().toString());
+    Shape shape = shapes.get(key);
+    if (shape == null || !shape.matches(configuration.newMetaObject(context.getBindings()))) {
+      // 新的形状(或者推断的类型变了), 完整的执行一次
+      context = new DynamicContext(configuration, parameterObject);
+      rootSqlNode.apply(context);
+      BoundSql parsed = new SqlSourceBuilder(configuration)
+          .parse(context.getSql(), parameterType, context.getBindings()).getBoundSql(parameterObject);
+      shape = new Shape(parsed.getSql(), parsed.getParameterMappings(),
+          configuration.newMetaObject(context.getBindings()));
+      if (shapes.size() < MAX_SHAPES || shapes.containsKey(key)) {
+        shapes.put(key, shape);
+      }
+    }
+
+    BoundSql boundSql = new BoundSql(configuration, shape.sql, shape.parameterMappings, parameterObject);
+    context.getBindings().forEach(boundSql::setAdditionalParameter);
+    return boundSql;
+  }
+
+  /**
+   * 分块的foreach: 每一块生成一个 BoundSql, 块的列表不会放到执行的 BoundSql 里面.
+   * <p>
+   * 块里面的 #{item} 是按位置引用的(__frch_item[k]), 所以每一块的sql形状都是一样的, 解析 #{} 的结果按形状缓存.
+   * 缓存的时候类型不能从本次的参数值推断(下一次的值可能是别的类型), 所以只按入参的类型解析, 其余的由 UnknownTypeHandler 在设置参数的时候处理
+   * </p>
+   */
+  @Override
+  public List<BoundSql> getBoundSqlChunks(Object parameterObject) {
+    if (!chunked) {
+      return Collections.singletonList(getBoundSql(parameterObject));
+    }
+    DynamicContext context = applyChunk(parameterObject, 0);
+    BoundSql first = toChunkBoundSql(context, parameterObject);
+    int chunkCount = context.getChunkCount();
+    if (chunkCount <= 1) {
+      return Collections.singletonList(first);
+    }
+    List<BoundSql> chunks = new ArrayList<>(chunkCount);
+    chunks.add(first);
+    for (int chunk = 1; chunk < chunkCount; chunk++) {
+      chunks.add(toChunkBoundSql(applyChunk(parameterObject, chunk), parameterObject));
+    }
+    return Collections.unmodifiableList(chunks);
+  }
+
+  private DynamicContext applyChunk(Object parameterObject, int chunk) {
+    DynamicContext context = new DynamicContext(configuration, parameterObject);
+    context.setChunk(chunk);
+    rootSqlNode.apply(context);
+    return context;
+  }
+
+  private BoundSql toChunkBoundSql(DynamicContext context, Object parameterObject) {
+    Class<?> parameterType = parameterObject == null ? Object.class : parameterObject.getClass();
+    ShapeKey shape = new ShapeKey(parameterType, context.getSql());
+    SqlSource sqlSource = chunkShapes.get(shape);
+    if (sqlSource == null) {
+      sqlSource = new SqlSourceBuilder(configuration).parse(shape.sql, parameterType, Collections.emptyMap());
+      if (chunkShapes.size() >= MAX_CHUNK_SHAPES) {
+        chunkShapes.clear();
+      }
+      chunkShapes.put(shape, sqlSource);
+    }
+    BoundSql boundSql = sqlSource.getBoundSql(parameterObject);
+    context.getBindings().forEach(boundSql::setAdditionalParameter);
+    return boundSql;
+  }
+
+  private static final class Shape {
+    private final String sql;
+    private final List<ParameterMapping> parameterMappings;
+    // 每个参数从绑定的变量推断出来的类型(SqlSourceBuilder 优先使用), 不是绑定的变量的话是null
+    private final Class<?>[] bindingTypes;
+
+    Shape(String sql, List<ParameterMapping> parameterMappings, MetaObject bindings) {
+      this.sql = sql;
+      this.parameterMappings = parameterMappings;
+      this.bindingTypes = new Class<?>[parameterMappings.size()];
+      for (int i = 0; i < bindingTypes.length; i++) {
+        bindingTypes[i] = bindingType(bindings, parameterMappings.get(i).getProperty());
+      }
+    }
+
+    boolean matches(MetaObject bindings) {
+      for (int i = 0; i < bindingTypes.length; i++) {
+        if (bindingTypes[i] != bindingType(bindings, parameterMappings.get(i).getProperty())) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private static Class<?> bindingType(MetaObject bindings, String property) {
+      return property != null && bindings.hasGetter(property) ? bindings.getGetterType(property) : null;
+    }
+  }
+
+  private static final class ShapeKey {
+    private final Class<?> parameterType;
+    private final String sql;
+    private final int hashCode;
+
+    ShapeKey(Class<?> parameterType, String sql) {
+      this.parameterType = parameterType;
+      this.sql = sql;
+      this.hashCode = 31 * parameterType.hashCode() + sql.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof ShapeKey)) {
+        return false;
+      }
+      ShapeKey other = (ShapeKey) o;
+      return parameterType == other.parameterType && Objects.equals(sql, other.sql);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
 }
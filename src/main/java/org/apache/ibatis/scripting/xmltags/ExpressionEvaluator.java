@@ -37,7 +37,7 @@ public class ExpressionEvaluator {
    * @return
    */
   public boolean evaluateBoolean(String expression, Object parameterObject) {
-    Object value = OgnlCache.getValue(expression, parameterObject);
+    Object value = getValue(expression, parameterObject);
     if (value instanceof Boolean) {
       return (Boolean) value;
     }
@@ -61,7 +61,7 @@ public class ExpressionEvaluator {
    * @since 3.5.9
    */
   public Iterable<?> evaluateIterable(String expression, Object parameterObject, boolean nullable) {
-    Object value = OgnlCache.getValue(expression, parameterObject);
+    Object value = getValue(expression, parameterObject);
     if (value == null) {
       if (nullable) {
         return null;
@@ -96,4 +96,13 @@ public class ExpressionEvaluator {
         "Error evaluating expression '" + expression + "'.  Return value (" + value + ") was not iterable.");
   }
 
+  /**
+   * 计算表达式的值, 子类可以替换表达式的实现
+   *
+   * @since 3.5.14
+   */
+  protected Object getValue(String expression, Object parameterObject) {
+    return OgnlCache.getValue(expression, parameterObject);
+  }
+
 }
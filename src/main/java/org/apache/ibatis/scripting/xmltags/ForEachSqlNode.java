@@ -15,8 +15,11 @@
  */
 package org.apache.ibatis.scripting.xmltags;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.RandomAccess;
 
 import org.apache.ibatis.parsing.GenericTokenParser;
 import org.apache.ibatis.session.Configuration;
@@ -44,6 +47,8 @@ public class ForEachSqlNode implements SqlNode {
   private final String item;
   // 索引
   private final String index;
+  // 分块的大小, 为null的话不分块
+  private final Integer chunkSize;
   private final Configuration configuration;
 
   /**
@@ -61,6 +66,18 @@ public class ForEachSqlNode implements SqlNode {
    */
   public ForEachSqlNode(Configuration configuration, SqlNode contents, String collectionExpression, Boolean nullable,
       String index, String item, String open, String close, String separator) {
+    this(configuration, contents, collectionExpression, nullable, index, item, open, close, separator, null);
+  }
+
+  /**
+   * @param chunkSize
+   *          每次执行最多展开的元素个数, 超过的话语句会拆分成多次执行(见 {@link DynamicContext#getChunkCount()}),
+   *          为null的话不分块
+   *
+   * @since 3.5.14
+   */
+  public ForEachSqlNode(Configuration configuration, SqlNode contents, String collectionExpression, Boolean nullable,
+      String index, String item, String open, String close, String separator, Integer chunkSize) {
     this.evaluator = new ExpressionEvaluator();
     this.collectionExpression = collectionExpression;
     this.nullable = nullable;
@@ -70,9 +87,14 @@ public class ForEachSqlNode implements SqlNode {
     this.separator = separator;
     this.index = index;
     this.item = item;
+    this.chunkSize = chunkSize;
     this.configuration = configuration;
   }
 
+  public boolean isChunked() {
+    return chunkSize != null;
+  }
+
   @Override
   public boolean apply(DynamicContext context) {
     Map<String, Object> bindings = context.getBindings();
@@ -80,8 +102,12 @@ public class ForEachSqlNode implements SqlNode {
     final Iterable<?> iterable = evaluator.evaluateIterable(collectionExpression, bindings,
         Optional.ofNullable(nullable).orElseGet(configuration::isNullableOnForEach));
     if (iterable == null || !iterable.iterator().hasNext()) {
+      recordShape(context, 0);
       return true;
     }
+    if (chunkSize != null) {
+      return applyChunk(context, iterable);
+    }
 
     boolean first = true;
     applyOpen(context);
@@ -113,7 +139,8 @@ public class ForEachSqlNode implements SqlNode {
       }
 
       // 遍历以后之后,就执行里面的操作,由于我们采用树形作用域,并且 #{},提前要解析
-      contents.apply(new FilteredDynamicContext(configuration, context, index, item, uniqueNumber));
+      contents.apply(new FilteredDynamicContext(configuration, context, index, item,
+          itemizeItem(index, uniqueNumber), itemizeItem(item, uniqueNumber)));
 
       if (first) {
         first = !((PrefixedContext) context).isPrefixApplied();
@@ -124,6 +151,7 @@ public class ForEachSqlNode implements SqlNode {
     }
 
     applyClose(context);
+    recordShape(context, i);
 
     // 移除局部变量,移除item和index
     context.getBindings().remove(item);
@@ -131,6 +159,96 @@ public class ForEachSqlNode implements SqlNode {
     return true;
   }
 
+  /**
+   * 分块展开: 只展开当前块的元素. 本块的元素和索引各自绑定成一个列表, #{item} 按位置引用列表中的值 (__frch_item[k]),
+   * 不需要每个元素绑定两个变量, 并且每一块的sql形状都是一样的(可以缓存解析的结果)
+   */
+  private boolean applyChunk(DynamicContext context, Iterable<?> iterable) {
+    List<Object> items = new ArrayList<>(chunkSize);
+    List<Object> indexes = new ArrayList<>(chunkSize);
+    int total = collectChunk(iterable, context.getChunk() * chunkSize, items, indexes);
+    context.setChunkCount((total + chunkSize - 1) / chunkSize);
+
+    String itemKey = ITEM_PREFIX + item;
+    String indexKey = ITEM_PREFIX + index;
+    if (item != null) {
+      context.bind(itemKey, items);
+    }
+    if (index != null) {
+      context.bind(indexKey, indexes);
+    }
+
+    boolean first = true;
+    applyOpen(context);
+    for (int k = 0, size = items.size(); k < size; k++) {
+      DynamicContext oldContext = context;
+      if (first || separator == null) {
+        context = new PrefixedContext(context, "");
+      } else {
+        context = new PrefixedContext(context, separator);
+      }
+      if (index != null) {
+        context.bind(index, indexes.get(k));
+      }
+      if (item != null) {
+        context.bind(item, items.get(k));
+      }
+      contents.apply(new FilteredDynamicContext(configuration, context, index, item, positional(indexKey, k),
+          positional(itemKey, k)));
+      if (first) {
+        first = !((PrefixedContext) context).isPrefixApplied();
+      }
+      context = oldContext;
+    }
+    applyClose(context);
+
+    context.getBindings().remove(item);
+    context.getBindings().remove(index);
+    return true;
+  }
+
+  /**
+   * 收集第 from 个元素开始的一块元素
+   *
+   * @return 元素的总数
+   */
+  private int collectChunk(Iterable<?> iterable, int from, List<Object> items, List<Object> indexes) {
+    if (iterable instanceof List && iterable instanceof RandomAccess) {
+      List<?> list = (List<?>) iterable;
+      for (int i = from, to = Math.min(from + chunkSize, list.size()); i < to; i++) {
+        indexes.add(i);
+        items.add(list.get(i));
+      }
+      return list.size();
+    }
+    int i = 0;
+    for (Object o : iterable) {
+      if (i >= from && i < from + chunkSize) {
+        if (o instanceof Map.Entry) {
+          Map.Entry<?, ?> mapEntry = (Map.Entry<?, ?>) o;
+          indexes.add(mapEntry.getKey());
+          items.add(mapEntry.getValue());
+        } else {
+          indexes.add(i);
+          items.add(o);
+        }
+      }
+      i++;
+    }
+    return i;
+  }
+
+  private static String positional(String key, int k) {
+    return key + "[" + k + "]";
+  }
+
+  private static void recordShape(DynamicContext context, int size) {
+    StringBuilder shape = context.getShape();
+    if (shape != null) {
+      shape.append('#').append(size).append(';');
+    }
+  }
+
   private void applyIndex(DynamicContext context, Object o, int i) {
     if (index != null) {
       context.bind(index, o);
@@ -166,17 +284,20 @@ public class ForEachSqlNode implements SqlNode {
    */
   private static class FilteredDynamicContext extends DynamicContext {
     private final DynamicContext delegate;
-    private final int index;
     private final String itemIndex;
     private final String item;
+    // #{index} 和 #{item} 替换之后的名称
+    private final String itemizedIndex;
+    private final String itemizedItem;
 
     public FilteredDynamicContext(Configuration configuration, DynamicContext delegate, String itemIndex, String item,
-        int i) {
+        String itemizedIndex, String itemizedItem) {
       super(configuration, null);
       this.delegate = delegate;
-      this.index = i;
       this.itemIndex = itemIndex;
       this.item = item;
+      this.itemizedIndex = itemizedIndex;
+      this.itemizedItem = itemizedItem;
     }
 
     @Override
@@ -196,11 +317,15 @@ public class ForEachSqlNode implements SqlNode {
 
     @Override
     public void appendSql(String sql) {
+      if (getShape() != null) {
+        // 只记录sql形状的时候不需要改写 #{}
+        return;
+      }
       GenericTokenParser parser = new GenericTokenParser("#{", "}", content -> {
         // For循环里面 item都是固定的,所有这里要变成唯一的 #{xxxx}
-        String newContent = content.replaceFirst("^\\s*" + item + "(?![^.,:\\s])", itemizeItem(item, index));
+        String newContent = content.replaceFirst("^\\s*" + item + "(?![^.,:\\s])", itemizedItem);
         if (itemIndex != null && newContent.equals(content)) {
-          newContent = content.replaceFirst("^\\s*" + itemIndex + "(?![^.,:\\s])", itemizeItem(itemIndex, index));
+          newContent = content.replaceFirst("^\\s*" + itemIndex + "(?![^.,:\\s])", itemizedIndex);
         }
         return "#{" + newContent + "}";
       });
@@ -213,6 +338,26 @@ public class ForEachSqlNode implements SqlNode {
       return delegate.getUniqueNumber();
     }
 
+    @Override
+    public StringBuilder getShape() {
+      return delegate.getShape();
+    }
+
+    @Override
+    public int getChunk() {
+      return delegate.getChunk();
+    }
+
+    @Override
+    public int getChunkCount() {
+      return delegate.getChunkCount();
+    }
+
+    @Override
+    public void setChunkCount(int chunkCount) {
+      delegate.setChunkCount(chunkCount);
+    }
+
   }
 
   /**
@@ -262,6 +407,26 @@ public class ForEachSqlNode implements SqlNode {
     public int getUniqueNumber() {
       return delegate.getUniqueNumber();
     }
+
+    @Override
+    public StringBuilder getShape() {
+      return delegate.getShape();
+    }
+
+    @Override
+    public int getChunk() {
+      return delegate.getChunk();
+    }
+
+    @Override
+    public int getChunkCount() {
+      return delegate.getChunkCount();
+    }
+
+    @Override
+    public void setChunkCount(int chunkCount) {
+      delegate.setChunkCount(chunkCount);
+    }
   }
 
 }
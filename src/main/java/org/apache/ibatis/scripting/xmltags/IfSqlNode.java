@@ -37,7 +37,12 @@ public class IfSqlNode implements SqlNode {
 
   @Override
   public boolean apply(DynamicContext context) {
-    if (evaluator.evaluateBoolean(test, context.getBindings())) {
+    boolean matched = evaluator.evaluateBoolean(test, context.getBindings());
+    StringBuilder shape = context.getShape();
+    if (shape != null) {
+      shape.append(matched ? '1' : '0');
+    }
+    if (matched) {
       contents.apply(context);
       return true;
     }
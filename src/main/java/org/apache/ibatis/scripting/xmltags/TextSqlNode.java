@@ -48,7 +48,13 @@ public class TextSqlNode implements SqlNode {
   @Override
   public boolean apply(DynamicContext context) {
     GenericTokenParser parser = createParser(new BindingTokenParser(context, injectionFilter));
-    context.appendSql(parser.parse(text));
+    String sql = parser.parse(text);
+    StringBuilder shape = context.getShape();
+    if (shape != null) {
+      // ${} 的值会改变sql
+      shape.append('$').append(sql.length()).append(':').append(sql);
+    }
+    context.appendSql(sql);
     return true;
   }
 
@@ -135,9 +135,31 @@ public class TrimSqlNode implements SqlNode {
       return delegate.getUniqueNumber();
     }
 
+    @Override
+    public StringBuilder getShape() {
+      return delegate.getShape();
+    }
+
+    @Override
+    public int getChunk() {
+      return delegate.getChunk();
+    }
+
+    @Override
+    public int getChunkCount() {
+      return delegate.getChunkCount();
+    }
+
+    @Override
+    public void setChunkCount(int chunkCount) {
+      delegate.setChunkCount(chunkCount);
+    }
+
     @Override
     public void appendSql(String sql) {
-      sqlBuffer.append(sql);
+      if (getShape() == null) {
+        sqlBuffer.append(sql);
+      }
     }
 
     @Override
@@ -44,6 +44,14 @@ public class XMLScriptBuilder extends BaseBuilder {
    */
   private boolean isDynamic;
 
+  /**
+   * 是否有分块的foreach(chunkSize), 一个语句只能有一个
+   */
+  private boolean isChunked;
+
+  // 当前解析到的foreach的嵌套层数
+  private int forEachDepth;
+
   private final Class<?> parameterType;
 
   private final Map<String, NodeHandler> nodeHandlerMap = new HashMap<>();
@@ -78,7 +86,8 @@ public class XMLScriptBuilder extends BaseBuilder {
     SqlSource sqlSource;
     if (isDynamic) {
       // 动态, 拥有动态标签,${}
-      sqlSource = new DynamicSqlSource(configuration, rootSqlNode);
+      // 节点都是内置的, 可以按分支指纹缓存sql的形状
+      sqlSource = new DynamicSqlSource(configuration, rootSqlNode, isChunked, true);
     } else {
       // 可能拥有普通的${},并且内部会解析,当获取SqlBound的时候,他是静态的(内部代理了StaticSqlSource)
       sqlSource = new RawSqlSource(configuration, rootSqlNode, parameterType);
@@ -213,7 +222,24 @@ public class XMLScriptBuilder extends BaseBuilder {
 
     @Override
     public void handleNode(XNode nodeToHandle, List<SqlNode> targetContents) {
-      MixedSqlNode mixedSqlNode = parseDynamicTags(nodeToHandle);
+      Integer chunkSize = nodeToHandle.getIntAttribute("chunkSize");
+      if (chunkSize != null) {
+        if (chunkSize <= 0) {
+          throw new BuilderException("The chunkSize of foreach must be greater than zero.");
+        }
+        if (isChunked || forEachDepth > 0) {
+          throw new BuilderException(
+              "A statement supports only one chunked foreach and it cannot be nested in another foreach.");
+        }
+        isChunked = true;
+      }
+      forEachDepth++;
+      MixedSqlNode mixedSqlNode;
+      try {
+        mixedSqlNode = parseDynamicTags(nodeToHandle);
+      } finally {
+        forEachDepth--;
+      }
       String collection = nodeToHandle.getStringAttribute("collection");
       Boolean nullable = nodeToHandle.getBooleanAttribute("nullable");
       String item = nodeToHandle.getStringAttribute("item");
@@ -222,7 +248,7 @@ public class XMLScriptBuilder extends BaseBuilder {
       String close = nodeToHandle.getStringAttribute("close");
       String separator = nodeToHandle.getStringAttribute("separator");
       ForEachSqlNode forEachSqlNode = new ForEachSqlNode(configuration, mixedSqlNode, collection, nullable, index, item,
-          open, close, separator);
+          open, close, separator, chunkSize);
       targetContents.add(forEachSqlNode);
     }
   }
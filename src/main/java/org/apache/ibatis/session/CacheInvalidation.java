@@ -0,0 +1,35 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.session;
+
+/**
+ * What a statement that flushes the cache removes from the second level cache of its namespace.
+ *
+ * @since 3.5.14
+ */
+public enum CacheInvalidation {
+  /**
+   * The whole cache is cleared (default).
+   */
+  NAMESPACE,
+  /**
+   * Only the entries that read one of the tables of the statement are removed. The tables are declared with the
+   * {@code tables} attribute of the statement, or found in its SQL. The whole cache is still cleared when no table is
+   * found, e.g. for stored procedures. The invalidations are kept in memory, so the caches that are shared with other
+   * applications or outlive the application should use {@link #NAMESPACE}.
+   */
+  TABLE
+}
@@ -26,8 +26,13 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.BiFunction;
 
+import com.huyu.dynamic.IMLanguageDriver;
+
 import org.apache.ibatis.binding.MapperRegistry;
 import org.apache.ibatis.builder.CacheRefResolver;
 import org.apache.ibatis.builder.IncompleteElementException;
@@ -35,11 +40,20 @@ import org.apache.ibatis.builder.ResultMapResolver;
 import org.apache.ibatis.builder.annotation.MethodResolver;
 import org.apache.ibatis.builder.xml.XMLStatementBuilder;
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheValueCodec;
+import org.apache.ibatis.cache.CacheWeigher;
+import org.apache.ibatis.cache.codec.CompactCodec;
+import org.apache.ibatis.cache.codec.JavaSerializationCodec;
 import org.apache.ibatis.cache.decorators.FifoCache;
 import org.apache.ibatis.cache.decorators.LruCache;
 import org.apache.ibatis.cache.decorators.SoftCache;
+import org.apache.ibatis.cache.decorators.TinyLfuCache;
 import org.apache.ibatis.cache.decorators.WeakCache;
+import org.apache.ibatis.cache.decorators.WeightedLruCache;
+import org.apache.ibatis.cache.impl.ConcurrentPerpetualCache;
+import org.apache.ibatis.cache.impl.OffHeapCache;
 import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.cache.weigher.RetainedSizeWeigher;
 import org.apache.ibatis.datasource.jndi.JndiDataSourceFactory;
 import org.apache.ibatis.datasource.pooled.PooledDataSourceFactory;
 import org.apache.ibatis.datasource.unpooled.UnpooledDataSourceFactory;
@@ -78,10 +92,14 @@ import org.apache.ibatis.parsing.XNode;
 import org.apache.ibatis.plugin.Interceptor;
 import org.apache.ibatis.plugin.InterceptorChain;
 import org.apache.ibatis.reflection.DefaultReflectorFactory;
+import org.apache.ibatis.reflection.Jdk;
 import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.reflection.ReflectorFactory;
 import org.apache.ibatis.reflection.factory.DefaultObjectFactory;
 import org.apache.ibatis.reflection.factory.ObjectFactory;
+import org.apache.ibatis.reflection.invoker.InvokerFactory;
+import org.apache.ibatis.reflection.invoker.LambdaInvokerFactory;
+import org.apache.ibatis.reflection.invoker.ReflectionInvokerFactory;
 import org.apache.ibatis.reflection.wrapper.DefaultObjectWrapperFactory;
 import org.apache.ibatis.reflection.wrapper.ObjectWrapperFactory;
 import org.apache.ibatis.scripting.LanguageDriver;
@@ -123,11 +141,13 @@ public class Configuration {
   protected Class<? extends VFS> vfsImpl;
   protected Class<?> defaultSqlProviderType;
   protected LocalCacheScope localCacheScope = LocalCacheScope.SESSION;
+  protected CacheInvalidation cacheInvalidation = CacheInvalidation.NAMESPACE;
   protected JdbcType jdbcTypeForNull = JdbcType.OTHER;
   protected Set<String> lazyLoadTriggerMethods = new HashSet<>(
     Arrays.asList("equals", "clone", "hashCode", "toString"));
   protected Integer defaultStatementTimeout;
   protected Integer defaultFetchSize;
+  protected int cursorPrefetchSize;
   protected ResultSetType defaultResultSetType;
   protected ExecutorType defaultExecutorType = ExecutorType.SIMPLE;
   protected AutoMappingBehavior autoMappingBehavior = AutoMappingBehavior.PARTIAL;
@@ -140,6 +160,10 @@ public class Configuration {
 
   protected boolean lazyLoadingEnabled;
   protected ProxyFactory proxyFactory = new JavassistProxyFactory(); // #224 Using internal Javassist instead of OGNL
+  protected CacheValueCodec cacheValueCodec = new JavaSerializationCodec();
+  protected CacheWeigher cacheWeigher = new RetainedSizeWeigher();
+  // 执行返回CompletableFuture的Mapper方法, 默认每个调用一个虚拟线程(JDK 21之前使用守护线程的缓存线程池)
+  protected java.util.concurrent.Executor asyncExecutor = createDefaultAsyncExecutor();
 
   protected String databaseId;
   /**
@@ -193,6 +217,12 @@ public class Configuration {
   protected final Collection<ResultMapResolver> incompleteResultMaps = new LinkedList<>();
   protected final Collection<MethodResolver> incompleteMethods = new LinkedList<>();
 
+  // 保护上面的 incomplete* 集合. 使用 ReentrantLock 而不是 synchronized, 虚拟线程在这里等待的时候不会占住载体线程
+  private final ReentrantLock incompleteResultMapsLock = new ReentrantLock();
+  private final ReentrantLock incompleteCacheRefsLock = new ReentrantLock();
+  private final ReentrantLock incompleteStatementsLock = new ReentrantLock();
+  private final ReentrantLock incompleteMethodsLock = new ReentrantLock();
+
   /*
    * A map holds cache-ref relationship. The key is the namespace that references a cache bound to another namespace and
    * the value is the namespace which the actual cache is bound to.
@@ -213,15 +243,24 @@ public class Configuration {
     typeAliasRegistry.registerAlias("UNPOOLED", UnpooledDataSourceFactory.class);
 
     typeAliasRegistry.registerAlias("PERPETUAL", PerpetualCache.class);
+    typeAliasRegistry.registerAlias("CONCURRENT", ConcurrentPerpetualCache.class);
+    typeAliasRegistry.registerAlias("OFFHEAP", OffHeapCache.class);
     typeAliasRegistry.registerAlias("FIFO", FifoCache.class);
     typeAliasRegistry.registerAlias("LRU", LruCache.class);
     typeAliasRegistry.registerAlias("SOFT", SoftCache.class);
     typeAliasRegistry.registerAlias("WEAK", WeakCache.class);
+    typeAliasRegistry.registerAlias("TINYLFU", TinyLfuCache.class);
+    typeAliasRegistry.registerAlias("WEIGHTED", WeightedLruCache.class);
+
+    typeAliasRegistry.registerAlias("COMPACT", CompactCodec.class);
+    typeAliasRegistry.registerAlias("SERIALIZATION", JavaSerializationCodec.class);
 
     typeAliasRegistry.registerAlias("DB_VENDOR", VendorDatabaseIdProvider.class);
 
     typeAliasRegistry.registerAlias("XML", XMLLanguageDriver.class);
     typeAliasRegistry.registerAlias("RAW", RawLanguageDriver.class);
+    // 只加载IMLanguageDriver这一个类, 不初始化. IM引擎的其他类在第一次使用 lang="IM" 的时候才加载
+    typeAliasRegistry.registerAlias("IM", IMLanguageDriver.class);
 
     typeAliasRegistry.registerAlias("SLF4J", Slf4jImpl.class);
     typeAliasRegistry.registerAlias("COMMONS_LOGGING", JakartaCommonsLoggingImpl.class);
@@ -234,6 +273,9 @@ public class Configuration {
     typeAliasRegistry.registerAlias("CGLIB", CglibProxyFactory.class);
     typeAliasRegistry.registerAlias("JAVASSIST", JavassistProxyFactory.class);
 
+    typeAliasRegistry.registerAlias("REFLECTION", ReflectionInvokerFactory.class);
+    typeAliasRegistry.registerAlias("LAMBDA", LambdaInvokerFactory.class);
+
     languageRegistry.setDefaultDriverClass(XMLLanguageDriver.class);
     languageRegistry.register(RawLanguageDriver.class);
   }
@@ -456,6 +498,85 @@ public class Configuration {
     this.proxyFactory = proxyFactory;
   }
 
+  public CacheValueCodec getCacheValueCodec() {
+    return cacheValueCodec;
+  }
+
+  /**
+   * Sets the codec that copies the values of the read/write second level caches. The default
+   * {@link JavaSerializationCodec} requires the values to be {@link java.io.Serializable}; a {@link CompactCodec}
+   * created with the {@link #getReflectorFactory() reflector factory} and {@link #getObjectFactory() object factory}
+   * of this configuration copies result objects through their getters and setters instead.
+   *
+   * @param cacheValueCodec
+   *          the codec, {@code null} to restore the default {@link JavaSerializationCodec}
+   * @since 3.5.14
+   */
+  public void setCacheValueCodec(CacheValueCodec cacheValueCodec) {
+    if (cacheValueCodec == null) {
+      cacheValueCodec = new JavaSerializationCodec();
+    }
+    this.cacheValueCodec = cacheValueCodec;
+  }
+
+  public CacheWeigher getCacheWeigher() {
+    return cacheWeigher;
+  }
+
+  /**
+   * Sets the weigher of the second level caches bounded by weight, i.e. with the {@code WEIGHTED} eviction.
+   *
+   * @param cacheWeigher
+   *          the weigher, {@code null} to restore the default {@link RetainedSizeWeigher}
+   * @since 3.5.14
+   */
+  public void setCacheWeigher(CacheWeigher cacheWeigher) {
+    if (cacheWeigher == null) {
+      cacheWeigher = new RetainedSizeWeigher();
+    }
+    this.cacheWeigher = cacheWeigher;
+  }
+
+  /**
+   * Gets the executor that runs the mapper methods returning a {@code CompletableFuture}.
+   *
+   * @return the executor, a new virtual thread per call by default, or a cached pool of daemon threads before JDK 21
+   * @since 3.5.14
+   */
+  public java.util.concurrent.Executor getAsyncExecutor() {
+    return asyncExecutor;
+  }
+
+  /**
+   * Sets the executor that runs the mapper methods returning a {@code CompletableFuture}. Each call opens its own
+   * {@link SqlSession} on the environment's data source, so the executor should not run more tasks at once than the
+   * data source can provide connections for.
+   *
+   * @param asyncExecutor
+   *          the executor, {@code null} to restore the default
+   * @since 3.5.14
+   */
+  public void setAsyncExecutor(java.util.concurrent.Executor asyncExecutor) {
+    if (asyncExecutor == null) {
+      asyncExecutor = createDefaultAsyncExecutor();
+    }
+    this.asyncExecutor = asyncExecutor;
+  }
+
+  private static java.util.concurrent.Executor createDefaultAsyncExecutor() {
+    java.util.concurrent.Executor executor = Jdk.newVirtualThreadPerTaskExecutor();
+    if (executor != null) {
+      return executor;
+    }
+    // 守护线程, 不会阻止JVM退出; 空闲的线程60秒之后回收
+    AtomicInteger threadNumber = new AtomicInteger();
+    return Executors.newCachedThreadPool(runnable -> {
+      Thread thread = new Thread(runnable, "mybatis-async-" + threadNumber.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
   public boolean isAggressiveLazyLoading() {
     return aggressiveLazyLoading;
   }
@@ -532,6 +653,28 @@ public class Configuration {
     this.defaultFetchSize = defaultFetchSize;
   }
 
+  /**
+   * Gets the number of rows a cursor reads ahead of the caller.
+   *
+   * @return the prefetch size, 0 if cursors read a row only when it is requested
+   * @since 3.5.14
+   */
+  public int getCursorPrefetchSize() {
+    return cursorPrefetchSize;
+  }
+
+  /**
+   * Sets the number of rows a cursor reads ahead of the caller. When positive, the rows are fetched and mapped on
+   * {@link #getAsyncExecutor()} while the caller processes the previous ones, and the session must not be used for
+   * other statements while the cursor is open.
+   *
+   * @param cursorPrefetchSize the prefetch size, 0 to disable
+   * @since 3.5.14
+   */
+  public void setCursorPrefetchSize(int cursorPrefetchSize) {
+    this.cursorPrefetchSize = cursorPrefetchSize;
+  }
+
   /**
    * Gets the default result set type.
    *
@@ -568,6 +711,22 @@ public class Configuration {
     this.localCacheScope = localCacheScope;
   }
 
+  public CacheInvalidation getCacheInvalidation() {
+    return cacheInvalidation;
+  }
+
+  /**
+   * Sets how the statements flush the second level caches. It applies to the caches built after this call, so it
+   * should be set before the mappers are added.
+   *
+   * @param cacheInvalidation
+   *          the invalidation mode
+   * @since 3.5.14
+   */
+  public void setCacheInvalidation(CacheInvalidation cacheInvalidation) {
+    this.cacheInvalidation = cacheInvalidation;
+  }
+
   public JdbcType getJdbcTypeForNull() {
     return jdbcTypeForNull;
   }
@@ -623,6 +782,32 @@ public class Configuration {
     this.reflectorFactory = reflectorFactory;
   }
 
+  /**
+   * Gets how the reflector factory creates the accessors of properties.
+   *
+   * @return the invoker factory, or {@code null} when the reflector factory is not a {@link DefaultReflectorFactory}
+   *
+   * @since 3.5.14
+   */
+  public InvokerFactory getInvokerFactory() {
+    return reflectorFactory instanceof DefaultReflectorFactory
+        ? ((DefaultReflectorFactory) reflectorFactory).getInvokerFactory() : null;
+  }
+
+  /**
+   * Replaces the reflector factory with a {@link DefaultReflectorFactory} that creates the accessors of properties
+   * with the given invoker factory, for example a {@link LambdaInvokerFactory}.
+   *
+   * @param invokerFactory
+   *          the invoker factory, {@code null} for plain reflection
+   *
+   * @since 3.5.14
+   */
+  public void setInvokerFactory(InvokerFactory invokerFactory) {
+    this.reflectorFactory = new DefaultReflectorFactory(
+        invokerFactory == null ? new ReflectionInvokerFactory() : invokerFactory);
+  }
+
   public ObjectFactory getObjectFactory() {
     return objectFactory;
   }
@@ -843,7 +1028,12 @@ public class Configuration {
   }
 
   public void addIncompleteStatement(XMLStatementBuilder incompleteStatement) {
-    incompleteStatements.add(incompleteStatement);
+    incompleteStatementsLock.lock();
+    try {
+      incompleteStatements.add(incompleteStatement);
+    } finally {
+      incompleteStatementsLock.unlock();
+    }
   }
 
   public Collection<CacheRefResolver> getIncompleteCacheRefs() {
@@ -851,7 +1041,12 @@ public class Configuration {
   }
 
   public void addIncompleteCacheRef(CacheRefResolver incompleteCacheRef) {
-    incompleteCacheRefs.add(incompleteCacheRef);
+    incompleteCacheRefsLock.lock();
+    try {
+      incompleteCacheRefs.add(incompleteCacheRef);
+    } finally {
+      incompleteCacheRefsLock.unlock();
+    }
   }
 
   public Collection<ResultMapResolver> getIncompleteResultMaps() {
@@ -859,11 +1054,21 @@ public class Configuration {
   }
 
   public void addIncompleteResultMap(ResultMapResolver resultMapResolver) {
-    incompleteResultMaps.add(resultMapResolver);
+    incompleteResultMapsLock.lock();
+    try {
+      incompleteResultMaps.add(resultMapResolver);
+    } finally {
+      incompleteResultMapsLock.unlock();
+    }
   }
 
   public void addIncompleteMethod(MethodResolver builder) {
-    incompleteMethods.add(builder);
+    incompleteMethodsLock.lock();
+    try {
+      incompleteMethods.add(builder);
+    } finally {
+      incompleteMethodsLock.unlock();
+    }
   }
 
   public Collection<MethodResolver> getIncompleteMethods() {
@@ -929,35 +1134,26 @@ public class Configuration {
    * are added as it provides fail-fast statement validation.
    */
   protected void buildAllStatements() {
-    parsePendingResultMaps();
-    if (!incompleteCacheRefs.isEmpty()) {
-      synchronized (incompleteCacheRefs) {
-        incompleteCacheRefs.removeIf(x -> x.resolveCacheRef() != null);
-      }
-    }
-    if (!incompleteStatements.isEmpty()) {
-      synchronized (incompleteStatements) {
-        incompleteStatements.removeIf(x -> {
-          x.parseStatementNode();
-          return true;
-        });
-      }
-    }
-    if (!incompleteMethods.isEmpty()) {
-      synchronized (incompleteMethods) {
-        incompleteMethods.removeIf(x -> {
-          x.resolve();
-          return true;
-        });
-      }
-    }
+    parsePendingResultMaps(true);
+    parsePendingCacheRefs(true);
+    parsePendingStatements(true);
+    parsePendingMethods(true);
   }
 
-  private void parsePendingResultMaps() {
+  /**
+   * Resolves the result maps that were waiting for another resource.
+   *
+   * @param reportUnresolved
+   *          true to throw an {@link IncompleteElementException} if a result map still cannot be resolved
+   *
+   * @since 3.5.14
+   */
+  public void parsePendingResultMaps(boolean reportUnresolved) {
     if (incompleteResultMaps.isEmpty()) {
       return;
     }
-    synchronized (incompleteResultMaps) {
+    incompleteResultMapsLock.lock();
+    try {
       boolean resolved;
       IncompleteElementException ex = null;
       do {
@@ -973,10 +1169,105 @@ public class Configuration {
           }
         }
       } while (resolved);
-      if (!incompleteResultMaps.isEmpty() && ex != null) {
+      if (reportUnresolved && !incompleteResultMaps.isEmpty() && ex != null) {
         // At least one result map is unresolvable.
         throw ex;
       }
+    } finally {
+      incompleteResultMapsLock.unlock();
+    }
+  }
+
+  /**
+   * Resolves the cache refs that were waiting for another resource.
+   *
+   * @param reportUnresolved
+   *          true to throw an {@link IncompleteElementException} if a cache ref still cannot be resolved
+   *
+   * @since 3.5.14
+   */
+  public void parsePendingCacheRefs(boolean reportUnresolved) {
+    if (incompleteCacheRefs.isEmpty()) {
+      return;
+    }
+    incompleteCacheRefsLock.lock();
+    try {
+      Iterator<CacheRefResolver> iterator = incompleteCacheRefs.iterator();
+      while (iterator.hasNext()) {
+        try {
+          iterator.next().resolveCacheRef();
+          iterator.remove();
+        } catch (IncompleteElementException e) {
+          // Cache ref is still missing a resource...
+          if (reportUnresolved) {
+            throw e;
+          }
+        }
+      }
+    } finally {
+      incompleteCacheRefsLock.unlock();
+    }
+  }
+
+  /**
+   * Parses the statements that were waiting for another resource.
+   *
+   * @param reportUnresolved
+   *          true to throw an {@link IncompleteElementException} if a statement still cannot be parsed
+   *
+   * @since 3.5.14
+   */
+  public void parsePendingStatements(boolean reportUnresolved) {
+    if (incompleteStatements.isEmpty()) {
+      return;
+    }
+    incompleteStatementsLock.lock();
+    try {
+      Iterator<XMLStatementBuilder> iterator = incompleteStatements.iterator();
+      while (iterator.hasNext()) {
+        try {
+          iterator.next().parseStatementNode();
+          iterator.remove();
+        } catch (IncompleteElementException e) {
+          // Statement is still missing a resource...
+          if (reportUnresolved) {
+            throw e;
+          }
+        }
+      }
+    } finally {
+      incompleteStatementsLock.unlock();
+    }
+  }
+
+  /**
+   * Resolves the annotated mapper methods that were waiting for another resource.
+   *
+   * @param reportUnresolved
+   *          true to throw an {@link IncompleteElementException} if a method still cannot be resolved
+   *
+   * @since 3.5.14
+   */
+  public void parsePendingMethods(boolean reportUnresolved) {
+    if (incompleteMethods.isEmpty()) {
+      return;
+    }
+    incompleteMethodsLock.lock();
+    try {
+      Iterator<MethodResolver> iterator = incompleteMethods.iterator();
+      while (iterator.hasNext()) {
+        try {
+          iterator.next().resolve();
+          iterator.remove();
+        } catch (IncompleteElementException e) {
+          // This method is still missing a resource
+          if (reportUnresolved) {
+            throw e;
+          }
+        }
+      }
+    } finally {
+      incompleteMethodsLock.unlock();
     }
   }
 
@@ -27,11 +27,15 @@ import org.apache.ibatis.binding.BindingException;
 import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.exceptions.ExceptionFactory;
 import org.apache.ibatis.exceptions.TooManyResultsException;
+import org.apache.ibatis.executor.BatchExecutor;
 import org.apache.ibatis.executor.BatchResult;
 import org.apache.ibatis.executor.ErrorContext;
 import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.executor.ExecutorException;
+import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
 import org.apache.ibatis.executor.result.DefaultMapResultHandler;
 import org.apache.ibatis.executor.result.DefaultResultContext;
+import org.apache.ibatis.mapping.BoundSql;
 import org.apache.ibatis.mapping.MappedStatement;
 import org.apache.ibatis.reflection.ParamNameResolver;
 import org.apache.ibatis.session.Configuration;
@@ -134,6 +138,10 @@ public class DefaultSqlSession implements SqlSession {
     try {
       MappedStatement ms = configuration.getMappedStatement(statement);
       dirty |= ms.isDirtySelect();
+      if (ms.isChunked()) {
+        throw new ExecutorException("Mapped Statement '" + ms.getId() + "' contains a chunked foreach and cannot be "
+            + "opened as a cursor.");
+      }
       Cursor<T> cursor = executor.queryCursor(ms, wrapCollection(parameter), rowBounds);
       registerCursor(cursor);
       return cursor;
@@ -168,6 +176,9 @@ public class DefaultSqlSession implements SqlSession {
       //全局唯一,用来描述(sql,返回结果映射,参数的映射等等)
       MappedStatement ms = configuration.getMappedStatement(statement);
       dirty |= ms.isDirtySelect();
+      if (ms.isChunked()) {
+        return selectChunks(ms, wrapCollection(parameter), rowBounds, handler);
+      }
       // executor 负责执行查询操作
       return executor.query(ms, wrapCollection(parameter), rowBounds, handler);
     } catch (Exception e) {
@@ -177,6 +188,31 @@ public class DefaultSqlSession implements SqlSession {
     }
   }
 
+  /**
+   * foreach 分块执行: 每一块执行一次查询,合并结果
+   */
+  private <E> List<E> selectChunks(MappedStatement ms, Object parameter, RowBounds rowBounds, ResultHandler handler)
+      throws SQLException {
+    if (rowBounds != RowBounds.DEFAULT) {
+      throw new ExecutorException(
+          "Mapped Statement '" + ms.getId() + "' contains a chunked foreach and does not support RowBounds.");
+    }
+    List<BoundSql> chunks = chunks(ms, parameter);
+    if (chunks.size() == 1) {
+      return executor.query(ms.forChunk(chunks.get(0)), parameter, rowBounds, handler);
+    }
+    List<E> result = new ArrayList<>();
+    for (BoundSql chunk : chunks) {
+      List<E> list = executor.query(ms.forChunk(chunk), parameter, rowBounds, handler);
+      result.addAll(list);
+    }
+    return result;
+  }
+
+  private List<BoundSql> chunks(MappedStatement ms, Object parameter) {
+    return ms.getBoundSqlChunks(parameter);
+  }
+
   @Override
   public void select(String statement, Object parameter, ResultHandler handler) {
     select(statement, parameter, RowBounds.DEFAULT, handler);
@@ -213,6 +249,9 @@ public class DefaultSqlSession implements SqlSession {
     try {
       dirty = true;
       MappedStatement ms = configuration.getMappedStatement(statement);
+      if (ms.isChunked()) {
+        return updateChunks(ms, wrapCollection(parameter));
+      }
       return executor.update(ms, wrapCollection(parameter));
     } catch (Exception e) {
       throw ExceptionFactory.wrapException("Error updating database.  Cause: " + e, e);
@@ -221,6 +260,27 @@ public class DefaultSqlSession implements SqlSession {
     }
   }
 
+  /**
+   * foreach 分块执行: 每一块执行一次更新,合并影响的行数
+   */
+  private int updateChunks(MappedStatement ms, Object parameter) throws SQLException {
+    if (ms.getKeyGenerator() instanceof Jdbc3KeyGenerator) {
+      throw new ExecutorException(
+          "Mapped Statement '" + ms.getId() + "' contains a chunked foreach and does not support useGeneratedKeys.");
+    }
+    int count = 0;
+    for (BoundSql chunk : chunks(ms, parameter)) {
+      int updated = executor.update(ms.forChunk(chunk), parameter);
+      if (updated == BatchExecutor.BATCH_UPDATE_RETURN_VALUE) {
+        // 批量执行的时候,影响的行数在 flushStatements 的时候才知道
+        count = updated;
+      } else if (count != BatchExecutor.BATCH_UPDATE_RETURN_VALUE) {
+        count += updated;
+      }
+    }
+    return count;
+  }
+
   @Override
   public int delete(String statement) {
     return update(statement, null);
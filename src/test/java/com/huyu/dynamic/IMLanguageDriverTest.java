@@ -0,0 +1,161 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.huyu.dynamic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ibatis.builder.BuilderException;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.SqlSource;
+import org.apache.ibatis.parsing.XPathParser;
+import org.apache.ibatis.session.Configuration;
+import org.junit.jupiter.api.Test;
+
+class IMLanguageDriverTest {
+
+  private final Configuration configuration = new Configuration();
+
+  @Test
+  void shouldResolveImAlias() {
+    assertEquals(IMLanguageDriver.class, configuration.getTypeAliasRegistry().resolveAlias("IM"));
+    assertTrue(configuration.getLanguageDriver(IMLanguageDriver.class) instanceof IMLanguageDriver);
+  }
+
+  @Test
+  void shouldCreateSqlSourceFromPlainScript() {
+    SqlSource sqlSource = new IMLanguageDriver().createSqlSource(configuration,
+        "select * from users where id = #{id}", Integer.class);
+
+    BoundSql boundSql = sqlSource.getBoundSql(5);
+
+    assertEquals("select * from users where id = ?", boundSql.getSql());
+    assertEquals(List.of(5), valuesOf(boundSql));
+  }
+
+  @Test
+  void shouldCreateSqlSourceFromScriptElement() {
+    SqlSource sqlSource = new IMLanguageDriver().createSqlSource(configuration,
+        "<script>select * from users <where><if test=\"id != null\">and id = #{id}</if></where></script>", Map.class);
+
+    BoundSql boundSql = sqlSource.getBoundSql(Map.of("id", 5));
+
+    assertEquals("select * from users WHERE id = ?", boundSql.getSql());
+    assertEquals(List.of(5), valuesOf(boundSql));
+  }
+
+  @Test
+  void shouldRemoveLeadingAndOfWhere() {
+    SqlSource sqlSource = sqlSource("<select>select * from users <where>"
+        + "<if test=\"id != null\">and id = #{id}</if> <if test=\"name != null\">and name = #{name}</if>"
+        + "</where></select>");
+    Map<String, Object> parameter = new HashMap<>();
+    parameter.put("id", null);
+    parameter.put("name", "jim");
+
+    BoundSql boundSql = sqlSource.getBoundSql(parameter);
+
+    assertEquals("select * from users WHERE name = ?", boundSql.getSql());
+    assertEquals(List.of("jim"), valuesOf(boundSql));
+  }
+
+  @Test
+  void shouldOmitEmptyWhere() {
+    SqlSource sqlSource = sqlSource("<select>select * from users <where>"
+        + "<if test=\"id != null\">and id = #{id}</if></where> order by id</select>");
+    Map<String, Object> parameter = new HashMap<>();
+    parameter.put("id", null);
+
+    assertEquals("select * from users order by id", sqlSource.getBoundSql(parameter).getSql());
+  }
+
+  @Test
+  void shouldRemoveTrailingCommaOfSet() {
+    SqlSource sqlSource = sqlSource("<update>update users <set>"
+        + "<if test=\"name != null\">name = #{name},</if> <if test=\"age != null\">age = #{age},</if>"
+        + "</set> where id = #{id}</update>", "/update");
+    Map<String, Object> parameter = new HashMap<>();
+    parameter.put("id", 1);
+    parameter.put("name", "jim");
+    parameter.put("age", null);
+
+    BoundSql boundSql = sqlSource.getBoundSql(parameter);
+
+    assertEquals("update users SET name = ? where id = ?", boundSql.getSql());
+    assertEquals(List.of("jim", 1), valuesOf(boundSql));
+  }
+
+  @Test
+  void shouldApplyTrimOverrides() {
+    SqlSource sqlSource = sqlSource("<select>select * from users"
+        + " <trim prefix=\"where (\" prefixOverrides=\"or |and \" suffix=\")\" suffixOverrides=\" or| and\">"
+        + "or id = #{id} or name = #{name} or</trim></select>");
+    Map<String, Object> parameter = new HashMap<>();
+    parameter.put("id", 1);
+    parameter.put("name", "jim");
+
+    BoundSql boundSql = sqlSource.getBoundSql(parameter);
+
+    assertEquals("select * from users where ( id = ? or name = ? )", boundSql.getSql());
+    assertEquals(List.of(1, "jim"), valuesOf(boundSql));
+  }
+
+  @Test
+  void shouldKeepForeachSeparatorOutsideTrim() {
+    SqlSource sqlSource = sqlSource("<select>select * from users where"
+        + " <foreach item=\"item\" collection=\"users\" separator=\"or\">"
+        + "<trim prefix=\"(\" prefixOverrides=\"and \" suffix=\")\">"
+        + "<if test=\"item.id != null\">and id = #{item.id}</if> and name = #{item.name}</trim>"
+        + "</foreach></select>");
+    Map<String, Object> first = new HashMap<>();
+    first.put("id", 1);
+    first.put("name", "jim");
+    Map<String, Object> second = new HashMap<>();
+    second.put("id", null);
+    second.put("name", "tom");
+
+    BoundSql boundSql = sqlSource.getBoundSql(Map.of("users", List.of(first, second)));
+
+    assertEquals("select * from users where ( id = ? and name = ? ) or ( name = ? )", boundSql.getSql());
+    assertEquals(List.of(1, "jim", "tom"), valuesOf(boundSql));
+  }
+
+  @Test
+  void shouldRejectUnknownElement() {
+    BuilderException e = assertThrows(BuilderException.class,
+        () -> sqlSource("<select>select * from users <unknown>id = 1</unknown></select>"));
+    assertTrue(e.getMessage().contains("<unknown>"));
+  }
+
+  private SqlSource sqlSource(String script) {
+    return sqlSource(script, "/select");
+  }
+
+  private SqlSource sqlSource(String script, String root) {
+    return new IMLanguageDriver().createSqlSource(configuration, new XPathParser(script).evalNode(root), Map.class);
+  }
+
+  private static List<Object> valuesOf(BoundSql boundSql) {
+    return boundSql.getParameterMappings().stream()
+        .map(mapping -> boundSql.getAdditionalParameter(mapping.getProperty())).toList();
+  }
+
+}
@@ -0,0 +1,208 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.huyu.dynamic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.SqlSource;
+import org.apache.ibatis.parsing.XPathParser;
+import org.apache.ibatis.session.Configuration;
+import org.junit.jupiter.api.Test;
+
+class IMSqlSourceTest {
+
+  private final Configuration configuration = new Configuration();
+
+  @Test
+  void shouldRenderOneBoundSqlPerChunk() {
+    SqlSource sqlSource = sqlSource("<select>select * from users where name = #{name} and id in"
+        + " <foreach item=\"item\" collection=\"ids\" chunkSize=\"2\" open=\"(\" separator=\",\" close=\")\">"
+        + "#{item}</foreach></select>");
+    Map<String, Object> parameter = new HashMap<>();
+    parameter.put("name", "jim");
+    parameter.put("ids", Arrays.asList(1, 2, 3, 4, 5));
+
+    List<BoundSql> chunks = sqlSource.getBoundSqlChunks(parameter);
+
+    assertEquals(3, chunks.size());
+    assertEquals("select * from users where name = ? and id in ( ? , ? )", chunks.get(0).getSql());
+    assertEquals(Arrays.asList("jim", 1, 2), valuesOf(chunks.get(0)));
+    assertEquals(Arrays.asList("jim", 3, 4), valuesOf(chunks.get(1)));
+    assertEquals("select * from users where name = ? and id in ( ? )", chunks.get(2).getSql());
+    assertEquals(Arrays.asList("jim", 5), valuesOf(chunks.get(2)));
+  }
+
+  @Test
+  void shouldRenderFirstChunkOnlyAsBoundSql() {
+    SqlSource sqlSource = sqlSource("<select>select * from users where id in"
+        + " <foreach item=\"item\" collection=\"ids\" chunkSize=\"2\" open=\"(\" separator=\",\" close=\")\">"
+        + "#{item}</foreach></select>");
+    Map<String, Object> parameter = new HashMap<>();
+    parameter.put("ids", Arrays.asList(1, 2, 3));
+
+    BoundSql boundSql = sqlSource.getBoundSql(parameter);
+
+    assertEquals("select * from users where id in ( ? , ? )", boundSql.getSql());
+    assertEquals(Arrays.asList(1, 2), valuesOf(boundSql));
+  }
+
+  @Test
+  void shouldRenderSingleChunkWhenCollectionIsSmall() {
+    SqlSource sqlSource = sqlSource("<select>select * from users where id in"
+        + " <foreach item=\"item\" collection=\"ids\" chunkSize=\"10\" open=\"(\" separator=\",\" close=\")\">"
+        + "#{item}</foreach></select>");
+    Map<String, Object> parameter = new HashMap<>();
+    parameter.put("ids", Arrays.asList(1, 2, 3));
+
+    List<BoundSql> chunks = sqlSource.getBoundSqlChunks(parameter);
+
+    assertEquals(1, chunks.size());
+    assertEquals(Arrays.asList(1, 2, 3), valuesOf(chunks.get(0)));
+  }
+
+  @Test
+  void shouldBindSimpleParameterToAnyUndefinedName() {
+    SqlSource sqlSource = new IMLanguageDriver().createSqlSource(configuration,
+        new XPathParser("<select><bind name=\"name\" value=\"null\"/>"
+            + "select * from users where id = #{id} and name = #{name}</select>").evalNode("/select"),
+        Integer.class);
+
+    BoundSql boundSql = sqlSource.getBoundSql(5);
+
+    assertEquals("select * from users where id = ? and name = ?", boundSql.getSql());
+    // name 定义了, 值为null, 不是入参
+    assertEquals(Arrays.asList(5, null), valuesOf(boundSql));
+  }
+
+  @Test
+  void shouldBindItemPropertiesAndIndex() {
+    SqlSource sqlSource = sqlSource("<select>insert into users values"
+        + " <foreach item=\"user\" index=\"i\" collection=\"users\" separator=\",\">"
+        + "(#{i}, #{user.id}, #{user.name})</foreach></select>");
+    Map<String, Object> parameter = new HashMap<>();
+    parameter.put("users", Arrays.asList(new User(1, "jim"), new Admin(2, "tom"), null, new User(4, "sue")));
+
+    BoundSql boundSql = sqlSource.getBoundSql(parameter);
+
+    assertEquals("insert into users values (?, ?, ?) , (?, ?, ?) , (?, ?, ?) , (?, ?, ?)", boundSql.getSql());
+    // 不同类型的元素和null元素也按各自的属性取值
+    assertEquals(Arrays.asList(0, 1, "jim", 1, 2, "tom", 2, null, null, 3, 4, "sue"), valuesOf(boundSql));
+  }
+
+  @Test
+  void shouldBindPropertiesOfMapItemsAndIndexedProperties() {
+    SqlSource sqlSource = sqlSource("<select>select * from users where"
+        + " <foreach item=\"item\" collection=\"items\" separator=\"or\">"
+        + "(city = #{item.address.city} and tag = #{item.tags[0]})</foreach></select>");
+    Map<String, Object> item = new HashMap<>();
+    item.put("address", Map.of("city", "Paris"));
+    item.put("tags", Arrays.asList("a", "b"));
+    Map<String, Object> parameter = new HashMap<>();
+    parameter.put("items", Arrays.asList(item));
+
+    BoundSql boundSql = sqlSource.getBoundSql(parameter);
+
+    assertEquals("select * from users where (city = ? and tag = ?)", boundSql.getSql());
+    assertEquals(Arrays.asList("Paris", "a"), valuesOf(boundSql));
+  }
+
+  @Test
+  void shouldRestoreShadowedItemAfterNestedForeach() {
+    SqlSource sqlSource = sqlSource("<select>select * from t where"
+        + " <foreach item=\"item\" collection=\"groups\" separator=\"or\">"
+        + "(g = #{item.id} and v in <foreach item=\"item\" collection=\"item.values\" open=\"(\""
+        + " separator=\",\" close=\")\">#{item}</foreach> and n = #{item.name})</foreach></select>");
+    Map<String, Object> parameter = new HashMap<>();
+    parameter.put("groups", Arrays.asList(new Group(1, "a", Arrays.asList(10, 11)), new Group(2, "b",
+        Arrays.asList(20))));
+
+    BoundSql boundSql = sqlSource.getBoundSql(parameter);
+
+    assertEquals("select * from t where (g = ? and v in ( ? , ? ) and n = ?) or (g = ? and v in ( ? ) and n = ?)",
+        boundSql.getSql());
+    assertEquals(Arrays.asList(1, 10, 11, "a", 2, 20, "b"), valuesOf(boundSql));
+  }
+
+  @Test
+  void shouldBindVariablesDefinedByBind() {
+    SqlSource sqlSource = sqlSource("<select>select * from users where"
+        + " <foreach item=\"user\" collection=\"users\" separator=\"or\">"
+        + "<bind name=\"userName\" value=\"user.name\"/>name = #{userName}</foreach>"
+        + " and id = #{id}</select>");
+    Map<String, Object> parameter = new HashMap<>();
+    parameter.put("id", 7);
+    parameter.put("users", Arrays.asList(new User(1, "jim"), new User(2, "tom")));
+
+    BoundSql boundSql = sqlSource.getBoundSql(parameter);
+
+    assertEquals("select * from users where name = ? or name = ? and id = ?", boundSql.getSql());
+    assertEquals(Arrays.asList("jim", "tom", 7), valuesOf(boundSql));
+  }
+
+  private SqlSource sqlSource(String script) {
+    return new IMLanguageDriver().createSqlSource(configuration, new XPathParser(script).evalNode("/select"),
+        Map.class);
+  }
+
+  private static List<Object> valuesOf(BoundSql boundSql) {
+    return boundSql.getParameterMappings().stream()
+        .map(mapping -> boundSql.getAdditionalParameter(mapping.getProperty())).toList();
+  }
+
+  public static class User {
+    private final Integer id;
+    private final String name;
+
+    public User(Integer id, String name) {
+      this.id = id;
+      this.name = name;
+    }
+
+    public Integer getId() {
+      return id;
+    }
+
+    public String getName() {
+      return name;
+    }
+  }
+
+  public static class Admin extends User {
+    public Admin(Integer id, String name) {
+      super(id, name);
+    }
+  }
+
+  public static class Group extends User {
+    private final List<Integer> values;
+
+    public Group(Integer id, String name, List<Integer> values) {
+      super(id, name);
+      this.values = values;
+    }
+
+    public List<Integer> getValues() {
+      return values;
+    }
+  }
+
+}
@@ -0,0 +1,222 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.huyu.dynamic.expression;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.params.provider.Arguments.arguments;
+
+import com.huyu.dynamic.expression.IMExpression.Fallback;
+import com.huyu.dynamic.expression.IMExpressionParser.UnsupportedExpressionException;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.apache.ibatis.scripting.xmltags.OgnlCache;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/**
+ * 编译之后的表达式和ognl的结果必须一致, 包括回退到ognl的情况
+ */
+class IMExpressionCompilerTest {
+
+  /**
+   * 表达式的计算方式
+   */
+  enum Path {
+    // 编译之后直接计算
+    COMPILED,
+    // 可以编译, 运行时抛出 Fallback 交给ognl
+    FALLBACK,
+    // 不能编译, 整个表达式交给ognl
+    OGNL
+  }
+
+  enum Status {
+    ACTIVE, INACTIVE
+  }
+
+  public static class User {
+    private final String name;
+    private final int age;
+    private final Status status;
+    private final User manager;
+
+    User(String name, int age, Status status, User manager) {
+      this.name = name;
+      this.age = age;
+      this.status = status;
+      this.manager = manager;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public int getAge() {
+      return age;
+    }
+
+    public Status getStatus() {
+      return status;
+    }
+
+    public User getManager() {
+      return manager;
+    }
+  }
+
+  private static final User MARY = new User("mary", 40, Status.ACTIVE, null);
+  private static final User JOHN = new User("john", 30, Status.INACTIVE, MARY);
+  private static final Map<String, Object> PARAMS = createParams();
+
+  private static Map<String, Object> createParams() {
+    Map<String, Object> params = new HashMap<>();
+    params.put("name", "john");
+    params.put("blank", "");
+    params.put("age", 30);
+    params.put("id", 7L);
+    params.put("score", new BigDecimal("2.5"));
+    params.put("big", BigInteger.TEN);
+    params.put("active", Boolean.TRUE);
+    params.put("status", Status.ACTIVE);
+    params.put("other", Status.INACTIVE);
+    params.put("roles", Arrays.asList("admin", "user"));
+    params.put("user", JOHN);
+    params.put("missing", null);
+    return params;
+  }
+
+  @ParameterizedTest
+  @MethodSource("expressions")
+  void shouldEvaluateLikeOgnl(Path path, String expression, Object root) {
+    Object expected = OgnlCache.getValue(expression, root);
+
+    switch (path) {
+      case COMPILED:
+        assertEquals(expected, IMExpressionParser.parse(expression).getValue(root));
+        break;
+      case FALLBACK:
+        IMExpression compiled = IMExpressionParser.parse(expression);
+        assertThrows(Fallback.class, () -> compiled.getValue(root));
+        break;
+      default:
+        assertThrows(UnsupportedExpressionException.class, () -> IMExpressionParser.parse(expression));
+        break;
+    }
+    assertEquals(expected, IMExpressionCompiler.getValue(expression, root));
+    // 第二次从缓存中获取
+    assertEquals(expected, IMExpressionCompiler.getValue(expression, root));
+  }
+
+  static Stream<Arguments> expressions() {
+    return Stream.of(
+        // null
+        arguments(Path.COMPILED, "null", PARAMS),
+        arguments(Path.COMPILED, "missing", PARAMS),
+        arguments(Path.COMPILED, "missing == null", PARAMS),
+        arguments(Path.COMPILED, "name != null", PARAMS),
+        arguments(Path.COMPILED, "null == missing", PARAMS),
+        arguments(Path.COMPILED, "manager == null", MARY),
+        arguments(Path.COMPILED, "user.manager != null", PARAMS),
+        // 数字
+        arguments(Path.COMPILED, "age", PARAMS),
+        arguments(Path.COMPILED, "age == 30", PARAMS),
+        arguments(Path.COMPILED, "age neq 31", PARAMS),
+        arguments(Path.COMPILED, "age > 18", PARAMS),
+        arguments(Path.COMPILED, "age lte 30", PARAMS),
+        arguments(Path.COMPILED, "age == 30.0", PARAMS),
+        arguments(Path.COMPILED, "id >= 7", PARAMS),
+        arguments(Path.COMPILED, "age < -1", PARAMS),
+        arguments(Path.COMPILED, "score > 2", PARAMS),
+        arguments(Path.COMPILED, "big == 10", PARAMS),
+        arguments(Path.COMPILED, "user.age gt 18", PARAMS),
+        arguments(Path.COMPILED, "age >= 40", MARY),
+        arguments(Path.FALLBACK, "score > 2.0", PARAMS),
+        arguments(Path.FALLBACK, "big < 10.5", PARAMS),
+        arguments(Path.FALLBACK, "age + 1", PARAMS),
+        arguments(Path.OGNL, "age * 2", PARAMS),
+        arguments(Path.OGNL, "id == 7L", PARAMS),
+        arguments(Path.OGNL, "age == 0x1E", PARAMS),
+        // 字符串
+        arguments(Path.COMPILED, "name == 'john'", PARAMS),
+        arguments(Path.COMPILED, "name != \"mary\"", PARAMS),
+        arguments(Path.COMPILED, "blank == ''", PARAMS),
+        arguments(Path.COMPILED, "name lt 'mary'", PARAMS),
+        arguments(Path.COMPILED, "name.length() > 3", PARAMS),
+        arguments(Path.COMPILED, "name.trim() == 'john'", PARAMS),
+        arguments(Path.COMPILED, "blank.isEmpty()", PARAMS),
+        arguments(Path.COMPILED, "user.name", PARAMS),
+        arguments(Path.COMPILED, "name == 'mary'", MARY),
+        arguments(Path.OGNL, "name == 'jo\\'hn'", PARAMS),
+        arguments(Path.OGNL, "name.substring(1)", PARAMS),
+        arguments(Path.OGNL, "name.toUpperCase()", PARAMS),
+        // boolean
+        arguments(Path.COMPILED, "true", PARAMS),
+        arguments(Path.COMPILED, "active", PARAMS),
+        arguments(Path.COMPILED, "active == true", PARAMS),
+        arguments(Path.COMPILED, "active != false", PARAMS),
+        arguments(Path.FALLBACK, "blank or active", PARAMS),
+        // 枚举
+        arguments(Path.COMPILED, "status == status", PARAMS),
+        arguments(Path.COMPILED, "status == other", PARAMS),
+        arguments(Path.COMPILED, "status != other", PARAMS),
+        arguments(Path.COMPILED, "user.manager.status == status", PARAMS),
+        arguments(Path.FALLBACK, "!status", PARAMS),
+        arguments(Path.FALLBACK, "status and active", PARAMS),
+        arguments(Path.OGNL, "status.name() == 'ACTIVE'", PARAMS),
+        // and, or, !
+        arguments(Path.COMPILED, "active and age > 18", PARAMS),
+        arguments(Path.COMPILED, "active && missing != null", PARAMS),
+        arguments(Path.COMPILED, "missing or age", PARAMS),
+        arguments(Path.COMPILED, "missing != null || name == 'john'", PARAMS),
+        arguments(Path.COMPILED, "missing and name", PARAMS),
+        arguments(Path.COMPILED, "!active", PARAMS),
+        arguments(Path.COMPILED, "not active", PARAMS),
+        arguments(Path.COMPILED, "!missing", PARAMS),
+        arguments(Path.COMPILED, "!(missing != null and name == '')", PARAMS),
+        arguments(Path.COMPILED, "age > 40 or (name != null and roles.size() == 2)", PARAMS),
+        arguments(Path.COMPILED, "roles != null and !roles.isEmpty()", PARAMS),
+        arguments(Path.FALLBACK, "name and active", PARAMS),
+        arguments(Path.FALLBACK, "!name", PARAMS),
+        arguments(Path.FALLBACK, "active and !blank", PARAMS),
+        // 拼接
+        arguments(Path.COMPILED, "name + '-' + age", PARAMS),
+        arguments(Path.COMPILED, "'%' + name + '%'", PARAMS),
+        arguments(Path.COMPILED, "user.name + '@' + user.manager.name", PARAMS),
+        arguments(Path.COMPILED, "(name + blank) == 'john'", PARAMS),
+        arguments(Path.FALLBACK, "name + missing", PARAMS),
+        arguments(Path.FALLBACK, "age + id", PARAMS),
+        arguments(Path.FALLBACK, "'n' + 1", PARAMS),
+        // 集合和map
+        arguments(Path.COMPILED, "roles.size()", PARAMS),
+        arguments(Path.FALLBACK, "roles.size", PARAMS),
+        arguments(Path.OGNL, "roles[0] == 'admin'", PARAMS),
+        arguments(Path.OGNL, "roles.contains('admin')", PARAMS),
+        arguments(Path.OGNL, "'admin' in roles", PARAMS),
+        // 其他不支持的语法
+        arguments(Path.OGNL, "active ? 1 : 2", PARAMS),
+        arguments(Path.OGNL, "@java.lang.Math@max(age, 1)", PARAMS),
+        arguments(Path.OGNL, "user instanceof java.util.Map", PARAMS));
+  }
+
+}
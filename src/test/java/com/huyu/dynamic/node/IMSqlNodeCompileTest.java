@@ -0,0 +1,119 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.huyu.dynamic.node;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.huyu.dynamic.context.IMContext;
+import com.huyu.dynamic.context.IMVariableTable;
+import com.huyu.dynamic.parse.IMParameterParser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.ibatis.session.Configuration;
+import org.junit.jupiter.api.Test;
+
+class IMSqlNodeCompileTest {
+
+  private final Configuration configuration = new Configuration();
+
+  @Test
+  void shouldCompileStaticTextIntoNewNode() {
+    IMStatisticSqlNode node = new IMStatisticSqlNode("select *\n   from users");
+
+    IMSqlNode compiled = node.compile();
+
+    assertNotSame(node, compiled);
+    assertSame(compiled, compiled.compile());
+    assertEquals("select * from users", render(compiled, null));
+    assertEquals("select * from users", render(node.compile(), null));
+
+    // 原来的节点没有被修改, 还可以继续追加
+    node.append(",roles");
+    assertEquals("select * from users,roles", render(node.compile(), null));
+    assertEquals("select * from users", render(compiled, null));
+    assertThrows(IllegalStateException.class, () -> ((IMStatisticSqlNode) compiled).append(",groups"));
+  }
+
+  @Test
+  void shouldCompileTextWithParametersIntoNewNode() {
+    IMTextSqlNode node = new IMTextSqlNode("select * from users where id = #{id}",
+        new IMParameterParser(configuration, Map.class));
+
+    IMSqlNode first = node.compile();
+    IMSqlNode second = node.compile();
+
+    assertNotSame(node, first);
+    assertNotSame(first, second);
+    assertSame(first, first.compile());
+    assertEquals("select * from users where id = ?", render(first, Collections.singletonMap("id", 1)));
+    assertEquals("select * from users where id = ?", render(second, Collections.singletonMap("id", 2)));
+    // 没有编译的节点不解析 #{}
+    assertEquals("select * from users where id = #{id}", render(node, Collections.singletonMap("id", 3)));
+  }
+
+  @Test
+  void shouldCompileTextWithoutParametersToStaticText() {
+    IMTextSqlNode node = new IMTextSqlNode("select * from users", new IMParameterParser(configuration, Map.class));
+
+    assertEquals(IMStatisticSqlNode.class, node.compile().getClass());
+    assertEquals(IMStatisticSqlNode.class, node.compile().getClass());
+  }
+
+  @Test
+  void shouldCompileConcurrently() throws Exception {
+    IMTextSqlNode node = new IMTextSqlNode("select * from users where id = #{id} and name = #{name}",
+        new IMParameterParser(configuration, Map.class));
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<List<Object>>> futures = new ArrayList<>();
+      for (int i = 0; i < 64; i++) {
+        final int id = i;
+        Callable<List<Object>> task = () -> {
+          Map<String, Object> parameter = Map.of("id", id, "name", "user" + id);
+          IMContext context = new IMContext(configuration, parameter, new IMVariableTable(), 64);
+          node.compile().apply(context);
+          List<Object> result = new ArrayList<>(context.getMappingValueList());
+          result.add(0, context.getText());
+          return result;
+        };
+        futures.add(executor.submit(task));
+      }
+      for (int i = 0; i < futures.size(); i++) {
+        assertEquals(List.of("select * from users where id = ? and name = ?", i, "user" + i), futures.get(i).get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private String render(IMSqlNode node, Map<String, Object> parameter) {
+    IMContext context = new IMContext(configuration, parameter, new IMVariableTable(), 64);
+    node.apply(context);
+    return context.getText();
+  }
+
+}
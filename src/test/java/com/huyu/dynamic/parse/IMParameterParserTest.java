@@ -0,0 +1,107 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.huyu.dynamic.parse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.huyu.dynamic.context.IMVariableTable;
+import com.huyu.dynamic.node.IMParameter;
+
+import java.util.Map;
+
+import org.apache.ibatis.builder.BuilderException;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.ParameterMode;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.type.IntegerTypeHandler;
+import org.apache.ibatis.type.JdbcType;
+import org.apache.ibatis.type.LongTypeHandler;
+import org.apache.ibatis.type.UnknownTypeHandler;
+import org.junit.jupiter.api.Test;
+
+class IMParameterParserTest {
+
+  private final Configuration configuration = new Configuration();
+
+  @Test
+  void shouldUseSimpleParameterTypeAsJavaType() {
+    IMParameter parameter = new IMParameterParser(configuration, Integer.class).parse("id");
+
+    assertEquals("id", parameter.getProperty());
+    assertEquals(Integer.class, parameter.getPrototype().getJavaType());
+    assertTrue(parameter.getPrototype().getTypeHandler() instanceof IntegerTypeHandler);
+  }
+
+  @Test
+  void shouldResolveTypeHandlerAtExecutionForOtherParameters() {
+    IMParameter parameter = new IMParameterParser(configuration, Map.class).parse("user.id");
+
+    assertEquals("user", parameter.getRootName());
+    assertEquals(Object.class, parameter.getPrototype().getJavaType());
+    assertTrue(parameter.getPrototype().getTypeHandler() instanceof UnknownTypeHandler);
+  }
+
+  @Test
+  void shouldParseAttributes() {
+    ParameterMapping prototype = new IMParameterParser(configuration, Map.class)
+        .parse("id, javaType=long, jdbcType=BIGINT, mode=IN, numericScale=2").getPrototype();
+
+    assertEquals(Long.class, prototype.getJavaType());
+    assertEquals(JdbcType.BIGINT, prototype.getJdbcType());
+    assertEquals(ParameterMode.IN, prototype.getMode());
+    assertEquals(2, prototype.getNumericScale());
+    assertTrue(prototype.getTypeHandler() instanceof LongTypeHandler);
+  }
+
+  @Test
+  void shouldReuseSlotMappings() {
+    IMParameter parameter = new IMParameterParser(configuration, Map.class).parse("id, jdbcType=INTEGER");
+
+    ParameterMapping mapping = parameter.slotMapping(configuration, 3);
+
+    assertEquals("__im_3", mapping.getProperty());
+    assertEquals(JdbcType.INTEGER, mapping.getJdbcType());
+    assertSame(mapping, parameter.slotMapping(configuration, 3));
+    assertEquals("__im_0", parameter.slotMapping(configuration, 0).getProperty());
+    assertNull(parameter.getPrototype().getNumericScale());
+  }
+
+  @Test
+  void shouldResolveVariableSlot() {
+    IMVariableTable variableTable = new IMVariableTable();
+    variableTable.register("index");
+    variableTable.register("item");
+    IMParameterParser parser = new IMParameterParser(configuration, Map.class, variableTable);
+
+    assertEquals(1, parser.parse("item.id").getSlot());
+    assertEquals(-1, parser.parse("name").getSlot());
+  }
+
+  @Test
+  void shouldRejectInvalidAttribute() {
+    assertThrows(BuilderException.class, () -> new IMParameterParser(configuration, Map.class).parse("id, size=1"));
+  }
+
+  @Test
+  void shouldRejectExpression() {
+    assertThrows(BuilderException.class, () -> new IMParameterParser(configuration, Map.class).parse("(id + 1)"));
+  }
+
+}
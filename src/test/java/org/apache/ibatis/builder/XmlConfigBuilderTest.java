@@ -40,6 +40,9 @@ import java.util.Properties;
 import org.apache.ibatis.builder.mapper.CustomMapper;
 import org.apache.ibatis.builder.typehandler.CustomIntegerTypeHandler;
 import org.apache.ibatis.builder.xml.XMLConfigBuilder;
+import org.apache.ibatis.cache.codec.CompactCodec;
+import org.apache.ibatis.cache.codec.JavaSerializationCodec;
+import org.apache.ibatis.cache.weigher.RetainedSizeWeigher;
 import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
 import org.apache.ibatis.domain.blog.Author;
 import org.apache.ibatis.domain.blog.Blog;
@@ -53,10 +56,14 @@ import org.apache.ibatis.io.Resources;
 import org.apache.ibatis.logging.slf4j.Slf4jImpl;
 import org.apache.ibatis.mapping.Environment;
 import org.apache.ibatis.mapping.ResultSetType;
+import org.apache.ibatis.reflection.DefaultReflectorFactory;
+import org.apache.ibatis.reflection.invoker.LambdaInvokerFactory;
+import org.apache.ibatis.reflection.invoker.ReflectionInvokerFactory;
 import org.apache.ibatis.scripting.defaults.RawLanguageDriver;
 import org.apache.ibatis.scripting.xmltags.XMLLanguageDriver;
 import org.apache.ibatis.session.AutoMappingBehavior;
 import org.apache.ibatis.session.AutoMappingUnknownColumnBehavior;
+import org.apache.ibatis.session.CacheInvalidation;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ExecutorType;
 import org.apache.ibatis.session.LocalCacheScope;
@@ -84,6 +91,10 @@ class XmlConfigBuilderTest {
       assertThat(config.getAutoMappingUnknownColumnBehavior()).isEqualTo(AutoMappingUnknownColumnBehavior.NONE);
       assertThat(config.isCacheEnabled()).isTrue();
       assertThat(config.getProxyFactory()).isInstanceOf(JavassistProxyFactory.class);
+      assertThat(config.getCacheValueCodec()).isInstanceOf(JavaSerializationCodec.class);
+      assertThat(config.getCacheWeigher()).isInstanceOf(RetainedSizeWeigher.class);
+      assertThat(config.getInvokerFactory()).isInstanceOf(ReflectionInvokerFactory.class);
+      assertThat(config.getCacheInvalidation()).isEqualTo(CacheInvalidation.NAMESPACE);
       assertThat(config.isLazyLoadingEnabled()).isFalse();
       assertThat(config.isAggressiveLazyLoading()).isFalse();
       assertThat(config.isMultipleResultSetsEnabled()).isTrue();
@@ -92,6 +103,7 @@ class XmlConfigBuilderTest {
       assertThat(config.getDefaultExecutorType()).isEqualTo(ExecutorType.SIMPLE);
       assertNull(config.getDefaultStatementTimeout());
       assertNull(config.getDefaultFetchSize());
+      assertThat(config.getCursorPrefetchSize()).isZero();
       assertNull(config.getDefaultResultSetType());
       assertThat(config.isMapUnderscoreToCamelCase()).isFalse();
       assertThat(config.isSafeRowBoundsEnabled()).isFalse();
@@ -191,6 +203,11 @@ class XmlConfigBuilderTest {
       assertThat(config.getAutoMappingUnknownColumnBehavior()).isEqualTo(AutoMappingUnknownColumnBehavior.WARNING);
       assertThat(config.isCacheEnabled()).isFalse();
       assertThat(config.getProxyFactory()).isInstanceOf(CglibProxyFactory.class);
+      assertThat(config.getCacheValueCodec()).isInstanceOf(CompactCodec.class);
+      CompactCodec codec = (CompactCodec) config.getCacheValueCodec();
+      assertThat(codec.getReflectorFactory()).isSameAs(config.getReflectorFactory());
+      assertThat(codec.getObjectFactory()).isSameAs(config.getObjectFactory());
+      assertThat(config.getCacheInvalidation()).isEqualTo(CacheInvalidation.TABLE);
       assertThat(config.isLazyLoadingEnabled()).isTrue();
       assertThat(config.isAggressiveLazyLoading()).isTrue();
       assertThat(config.isMultipleResultSetsEnabled()).isFalse();
@@ -199,6 +216,7 @@ class XmlConfigBuilderTest {
       assertThat(config.getDefaultExecutorType()).isEqualTo(ExecutorType.BATCH);
       assertThat(config.getDefaultStatementTimeout()).isEqualTo(10);
       assertThat(config.getDefaultFetchSize()).isEqualTo(100);
+      assertThat(config.getCursorPrefetchSize()).isEqualTo(64);
       assertThat(config.getDefaultResultSetType()).isEqualTo(ResultSetType.SCROLL_INSENSITIVE);
       assertThat(config.isMapUnderscoreToCamelCase()).isTrue();
       assertThat(config.isSafeRowBoundsEnabled()).isTrue();
@@ -335,6 +353,49 @@ class XmlConfigBuilderTest {
         "The properties element cannot specify both a URL and a resource based property file reference.  Please specify one or the other.");
   }
 
+  @Test
+  void shouldUseInvokerFactoryFromSettings() throws Exception {
+    // @formatter:off
+    final String MAPPER_CONFIG = "<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n"
+        + "<!DOCTYPE configuration PUBLIC \"-//mybatis.org//DTD Config 3.0//EN\" \"https://mybatis.org/dtd/mybatis-3-config.dtd\">\n"
+        + "<configuration>\n"
+        + "  <settings>\n"
+        + "    <setting name=\"invokerFactory\" value=\"LAMBDA\"/>\n"
+        + "    <setting name=\"cacheValueCodec\" value=\"COMPACT\"/>\n"
+        + "  </settings>\n"
+        + "</configuration>\n";
+    // @formatter:on
+
+    XMLConfigBuilder builder = new XMLConfigBuilder(new StringReader(MAPPER_CONFIG));
+    Configuration config = builder.parse();
+    assertThat(config.getInvokerFactory()).isInstanceOf(LambdaInvokerFactory.class);
+    assertThat(config.getReflectorFactory()).isInstanceOf(DefaultReflectorFactory.class);
+    Author author = new Author(1);
+    config.newMetaObject(author).setValue("username", "jim");
+    assertEquals("jim", config.newMetaObject(author).getValue("username"));
+    CompactCodec codec = (CompactCodec) config.getCacheValueCodec();
+    assertThat(codec.getReflectorFactory()).isSameAs(config.getReflectorFactory());
+  }
+
+  @Test
+  void invokerFactoryWithCustomReflectorFactory() {
+    // @formatter:off
+    final String MAPPER_CONFIG = "<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n"
+        + "<!DOCTYPE configuration PUBLIC \"-//mybatis.org//DTD Config 3.0//EN\" \"https://mybatis.org/dtd/mybatis-3-config.dtd\">\n"
+        + "<configuration>\n"
+        + "  <settings>\n"
+        + "    <setting name=\"invokerFactory\" value=\"LAMBDA\"/>\n"
+        + "  </settings>\n"
+        + "  <reflectorFactory type=\"org.apache.ibatis.builder.CustomReflectorFactory\"/>\n"
+        + "</configuration>\n";
+    // @formatter:on
+
+    XMLConfigBuilder builder = new XMLConfigBuilder(new StringReader(MAPPER_CONFIG));
+    when(builder::parse);
+    then(caughtException()).isInstanceOf(BuilderException.class)
+        .hasMessageContaining("The setting invokerFactory cannot be used with the reflectorFactory");
+  }
+
   static class MySqlProvider {
     @SuppressWarnings("unused")
     public static String provideSql() {
@@ -361,6 +361,38 @@ class DynamicSqlSourceTest extends BaseDataTest {
     Assertions.assertEquals("id=", sql);
   }
 
+  @Test
+  void shouldReuseCachedShapeOnlyForSameBranches() {
+    final MixedSqlNode sqlNode = mixedContents(new TextSqlNode("SELECT * FROM ${table}"),
+        new WhereSqlNode(new Configuration(), mixedContents(
+            new IfSqlNode(mixedContents(new TextSqlNode("AND name = #{name}")), "name != null"),
+            new ForEachSqlNode(new Configuration(), mixedContents(new TextSqlNode("#{item}")), "ids", null, "item",
+                " AND id IN (", ")", ","))));
+    final DynamicSqlSource source = new DynamicSqlSource(new Configuration(), sqlNode, false, true);
+
+    Map<String, Object> param = new HashMap<>();
+    param.put("table", "BLOG");
+    param.put("name", "a");
+    param.put("ids", Arrays.asList(1, 2));
+    BoundSql boundSql = source.getBoundSql(param);
+    assertEquals("SELECT * FROM BLOG WHERE  name = ? AND id IN (?,?)", boundSql.getSql());
+
+    param.put("ids", Arrays.asList(3, 4));
+    boundSql = source.getBoundSql(param);
+    assertEquals("SELECT * FROM BLOG WHERE  name = ? AND id IN (?,?)", boundSql.getSql());
+    assertEquals(3, boundSql.getAdditionalParameter("__frch_item_0"));
+
+    param.put("name", null);
+    param.put("ids", Arrays.asList(5, 6, 7));
+    boundSql = source.getBoundSql(param);
+    assertEquals("SELECT * FROM BLOG WHERE  id IN (?,?,?)", boundSql.getSql());
+
+    param.put("table", "AUTHOR");
+    boundSql = source.getBoundSql(param);
+    assertEquals("SELECT * FROM AUTHOR WHERE  id IN (?,?,?)", boundSql.getSql());
+    assertEquals(7, boundSql.getAdditionalParameter("__frch_item_2"));
+  }
+
   public static class Bean {
     public String id;
 
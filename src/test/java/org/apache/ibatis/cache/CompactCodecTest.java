@@ -0,0 +1,239 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.apache.ibatis.cache.codec.CompactCodec;
+import org.apache.ibatis.cache.codec.JavaSerializationCodec;
+import org.apache.ibatis.cache.decorators.SerializedCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.mapping.ResultSetType;
+import org.junit.jupiter.api.Test;
+
+class CompactCodecTest {
+
+  @Test
+  void shouldCopyBeansWithoutSerializable() {
+    CompactCodec codec = new CompactCodec();
+    Author author = new Author();
+    author.setId(1);
+    author.setName("jim");
+    author.setType(ResultSetType.FORWARD_ONLY);
+    Post post = new Post();
+    post.setAuthor(author);
+    post.setTitle("title");
+    author.getPosts().add(post);
+
+    Author copy = (Author) codec.decode(codec.encode(author));
+    assertNotSame(author, copy);
+    assertEquals(1, copy.getId());
+    assertEquals("jim", copy.getName());
+    assertEquals(ResultSetType.FORWARD_ONLY, copy.getType());
+    assertEquals(1, copy.getPosts().size());
+    Post postCopy = copy.getPosts().get(0);
+    assertNotSame(post, postCopy);
+    assertEquals("title", postCopy.getTitle());
+    // 循环引用指向复制出来的对象
+    assertSame(copy, postCopy.getAuthor());
+  }
+
+  @Test
+  void shouldCopyValueTypes() {
+    CompactCodec codec = new CompactCodec();
+    List<Object> values = new ArrayList<>();
+    values.add(null);
+    values.add("text 中文");
+    values.add(1);
+    values.add(2L);
+    values.add((short) 3);
+    values.add((byte) 4);
+    values.add(true);
+    values.add('c');
+    values.add(1.5f);
+    values.add(2.5d);
+    values.add(new BigDecimal("-123.4500"));
+    values.add(new BigInteger("123456789012345678901234567890"));
+    values.add(new Date(1000L));
+    values.add(new java.sql.Date(2000L));
+    values.add(new java.sql.Time(3000L));
+    Timestamp timestamp = new Timestamp(4000L);
+    timestamp.setNanos(123456789);
+    values.add(timestamp);
+    values.add(LocalDate.of(2023, 5, 6));
+    values.add(LocalTime.of(1, 2, 3, 4));
+    values.add(LocalDateTime.of(2023, 5, 6, 7, 8, 9, 10));
+    values.add(Instant.ofEpochSecond(5, 6));
+    Map<String, Object> map = new LinkedHashMap<>();
+    map.put("b", 2);
+    map.put("a", new LinkedHashSet<>(List.of("x", "y")));
+    values.add(map);
+
+    @SuppressWarnings("unchecked")
+    List<Object> copy = (List<Object>) codec.decode(codec.encode(values));
+    assertEquals(values, copy);
+    for (int i = 0; i < values.size(); i++) {
+      if (values.get(i) != null) {
+        assertEquals(values.get(i).getClass(), copy.get(i).getClass());
+      }
+    }
+    assertNotSame(values.get(12), copy.get(12));
+    assertArrayEquals(new byte[] { 1, 2 }, (byte[]) codec.decode(codec.encode(new byte[] { 1, 2 })));
+  }
+
+  @Test
+  void shouldFallBackToSerialization() {
+    CompactCodec codec = new CompactCodec();
+    SerializableValue value = new SerializableValue("a");
+    List<SerializableValue> values = new ArrayList<>(List.of(value, value));
+    @SuppressWarnings("unchecked")
+    List<SerializableValue> copy = (List<SerializableValue>) codec.decode(codec.encode(values));
+    assertEquals("a", copy.get(0).value);
+    assertNotSame(value, copy.get(0));
+    assertSame(copy.get(0), copy.get(1));
+    assertThrows(CacheException.class, () -> codec.encode(Optional.of("a")));
+  }
+
+  @Test
+  void shouldCompressLargeValues() {
+    CompactCodec codec = new CompactCodec();
+    List<String> values = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      values.add("value");
+    }
+    int raw = codec.encode(values).length;
+    codec.setCompressionThreshold(100);
+    byte[] compressed = codec.encode(values);
+    assertTrue(compressed.length < raw / 4);
+    assertEquals(values, codec.decode(compressed));
+    assertEquals("small", codec.decode(codec.encode("small")));
+  }
+
+  @Test
+  void shouldBeSmallerThanSerialization() {
+    Author author = new Author();
+    author.setId(1);
+    author.setName("jim");
+    int serialized = new JavaSerializationCodec().encode(new SerializableValue("jim")).length;
+    assertTrue(new CompactCodec().encode(author).length < serialized);
+  }
+
+  @Test
+  void shouldCopyValuesOfSerializedCache() {
+    SerializedCache cache = new SerializedCache(new PerpetualCache("default"), new CompactCodec());
+    Author author = new Author();
+    author.setName("jim");
+    cache.putObject(0, author);
+    cache.putObject(1, null);
+    Author copy = assertInstanceOf(Author.class, cache.getObject(0));
+    assertNotSame(author, copy);
+    assertEquals("jim", copy.getName());
+    assertNull(cache.getObject(1));
+  }
+
+  public static class Author {
+    private int id;
+    private String name;
+    private ResultSetType type;
+    private List<Post> posts = new ArrayList<>();
+
+    public int getId() {
+      return id;
+    }
+
+    public void setId(int id) {
+      this.id = id;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public void setName(String name) {
+      this.name = name;
+    }
+
+    public ResultSetType getType() {
+      return type;
+    }
+
+    public void setType(ResultSetType type) {
+      this.type = type;
+    }
+
+    public List<Post> getPosts() {
+      return posts;
+    }
+
+    public void setPosts(List<Post> posts) {
+      this.posts = posts;
+    }
+  }
+
+  public static class Post {
+    private String title;
+    private Author author;
+
+    public String getTitle() {
+      return title;
+    }
+
+    public void setTitle(String title) {
+      this.title = title;
+    }
+
+    public Author getAuthor() {
+      return author;
+    }
+
+    public void setAuthor(Author author) {
+      this.author = author;
+    }
+  }
+
+  static class SerializableValue implements Serializable {
+    private static final long serialVersionUID = 1L;
+    final String value;
+
+    SerializableValue(String value) {
+      this.value = value;
+    }
+  }
+
+}
@@ -0,0 +1,131 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+
+import org.apache.ibatis.cache.decorators.ExpiringCache;
+import org.apache.ibatis.cache.decorators.LoadingCache;
+import org.apache.ibatis.cache.decorators.LruCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.junit.jupiter.api.Test;
+
+class ExpiringCacheTest {
+
+  @Test
+  void shouldExpireEachEntryOnItsOwn() throws Exception {
+    ExpiringCache cache = new ExpiringCache(new PerpetualCache("default"));
+    cache.setTimeToLive(60_000);
+    cache.putObject(key("short", 50L), "s");
+    cache.putObject(key("default", null), "d");
+    cache.putObject(key("forever", 0L), "f");
+    assertEquals("s", cache.getObject(key("short", null)));
+    Thread.sleep(100);
+    assertNull(cache.getObject(key("short", null)));
+    assertEquals("d", cache.getObject(key("default", null)));
+    assertEquals("f", cache.getObject(key("forever", null)));
+  }
+
+  @Test
+  void shouldRemoveExpiredEntriesWithoutReadingThem() throws Exception {
+    PerpetualCache delegate = new PerpetualCache("default");
+    ExpiringCache cache = new ExpiringCache(delegate);
+    cache.setTimeToLive(30);
+    for (int i = 0; i < 100; i++) {
+      cache.putObject(i, i);
+    }
+    assertEquals(100, delegate.getSize());
+    Thread.sleep(100);
+    cache.putObject("other", "o");
+    assertEquals(1, delegate.getSize());
+  }
+
+  @Test
+  void shouldCascadeFromHigherLevels() throws Exception {
+    PerpetualCache delegate = new PerpetualCache("default");
+    ExpiringCache cache = new ExpiringCache(delegate);
+    cache.setTimeToLive(1200);
+    cache.putObject("key", "value");
+    Thread.sleep(600);
+    assertEquals("value", cache.getObject("key"));
+    assertEquals(1, cache.getSize());
+    Thread.sleep(700);
+    assertEquals(0, cache.getSize());
+  }
+
+  @Test
+  void shouldExpireKeysWithTimeToLiveOnlyWithoutDefault() throws Exception {
+    ExpiringCache cache = new ExpiringCache(new PerpetualCache("default"));
+    cache.putObject(key("short", 50L), "s");
+    cache.putObject(key("default", null), "d");
+    Thread.sleep(100);
+    assertNull(cache.getObject(key("short", null)));
+    assertEquals("d", cache.getObject(key("default", null)));
+    assertEquals(1, cache.getSize());
+  }
+
+  @Test
+  void shouldForgetEntriesEvictedBelowTheDecorator() throws Exception {
+    ExpiringCache expiringCache = new ExpiringCache(new PerpetualCache("default"));
+    expiringCache.setTimeToLive(60_000);
+    LruCache cache = new LruCache(expiringCache);
+    cache.setSize(10);
+    for (int i = 0; i < 1000; i++) {
+      cache.putObject(i, i);
+    }
+    assertEquals(10, cache.getSize());
+    Field field = ExpiringCache.class.getDeclaredField("nodes");
+    field.setAccessible(true);
+    assertEquals(10, ((Map<?, ?>) field.get(expiringCache)).size());
+  }
+
+  @Test
+  void shouldRestartTimeToLiveWhenPutAgain() throws Exception {
+    ExpiringCache cache = new ExpiringCache(new PerpetualCache("default"));
+    cache.setTimeToLive(100);
+    cache.putObject("key", "old");
+    Thread.sleep(60);
+    cache.putObject("key", "new");
+    Thread.sleep(60);
+    assertEquals("new", cache.getObject("key"));
+    cache.removeObject("key");
+    assertNull(cache.getObject("key"));
+  }
+
+  @Test
+  void shouldRefreshLoadingCacheByKeyTimeToLive() throws Exception {
+    LoadingCache cache = new LoadingCache(new PerpetualCache("default"));
+    cache.setExpireAfter(60_000);
+    cache.setRefreshAfter(30_000);
+    CacheKey key = key("short", 100L);
+    cache.putObject(key, "old");
+    Thread.sleep(60);
+    int[] refreshes = new int[1];
+    assertEquals("old", cache.getObject(key, null, () -> "sync", Runnable::run, () -> () -> refreshes[0]++));
+    assertEquals(1, refreshes[0]);
+  }
+
+  private static CacheKey key(String name, Long timeToLive) {
+    CacheKey key = new CacheKey(new Object[] { name });
+    key.setTimeToLive(timeToLive);
+    return key;
+  }
+
+}
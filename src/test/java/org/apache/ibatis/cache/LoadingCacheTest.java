@@ -0,0 +1,163 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ibatis.cache.codec.CompactCodec;
+import org.apache.ibatis.cache.decorators.LoadingCache;
+import org.apache.ibatis.cache.decorators.SerializedCache;
+import org.apache.ibatis.cache.decorators.TableInvalidatingCache;
+import org.apache.ibatis.cache.decorators.TransactionalCache;
+import org.apache.ibatis.cache.impl.ConcurrentPerpetualCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.junit.jupiter.api.Test;
+
+class LoadingCacheTest {
+
+  @Test
+  void shouldLoadOnceForConcurrentCallers() throws Exception {
+    LoadingCache cache = new LoadingCache(new ConcurrentPerpetualCache("default"));
+    AtomicInteger loads = new AtomicInteger();
+    CountDownLatch loading = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Object>> results = new ArrayList<>();
+      results.add(executor.submit(() -> cache.getObject("key", null, () -> {
+        loading.countDown();
+        release.await();
+        loads.incrementAndGet();
+        return "value";
+      }, Runnable::run, () -> () -> {
+      })));
+      assertTrue(loading.await(5, TimeUnit.SECONDS));
+      for (int i = 0; i < 3; i++) {
+        results.add(executor.submit(() -> cache.getObject("key", null, () -> {
+          loads.incrementAndGet();
+          return "other";
+        }, Runnable::run, () -> () -> {
+        })));
+      }
+      release.countDown();
+      for (Future<Object> result : results) {
+        assertEquals("value", result.get(5, TimeUnit.SECONDS));
+      }
+      assertEquals(1, loads.get());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void shouldCopyLoadedValueForWaitingCallers() {
+    LoadingCache cache = new LoadingCache(new SerializedCache(new PerpetualCache("default"), new CompactCodec()));
+    List<String> loaded = new ArrayList<>(List.of("a"));
+    assertEquals(loaded, cache.getObject("key", null, () -> loaded, Runnable::run, () -> () -> {
+    }));
+    loaded.add("b");
+    assertEquals(List.of("a"), cache.getObject("key"));
+  }
+
+  @Test
+  void shouldNotCacheFailedLoad() {
+    LoadingCache cache = new LoadingCache(new PerpetualCache("default"));
+    assertThrows(IllegalStateException.class, () -> cache.getObject("key", null, () -> {
+      throw new IllegalStateException();
+    }, Runnable::run, () -> () -> {
+    }));
+    assertEquals("value", cache.getObject("key", null, () -> "value", Runnable::run, () -> () -> {
+    }));
+  }
+
+  @Test
+  void shouldExpireEntries() throws Exception {
+    LoadingCache cache = new LoadingCache(new PerpetualCache("default"));
+    cache.setExpireAfter(50);
+    cache.putObject("key", "old");
+    assertEquals("old", cache.getObject("key"));
+    Thread.sleep(100);
+    assertNull(cache.getObject("key"));
+    assertEquals("new", cache.getObject("key", null, () -> "new", Runnable::run, () -> () -> {
+    }));
+  }
+
+  @Test
+  void shouldRefreshInBackground() throws Exception {
+    LoadingCache cache = new LoadingCache(new PerpetualCache("default"));
+    cache.setExpireAfter(60_000);
+    cache.setRefreshAfter(50);
+    cache.putObject("key", "old");
+    Thread.sleep(100);
+    List<Runnable> tasks = new ArrayList<>();
+    AtomicInteger refreshes = new AtomicInteger();
+    Runnable refresher = () -> {
+      refreshes.incrementAndGet();
+      // 刷新的线程读取的时候当作没有命中
+      assertEquals("new", cache.getObject("key", null, () -> "new", Runnable::run, () -> () -> {
+      }));
+    };
+    assertEquals("old", cache.getObject("key", null, () -> "sync", tasks::add, () -> refresher));
+    assertEquals("old", cache.getObject("key", null, () -> "sync", tasks::add, () -> refresher));
+    assertEquals(1, tasks.size());
+    tasks.get(0).run();
+    assertEquals(1, refreshes.get());
+    assertEquals("new", cache.getObject("key", null, () -> "sync", tasks::add, () -> refresher));
+    assertEquals(1, tasks.size());
+  }
+
+  @Test
+  void shouldDiscardValueLoadedDuringClear() {
+    LoadingCache cache = new LoadingCache(new PerpetualCache("default"));
+    assertEquals("stale", cache.getObject("key", null, () -> {
+      cache.clear();
+      return "stale";
+    }, Runnable::run, () -> () -> {
+    }));
+    assertNull(cache.getObject("key"));
+  }
+
+  @Test
+  void shouldInvalidateByTable() {
+    LoadingCache cache = new LoadingCache(new TableInvalidatingCache(new PerpetualCache("default")));
+    cache.getObject("authors", Set.of("author"), () -> "a", Runnable::run, () -> () -> {
+    });
+    cache.getObject("blogs", Set.of("blog"), () -> "b", Runnable::run, () -> () -> {
+    });
+    TransactionalCache tx = new TransactionalCache(cache);
+    tx.invalidate(Set.of("blog"));
+    assertTrue(tx.isModified(Set.of("blog")));
+    assertFalse(tx.isModified(Set.of("author")));
+    tx.commit();
+    assertEquals("a", cache.getObject("authors"));
+    assertNull(cache.getObject("blogs"));
+  }
+
+}
@@ -0,0 +1,142 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.ibatis.cache.impl.OffHeapCache;
+import org.junit.jupiter.api.Test;
+
+class OffHeapCacheTest {
+
+  @Test
+  void shouldReturnCopies() {
+    OffHeapCache cache = new OffHeapCache("default");
+    ArrayList<String> value = new ArrayList<>(List.of("a", "b"));
+    cache.putObject(0, value);
+    Object first = cache.getObject(0);
+    assertEquals(value, first);
+    assertNotSame(value, first);
+    assertNotSame(first, cache.getObject(0));
+  }
+
+  @Test
+  void shouldRejectNonSerializableValues() {
+    OffHeapCache cache = new OffHeapCache("default");
+    assertThrows(CacheException.class, () -> cache.putObject(0, new Object()));
+  }
+
+  @Test
+  void shouldKeepNullValues() {
+    OffHeapCache cache = new OffHeapCache("default");
+    cache.putObject(0, null);
+    assertEquals(1, cache.getSize());
+    assertNull(cache.getObject(0));
+    assertNull(cache.removeObject(0));
+    assertEquals(0, cache.getSize());
+  }
+
+  @Test
+  void shouldOverwriteRemoveAndClear() {
+    OffHeapCache cache = new OffHeapCache("default");
+    cache.putObject(0, "a");
+    cache.putObject(0, "b");
+    cache.putObject(1, "c");
+    assertEquals(2, cache.getSize());
+    assertEquals("b", cache.getObject(0));
+    assertEquals("b", cache.removeObject(0));
+    assertNull(cache.getObject(0));
+    assertEquals(1, cache.getSize());
+    cache.clear();
+    assertNull(cache.getObject(1));
+    assertEquals(0, cache.getSize());
+    assertEquals(0L, cache.getUsedBytes());
+  }
+
+  @Test
+  void shouldEvictOldestEntriesBeyondByteBudget() {
+    OffHeapCache cache = new OffHeapCache("default");
+    cache.setSlabSize(1024);
+    cache.setMaxBytes(4096);
+    byte[] value = new byte[200];
+    for (int i = 0; i < 1000; i++) {
+      cache.putObject(i, value);
+      assertTrue(cache.getUsedBytes() <= 4096);
+    }
+    assertTrue(cache.getSize() < 20);
+    assertNull(cache.getObject(0));
+    assertNotNull(cache.getObject(999));
+    for (int i = 1000 - cache.getSize(); i < 1000; i++) {
+      assertNotNull(cache.getObject(i));
+    }
+  }
+
+  @Test
+  void shouldNotCacheEntriesLargerThanSlab() {
+    OffHeapCache cache = new OffHeapCache("default");
+    cache.setSlabSize(1024);
+    cache.setMaxBytes(4096);
+    cache.putObject(0, "small");
+    cache.putObject(0, new byte[2048]);
+    assertNull(cache.getObject(0));
+    assertEquals(0, cache.getSize());
+  }
+
+  @Test
+  void shouldStayConsistentUnderConcurrentAccess() throws Exception {
+    OffHeapCache cache = new OffHeapCache("default");
+    cache.setSlabSize(4096);
+    cache.setMaxBytes(16384);
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 8; t++) {
+      threads.add(new Thread(() -> {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < 10000; i++) {
+          int key = random.nextInt(500);
+          if (random.nextInt(4) == 0) {
+            cache.putObject(key, "value" + key);
+          } else {
+            Object value = cache.getObject(key);
+            if (value != null) {
+              assertEquals("value" + key, value);
+            }
+          }
+        }
+      }));
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertTrue(cache.getUsedBytes() <= 16384);
+    for (int key = 0; key < 500; key++) {
+      Object value = cache.getObject(key);
+      assertTrue(value == null || value.equals("value" + key));
+    }
+  }
+
+}
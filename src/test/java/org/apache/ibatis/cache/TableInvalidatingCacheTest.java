@@ -0,0 +1,108 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.Set;
+
+import org.apache.ibatis.cache.codec.CompactCodec;
+import org.apache.ibatis.cache.codec.JavaSerializationCodec;
+import org.apache.ibatis.cache.decorators.BlockingCache;
+import org.apache.ibatis.cache.decorators.SerializedCache;
+import org.apache.ibatis.cache.decorators.TableInvalidatingCache;
+import org.apache.ibatis.cache.decorators.TransactionalCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.junit.jupiter.api.Test;
+
+class TableInvalidatingCacheTest {
+
+  @Test
+  void shouldInvalidateOnlyEntriesOfModifiedTables() {
+    TableInvalidatingCache cache = new TableInvalidatingCache(new PerpetualCache("default"));
+    cache.putObject("authors", "a", Set.of("author"));
+    cache.putObject("posts", "p", Set.of("post", "author"));
+    cache.putObject("blogs", "b", Set.of("blog"));
+    cache.putObject("unknown", "u");
+    cache.invalidate(Set.of("post"));
+    assertEquals("a", cache.getObject("authors"));
+    assertNull(cache.getObject("posts"));
+    assertEquals("b", cache.getObject("blogs"));
+    assertNull(cache.getObject("unknown"));
+    cache.putObject("posts", "p2", Set.of("post"));
+    assertEquals("p2", cache.getObject("posts"));
+  }
+
+  @Test
+  void shouldInvalidateOnCommit() {
+    TableInvalidatingCache cache = new TableInvalidatingCache(new PerpetualCache("default"));
+    cache.putObject("authors", "a", Set.of("author"));
+    cache.putObject("blogs", "b", Set.of("blog"));
+
+    TransactionalCache tx = new TransactionalCache(cache);
+    tx.putObject("pending", "x", Set.of("blog"));
+    tx.invalidate(Set.of("blog"));
+    // 本事务修改过的表不再使用缓存
+    assertNull(tx.getObject("blogs", Set.of("blog")));
+    assertEquals("a", tx.getObject("authors", Set.of("author")));
+    assertEquals("b", cache.getObject("blogs"));
+    tx.commit();
+
+    assertNull(cache.getObject("blogs"));
+    assertNull(cache.getObject("pending"));
+    assertEquals("a", cache.getObject("authors"));
+  }
+
+  @Test
+  void shouldClearWithoutTableInvalidation() {
+    PerpetualCache cache = new PerpetualCache("default");
+    cache.putObject("authors", "a");
+    TransactionalCache tx = new TransactionalCache(cache);
+    tx.invalidate(Set.of("blog"));
+    tx.commit();
+    assertEquals(0, cache.getSize());
+  }
+
+  @Test
+  void shouldKeepBlockingLockOfStaleEntry() {
+    BlockingCache blocking = new BlockingCache(new PerpetualCache("default"));
+    blocking.setTimeout(1000);
+    TableInvalidatingCache cache = new TableInvalidatingCache(blocking);
+    assertNull(cache.getObject("authors"));
+    cache.putObject("authors", "a", Set.of("author"));
+    cache.invalidate(Set.of("author"));
+
+    TransactionalCache tx = new TransactionalCache(cache);
+    assertNull(tx.getObject("authors", Set.of("author")));
+    tx.putObject("authors", "a2", Set.of("author"));
+    tx.commit();
+    assertEquals("a2", cache.getObject("authors"));
+  }
+
+  @Test
+  void shouldCopyEntriesWithAnyCodec() {
+    for (CacheValueCodec codec : new CacheValueCodec[] { new CompactCodec(), new JavaSerializationCodec() }) {
+      TableInvalidatingCache cache = new TableInvalidatingCache(
+          new SerializedCache(new PerpetualCache("default"), codec));
+      cache.putObject("authors", "a", Set.of("author"));
+      assertEquals("a", cache.getObject("authors"));
+      cache.invalidate(Set.of("author"));
+      assertNull(cache.getObject("authors"));
+    }
+  }
+
+}
@@ -0,0 +1,155 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.ibatis.cache.decorators.WeightedLruCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.cache.weigher.RetainedSizeWeigher;
+import org.apache.ibatis.domain.blog.Author;
+import org.apache.ibatis.domain.blog.Section;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.junit.jupiter.api.Test;
+
+class WeightedLruCacheTest {
+
+  private static final CacheWeigher LENGTH = (key, value) -> value == null ? 0 : ((String) value).length();
+
+  @Test
+  void shouldNotGrowBeyondMaximumWeight() {
+    WeightedLruCache cache = new WeightedLruCache(new PerpetualCache("default"));
+    cache.setWeigher(LENGTH);
+    cache.setMaxWeight(100);
+    for (int i = 0; i < 10; i++) {
+      cache.putObject(i, "x".repeat(20));
+    }
+    assertEquals(100, cache.getWeight());
+    assertEquals(5, cache.getSize());
+    assertNull(cache.getObject(4));
+    assertNotNull(cache.getObject(5));
+    assertNotNull(cache.getObject(9));
+  }
+
+  @Test
+  void shouldUpdateWeightWhenItemsAreReplacedOrRemoved() {
+    WeightedLruCache cache = new WeightedLruCache(new PerpetualCache("default"));
+    cache.setWeigher(LENGTH);
+    cache.putObject(0, "abc");
+    cache.putObject(1, "de");
+    assertEquals(5, cache.getWeight());
+    cache.putObject(0, "a");
+    assertEquals(3, cache.getWeight());
+    cache.removeObject(1);
+    assertEquals(1, cache.getWeight());
+    cache.clear();
+    assertEquals(0, cache.getWeight());
+    assertEquals(0, cache.getSize());
+  }
+
+  @Test
+  void shouldNotKeepItemsHeavierThanMaximumWeight() {
+    WeightedLruCache cache = new WeightedLruCache(new PerpetualCache("default"));
+    cache.setWeigher(LENGTH);
+    cache.setMaxWeight(10);
+    cache.putObject(0, "abc");
+    cache.putObject(1, "x".repeat(11));
+    assertNull(cache.getObject(1));
+    assertEquals(0, cache.getWeight());
+  }
+
+  @Test
+  void shouldExposeWeightThroughStandardDecorators() {
+    Properties properties = new Properties();
+    properties.setProperty("maxWeight", "25");
+    Cache cache = new CacheBuilder("default").addDecorator(WeightedLruCache.class).weigher((key, value) -> 10)
+        .clearInterval(60000L).readWrite(true).properties(properties).build();
+    for (int i = 0; i < 5; i++) {
+      cache.putObject(i, "value" + i);
+    }
+    assertEquals(20, cache.getWeight());
+    assertEquals(2, cache.getSize());
+    assertEquals("value4", cache.getObject(4));
+  }
+
+  @Test
+  void shouldSubtractWeightOfExpiredEntries() throws Exception {
+    Properties properties = new Properties();
+    properties.setProperty("maxWeight", "25");
+    Cache cache = new CacheBuilder("default").addDecorator(WeightedLruCache.class).weigher((key, value) -> 10)
+        .clearInterval(50L).properties(properties).build();
+    cache.putObject(0, "value0");
+    cache.putObject(1, "value1");
+    assertEquals(20, cache.getWeight());
+    Thread.sleep(100);
+    assertEquals(0, cache.getWeight());
+    assertEquals(0, cache.getSize());
+    cache.putObject(2, "value2");
+    cache.putObject(3, "value3");
+    assertEquals(20, cache.getWeight());
+    assertEquals("value2", cache.getObject(2));
+    assertEquals("value3", cache.getObject(3));
+  }
+
+  @Test
+  void shouldWeighOneByDefault() {
+    Cache cache = new PerpetualCache("default");
+    cache.putObject(0, "abc");
+    cache.putObject(1, "de");
+    assertEquals(2, cache.getWeight());
+  }
+
+  @Test
+  void shouldEstimateSizeOfByteArrays() {
+    CacheWeigher weigher = new RetainedSizeWeigher();
+    assertEquals(1000, weigher.weigh(0, new byte[1000]) - weigher.weigh(0, new byte[0]));
+  }
+
+  @Test
+  void shouldEstimateSizeOfResultsFromSample() {
+    CacheWeigher weigher = new RetainedSizeWeigher();
+    long small = weigher.weigh(new CacheKey(), authors(100));
+    long large = weigher.weigh(new CacheKey(), authors(10000));
+    // each author has 5 strings besides itself
+    assertTrue(small > 100 * 6 * 24, "too light: " + small);
+    assertTrue(Math.abs(large - 100 * small) < small, small + " * 100 != " + large);
+  }
+
+  @Test
+  void shouldWeighSharedObjectsOnce() {
+    CacheWeigher weigher = new RetainedSizeWeigher();
+    Author author = new Author(1, "jim", "secret", "jim@example.com", "bio", Section.NEWS);
+    List<Object> once = new ArrayList<>(List.of(author, "padding"));
+    List<Object> twice = new ArrayList<>(List.of(author, author));
+    assertTrue(weigher.weigh(0, twice) < weigher.weigh(0, once));
+  }
+
+  private static List<Author> authors(int count) {
+    List<Author> authors = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      authors.add(new Author(i, "user" + i, "password" + i, "user" + i + "@example.com", "bio" + i, Section.NEWS));
+    }
+    return authors;
+  }
+
+}
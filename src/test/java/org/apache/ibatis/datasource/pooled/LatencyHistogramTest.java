@@ -0,0 +1,64 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+
+  @Test
+  void shouldReturnZeroWhenEmpty() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getValueAtPercentile(99));
+  }
+
+  @Test
+  void shouldEstimatePercentilesWithinBucketError() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 1000; i++) {
+      histogram.record(TimeUnit.MILLISECONDS.toNanos(i));
+    }
+
+    assertEquals(1000, histogram.getCount());
+    assertEquals(TimeUnit.MILLISECONDS.toNanos(1000), histogram.getMax());
+    assertWithin(500, histogram.getValueAtPercentile(50));
+    assertWithin(990, histogram.getValueAtPercentile(99));
+    assertWithin(999, histogram.getValueAtPercentile(99.9));
+    assertEquals(histogram.getMax(), histogram.getValueAtPercentile(100));
+  }
+
+  @Test
+  void shouldMapBucketsContinuously() {
+    for (long micros = 0; micros < 100_000; micros++) {
+      int bucket = LatencyHistogram.bucketOf(micros);
+      assertTrue(micros <= LatencyHistogram.upperBoundOf(bucket));
+      assertTrue(bucket == 0 || micros > LatencyHistogram.upperBoundOf(bucket - 1));
+    }
+  }
+
+  private static void assertWithin(long expectedMillis, long actualNanos) {
+    double actualMillis = actualNanos / 1_000_000.0;
+    assertTrue(actualMillis >= expectedMillis && actualMillis <= expectedMillis * 1.125,
+        "expected about " + expectedMillis + "ms but was " + actualMillis + "ms");
+  }
+
+}
@@ -0,0 +1,133 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.Test;
+
+class PoolStateTest {
+
+  @Test
+  void shouldAverageSubMillisecondRequestsAndWaits() {
+    PoolState state = new PooledDataSource().getPoolState();
+    for (int i = 0; i < 3; i++) {
+      state.recordRequest(TimeUnit.MICROSECONDS.toNanos(900));
+      state.recordHadToWait();
+      state.recordWaitTime(TimeUnit.MICROSECONDS.toNanos(900));
+    }
+    state.recordRequest(TimeUnit.MICROSECONDS.toNanos(1500));
+    state.recordHadToWait();
+    state.recordWaitTime(TimeUnit.MICROSECONDS.toNanos(1500));
+
+    // 4.2毫秒 / 4, 每次换算成毫秒再累加的话是 1 / 4
+    assertEquals(4, state.getRequestCount());
+    assertEquals(1, state.getAverageRequestTime());
+    assertEquals(4, state.getHadToWaitCount());
+    assertEquals(1, state.getAverageWaitTime());
+  }
+
+  @Test
+  void shouldCountCheckoutsAndBadConnections() {
+    PooledDataSource dataSource = new PooledDataSource();
+    List<String> events = new ArrayList<>();
+    dataSource.setPoolMetricsTracker(new PoolMetricsTracker() {
+      @Override
+      public void connectionReleased(long checkoutNanos, boolean overdue) {
+        events.add("released " + TimeUnit.NANOSECONDS.toMillis(checkoutNanos) + " " + overdue);
+      }
+
+      @Override
+      public void badConnectionDiscarded() {
+        events.add("bad");
+      }
+    });
+    PoolState state = dataSource.getPoolState();
+    state.recordRequest(0);
+    state.recordRequest(0);
+    state.recordCheckoutTime(10);
+    state.recordClaimedOverdue(30);
+    state.recordBadConnection();
+
+    assertEquals(20, state.getAverageCheckoutTime());
+    assertEquals(1, state.getClaimedOverdueConnectionCount());
+    assertEquals(30, state.getAverageOverdueCheckoutTime());
+    assertEquals(1, state.getBadConnectionCount());
+    assertEquals(2, state.getCheckoutTimeHistogram().getCount());
+    assertEquals(List.of("released 10 false", "released 30 true", "bad"), events);
+  }
+
+  @Test
+  @SuppressWarnings("deprecation")
+  void shouldKeepProtectedFieldsUpToDate() {
+    PoolState state = new PooledDataSource().getPoolState();
+    state.recordRequest(TimeUnit.MILLISECONDS.toNanos(4));
+    state.recordRequest(TimeUnit.MILLISECONDS.toNanos(2));
+    state.recordCheckoutTime(10);
+    state.recordClaimedOverdue(30);
+    state.recordHadToWait();
+    state.recordWaitTime(TimeUnit.MILLISECONDS.toNanos(5));
+    state.recordBadConnection();
+
+    // 子类读取的字段和原来一样以毫秒为单位
+    assertEquals(2, state.requestCount);
+    assertEquals(6, state.accumulatedRequestTime);
+    assertEquals(40, state.accumulatedCheckoutTime);
+    assertEquals(1, state.claimedOverdueConnectionCount);
+    assertEquals(30, state.accumulatedCheckoutTimeOfOverdueConnections);
+    assertEquals(1, state.hadToWaitCount);
+    assertEquals(5, state.accumulatedWaitTime);
+    assertEquals(1, state.badConnectionCount);
+  }
+
+  @Test
+  void shouldRegisterMXBean() throws Exception {
+    PooledDataSource dataSource = new PooledDataSource();
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName("org.apache.ibatis.datasource.pooled:type=PoolState,name=\"pool-state-test\"");
+    dataSource.setPoolJmxName("pool-state-test");
+    try {
+      assertEquals("pool-state-test", dataSource.getPoolJmxName());
+      assertTrue(server.isRegistered(name));
+      PoolState state = dataSource.getPoolState();
+      state.recordRequest(TimeUnit.MILLISECONDS.toNanos(3));
+      state.recordConnectionCreated(TimeUnit.MILLISECONDS.toNanos(8));
+
+      PoolStateMXBean bean = JMX.newMXBeanProxy(server, name, PoolStateMXBean.class);
+      assertEquals(1, bean.getRequestCount());
+      assertEquals(3, bean.getAverageRequestTime());
+      assertEquals(1, bean.getCreatedConnectionCount());
+      assertEquals(0, bean.getActiveConnectionCount());
+      assertEquals(8, bean.getConnectionCreationTimeP99(), 1);
+      assertEquals(1L, server.getAttribute(name, "RequestCount"));
+    } finally {
+      dataSource.setPoolJmxName(null);
+    }
+    assertFalse(server.isRegistered(name));
+  }
+
+}
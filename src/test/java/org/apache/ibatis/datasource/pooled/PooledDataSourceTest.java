@@ -18,6 +18,7 @@ package org.apache.ibatis.datasource.pooled;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.sql.Connection;
@@ -26,6 +27,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -158,4 +160,145 @@ class PooledDataSourceTest {
     assertEquals(0, poolState.getActiveConnectionCount());
     assertEquals(0, poolState.getIdleConnectionCount());
   }
+
+  @Test
+  void shouldReuseConnectionsInConcurrentPoolMode() throws Exception {
+    dataSource.setPoolMode("concurrent");
+    dataSource.setPoolMaximumActiveConnections(10);
+    dataSource.setPoolMaximumIdleConnections(5);
+
+    PoolState poolState = dataSource.getPoolState();
+    List<Connection> connections = new ArrayList<>();
+
+    for (int i = 0; i < dataSource.getPoolMaximumActiveConnections(); i++) {
+      connections.add(dataSource.getConnection());
+    }
+
+    assertEquals(10, poolState.getActiveConnectionCount());
+    assertEquals(0, poolState.getIdleConnectionCount());
+
+    for (Connection connection : connections) {
+      connection.close();
+    }
+
+    assertEquals(0, poolState.getActiveConnectionCount());
+    assertEquals(dataSource.getPoolMaximumIdleConnections(), poolState.getIdleConnectionCount());
+
+    // 关闭之后的代理不能再使用
+    Connection closed = connections.get(0);
+    assertThrows(SQLException.class, closed::getAutoCommit);
+
+    try (Connection connection = dataSource.getConnection()) {
+      assertEquals(1, poolState.getActiveConnectionCount());
+      assertNotEquals(closed, connection);
+    }
+
+    dataSource.forceCloseAll();
+
+    assertEquals(0, poolState.getActiveConnectionCount());
+    assertEquals(0, poolState.getIdleConnectionCount());
+  }
+
+  @Test
+  void shouldBlockUntilConnectionIsAvailableInConcurrentPoolMode() throws Exception {
+    dataSource.setPoolMode("CONCURRENT");
+    dataSource.setPoolMaximumCheckoutTime(20000);
+
+    List<Connection> connections = new ArrayList<>();
+    CountDownLatch latch = new CountDownLatch(1);
+
+    for (int i = 0; i < dataSource.getPoolMaximumActiveConnections(); i++) {
+      connections.add(dataSource.getConnection());
+    }
+
+    new Thread(() -> {
+      try {
+        dataSource.getConnection();
+        latch.countDown();
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    }).start();
+
+    assertFalse(latch.await(1000, TimeUnit.MILLISECONDS));
+    connections.get(0).close();
+    assertTrue(latch.await(1000, TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  void shouldPrefillMinimumIdleConnectionsInTheBackground() throws Exception {
+    dataSource = new PooledDataSource();
+    dataSource.setPoolHousekeepingPeriod(100);
+    dataSource.setPoolMinimumIdleConnections(3);
+
+    // 配置完成之前(第一次获取连接之前)不会创建连接
+    PoolState poolState = dataSource.getPoolState();
+    Thread.sleep(300);
+    assertEquals(0, poolState.getIdleConnectionCount());
+
+    dataSource.setDriver("org.hsqldb.jdbcDriver");
+    dataSource.setUrl("jdbc:hsqldb:mem:multipledrivers");
+    dataSource.setUsername("sa");
+    dataSource.setPassword("");
+    try (Connection connection = dataSource.getConnection()) {
+      assertEquals(1, poolState.getActiveConnectionCount());
+      assertTrue(waitFor(() -> poolState.getIdleConnectionCount() == 3));
+    }
+
+    dataSource.setPoolMinimumIdleConnections(0);
+    dataSource.forceCloseAll();
+  }
+
+  @Test
+  void shouldRetireConnectionsPastMaximumLifetime() throws Exception {
+    dataSource.setPoolHousekeepingPeriod(100);
+    dataSource.setPoolMaximumLifetime(200);
+
+    PoolState poolState = dataSource.getPoolState();
+    Connection connection = dataSource.getConnection();
+    Connection realConnection = PooledDataSource.unwrapConnection(connection);
+    connection.close();
+    assertEquals(1, poolState.getIdleConnectionCount());
+
+    assertTrue(waitFor(() -> poolState.getIdleConnectionCount() == 0));
+    assertTrue(realConnection.isClosed());
+
+    dataSource.setPoolMaximumLifetime(0);
+  }
+
+  @Test
+  void shouldRecordOneWaitPerGetConnection() throws Exception {
+    dataSource.setPoolMaximumActiveConnections(1);
+    // 等待期间多次超时重试
+    dataSource.setPoolTimeToWait(20);
+
+    PoolState poolState = dataSource.getPoolState();
+    Connection connection = dataSource.getConnection();
+    CountDownLatch latch = new CountDownLatch(1);
+    new Thread(() -> {
+      try (Connection waiting = dataSource.getConnection()) {
+        latch.countDown();
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    }).start();
+
+    Thread.sleep(200);
+    connection.close();
+    assertTrue(latch.await(1000, TimeUnit.MILLISECONDS));
+    assertTrue(waitFor(() -> poolState.getWaitTimeHistogram().getCount() == 1));
+    assertEquals(1, poolState.getHadToWaitCount());
+    assertTrue(poolState.getAverageWaitTime() >= 150);
+  }
+
+  private static boolean waitFor(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (!condition.getAsBoolean()) {
+      if (System.currentTimeMillis() > deadline) {
+        return false;
+      }
+      Thread.sleep(10);
+    }
+    return true;
+  }
 }
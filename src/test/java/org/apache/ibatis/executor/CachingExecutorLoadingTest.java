@@ -0,0 +1,113 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.cache.decorators.LoadingCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.RowBounds;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class CachingExecutorLoadingTest {
+
+  private final Configuration configuration = new Configuration();
+  private final AtomicInteger queries = new AtomicInteger();
+  private LoadingCache cache;
+  private MappedStatement select;
+  private MappedStatement uncachedUpdate;
+  private CachingExecutor executor;
+
+  @BeforeEach
+  void setUp() {
+    cache = new LoadingCache(new PerpetualCache("users"));
+    select = new MappedStatement.Builder(configuration, "selectUser",
+        new StaticSqlSource(configuration, "select * from users"), SqlCommandType.SELECT).cache(cache).useCache(true).build();
+    uncachedUpdate = new MappedStatement.Builder(configuration, "updateAccount",
+        new StaticSqlSource(configuration, "update accounts set name = 'x'"), SqlCommandType.UPDATE).build();
+    executor = new CachingExecutor(database());
+  }
+
+  @Test
+  void shouldPublishLoadedResultOfCleanExecutor() throws Exception {
+    assertEquals(List.of("row"), query());
+    assertEquals(List.of("row"), cache.getObject(key()));
+    assertEquals(List.of("row"), query());
+    assertEquals(1, queries.get());
+  }
+
+  @Test
+  void shouldNotPublishResultReadAfterWriteThroughAnotherStatement() throws Exception {
+    executor.update(uncachedUpdate, null);
+    assertEquals(List.of("row"), query());
+    assertNull(cache.getObject(key()));
+    executor.commit(true);
+    assertEquals(List.of("row"), cache.getObject(key()));
+  }
+
+  @Test
+  void shouldNotPublishResultReadAfterRolledBackWrite() throws Exception {
+    executor.update(uncachedUpdate, null);
+    assertEquals(List.of("row"), query());
+    executor.rollback(true);
+    assertNull(cache.getObject(key()));
+    // 回滚之后事务是干净的
+    assertEquals(List.of("row"), query());
+    assertEquals(List.of("row"), cache.getObject(key()));
+  }
+
+  private List<Object> query() throws Exception {
+    return executor.query(select, null, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER, key(),
+        select.getBoundSql(null));
+  }
+
+  private static CacheKey key() {
+    CacheKey key = new CacheKey();
+    key.update("selectUser");
+    return key;
+  }
+
+  private Executor database() {
+    return (Executor) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Executor.class },
+        (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "query":
+              queries.incrementAndGet();
+              return Collections.singletonList("row");
+            case "update":
+              return 1;
+            case "isClosed":
+            case "isCached":
+              return false;
+            default:
+              return null;
+          }
+        });
+  }
+
+}
@@ -0,0 +1,281 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.resultset;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ResultFlag;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.mapping.ResultMapping;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.RowBounds;
+import org.junit.jupiter.api.Test;
+
+/**
+ * 简单结果集的映射计划要和 MetaObject 的映射结果保持一致.
+ */
+class ResultMappingPlanTest {
+
+  private static final String[] COLUMNS = { "NAME", "NICK", "AGE" };
+
+  @Test
+  void shouldSkipNullsUnlessCallSettersOnNulls() throws Exception {
+    Configuration config = new Configuration();
+    ResultSet rs = resultSet(COLUMNS, row("jim", null, 30), row(null, "j", 31));
+    List<Object> people = handle(config, personMap(config), rs);
+
+    assertPerson(people.get(0), "jim", "unset", 30);
+    assertPerson(people.get(1), "unset", "j", 31);
+  }
+
+  @Test
+  void shouldCallSettersOnNulls() throws Exception {
+    Configuration config = new Configuration();
+    config.setCallSettersOnNulls(true);
+    ResultSet rs = resultSet(COLUMNS, row("jim", null, 30), row(null, "j", 31));
+    List<Object> people = handle(config, personMap(config), rs);
+
+    assertPerson(people.get(0), "jim", null, 30);
+    assertPerson(people.get(1), null, "j", 31);
+  }
+
+  @Test
+  void shouldNotSetNullOnPrimitiveProperty() throws Exception {
+    Configuration config = new Configuration();
+    config.setCallSettersOnNulls(true);
+    ResultSet rs = resultSet(COLUMNS, row("jim", "j", null), row("tom", "t", 7));
+    List<Object> people = handle(config, personMap(config), rs);
+
+    assertPerson(people.get(0), "jim", "j", -1);
+    assertPerson(people.get(1), "tom", "t", 7);
+  }
+
+  @Test
+  void shouldMapSameResultMapWithDifferentColumnLayouts() throws Exception {
+    Configuration config = new Configuration();
+    ResultMap personMap = personMap(config);
+    MappedStatement ms = new MappedStatement.Builder(config, "selectPeople", new StaticSqlSource(config, "select"),
+        SqlCommandType.SELECT).resultMaps(Arrays.asList(personMap, personMap)).build();
+    DefaultResultSetHandler handler = new DefaultResultSetHandler(null, ms, null, null, null, new RowBounds());
+
+    ResultSet first = resultSet(new String[] { "NAME", "AGE" }, row("jim", 30));
+    ResultSet second = resultSet(new String[] { "AGE", "NICK", "NAME" }, row(31, "t", "tom"), row(32, "a", "ann"));
+    List<Object> results = handler.handleResultSets(statement(first, second));
+
+    assertEquals(2, results.size());
+    assertPerson(((List<?>) results.get(0)).get(0), "jim", "unset", 30);
+    assertPerson(((List<?>) results.get(1)).get(0), "tom", "t", 31);
+    assertPerson(((List<?>) results.get(1)).get(1), "ann", "a", 32);
+  }
+
+  @Test
+  void shouldMapColumnPrefixes() throws Exception {
+    Configuration config = new Configuration();
+    ResultMap personMap = personMap(config);
+    config.addResultMap(personMap);
+    List<ResultMapping> mappings = new ArrayList<>();
+    for (String prefix : new String[] { "A_", "B_" }) {
+      mappings.add(new ResultMapping.Builder(config, null).javaType(Person.class).nestedResultMapId(personMap.getId())
+          .columnPrefix(prefix).flags(Collections.singletonList(ResultFlag.CONSTRUCTOR)).build());
+    }
+    ResultMap pairMap = new ResultMap.Builder(config, "pairMap", Pair.class, mappings).build();
+
+    List<Object> pairs = handle(config, pairMap, resultSet(new String[] { "A_NAME", "A_NICK", "B_NAME", "B_AGE" },
+        row("jim", "j", "tom", 31), row("ann", null, "bob", 32)));
+
+    assertEquals(2, pairs.size());
+    Pair pair = (Pair) pairs.get(0);
+    assertPerson(pair.a, "jim", "j", -1);
+    assertPerson(pair.b, "tom", "unset", 31);
+    pair = (Pair) pairs.get(1);
+    assertPerson(pair.a, "ann", "unset", -1);
+    assertPerson(pair.b, "bob", "unset", 32);
+  }
+
+  // NAME 和 AGE 自动映射, NICK 显式映射
+  private static ResultMap personMap(Configuration config) {
+    List<ResultMapping> mappings = Collections.singletonList(
+        new ResultMapping.Builder(config, "nickname", "NICK", String.class).build());
+    return new ResultMap.Builder(config, "personMap", Person.class, mappings).build();
+  }
+
+  private static List<Object> handle(Configuration config, ResultMap resultMap, ResultSet rs) throws Exception {
+    MappedStatement ms = new MappedStatement.Builder(config, "select", new StaticSqlSource(config, "select"),
+        SqlCommandType.SELECT).resultMaps(Collections.singletonList(resultMap)).build();
+    return new DefaultResultSetHandler(null, ms, null, null, null, new RowBounds()).handleResultSets(statement(rs));
+  }
+
+  private static void assertPerson(Object object, String name, String nickname, int age) {
+    Person person = (Person) object;
+    assertEquals(name, person.getName());
+    assertEquals(nickname, person.getNickname());
+    assertEquals(age, person.getAge());
+  }
+
+  private static Object[] row(Object... values) {
+    return values;
+  }
+
+  private static Statement statement(ResultSet... resultSets) {
+    DatabaseMetaData dbmd = proxy(DatabaseMetaData.class,
+        (method, args) -> method.equals("supportsMultipleResultSets"));
+    Connection conn = proxy(Connection.class, (method, args) -> method.equals("getMetaData") ? dbmd : null);
+    int[] current = { 0 };
+    return proxy(Statement.class, (method, args) -> {
+      switch (method) {
+        case "getResultSet":
+          return current[0] < resultSets.length ? resultSets[current[0]] : null;
+        case "getMoreResults":
+          return ++current[0] < resultSets.length;
+        case "getUpdateCount":
+          return -1;
+        case "getConnection":
+          return conn;
+        default:
+          return null;
+      }
+    });
+  }
+
+  private static ResultSet resultSet(String[] columns, Object[]... rows) {
+    ResultSetMetaData rsmd = proxy(ResultSetMetaData.class, (method, args) -> {
+      switch (method) {
+        case "getColumnCount":
+          return columns.length;
+        case "getColumnLabel":
+        case "getColumnName":
+          return columns[(Integer) args[0] - 1];
+        case "getColumnType":
+          return columns[(Integer) args[0] - 1].endsWith("AGE") ? Types.INTEGER : Types.VARCHAR;
+        case "getColumnClassName":
+          return columns[(Integer) args[0] - 1].endsWith("AGE") ? "java.lang.Integer" : "java.lang.String";
+        default:
+          return null;
+      }
+    });
+    int[] current = { -1 };
+    Object[] last = { null };
+    return proxy(ResultSet.class, (method, args) -> {
+      switch (method) {
+        case "next":
+          return ++current[0] < rows.length;
+        case "getMetaData":
+          return rsmd;
+        case "getType":
+          return ResultSet.TYPE_FORWARD_ONLY;
+        case "isClosed":
+          return false;
+        case "wasNull":
+          return last[0] == null;
+        case "getString":
+        case "getInt":
+        case "getObject":
+          int index = args[0] instanceof Integer ? (Integer) args[0] : indexOf(columns, (String) args[0]);
+          last[0] = rows[current[0]][index - 1];
+          if (last[0] == null && method.equals("getInt")) {
+            return 0;
+          }
+          return last[0];
+        default:
+          return null;
+      }
+    });
+  }
+
+  private static int indexOf(String[] columns, String column) {
+    for (int i = 0; i < columns.length; i++) {
+      if (columns[i].equalsIgnoreCase(column)) {
+        return i + 1;
+      }
+    }
+    throw new IllegalArgumentException("Unknown column " + column);
+  }
+
+  private interface Handler {
+    Object invoke(String method, Object[] args);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> T proxy(Class<T> type, Handler handler) {
+    return (T) Proxy.newProxyInstance(ResultMappingPlanTest.class.getClassLoader(), new Class<?>[] { type },
+        (proxy, method, args) -> {
+          Object result = handler.invoke(method.getName(), args);
+          if (result == null && method.getReturnType() == boolean.class) {
+            return false;
+          }
+          if (result == null && method.getReturnType() == int.class) {
+            return 0;
+          }
+          return result;
+        });
+  }
+
+  public static class Person {
+    private String name = "unset";
+    private String nickname = "unset";
+    private int age = -1;
+
+    public String getName() {
+      return name;
+    }
+
+    public void setName(String name) {
+      this.name = name;
+    }
+
+    public String getNickname() {
+      return nickname;
+    }
+
+    public void setNickname(String nickname) {
+      this.nickname = nickname;
+    }
+
+    public int getAge() {
+      return age;
+    }
+
+    public void setAge(int age) {
+      this.age = age;
+    }
+  }
+
+  public static class Pair {
+    private final Person a;
+    private final Person b;
+
+    public Pair(Person a, Person b) {
+      this.a = a;
+      this.b = b;
+    }
+  }
+
+}
@@ -24,6 +24,12 @@ import java.lang.reflect.Field;
 import org.apache.ibatis.builder.InitializingObject;
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.decorators.ConcurrentLruCache;
+import org.apache.ibatis.cache.decorators.ExpiringCache;
+import org.apache.ibatis.cache.decorators.LoggingCache;
+import org.apache.ibatis.cache.decorators.LruCache;
+import org.apache.ibatis.cache.decorators.SynchronizedCache;
+import org.apache.ibatis.cache.impl.ConcurrentPerpetualCache;
 import org.apache.ibatis.cache.impl.PerpetualCache;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -44,6 +50,43 @@ class CacheBuilderTest {
         "Failed cache initialization for 'test' on 'org.apache.ibatis.mapping.CacheBuilderTest$InitializingFailureCache'");
   }
 
+  @Test
+  void testSynchronizedByDefault() {
+    Cache cache = new CacheBuilder("test").addDecorator(LruCache.class).build();
+
+    Assertions.assertThat(cache).isInstanceOf(SynchronizedCache.class);
+  }
+
+  @Test
+  void testConcurrentImplementationIsNotSynchronized() {
+    Cache cache = new CacheBuilder("test").implementation(ConcurrentPerpetualCache.class).addDecorator(LruCache.class)
+        .size(10).build();
+
+    Assertions.assertThat(cache).isInstanceOf(LoggingCache.class);
+    Assertions.assertThat((Cache) unwrap(cache)).isInstanceOf(ConcurrentLruCache.class);
+  }
+
+  @Test
+  void testFlushIntervalExpiresEachEntry() {
+    Cache cache = new CacheBuilder("test").implementation(ConcurrentPerpetualCache.class).addDecorator(LruCache.class)
+        .clearInterval(60000L).build();
+
+    Cache lruCache = unwrap(cache);
+    Assertions.assertThat(lruCache).isInstanceOf(ConcurrentLruCache.class);
+    ExpiringCache expiringCache = unwrap(lruCache);
+    Assertions.assertThat(expiringCache.getTimeToLive()).isEqualTo(60000L);
+    Assertions.assertThat((Cache) unwrap(expiringCache)).isInstanceOf(ConcurrentPerpetualCache.class);
+  }
+
+  @Test
+  void testStatementTimeToLiveWithoutFlushInterval() {
+    Cache cache = new CacheBuilder("test").addDecorator(LruCache.class).build();
+
+    ExpiringCache expiringCache = unwrap(unwrap(unwrap(cache)));
+    Assertions.assertThat(expiringCache.getTimeToLive()).isZero();
+    Assertions.assertThat((Cache) unwrap(expiringCache)).isInstanceOf(PerpetualCache.class);
+  }
+
   @SuppressWarnings("unchecked")
   private <T> T unwrap(Cache cache) {
     Field field;
@@ -0,0 +1,57 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.mapping;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class SqlTablesTest {
+
+  @Test
+  void shouldFindTablesOfSelect() {
+    assertEquals(Set.of("author", "blog", "post"),
+        SqlTables.parse("select * from Author a, blog as b left join post p on p.blog_id = b.id where a.id = ?"));
+    assertEquals(Set.of("author", "blog"),
+        SqlTables.parse("select * from author where id in (select author_id from blog where title = 'from x')"));
+  }
+
+  @Test
+  void shouldFindTablesOfWrites() {
+    assertEquals(Set.of("author"), SqlTables.parse("update blogs.author set name = ? where id = ?"));
+    assertEquals(Set.of("author", "blog"), SqlTables.parse("insert into author (id, name) select id, title from blog"));
+    assertEquals(Set.of("order"), SqlTables.parse("delete from \"ORDER\" where id = ?"));
+    assertEquals(Set.of("a", "b"), SqlTables.parse("update a, b set a.x = b.x where a.id = b.id"));
+    assertEquals(Set.of("a", "b"),
+        SqlTables.parse("merge into a using b on (a.id = b.id) when matched then update set x = 1"));
+  }
+
+  @Test
+  void shouldIgnoreCommentsAndLiterals() {
+    assertEquals(Set.of("author"),
+        SqlTables.parse("select 'from blog' -- from post\n from /* join comment */ author"));
+  }
+
+  @Test
+  void shouldReturnNullWithoutTables() {
+    assertNull(SqlTables.parse("{call next_id(?)}"));
+    assertNull(SqlTables.parse("select 1"));
+  }
+
+}
@@ -23,10 +23,12 @@ import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.Serializable;
+import java.lang.reflect.InvocationTargetException;
 import java.util.Arrays;
 import java.util.List;
 
 import org.apache.ibatis.reflection.invoker.Invoker;
+import org.apache.ibatis.reflection.invoker.LambdaInvokerFactory;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
@@ -362,4 +364,51 @@ class ReflectorTest {
         "Ambiguous setters defined for property 'bool' in class '" + Bean.class.getName().replace("$", "\\$")
             + "' with types '(java.lang.Integer|boolean)' and '(java.lang.Integer|boolean)'\\.");
   }
+
+  @Test
+  void shouldAccessPropertiesThroughLambdaInvokers() throws Exception {
+    @SuppressWarnings("unused")
+    class Bean {
+      private int count;
+      private String name;
+
+      int getCount() {
+        return count;
+      }
+
+      void setCount(int count) {
+        this.count = count;
+      }
+
+      public String getName() {
+        if (name == null) {
+          throw new IllegalStateException("no name");
+        }
+        return name;
+      }
+
+      public Bean setName(String name) {
+        this.name = name;
+        return this;
+      }
+    }
+    ReflectorFactory reflectorFactory = new DefaultReflectorFactory(new LambdaInvokerFactory());
+    Reflector reflector = reflectorFactory.findForClass(Bean.class);
+    Bean bean = new Bean();
+
+    reflector.getSetInvoker("count").invoke(bean, new Object[] { 3 });
+    assertEquals(3, reflector.getGetInvoker("count").invoke(bean, null));
+    reflector.getSetInvoker("name").invoke(bean, new Object[] { "mybatis" });
+    assertEquals("mybatis", reflector.getGetInvoker("name").invoke(bean, null));
+
+    // the same exceptions as reflection
+    when(() -> reflector.getSetInvoker("count").invoke(bean, new Object[] { null }));
+    then(caughtException()).isInstanceOf(IllegalArgumentException.class);
+    when(() -> reflector.getSetInvoker("count").invoke(bean, new Object[] { "1" }));
+    then(caughtException()).isInstanceOf(IllegalArgumentException.class);
+    bean.name = null;
+    when(() -> reflector.getGetInvoker("name").invoke(bean, null));
+    then(caughtException()).isInstanceOf(InvocationTargetException.class)
+        .hasCauseInstanceOf(IllegalStateException.class);
+  }
 }
@@ -19,14 +19,17 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.ibatis.builder.StaticSqlSource;
 import org.apache.ibatis.mapping.BoundSql;
@@ -78,6 +81,92 @@ class DefaultParameterHandlerTest {
 
   }
 
+  @Test
+  void setParametersReusesBindingPlanPerParameterType() throws SQLException {
+    final MappedStatement mappedStatement = getMappedStatement();
+    final Configuration config = mappedStatement.getConfiguration();
+    final TypeHandlerRegistry registry = config.getTypeHandlerRegistry();
+    List<ParameterMapping> parameterMappings = Arrays.asList(
+        new ParameterMapping.Builder(config, "id", registry.getTypeHandler(Integer.class)).build(),
+        new ParameterMapping.Builder(config, "name", registry.getTypeHandler(String.class)).build());
+
+    Map<String, Object> map = new HashMap<>();
+    map.put("id", 1);
+    map.put("name", "one");
+    PreparedStatement ps = mock(PreparedStatement.class);
+    new DefaultParameterHandler(mappedStatement, map, new BoundSql(config, "sql", parameterMappings, map))
+        .setParameters(ps);
+    verify(ps).setInt(1, 1);
+    verify(ps).setString(2, "one");
+
+    ParameterBindingPlan plan = mappedStatement.getParameterBindingPlan(HashMap.class);
+    Assertions.assertNotNull(plan);
+    map.put("id", 2);
+    BoundSql boundSql = new BoundSql(config, "sql", parameterMappings, map);
+    boundSql.setAdditionalParameter("name", "additional");
+    ps = mock(PreparedStatement.class);
+    new DefaultParameterHandler(mappedStatement, map, boundSql).setParameters(ps);
+    verify(ps).setInt(1, 2);
+    verify(ps).setString(2, "additional");
+    Assertions.assertSame(plan, mappedStatement.getParameterBindingPlan(HashMap.class));
+
+    Bean bean = new Bean();
+    ps = mock(PreparedStatement.class);
+    new DefaultParameterHandler(mappedStatement, bean, new BoundSql(config, "sql", parameterMappings, bean))
+        .setParameters(ps);
+    verify(ps).setInt(1, 3);
+    verify(ps).setNull(2, JdbcType.OTHER.TYPE_CODE);
+  }
+
+  @Test
+  void setParametersReusesBindingPlanForSameMappingShape() throws SQLException {
+    final MappedStatement mappedStatement = getMappedStatement();
+    final Configuration config = mappedStatement.getConfiguration();
+    final TypeHandlerRegistry registry = config.getTypeHandlerRegistry();
+    Map<String, Object> map = new HashMap<>();
+    map.put("id", 1);
+    map.put("name", "one");
+
+    PreparedStatement ps = mock(PreparedStatement.class);
+    List<ParameterMapping> parameterMappings = Arrays.asList(
+        new ParameterMapping.Builder(config, "id", registry.getTypeHandler(Integer.class)).build(),
+        new ParameterMapping.Builder(config, "name", registry.getTypeHandler(String.class)).build());
+    new DefaultParameterHandler(mappedStatement, map, new BoundSql(config, "sql", parameterMappings, map))
+        .setParameters(ps);
+    ParameterBindingPlan plan = mappedStatement.getParameterBindingPlan(HashMap.class);
+
+    // 动态sql每次生成新的列表和 ParameterMapping
+    ps = mock(PreparedStatement.class);
+    parameterMappings = Arrays.asList(
+        new ParameterMapping.Builder(config, "id", registry.getTypeHandler(Integer.class)).build(),
+        new ParameterMapping.Builder(config, "name", registry.getTypeHandler(String.class)).build());
+    new DefaultParameterHandler(mappedStatement, map, new BoundSql(config, "sql", parameterMappings, map))
+        .setParameters(ps);
+    verify(ps).setInt(1, 1);
+    verify(ps).setString(2, "one");
+    Assertions.assertSame(plan, mappedStatement.getParameterBindingPlan(HashMap.class));
+
+    ps = mock(PreparedStatement.class);
+    parameterMappings = Arrays.asList(
+        new ParameterMapping.Builder(config, "name", registry.getTypeHandler(String.class)).build(),
+        new ParameterMapping.Builder(config, "id", registry.getTypeHandler(Integer.class)).build());
+    new DefaultParameterHandler(mappedStatement, map, new BoundSql(config, "sql", parameterMappings, map))
+        .setParameters(ps);
+    verify(ps).setString(1, "one");
+    verify(ps).setInt(2, 1);
+    Assertions.assertNotSame(plan, mappedStatement.getParameterBindingPlan(HashMap.class));
+  }
+
+  public static class Bean {
+    public Integer getId() {
+      return 3;
+    }
+
+    public String getName() {
+      return null;
+    }
+  }
+
   MappedStatement getMappedStatement() {
     final Configuration config = new Configuration();
     final TypeHandlerRegistry registry = config.getTypeHandlerRegistry();
@@ -0,0 +1,127 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.async_mapper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.Reader;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.binding.BindingException;
+import org.apache.ibatis.exceptions.PersistenceException;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.reflection.Jdk;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class AsyncMapperTest {
+
+  private static SqlSessionFactory sqlSessionFactory;
+
+  @BeforeAll
+  static void setUp() throws Exception {
+    try (Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/async_mapper/mybatis-config.xml")) {
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    }
+  }
+
+  @BeforeEach
+  void resetData() throws Exception {
+    BaseDataTest.runScript(sqlSessionFactory.getConfiguration().getEnvironment().getDataSource(),
+        "org/apache/ibatis/submitted/async_mapper/CreateDB.sql");
+  }
+
+  @Test
+  void shouldSelectOnVirtualThread() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      User user = mapper.getUser(1).join();
+      assertEquals("User1", user.getName());
+      List<User> users = mapper.getUsers().join();
+      assertEquals(2, users.size());
+      assertEquals("User2", users.get(1).getName());
+      Optional<User> missing = mapper.findUser(3).toCompletableFuture().join();
+      assertTrue(missing.isEmpty());
+      Thread asyncThread = CompletableFuture
+          .supplyAsync(Thread::currentThread, sqlSessionFactory.getConfiguration().getAsyncExecutor()).join();
+      // JDK 21之前是守护线程的缓存线程池
+      assertTrue(Jdk.newVirtualThreadPerTaskExecutor() == null ? asyncThread.isDaemon() : Jdk.isVirtual(asyncThread));
+    }
+  }
+
+  @Test
+  void shouldCommitInItsOwnSession() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      assertEquals(1, mapper.insertUser(new User(3, "User3")).join());
+      assertNull(mapper.insertUserQuietly(new User(4, "User4")).join());
+      // visible to another connection only if the async calls committed
+      assertEquals(4, mapper.countUsers());
+    }
+  }
+
+  @Test
+  void shouldCompleteExceptionallyAndRollback() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      CompletableFuture<Integer> future = mapper.insertUser(new User(1, "Duplicate"));
+      CompletionException e = assertThrows(CompletionException.class, future::join);
+      assertInstanceOf(PersistenceException.class, e.getCause());
+      assertEquals("User1", mapper.getUser(1).join().getName());
+    }
+  }
+
+  @Test
+  void shouldUseConfiguredExecutor() {
+    AtomicInteger tasks = new AtomicInteger();
+    Executor executor = command -> {
+      tasks.incrementAndGet();
+      ForkJoinPool.commonPool().execute(command);
+    };
+    sqlSessionFactory.getConfiguration().setAsyncExecutor(executor);
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      assertEquals("User2", mapper.getUser(2).join().getName());
+      assertEquals(1, tasks.get());
+    } finally {
+      sqlSessionFactory.getConfiguration().setAsyncExecutor(null);
+    }
+  }
+
+  @Test
+  void shouldRejectAsyncCursor() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      assertThrows(BindingException.class, mapper::getUserCursor);
+    }
+  }
+
+}
@@ -0,0 +1,151 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.async_mapper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.Reader;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class PublisherMapperTest {
+
+  private static SqlSessionFactory sqlSessionFactory;
+
+  @BeforeAll
+  static void setUp() throws Exception {
+    try (Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/async_mapper/mybatis-config.xml")) {
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    }
+    BaseDataTest.runScript(sqlSessionFactory.getConfiguration().getEnvironment().getDataSource(),
+        "org/apache/ibatis/submitted/async_mapper/CreateDB.sql");
+  }
+
+  @Test
+  void shouldStreamRowsOnDemand() throws Exception {
+    RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE);
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      sqlSession.getMapper(Mapper.class).streamUsers().subscribe(subscriber);
+    }
+    // nothing is read before the first request
+    assertTrue(subscriber.users.isEmpty());
+    subscriber.subscription.request(1);
+    subscriber.awaitCount(1);
+    assertEquals(1, subscriber.users.size());
+    subscriber.subscription.request(5);
+    subscriber.completion.get(10, TimeUnit.SECONDS);
+    assertEquals(2, subscriber.users.size());
+    assertEquals("User2", subscriber.users.get(1).getName());
+    assertEquals(0, activeConnections());
+  }
+
+  @Test
+  void shouldCloseSessionOnCancel() throws Exception {
+    RecordingSubscriber subscriber = new RecordingSubscriber(1);
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      sqlSession.getMapper(Mapper.class).streamUsers().subscribe(subscriber);
+    }
+    subscriber.subscription.request(1);
+    subscriber.completion.get(10, TimeUnit.SECONDS);
+    assertEquals(1, subscriber.users.size());
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (activeConnections() > 0 && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(0, activeConnections());
+  }
+
+  @Test
+  void shouldSignalErrorOnInvalidRequest() throws Exception {
+    RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE);
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      sqlSession.getMapper(Mapper.class).streamUsers().subscribe(subscriber);
+    }
+    subscriber.subscription.request(0);
+    CompletableFuture<Void> completion = subscriber.completion.handle((v, e) -> {
+      assertInstanceOf(IllegalArgumentException.class, e);
+      return null;
+    });
+    completion.get(10, TimeUnit.SECONDS);
+  }
+
+  private static int activeConnections() {
+    return ((PooledDataSource) sqlSessionFactory.getConfiguration().getEnvironment().getDataSource()).getPoolState()
+        .getActiveConnectionCount();
+  }
+
+  /**
+   * Records the rows, and cancels the subscription once {@code cancelAfter} rows have been received.
+   */
+  private static class RecordingSubscriber implements Flow.Subscriber<User> {
+
+    private final long cancelAfter;
+    private final List<User> users = new CopyOnWriteArrayList<>();
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    private volatile Flow.Subscription subscription;
+
+    RecordingSubscriber(long cancelAfter) {
+      this.cancelAfter = cancelAfter;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      this.subscription = subscription;
+    }
+
+    @Override
+    public void onNext(User user) {
+      users.add(user);
+      if (users.size() >= cancelAfter) {
+        subscription.cancel();
+        completion.complete(null);
+      }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      completion.completeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+      completion.complete(null);
+    }
+
+    void awaitCount(int count) throws InterruptedException {
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+      while (users.size() < count && System.nanoTime() < deadline) {
+        Thread.sleep(10);
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,153 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.cursor_simple;
+
+import java.io.Reader;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.cursor.defaults.PrefetchingCursor;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class PrefetchingCursorTest {
+
+  private static SqlSessionFactory sqlSessionFactory;
+
+  @BeforeAll
+  static void setUp() throws Exception {
+    try (
+        Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/cursor_simple/mybatis-config.xml")) {
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    }
+    // a buffer smaller than the result, so that the reader has to wait for the caller
+    sqlSessionFactory.getConfiguration().setCursorPrefetchSize(2);
+
+    BaseDataTest.runScript(sqlSessionFactory.getConfiguration().getEnvironment().getDataSource(),
+        "org/apache/ibatis/submitted/cursor_simple/CreateDB.sql");
+  }
+
+  @Test
+  void shouldGetAllUser() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      Cursor<User> usersCursor = mapper.getAllUsers();
+      Assertions.assertTrue(usersCursor instanceof PrefetchingCursor);
+      Assertions.assertFalse(usersCursor.isOpen());
+      Assertions.assertEquals(-1, usersCursor.getCurrentIndex());
+
+      Iterator<User> iterator = usersCursor.iterator();
+      Assertions.assertTrue(iterator.hasNext());
+      Assertions.assertTrue(usersCursor.isOpen());
+      Assertions.assertEquals(-1, usersCursor.getCurrentIndex());
+
+      List<String> names = new ArrayList<>();
+      while (iterator.hasNext()) {
+        names.add(iterator.next().getName());
+        Assertions.assertEquals(names.size() - 1, usersCursor.getCurrentIndex());
+      }
+      Assertions.assertEquals(List.of("User1", "User2", "User3", "User4", "User5"), names);
+      Assertions.assertFalse(usersCursor.isOpen());
+      Assertions.assertTrue(usersCursor.isConsumed());
+    }
+  }
+
+  @Test
+  void shouldStopReadingOnSessionClose() {
+    Cursor<User> usersCursor;
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      usersCursor = sqlSession.getMapper(Mapper.class).getAllUsers();
+      Iterator<User> iterator = usersCursor.iterator();
+      Assertions.assertEquals("User1", iterator.next().getName());
+    }
+    Assertions.assertFalse(usersCursor.isOpen());
+    Assertions.assertFalse(usersCursor.isConsumed());
+  }
+
+  @Test
+  void shouldKeepNullRowsAndRowBounds() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Cursor<User> usersCursor = sqlSession.getMapper(Mapper.class).getNullUsers(new RowBounds(1, 2));
+      Iterator<User> iterator = usersCursor.iterator();
+      Assertions.assertEquals(0, usersCursor.getCurrentIndex());
+      Assertions.assertEquals("Kate", iterator.next().getName());
+      Assertions.assertEquals(1, usersCursor.getCurrentIndex());
+      Assertions.assertNull(iterator.next());
+      Assertions.assertEquals(2, usersCursor.getCurrentIndex());
+      Assertions.assertFalse(iterator.hasNext());
+      Assertions.assertTrue(usersCursor.isConsumed());
+    }
+  }
+
+  @Test
+  void shouldNotHangOnEarlyCloseWithSingleRowBuffer() {
+    Configuration configuration = sqlSessionFactory.getConfiguration();
+    configuration.setCursorPrefetchSize(1);
+    try {
+      Assertions.assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+        try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+          Cursor<User> usersCursor = sqlSession.getMapper(Mapper.class).getAllUsers();
+          Iterator<User> iterator = usersCursor.iterator();
+          Assertions.assertEquals("User1", iterator.next().getName());
+          // let the reader fill the buffer again and wait for room for the third row
+          Thread.sleep(200);
+          usersCursor.close();
+          Assertions.assertFalse(usersCursor.isOpen());
+          Assertions.assertFalse(iterator.hasNext());
+        }
+      });
+    } finally {
+      configuration.setCursorPrefetchSize(2);
+    }
+  }
+
+  @Test
+  void shouldCloseWhenExecutorRejectsReader() {
+    Configuration configuration = sqlSessionFactory.getConfiguration();
+    Executor asyncExecutor = configuration.getAsyncExecutor();
+    configuration.setAsyncExecutor(task -> {
+      throw new RejectedExecutionException("rejected");
+    });
+    try {
+      Assertions.assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+        try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+          Cursor<User> usersCursor = sqlSession.getMapper(Mapper.class).getAllUsers();
+          Iterator<User> iterator = usersCursor.iterator();
+          Assertions.assertThrows(RejectedExecutionException.class, iterator::hasNext);
+          Assertions.assertFalse(usersCursor.isOpen());
+          Assertions.assertFalse(iterator.hasNext());
+          usersCursor.close();
+        }
+      });
+    } finally {
+      configuration.setAsyncExecutor(asyncExecutor);
+    }
+  }
+
+}
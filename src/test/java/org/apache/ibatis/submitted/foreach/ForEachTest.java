@@ -25,14 +25,23 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.ibatis.BaseDataTest;
 import org.apache.ibatis.exceptions.PersistenceException;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.executor.ExecutorException;
 import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.reflection.ParamNameResolver;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.RowBounds;
 import org.apache.ibatis.session.SqlSession;
 import org.apache.ibatis.session.SqlSessionFactory;
 import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
@@ -214,4 +223,78 @@ class ForEachTest {
     }
   }
 
+  @Test
+  void shouldSelectInChunks() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      List<User> users = mapper.selectUsersInChunks(Arrays.asList(1, 3, 4, 5, 6));
+      then(users).extracting(User::getId).containsExactly(1, 3, 4, 5, 6);
+    }
+  }
+
+  @Test
+  void shouldUpdateInChunks() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      int count = mapper.renameUsersInChunks("Renamed", Arrays.asList(2, 3, 4, 5, 99));
+      Assertions.assertEquals(4, count);
+      sqlSession.rollback(true);
+    }
+  }
+
+  @Test
+  void shouldSelectInChunksWithIM() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      List<User> users = mapper.selectUsersInChunksWithIM(Arrays.asList(1, 3, 4, 5, 6));
+      then(users).extracting(User::getId).containsExactly(1, 3, 4, 5, 6);
+    }
+  }
+
+  @Test
+  void shouldUpdateInChunksWithIM() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      int count = mapper.renameUsersInChunksWithIM("Renamed", Arrays.asList(2, 3, 4, 5, 99));
+      Assertions.assertEquals(4, count);
+      sqlSession.rollback(true);
+    }
+  }
+
+  @Test
+  void shouldNotExecuteChunkedStatementOutsideSqlSession() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Configuration configuration = sqlSession.getConfiguration();
+      MappedStatement ms = configuration
+          .getMappedStatement("org.apache.ibatis.submitted.foreach.Mapper.renameUsersInChunks");
+      Map<String, Object> parameter = new HashMap<>();
+      parameter.put("name", "Renamed");
+      parameter.put("ids", Arrays.asList(2, 3, 4));
+      Executor executor = configuration.newExecutor(
+          new JdbcTransactionFactory().newTransaction(sqlSession.getConnection()));
+      when(() -> executor.update(ms, parameter));
+      then(caughtException()).isInstanceOf(ExecutorException.class)
+          .hasMessageContaining("must be executed through a SqlSession");
+    }
+  }
+
+  @Test
+  void shouldNotReturnCachedChunkOfChunkedStatementOutsideSqlSession() throws SQLException {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Configuration configuration = sqlSession.getConfiguration();
+      MappedStatement ms = configuration
+          .getMappedStatement("org.apache.ibatis.submitted.foreach.Mapper.selectUsersInChunks");
+      Object parameter = ParamNameResolver.wrapToMapIfCollection(Arrays.asList(1, 3, 4), null);
+      Executor executor = configuration.newExecutor(
+          new JdbcTransactionFactory().newTransaction(sqlSession.getConnection()));
+      // the first chunk is cached under the key the whole statement would get
+      List<User> firstChunk = executor.query(ms.forChunk(ms.getBoundSqlChunks(parameter).get(0)), parameter,
+          RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+      then(firstChunk).extracting(User::getId).containsExactly(1, 3);
+      when(() -> executor.query(ms, parameter, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER));
+      then(caughtException()).isInstanceOf(ExecutorException.class)
+          .hasMessageContaining("must be executed through a SqlSession");
+    }
+  }
+
 }
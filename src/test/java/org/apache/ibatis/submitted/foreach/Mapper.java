@@ -41,4 +41,12 @@ public interface Mapper {
   int countUserWithNullableIsTrue(User user);
 
   int countUserWithNullableIsFalse(User user);
+
+  List<User> selectUsersInChunks(List<Integer> ids);
+
+  int renameUsersInChunks(@Param("name") String name, @Param("ids") List<Integer> ids);
+
+  List<User> selectUsersInChunksWithIM(List<Integer> ids);
+
+  int renameUsersInChunksWithIM(@Param("name") String name, @Param("ids") List<Integer> ids);
 }
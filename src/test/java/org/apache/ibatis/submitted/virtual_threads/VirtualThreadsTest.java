@@ -0,0 +1,125 @@
+/*
+ *    Copyright 2009-2023 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.virtual_threads;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.Reader;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.reflection.Jdk;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs mapper calls on virtual threads and fails if a virtual thread is pinned to its carrier while inside MyBatis.
+ * <p>
+ * {@code -Djdk.tracePinnedThreads} only takes effect when the JVM starts and prints to the console, so the test listens
+ * to the equivalent JFR event {@code jdk.VirtualThreadPinned} instead.
+ * <p>
+ * The tests are compiled for JDK 16, so the JDK 21 APIs are called through {@link Jdk} and reflection, and the test is
+ * skipped on older JVMs.
+ */
+class VirtualThreadsTest {
+
+  private static final int THREADS = 200;
+
+  private static SqlSessionFactory sqlSessionFactory;
+
+  @BeforeAll
+  static void setUp() throws Exception {
+    try (Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/virtual_threads/mybatis-config.xml")) {
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    }
+    BaseDataTest.runScript(sqlSessionFactory.getConfiguration().getEnvironment().getDataSource(),
+        "org/apache/ibatis/submitted/virtual_threads/CreateDB.sql");
+  }
+
+  @Test
+  void shouldNotPinCarrierThreads() throws Exception {
+    ExecutorService executor = Jdk.newVirtualThreadPerTaskExecutor();
+    assumeTrue(executor != null, "Virtual threads require JDK 21");
+
+    Queue<String> pinnedStacks = new ConcurrentLinkedQueue<>();
+    try (RecordingStream recording = new RecordingStream()) {
+      recording.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO).withStackTrace();
+      recording.onEvent("jdk.VirtualThreadPinned", event -> {
+        if (isInsideMyBatis(event)) {
+          pinnedStacks.add(event.getStackTrace().toString());
+        }
+      });
+      recording.startAsync();
+
+      try {
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+          int id = i % 4 + 1;
+          results.add(executor.submit(() -> loadDepartmentName(id)));
+        }
+        for (int i = 0; i < THREADS; i++) {
+          assertEquals(i % 2 == 0 ? "Sales" : "Research", results.get(i).get());
+        }
+      } finally {
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+      }
+
+      // 停止的时候会处理完已经记录的事件, RecordingStream.stop() 从JDK 20开始才有
+      RecordingStream.class.getMethod("stop").invoke(recording);
+    }
+    assertTrue(pinnedStacks.isEmpty(), () -> "Virtual threads pinned inside MyBatis: " + pinnedStacks);
+  }
+
+  private static String loadDepartmentName(int employeeId) {
+    Employee employee;
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      employee = sqlSession.getMapper(Mapper.class).getEmployee(employeeId);
+    }
+    // 会话关闭之后触发懒加载, 需要从连接池重新获取连接
+    return employee.getDepartment().getName();
+  }
+
+  private static boolean isInsideMyBatis(RecordedEvent event) {
+    if (event.getStackTrace() == null) {
+      return false;
+    }
+    for (RecordedFrame frame : event.getStackTrace().getFrames()) {
+      if (frame.getMethod().getType().getName().startsWith("org.apache.ibatis.")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+}
@@ -0,0 +1,37 @@
+--
+--    Copyright 2009-2023 the original author or authors.
+--
+--    Licensed under the Apache License, Version 2.0 (the "License");
+--    you may not use this file except in compliance with the License.
+--    You may obtain a copy of the License at
+--
+--       https://www.apache.org/licenses/LICENSE-2.0
+--
+--    Unless required by applicable law or agreed to in writing, software
+--    distributed under the License is distributed on an "AS IS" BASIS,
+--    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+--    See the License for the specific language governing permissions and
+--    limitations under the License.
+--
+
+drop table if exists employee;
+drop table if exists department;
+
+create table department (
+  id int,
+  name varchar(20)
+);
+
+create table employee (
+  id int,
+  name varchar(20),
+  department_id int
+);
+
+insert into department (id, name) values (1, 'Sales');
+insert into department (id, name) values (2, 'Research');
+
+insert into employee (id, name, department_id) values (1, 'Alice', 1);
+insert into employee (id, name, department_id) values (2, 'Bob', 2);
+insert into employee (id, name, department_id) values (3, 'Carol', 1);
+insert into employee (id, name, department_id) values (4, 'Dave', 2);